@@ -0,0 +1,88 @@
+package io.elgayed.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import io.elgayed.Application;
+import io.elgayed.model.StatisticsReport;
+import io.elgayed.processing.BatchProcessingService;
+import io.elgayed.processing.EvaluationClient;
+import io.elgayed.processing.EvaluationRequest;
+
+/**
+ * Whole CSV files processing job, launched through {@link BatchProcessingService#processCsvFiles(EvaluationRequest)} over generated local files.
+ *
+ * The application runs without web server, with an in-memory job repository and with its caches disabled,
+ * so that every operation reads and parses all the files. An operation is one job run
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class CsvProcessingJobBenchmark {
+
+	@Param({"100000", "1000000"})
+	private long rows;
+
+	@Param({"1", "4"})
+	private int files;
+
+	private Path directory;
+	private ConfigurableApplicationContext context;
+	private BatchProcessingService batchProcessingService;
+	private EvaluationRequest request;
+
+	@Setup
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("speeches-benchmark");
+		DataGenerator generator = new DataGenerator(0, DataGenerator.SPEAKERS.size());
+		Map<String, String> csvFileUrls = new HashMap<>();
+		for (int i = 1; i <= files; i++) {
+			Path file = directory.resolve("speeches" + i + ".csv");
+			generator.writeCsv(file, rows / files);
+			csvFileUrls.put("url" + i, file.toUri().toString());
+		}
+		request = new EvaluationRequest(csvFileUrls, Map.of(), null, EvaluationClient.DEFAULT);
+		//command line arguments take precedence over application.properties
+		context = new SpringApplicationBuilder(Application.class)
+				.web(WebApplicationType.NONE)
+				.run("--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+						"--processing.restart-interrupted=false",
+						"--cache.sources.max-entries=0",
+						"--cache.prefixes.max-entries=0",
+						"--cache.reports.max-entries=0",
+						"--logging.level.root=WARN");
+		batchProcessingService = context.getBean(BatchProcessingService.class);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		context.close();
+		try (Stream<Path> paths = Files.walk(directory)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public StatisticsReport processCsvFiles() throws Exception {
+		return batchProcessingService.processCsvFiles(request);
+	}
+}
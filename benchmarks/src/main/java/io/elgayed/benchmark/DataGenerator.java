@@ -0,0 +1,474 @@
+package io.elgayed.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import io.elgayed.model.Speech;
+import io.elgayed.model.SpeechDate;
+import io.elgayed.processing.SpeechRecordConstants;
+
+/**
+ * Generates political speeches, as {@link Speech}es, as CSV lines or as whole CSV files, to be used as benchmark, test and load inputs.
+ *
+ * Generation is seeded: the same seed and settings always generate the same rows, whatever the way they are consumed.
+ * <ul>
+ * <li>Speakers are {@link #SPEAKERS} followed by numbered speakers ({@code Speaker 7}) up to the speakers cardinality,
+ * themes are {@link #THEMES} followed by numbered themes ({@code Theme 7}) up to the themes cardinality</li>
+ * <li>Speakers and themes are picked following a Zipf distribution: the k-th name (from 1) is picked with a weight of {@code 1 / k^skew},
+ * a skew of 0 (default) picks them uniformly</li>
+ * <li>Dates are picked uniformly in a range of days, 2011-01-01 to 2014-12-31 by default, words counts between 500 and 10000</li>
+ * <li>A share of the rows written as CSV can be malformed: missing field, invalid date or invalid words count, that the readers skip
+ * up to the skip limit of the processing step</li>
+ * </ul>
+ * CSV files are written without per row allocation: names and dates are encoded once into bytes and rows are encoded into a buffer
+ * flushed to a {@link WritableByteChannel}, so that multi-GB files are written at disk speed.
+ *
+ * This class is not thread safe
+ */
+public class DataGenerator {
+
+	public static final List<String> SPEAKERS = List.of("Amir Elgayed", "Alexander Abel", "Caesare Collins",
+			"Bernhard Belling", "John Doe", "Lee Sin");
+
+	public static final List<String> THEMES = List.of("Kohlesubventionen", "Innere Sicherheit", "Bildungspolitik",
+			"Global Warming", "World Peace", "External Policies");
+
+	public static final String CSV_DELIMITER = ", ";
+
+	private static final byte[] DELIMITER_BYTES = CSV_DELIMITER.getBytes(StandardCharsets.UTF_8);
+	private static final byte[] INVALID_DATE = "2013-13-45".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] INVALID_WORDS = "many".getBytes(StandardCharsets.UTF_8);
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final int MIN_WORDS = 500;
+	private static final int MAX_WORDS = 10000;
+	private static final int MAX_WORDS_LENGTH = 20;
+
+	private static final int WELL_FORMED = 0;
+	private static final int MISSING_FIELD = 1;
+	private static final int INVALID_DATE_FIELD = 2;
+	private static final int INVALID_WORDS_FIELD = 3;
+	private static final int MALFORMED_KINDS = 3;
+
+	private final long seed;
+	private int speakersCount = SPEAKERS.size();
+	private int themesCount = THEMES.size();
+	private double speakersSkew;
+	private double themesSkew;
+	private LocalDate firstDate = LocalDate.of(2011, 1, 1);
+	private LocalDate lastDate = LocalDate.of(2014, 12, 31);
+	private double malformedShare;
+
+	/**
+	 * Settings derived state, built on the first generated row: changing a setting afterwards restarts the generation
+	 */
+	private boolean prepared;
+	private SplittableRandom random;
+	private String[] speakers;
+	private String[] themes;
+	private EncodedValues speakerBytes;
+	private EncodedValues themeBytes;
+	private ZipfDistribution speakersDistribution;
+	private ZipfDistribution themesDistribution;
+	private int[] dates;
+	private EncodedValues dateBytes;
+	private int maxRowBytes;
+
+	/**
+	 * Current row, see {@link #nextRow(boolean)}
+	 */
+	private int rowSpeaker;
+	private int rowTheme;
+	private int rowDate;
+	private long rowWords;
+	private int rowKind;
+
+	/**
+	 * @param seed Seed of the generation
+	 */
+	public DataGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @param seed Seed of the generation
+	 * @param speakersCount Number of distinct speakers
+	 */
+	public DataGenerator(long seed, int speakersCount) {
+		this(seed);
+		setSpeakers(speakersCount);
+	}
+
+	/**
+	 * @param speakersCount Number of distinct speakers, 6 by default
+	 */
+	public void setSpeakers(int speakersCount) {
+		if (speakersCount < 1)
+			throw new IllegalArgumentException("At least one speaker is required");
+		this.speakersCount = speakersCount;
+		this.prepared = false;
+	}
+
+	/**
+	 * @param themesCount Number of distinct themes, 6 by default
+	 */
+	public void setThemes(int themesCount) {
+		if (themesCount < 1)
+			throw new IllegalArgumentException("At least one theme is required");
+		this.themesCount = themesCount;
+		this.prepared = false;
+	}
+
+	/**
+	 * @param speakersSkew Exponent of the Zipf distribution of the speakers, 0 (default) for a uniform distribution
+	 */
+	public void setSpeakersSkew(double speakersSkew) {
+		if (speakersSkew < 0)
+			throw new IllegalArgumentException("Skew must not be negative");
+		this.speakersSkew = speakersSkew;
+		this.prepared = false;
+	}
+
+	/**
+	 * @param themesSkew Exponent of the Zipf distribution of the themes, 0 (default) for a uniform distribution
+	 */
+	public void setThemesSkew(double themesSkew) {
+		if (themesSkew < 0)
+			throw new IllegalArgumentException("Skew must not be negative");
+		this.themesSkew = themesSkew;
+		this.prepared = false;
+	}
+
+	/**
+	 * @param firstDate First date of the speeches (inclusive)
+	 * @param lastDate Last date of the speeches (inclusive)
+	 */
+	public void setDates(LocalDate firstDate, LocalDate lastDate) {
+		if (lastDate.isBefore(firstDate))
+			throw new IllegalArgumentException("Last date must not precede the first date");
+		this.firstDate = firstDate;
+		this.lastDate = lastDate;
+		this.prepared = false;
+	}
+
+	/**
+	 * @param malformedShare Share of malformed rows in the generated CSV lines and files, between 0 (default) and 1
+	 */
+	public void setMalformedShare(double malformedShare) {
+		if (malformedShare < 0 || malformedShare > 1)
+			throw new IllegalArgumentException("Malformed share must be between 0 and 1");
+		this.malformedShare = malformedShare;
+		this.prepared = false;
+	}
+
+	/**
+	 * @return the next speech, speeches are always well formed
+	 */
+	public Speech nextSpeech() {
+		nextRow(false);
+		Speech speech = new Speech();
+		speech.setSpeaker(speakers[rowSpeaker]);
+		speech.setTheme(themes[rowTheme]);
+		speech.setDate(dates[rowDate]);
+		speech.setWords(rowWords);
+		return speech;
+	}
+
+	public List<Speech> speeches(int count) {
+		List<Speech> speeches = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+			speeches.add(nextSpeech());
+		return speeches;
+	}
+
+	/**
+	 * @return the next row as a CSV line, without line feed
+	 */
+	public String nextLine() {
+		nextRow(true);
+		byte[] line = new byte[maxRowBytes];
+		return new String(line, 0, putRow(line, 0) - 1, StandardCharsets.UTF_8);
+	}
+
+	public List<String> lines(int count) {
+		List<String> lines = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+			lines.add(nextLine());
+		return lines;
+	}
+
+	/**
+	 * Writes a CSV file holding the columns header followed by the given number of rows
+	 */
+	public void writeCsv(Path file, long rows) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			writeCsv(channel, rows);
+		}
+	}
+
+	/**
+	 * Writes the columns header followed by the given number of rows to a channel, the channel is left open
+	 */
+	public void writeCsv(WritableByteChannel channel, long rows) throws IOException {
+		prepare();
+		byte[] buffer = new byte[Math.max(BUFFER_SIZE, 2 * maxRowBytes)];
+		byte[] header = (header() + "\n").getBytes(StandardCharsets.UTF_8);
+		System.arraycopy(header, 0, buffer, 0, header.length);
+		int position = header.length;
+		for (long row = 0; row < rows; row++) {
+			if (buffer.length - position < maxRowBytes)
+				position = flush(buffer, position, channel);
+			nextRow(true);
+			position = putRow(buffer, position);
+		}
+		flush(buffer, position, channel);
+	}
+
+	public static String header() {
+		return String.join(CSV_DELIMITER, SpeechRecordConstants.SPEAKER_COLUMN_NAME, SpeechRecordConstants.SPEECH_THEME_COLUMN_NAME,
+				SpeechRecordConstants.SPEECH_DATE_COLUMN_NAME, SpeechRecordConstants.SPEECH_WORDS_COLUMN_NAME);
+	}
+
+	/**
+	 * Draws the next row, the draws do not depend on the way the row is consumed
+	 * @param mayBeMalformed {@code false} to generate a well formed row whatever the malformed share
+	 */
+	private void nextRow(boolean mayBeMalformed) {
+		prepare();
+		rowSpeaker = pick(speakersDistribution, speakersCount);
+		rowTheme = pick(themesDistribution, themesCount);
+		rowDate = random.nextInt(dates.length);
+		rowWords = random.nextInt(MIN_WORDS, MAX_WORDS + 1);
+		rowKind = WELL_FORMED;
+		if (malformedShare > 0 && random.nextDouble() < malformedShare && mayBeMalformed)
+			rowKind = 1 + random.nextInt(MALFORMED_KINDS);
+	}
+
+	/**
+	 * Encodes the current row followed by a line feed
+	 * @return the position following the row
+	 */
+	private int putRow(byte[] buffer, int position) {
+		position = speakerBytes.put(rowSpeaker, buffer, position);
+		position = put(DELIMITER_BYTES, buffer, position);
+		position = themeBytes.put(rowTheme, buffer, position);
+		position = put(DELIMITER_BYTES, buffer, position);
+		position = rowKind == INVALID_DATE_FIELD ? put(INVALID_DATE, buffer, position) : dateBytes.put(rowDate, buffer, position);
+		if (rowKind != MISSING_FIELD) {
+			position = put(DELIMITER_BYTES, buffer, position);
+			position = rowKind == INVALID_WORDS_FIELD ? put(INVALID_WORDS, buffer, position) : putDigits(rowWords, buffer, position);
+		}
+		buffer[position++] = '\n';
+		return position;
+	}
+
+	private static int put(byte[] value, byte[] buffer, int position) {
+		System.arraycopy(value, 0, buffer, position, value.length);
+		return position + value.length;
+	}
+
+	private static int putDigits(long value, byte[] buffer, int position) {
+		int length = 1;
+		for (long remaining = value / 10; remaining > 0; remaining /= 10)
+			length++;
+		for (int i = position + length - 1; i >= position; i--) {
+			buffer[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		return position + length;
+	}
+
+	/**
+	 * Writes the buffer up to the given position to the channel
+	 * @return the position of the emptied buffer
+	 */
+	private static int flush(byte[] buffer, int position, WritableByteChannel channel) throws IOException {
+		ByteBuffer content = ByteBuffer.wrap(buffer, 0, position);
+		while (content.hasRemaining())
+			channel.write(content);
+		return 0;
+	}
+
+	/**
+	 * @return the index of a name picked following the given distribution, or uniformly if there is none
+	 */
+	private int pick(ZipfDistribution distribution, int count) {
+		return distribution == null ? random.nextInt(count) : distribution.pick(random);
+	}
+
+	private void prepare() {
+		if (prepared)
+			return;
+		prepared = true;
+		random = new SplittableRandom(seed);
+		speakers = names(SPEAKERS, "Speaker ", speakersCount);
+		themes = names(THEMES, "Theme ", themesCount);
+		speakerBytes = new EncodedValues(speakers);
+		themeBytes = new EncodedValues(themes);
+		speakersDistribution = speakersSkew == 0 ? null : new ZipfDistribution(speakersCount, speakersSkew);
+		themesDistribution = themesSkew == 0 ? null : new ZipfDistribution(themesCount, themesSkew);
+
+		int days = (int) (lastDate.toEpochDay() - firstDate.toEpochDay() + 1);
+		dates = new int[days];
+		String[] formattedDates = new String[days];
+		for (int day = 0; day < days; day++) {
+			dates[day] = SpeechDate.of(firstDate.plusDays(day));
+			formattedDates[day] = SpeechDate.format(dates[day]);
+		}
+		dateBytes = new EncodedValues(formattedDates);
+
+		maxRowBytes = speakerBytes.maxLength + themeBytes.maxLength + Math.max(dateBytes.maxLength, INVALID_DATE.length)
+				+ 3 * DELIMITER_BYTES.length + MAX_WORDS_LENGTH + 1;
+	}
+
+	private static String[] names(List<String> knownNames, String prefix, int count) {
+		String[] names = new String[count];
+		for (int i = 0; i < count; i++)
+			names[i] = i < knownNames.size() ? knownNames.get(i) : prefix + i;
+		return names;
+	}
+
+	/**
+	 * Generates a CSV file: {@code DataGenerator <file> [rows=10000] [seed=0] [speakers=6] [speakers-skew=0] [themes=6] [themes-skew=0]
+	 * [from=2011-01-01] [to=2014-12-31] [malformed=0]}
+	 */
+	public static void main(String[] args) throws IOException {
+		Path file = args.length > 0 ? Paths.get(args[0]) : Paths.get(System.getProperty("user.home"), "Desktop", "large-speeches.csv");
+		Map<String, String> options = new HashMap<>();
+		for (int i = 1; i < args.length; i++) {
+			String[] option = args[i].split("=", 2);
+			if (option.length != 2)
+				throw new IllegalArgumentException("Options are expected as name=value: " + args[i]);
+			options.put(option[0], option[1]);
+		}
+		long rows = Long.parseLong(options.getOrDefault("rows", "10000"));
+		DataGenerator generator = new DataGenerator(Long.parseLong(options.getOrDefault("seed", "0")));
+		generator.setSpeakers(Integer.parseInt(options.getOrDefault("speakers", String.valueOf(SPEAKERS.size()))));
+		generator.setSpeakersSkew(Double.parseDouble(options.getOrDefault("speakers-skew", "0")));
+		generator.setThemes(Integer.parseInt(options.getOrDefault("themes", String.valueOf(THEMES.size()))));
+		generator.setThemesSkew(Double.parseDouble(options.getOrDefault("themes-skew", "0")));
+		generator.setDates(LocalDate.parse(options.getOrDefault("from", "2011-01-01")), LocalDate.parse(options.getOrDefault("to", "2014-12-31")));
+		generator.setMalformedShare(Double.parseDouble(options.getOrDefault("malformed", "0")));
+
+		long start = System.nanoTime();
+		generator.writeCsv(file, rows);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		double megabytes = file.toFile().length() / 1e6;
+		System.out.printf("%d rows, %.1f MB written to %s in %.2f s (%.0f MB/s)%n", rows, megabytes, file, seconds, megabytes / seconds);
+	}
+
+	/**
+	 * UTF-8 encoding of values, laid out contiguously so that encoding rows picking among many values stays cache friendly
+	 */
+	private static class EncodedValues {
+
+		private final byte[] bytes;
+		private final int[] offsets;
+		private final int maxLength;
+
+		private EncodedValues(String[] values) {
+			byte[][] encoded = new byte[values.length][];
+			int length = 0;
+			int max = 0;
+			for (int i = 0; i < values.length; i++) {
+				encoded[i] = values[i].getBytes(StandardCharsets.UTF_8);
+				length += encoded[i].length;
+				max = Math.max(max, encoded[i].length);
+			}
+			bytes = new byte[length];
+			offsets = new int[values.length + 1];
+			for (int i = 0; i < values.length; i++) {
+				System.arraycopy(encoded[i], 0, bytes, offsets[i], encoded[i].length);
+				offsets[i + 1] = offsets[i] + encoded[i].length;
+			}
+			maxLength = max;
+		}
+
+		/**
+		 * @return the position following the value
+		 */
+		private int put(int index, byte[] buffer, int position) {
+			int length = offsets[index + 1] - offsets[index];
+			System.arraycopy(bytes, offsets[index], buffer, position, length);
+			return position + length;
+		}
+	}
+
+	/**
+	 * Zipf distribution of ranks, sampled in constant time whatever the number of ranks with Vose's alias method:
+	 * a rank is picked uniformly, then kept with its probability or replaced by its alias.
+	 * Probabilities, as 32 bits thresholds, and aliases are packed in a single array and drawn from a single random long,
+	 * so that a pick reads one entry
+	 */
+	private static class ZipfDistribution {
+
+		private static final double THRESHOLD_SCALE = 0x1p32;
+
+		/**
+		 * Threshold of a rank in the high 32 bits, its alias in the low ones
+		 */
+		private final long[] entries;
+
+		private ZipfDistribution(int count, double skew) {
+			double[] weights = new double[count];
+			double sum = 0;
+			for (int k = 0; k < count; k++) {
+				weights[k] = 1 / Math.pow(k + 1, skew);
+				sum += weights[k];
+			}
+			entries = new long[count];
+			int[] small = new int[count];
+			int[] large = new int[count];
+			int smallCount = 0;
+			int largeCount = 0;
+			for (int k = 0; k < count; k++) {
+				weights[k] = weights[k] * count / sum;
+				if (weights[k] < 1)
+					small[smallCount++] = k;
+				else
+					large[largeCount++] = k;
+			}
+			while (smallCount > 0 && largeCount > 0) {
+				int less = small[--smallCount];
+				int more = large[largeCount - 1];
+				entries[less] = entry(weights[less], more);
+				weights[more] -= 1 - weights[less];
+				if (weights[more] < 1) {
+					largeCount--;
+					small[smallCount++] = more;
+				}
+			}
+			//remaining ranks have a probability of 1, up to rounding errors, and are their own aliases
+			while (largeCount > 0) {
+				int rank = large[--largeCount];
+				entries[rank] = entry(1, rank);
+			}
+			while (smallCount > 0) {
+				int rank = small[--smallCount];
+				entries[rank] = entry(1, rank);
+			}
+		}
+
+		private static long entry(double probability, int alias) {
+			return (long) Math.min(probability * THRESHOLD_SCALE, THRESHOLD_SCALE - 1) << 32 | alias;
+		}
+
+		private int pick(SplittableRandom random) {
+			long bits = random.nextLong();
+			int rank = (int) (((bits >>> 32) * entries.length) >>> 32);
+			long entry = entries[rank];
+			return (bits & 0xFFFFFFFFL) < (entry >>> 32) ? rank : (int) entry;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package io.elgayed.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.batch.item.ExecutionContext;
+
+import io.elgayed.model.Speech;
+import io.elgayed.processing.PartitionCheckpoint;
+import io.elgayed.statistics.StatisticsReportAccumulator;
+
+/**
+ * Checkpoint of a chunk of 1000 speeches at its commit, by a partition whose partial accumulator already holds the given number of distinct speakers:
+ * {@link PartitionCheckpoint} appends the chunk only, its compactions included, whereas a snapshot of the whole partial accumulator grows with the speakers.
+ * An operation is one chunk commit
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PartitionCheckpointBenchmark {
+
+	private static final int CHUNK_SIZE = 1000;
+
+	@Param({"1000", "100000", "1000000"})
+	private int speakers;
+
+	private Path directory;
+	private StatisticsReportAccumulator accumulator;
+	private List<Speech> chunk;
+	private PartitionCheckpoint checkpoint;
+	private ExecutionContext context;
+
+	@Setup
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("checkpoint-benchmark");
+		accumulator = new StatisticsReportAccumulator();
+		new DataGenerator(0, speakers).speeches(speakers * 2).forEach(accumulator::accumulate);
+		chunk = new DataGenerator(1, speakers).speeches(CHUNK_SIZE);
+		checkpoint = new PartitionCheckpoint(directory);
+		context = new ExecutionContext();
+		checkpoint.save(context, accumulator);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		checkpoint.close();
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public ExecutionContext checkpointChunk() {
+		chunk.forEach(accumulator::accumulate);
+		checkpoint.record(chunk);
+		checkpoint.save(context, accumulator);
+		return context;
+	}
+
+	@Benchmark
+	public byte[] snapshotPartial() {
+		chunk.forEach(accumulator::accumulate);
+		return accumulator.toSnapshot();
+	}
+}
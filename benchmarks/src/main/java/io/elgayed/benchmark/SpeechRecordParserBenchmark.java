@@ -0,0 +1,94 @@
+package io.elgayed.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.ByteArrayResource;
+
+import io.elgayed.dictionary.SpeechDictionary;
+import io.elgayed.model.Speech;
+import io.elgayed.processing.SpeechCsvItemReader;
+import io.elgayed.processing.SpeechRecordParser;
+
+/**
+ * Tokenizing and mapping of CSV lines into speeches by {@link SpeechRecordParser}, with and without dictionary encoding,
+ * and reading of a whole in-memory CSV file by {@link SpeechCsvItemReader}. An operation is one line
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SpeechRecordParserBenchmark {
+
+	private static final int LINES = 10_000;
+
+	private ByteBuffer lines;
+	private int[] lineStarts;
+	private int[] lineEnds;
+	private byte[] csvFile;
+
+	private SpeechRecordParser parser;
+	private SpeechRecordParser encodingParser;
+	private SpeechDictionary dictionary;
+
+	@Setup
+	public void setUp() {
+		List<String> generatedLines = new DataGenerator(0, DataGenerator.SPEAKERS.size()).lines(LINES);
+		StringBuilder csv = new StringBuilder(DataGenerator.header()).append('\n');
+		lineStarts = new int[LINES];
+		lineEnds = new int[LINES];
+		int offset = csv.length();
+		for (int i = 0; i < LINES; i++) {
+			byte[] line = generatedLines.get(i).getBytes(StandardCharsets.UTF_8);
+			lineStarts[i] = offset;
+			lineEnds[i] = offset + line.length;
+			offset += line.length + 1;
+			csv.append(generatedLines.get(i)).append('\n');
+		}
+		csvFile = csv.toString().getBytes(StandardCharsets.UTF_8);
+		lines = ByteBuffer.wrap(csvFile);
+
+		parser = new SpeechRecordParser();
+		dictionary = new SpeechDictionary();
+		encodingParser = new SpeechRecordParser(dictionary);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public void parse(Blackhole blackhole) {
+		for (int i = 0; i < LINES; i++)
+			blackhole.consume(parser.parse(lines, lineStarts[i], lineEnds[i], i + 2));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public void parseEncoded(Blackhole blackhole) {
+		for (int i = 0; i < LINES; i++)
+			blackhole.consume(encodingParser.parse(lines, lineStarts[i], lineEnds[i], i + 2));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public void readCsv(Blackhole blackhole) throws Exception {
+		SpeechCsvItemReader reader = new SpeechCsvItemReader();
+		reader.setResource(new ByteArrayResource(csvFile));
+		reader.setDictionary(dictionary);
+		reader.setLinesToSkip(1);
+		reader.open(new ExecutionContext());
+		Speech speech;
+		while ((speech = reader.read()) != null)
+			blackhole.consume(speech);
+		reader.close();
+	}
+}
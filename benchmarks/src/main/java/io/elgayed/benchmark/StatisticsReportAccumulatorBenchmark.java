@@ -0,0 +1,66 @@
+package io.elgayed.benchmark;
+
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.elgayed.dictionary.SpeechDictionary;
+import io.elgayed.model.Speech;
+import io.elgayed.statistics.StatisticsReportAccumulator;
+
+/**
+ * {@link StatisticsReportAccumulator#accumulate(Speech)} of speeches holding their speaker and theme names only,
+ * and of speeches already encoded with the accumulator's dictionary as the readers encode them. An operation is one speech
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StatisticsReportAccumulatorBenchmark {
+
+	private static final int SPEECHES = 100_000;
+
+	@Param({"6", "1000"})
+	private int speakers;
+
+	private List<Speech> speeches;
+	private List<Speech> encodedSpeeches;
+	private SpeechDictionary dictionary;
+
+	@Setup
+	public void setUp() {
+		speeches = new DataGenerator(0, speakers).speeches(SPEECHES);
+		dictionary = new SpeechDictionary();
+		encodedSpeeches = new DataGenerator(0, speakers).speeches(SPEECHES);
+		for (Speech speech : encodedSpeeches) {
+			speech.setSpeakerId(dictionary.speakers().idOf(speech.getSpeaker()));
+			speech.setThemeId(dictionary.themes().idOf(speech.getTheme()));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SPEECHES)
+	public StatisticsReportAccumulator accumulate() {
+		StatisticsReportAccumulator accumulator = new StatisticsReportAccumulator();
+		for (Speech speech : speeches)
+			accumulator.accumulate(speech);
+		return accumulator;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SPEECHES)
+	public StatisticsReportAccumulator accumulateEncoded() {
+		StatisticsReportAccumulator accumulator = new StatisticsReportAccumulator(dictionary);
+		for (Speech speech : encodedSpeeches)
+			accumulator.accumulate(speech);
+		return accumulator;
+	}
+}
@@ -0,0 +1,50 @@
+package io.elgayed.benchmark;
+
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.elgayed.dictionary.SpeechDictionary;
+import io.elgayed.model.Speech;
+import io.elgayed.model.StatisticsReport;
+import io.elgayed.statistics.StatisticsReportCollector;
+
+/**
+ * {@link StatisticsReportCollector} over sequential and parallel streams, from a handful of speakers to high speaker cardinalities
+ * where the per speaker counters and the final scan dominate. An operation is one report over all speeches
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StatisticsReportCollectorBenchmark {
+
+	private static final int SPEECHES = 200_000;
+
+	@Param({"6", "1000", "100000"})
+	private int speakers;
+
+	private List<Speech> speeches;
+
+	@Setup
+	public void setUp() {
+		speeches = new DataGenerator(0, speakers).speeches(SPEECHES);
+	}
+
+	@Benchmark
+	public StatisticsReport collect() {
+		return speeches.stream().collect(new StatisticsReportCollector(new SpeechDictionary()));
+	}
+
+	@Benchmark
+	public StatisticsReport collectParallel() {
+		return speeches.parallelStream().collect(new StatisticsReportCollector(new SpeechDictionary()));
+	}
+}
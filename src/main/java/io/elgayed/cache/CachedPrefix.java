@@ -0,0 +1,31 @@
+package io.elgayed.cache;
+
+import io.elgayed.statistics.StatisticsReportAccumulator;
+
+/**
+ * Partial {@link StatisticsReportAccumulator} holding every speech of the first {@code length} bytes of a CSV source, cached so that once lines
+ * are appended to the source only the appended tail is read again, see {@link io.elgayed.processing.CsvSourcePartitioner}.
+ *
+ * The prefix always ends with a line feed. Its validator holds the end and the digest of every range of a local file it was read in,
+ * or its length and the digest of its last bytes for a remote source:
+ * entity tags and modification dates change whenever lines are appended, so the digest tells whether the prefix is still the start of the source
+ * or whether the source was rewritten
+ */
+public class CachedPrefix extends CachedSource {
+
+	private final long length;
+
+	/**
+	 * @param length Length of the prefix of the source, in bytes
+	 * @param validator Validator of the prefix content
+	 * @param partial Accumulator holding the speeches of the prefix
+	 */
+	public CachedPrefix(long length, SourceValidator validator, StatisticsReportAccumulator partial) {
+		super(validator, partial);
+		this.length = length;
+	}
+
+	public long getLength() {
+		return length;
+	}
+}
@@ -0,0 +1,40 @@
+package io.elgayed.cache;
+
+import java.util.Collection;
+import java.util.HashSet;
+
+import io.elgayed.statistics.SpeechQuery;
+import io.elgayed.statistics.StatisticsReportAccumulator;
+
+/**
+ * Partial {@link StatisticsReportAccumulator} holding every speech of a CSV source, along with the validator of the source content it was accumulated from.
+ * 
+ * The partial accumulator is shared by every evaluation reusing it, so it must never be modified: it should only be merged into other accumulators
+ */
+public class CachedSource {
+	
+	private final SourceValidator validator;
+	private final StatisticsReportAccumulator partial;
+	
+	public CachedSource(SourceValidator validator, StatisticsReportAccumulator partial) {
+		super();
+		this.validator = validator;
+		this.partial = partial;
+	}
+	
+	public SourceValidator getValidator() {
+		return validator;
+	}
+	
+	public StatisticsReportAccumulator getPartial() {
+		return partial;
+	}
+	
+	/**
+	 * @param answeredQueries Questions of the report and queries as answered by an evaluation, see {@link StatisticsReportAccumulator#answeredQueries(java.util.List, double)}
+	 * @return {@code true} if the partial accumulator answers exactly the given queries, so that it can be reused by an evaluation asking them
+	 */
+	public boolean answers(Collection<SpeechQuery> answeredQueries) {
+		return new HashSet<>(partial.getAnsweredQueries()).equals(new HashSet<>(answeredQueries));
+	}
+}
@@ -0,0 +1,184 @@
+package io.elgayed.cache;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Header of a columnar file holding the speeches parsed from a CSV source, see {@link ColumnarSourceStore}. The file is laid out as:
+ * <pre>
+ * header      magic (int), version (int), rows (long), blocks (int), speakers offset (long), themes offset (long), block index offset (long),
+ *             source key, entity tag and last modification date of the source validator (strings)
+ * blocks      rows (int), speaker ids (int[rows]), theme ids (int[rows]), dates (int[rows]), words (long[rows])
+ * speakers    count (int), names (strings) indexed by speaker id
+ * themes      count (int), names (strings) indexed by theme id
+ * block index offset of every block (long[blocks])
+ * </pre>
+ * Every block but the last one holds {@link #BLOCK_ROWS} rows, so that the block of a row is found without reading the previous blocks.
+ * Dates are packed as yyyymmdd, as in {@link io.elgayed.model.Speech}. Strings are written as the length of their UTF-8 bytes (int, -1 for {@code null})
+ * followed by these bytes. Numbers are big-endian
+ */
+public class ColumnarSourceFile {
+
+	public static final int MAGIC = 0x53504348;
+	public static final int VERSION = 1;
+	public static final int BLOCK_ROWS = 4096;
+	/**
+	 * Size of the header fields preceding the source key, they are written once the blocks are written
+	 */
+	static final int FIXED_HEADER_BYTES = 2 * Integer.BYTES + Long.BYTES + Integer.BYTES + 3 * Long.BYTES;
+	/**
+	 * Size of the values of one row: speaker id, theme id, date and words
+	 */
+	public static final int ROW_BYTES = 3 * Integer.BYTES + Long.BYTES;
+
+	private final String sourceKey;
+	private final SourceValidator validator;
+	private final long rows;
+	private final int blocks;
+	private final long speakersOffset;
+	private final long themesOffset;
+	private final long blockIndexOffset;
+
+	private ColumnarSourceFile(String sourceKey, SourceValidator validator, long rows, int blocks, long speakersOffset, long themesOffset, long blockIndexOffset) {
+		this.sourceKey = sourceKey;
+		this.validator = validator;
+		this.rows = rows;
+		this.blocks = blocks;
+		this.speakersOffset = speakersOffset;
+		this.themesOffset = themesOffset;
+		this.blockIndexOffset = blockIndexOffset;
+	}
+
+	/**
+	 * @param channel Channel of a columnar file
+	 * @return the header of the file
+	 * @throws IOException if the file is not a columnar file of this version
+	 */
+	public static ColumnarSourceFile readHeader(FileChannel channel) throws IOException {
+		ByteBuffer fixed = read(channel, 0, FIXED_HEADER_BYTES);
+		if (fixed.getInt() != MAGIC || fixed.getInt() != VERSION)
+			throw new IOException("Not a columnar file of version " + VERSION);
+		long rows = fixed.getLong();
+		int blocks = fixed.getInt();
+		long speakersOffset = fixed.getLong();
+		long themesOffset = fixed.getLong();
+		long blockIndexOffset = fixed.getLong();
+		String[] strings = new String[3];
+		long position = FIXED_HEADER_BYTES;
+		for (int i = 0; i < strings.length; i++) {
+			int length = read(channel, position, Integer.BYTES).getInt();
+			position += Integer.BYTES;
+			if (length >= 0) {
+				strings[i] = new String(read(channel, position, length).array(), StandardCharsets.UTF_8);
+				position += length;
+			}
+		}
+		String sourceKey = strings[0];
+		SourceValidator validator = SourceValidator.of(strings[1], strings[2]);
+		return new ColumnarSourceFile(sourceKey, validator, rows, blocks, speakersOffset, themesOffset, blockIndexOffset);
+	}
+
+	public String getSourceKey() {
+		return sourceKey;
+	}
+
+	public SourceValidator getValidator() {
+		return validator;
+	}
+
+	public long getRows() {
+		return rows;
+	}
+
+	public int getBlocks() {
+		return blocks;
+	}
+
+	/**
+	 * @return the offset following the last block
+	 */
+	public long getBlocksEnd() {
+		return speakersOffset;
+	}
+
+	/**
+	 * @return the speaker names of the file, indexed by the ids of its speaker column
+	 */
+	public String[] readSpeakers(FileChannel channel) throws IOException {
+		return readNames(channel, speakersOffset, themesOffset);
+	}
+
+	/**
+	 * @return the theme names of the file, indexed by the ids of its theme column
+	 */
+	public String[] readThemes(FileChannel channel) throws IOException {
+		return readNames(channel, themesOffset, blockIndexOffset);
+	}
+
+	/**
+	 * @return the offset of every block of the file
+	 */
+	public long[] readBlockIndex(FileChannel channel) throws IOException {
+		long[] offsets = new long[blocks];
+		read(channel, blockIndexOffset, blocks * Long.BYTES).asLongBuffer().get(offsets);
+		return offsets;
+	}
+
+	private static String[] readNames(FileChannel channel, long start, long end) throws IOException {
+		ByteBuffer buffer = read(channel, start, (int) (end - start));
+		String[] names = new String[buffer.getInt()];
+		for (int i = 0; i < names.length; i++)
+			names[i] = getString(buffer);
+		return names;
+	}
+
+	/**
+	 * Reads {@code length} bytes of a channel from {@code position}
+	 * @return a buffer holding the bytes read, ready to be read
+	 */
+	public static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		return read(channel, position, ByteBuffer.allocate(length));
+	}
+
+	/**
+	 * Fills a buffer with the bytes of a channel from {@code position}
+	 * @return the given buffer, flipped
+	 */
+	public static ByteBuffer read(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0)
+				throw new EOFException("Columnar file is truncated");
+			position += read;
+		}
+		return buffer.flip();
+	}
+
+	static void putString(ByteBuffer buffer, String value) {
+		if (value == null) {
+			buffer.putInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		buffer.putInt(bytes.length).put(bytes);
+	}
+
+	/**
+	 * @return the number of bytes written by {@link #putString(ByteBuffer, String)}
+	 */
+	static int sizeOf(String value) {
+		return Integer.BYTES + (value != null ? value.getBytes(StandardCharsets.UTF_8).length : 0);
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0)
+			return null;
+		String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+		return value;
+	}
+}
@@ -0,0 +1,77 @@
+package io.elgayed.cache;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+/**
+ * Local directory of columnar files, one per CSV source, holding the speeches parsed from the source, see {@link ColumnarSourceFile}.
+ * Unlike the {@link EvaluationCache}, columnar files answer any query and outlive the application: a source whose validator did not change
+ * since its columnar file was written is read from that file instead of being parsed again, see {@link io.elgayed.processing.ColumnarSpeechItemReader}.
+ *
+ * Files are named after a digest of their source key, a source that changed replaces the columnar file of its previous content.
+ * The directory can be emptied at any time, files are only reused if their header holds the source key and validator looked up
+ */
+@Component
+public class ColumnarSourceStore {
+
+	private static final String EXTENSION = ".col";
+
+	private final boolean enabled;
+	private final Path directory;
+
+	/**
+	 * @param enabled {@code false} if no columnar file is written nor read
+	 * @param directory Directory of the columnar files, created if it does not exist
+	 */
+	public ColumnarSourceStore(@Value("${cache.columnar.enabled}") boolean enabled, @Value("${cache.columnar.directory}") String directory) {
+		this.enabled = enabled;
+		this.directory = Paths.get(directory);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @param sourceKey Key of a source
+	 * @param validator Validator of the current content of the source, or {@code null}
+	 * @return the columnar file of the given source content, or {@code null} if there is none or if the source cannot be revalidated
+	 */
+	public Path find(String sourceKey, SourceValidator validator) {
+		if (!enabled || validator == null)
+			return null;
+		Path file = pathOf(sourceKey);
+		if (!Files.isRegularFile(file))
+			return null;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ColumnarSourceFile header = ColumnarSourceFile.readHeader(channel);
+			return sourceKey.equals(header.getSourceKey()) && validator.equals(header.getValidator()) ? file : null;
+		} catch (IOException e) {
+			//a file that cannot be read is written again
+			return null;
+		}
+	}
+
+	/**
+	 * @param sourceKey Key of a source
+	 * @param validator Validator of the content of the source that is about to be parsed
+	 * @return a writer of the columnar file of the given source content, the file replaces the one of the source once committed
+	 */
+	public ColumnarSpeechWriter create(String sourceKey, SourceValidator validator) throws IOException {
+		Files.createDirectories(directory);
+		return new ColumnarSpeechWriter(pathOf(sourceKey), sourceKey, validator);
+	}
+
+	private Path pathOf(String sourceKey) {
+		return directory.resolve(DigestUtils.md5DigestAsHex(sourceKey.getBytes(StandardCharsets.UTF_8)) + EXTENSION);
+	}
+}
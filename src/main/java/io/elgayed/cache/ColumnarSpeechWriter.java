@@ -0,0 +1,145 @@
+package io.elgayed.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import io.elgayed.dictionary.NameDictionary;
+import io.elgayed.model.Speech;
+
+/**
+ * Writes the speeches parsed from a CSV source to a {@link ColumnarSourceFile}: speeches are buffered into the columns of a block,
+ * speakers and themes being encoded with dictionaries of the file, and every full block is written.
+ *
+ * The file is written next to its target under a temporary name and moved to its target once committed,
+ * so that a columnar file is either complete or missing. A writer closed without being committed deletes its temporary file.
+ *
+ * This class is not thread safe
+ */
+public class ColumnarSpeechWriter implements Closeable {
+
+	private final Path target;
+	private final Path file;
+	private final FileChannel channel;
+
+	private final NameDictionary speakers = new NameDictionary();
+	private final NameDictionary themes = new NameDictionary();
+	private final int[] speakerIds = new int[ColumnarSourceFile.BLOCK_ROWS];
+	private final int[] themeIds = new int[ColumnarSourceFile.BLOCK_ROWS];
+	private final int[] dates = new int[ColumnarSourceFile.BLOCK_ROWS];
+	private final long[] words = new long[ColumnarSourceFile.BLOCK_ROWS];
+	private final ByteBuffer block = ByteBuffer.allocateDirect(Integer.BYTES + ColumnarSourceFile.BLOCK_ROWS * ColumnarSourceFile.ROW_BYTES);
+	private int size;
+
+	private long[] blockOffsets = new long[16];
+	private int blocks;
+	private long rows;
+	private long position;
+	private boolean committed;
+
+	/**
+	 * @param target Path of the columnar file, its directory must exist
+	 * @param sourceKey Key of the source, see {@link io.elgayed.processing.CsvSourcePartitioner#sourceKeyOf(org.springframework.batch.item.ExecutionContext)}
+	 * @param validator Validator of the source content
+	 */
+	public ColumnarSpeechWriter(Path target, String sourceKey, SourceValidator validator) throws IOException {
+		this.target = target;
+		this.file = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+		this.channel = FileChannel.open(file, StandardOpenOption.WRITE);
+		//the fixed header fields are written on commit, the source key and validator right away
+		ByteBuffer header = ByteBuffer.allocate(ColumnarSourceFile.FIXED_HEADER_BYTES + ColumnarSourceFile.sizeOf(sourceKey)
+				+ ColumnarSourceFile.sizeOf(validator.getEntityTag()) + ColumnarSourceFile.sizeOf(validator.getLastModified()));
+		header.position(ColumnarSourceFile.FIXED_HEADER_BYTES);
+		ColumnarSourceFile.putString(header, sourceKey);
+		ColumnarSourceFile.putString(header, validator.getEntityTag());
+		ColumnarSourceFile.putString(header, validator.getLastModified());
+		write(header.flip());
+	}
+
+	public void append(Speech speech) throws IOException {
+		speakerIds[size] = speakers.idOf(speech.getSpeaker());
+		themeIds[size] = themes.idOf(speech.getTheme());
+		dates[size] = speech.getDate();
+		words[size] = speech.getWords();
+		if (++size == ColumnarSourceFile.BLOCK_ROWS)
+			writeBlock();
+	}
+
+	/**
+	 * Writes the last block, the dictionaries and the header, then moves the file to its target, replacing the previous columnar file of the source
+	 */
+	public void commit() throws IOException {
+		if (size > 0)
+			writeBlock();
+		long speakersOffset = position;
+		writeNames(speakers);
+		long themesOffset = position;
+		writeNames(themes);
+		long blockIndexOffset = position;
+		ByteBuffer index = ByteBuffer.allocate(blocks * Long.BYTES);
+		index.asLongBuffer().put(blockOffsets, 0, blocks);
+		write(index);
+
+		ByteBuffer header = ByteBuffer.allocate(ColumnarSourceFile.FIXED_HEADER_BYTES)
+				.putInt(ColumnarSourceFile.MAGIC)
+				.putInt(ColumnarSourceFile.VERSION)
+				.putLong(rows)
+				.putInt(blocks)
+				.putLong(speakersOffset)
+				.putLong(themesOffset)
+				.putLong(blockIndexOffset);
+		header.flip();
+		while (header.hasRemaining())
+			channel.write(header, header.position());
+		channel.close();
+		Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		committed = true;
+	}
+
+	/**
+	 * Deletes the file unless it is committed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (committed)
+			return;
+		channel.close();
+		Files.deleteIfExists(file);
+	}
+
+	private void writeBlock() throws IOException {
+		if (blocks == blockOffsets.length)
+			blockOffsets = Arrays.copyOf(blockOffsets, blocks * 2);
+		blockOffsets[blocks++] = position;
+		rows += size;
+		block.clear();
+		block.putInt(size);
+		block.asIntBuffer().put(speakerIds, 0, size).put(themeIds, 0, size).put(dates, 0, size);
+		block.position(block.position() + 3 * size * Integer.BYTES);
+		block.asLongBuffer().put(words, 0, size);
+		block.position(block.position() + size * Long.BYTES);
+		write(block.flip());
+		size = 0;
+	}
+
+	private void writeNames(NameDictionary names) throws IOException {
+		int bytes = Integer.BYTES;
+		for (int id = 0; id < names.size(); id++)
+			bytes += ColumnarSourceFile.sizeOf(names.nameOf(id));
+		ByteBuffer buffer = ByteBuffer.allocate(bytes).putInt(names.size());
+		for (int id = 0; id < names.size(); id++)
+			ColumnarSourceFile.putString(buffer, names.nameOf(id));
+		write(buffer.flip());
+	}
+
+	private void write(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			position += channel.write(buffer, position);
+	}
+}
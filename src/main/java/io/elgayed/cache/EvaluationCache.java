@@ -0,0 +1,116 @@
+package io.elgayed.cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.elgayed.model.StatisticsReport;
+import io.elgayed.statistics.SpeechQuery;
+
+/**
+ * Bounded caches of evaluation results:
+ * <ul>
+ * <li>Sources: per CSV source URL, the partial accumulator of its speeches and the validator of the content it was accumulated from</li>
+ * <li>Prefixes: per CSV source URL, the partial accumulator of the speeches read up to the end of the source by the last evaluation, 
+ * so that the next evaluation only reads the lines appended since then, see {@link CachedPrefix}</li>
+ * <li>Reports: per set of CSV source URLs and their validators and set of queries, the {@link StatisticsReport}</li>
+ * <li>Sizes: per remote CSV source URL, the {@code Content-Length} of the source when it was last partitioned, bounded like the sources. 
+ * It weighs the next evaluations of the source without requesting it again, see {@link io.elgayed.processing.EvaluationAdmission}</li>
+ * </ul>
+ * Cached entries are only reused once their validators are confirmed by the servers hosting the sources, see {@link RevalidatingUrlResource}
+ */
+@Component
+public class EvaluationCache {
+	
+	private final LruCache<String, CachedSource> sources;
+	private final LruCache<String, CachedPrefix> prefixes;
+	private final LruCache<ReportKey, StatisticsReport> reports;
+	private final LruCache<String, Long> sizes;
+	
+	public EvaluationCache(@Value("${cache.sources.max-entries}") int maxSources, @Value("${cache.prefixes.max-entries}") int maxPrefixes,
+			@Value("${cache.reports.max-entries}") int maxReports) {
+		this.sources = new LruCache<>(maxSources);
+		this.prefixes = new LruCache<>(maxPrefixes);
+		this.reports = new LruCache<>(maxReports);
+		this.sizes = new LruCache<>(maxSources);
+	}
+	
+	/**
+	 * @return the cached source of the given URL, or {@code null}
+	 */
+	public CachedSource getSource(String url) {
+		return sources.get(url);
+	}
+	
+	public void putSource(String url, CachedSource source) {
+		sources.put(url, source);
+	}
+	
+	/**
+	 * @return the cached prefix of the source of the given URL, or {@code null}
+	 */
+	public CachedPrefix getPrefix(String url) {
+		return prefixes.get(url);
+	}
+	
+	public void putPrefix(String url, CachedPrefix prefix) {
+		prefixes.put(url, prefix);
+	}
+	
+	/**
+	 * @param validators Validators of every source of an evaluation, keyed by source URL
+	 * @param queries Queries of the evaluation
+	 * @return the cached report of the given sources and queries, or {@code null}
+	 */
+	public StatisticsReport getReport(Map<String, SourceValidator> validators, Collection<SpeechQuery> queries) {
+		return reports.get(new ReportKey(validators, queries));
+	}
+	
+	public void putReport(Map<String, SourceValidator> validators, Collection<SpeechQuery> queries, StatisticsReport report) {
+		reports.put(new ReportKey(validators, queries), report);
+	}
+	
+	/**
+	 * @return the last known size of the remote source of the given URL, in bytes, or {@code null}
+	 */
+	public Long getSize(String url) {
+		return sizes.get(url);
+	}
+	
+	public void putSize(String url, long size) {
+		sizes.put(url, size);
+	}
+	
+	/**
+	 * Key of a cached report: the same sources asked other queries have another report
+	 */
+	private static final class ReportKey {
+		
+		private final Map<String, SourceValidator> validators;
+		private final Set<SpeechQuery> queries;
+		
+		private ReportKey(Map<String, SourceValidator> validators, Collection<SpeechQuery> queries) {
+			this.validators = Map.copyOf(validators);
+			this.queries = Set.copyOf(queries);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof ReportKey))
+				return false;
+			ReportKey other = (ReportKey) obj;
+			return validators.equals(other.validators) && queries.equals(other.queries);
+		}
+		
+		@Override
+		public int hashCode() {
+			return Objects.hash(validators, queries);
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package io.elgayed.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread safe cache bounded by its number of entries: once full, the least recently used entry is evicted
+ */
+public class LruCache<K, V> {
+	
+	private final Map<K, V> entries;
+	
+	public LruCache(int maxEntries) {
+		this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+	
+	public synchronized V get(K key) {
+		return entries.get(key);
+	}
+	
+	public synchronized void put(K key, V value) {
+		entries.put(key, value);
+	}
+	
+	public synchronized void remove(K key) {
+		entries.remove(key);
+	}
+	
+	public synchronized int size() {
+		return entries.size();
+	}
+}
@@ -0,0 +1,223 @@
+package io.elgayed.cache;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import org.springframework.core.io.UrlResource;
+import org.springframework.util.ResourceUtils;
+
+import io.elgayed.remote.HttpRangeInputStream;
+import io.elgayed.remote.RemoteResourceClient;
+import io.elgayed.remote.RemoteResponse;
+
+/**
+ * {@link UrlResource} revalidating the {@link CachedSource} of its URL before reading it:
+ * <ul>
+ * <li>HTTP(S) URLs are read through the {@link RemoteResourceClient} with a conditional GET request ({@code If-None-Match} and {@code If-Modified-Since} headers),
+ * if the server answers {@code 304 Not Modified} the content is not downloaded again. The same request tells whether the resource exists,
+ * so unlike {@link UrlResource} no separate {@code HEAD} request is sent</li>
+ * <li>File URLs are validated by their length and last modification date, the file is not read again if they did not change</li>
+ * <li>Other URLs are always read, they have no validator</li>
+ * </ul>
+ * A resource may also stand for a byte range of a remote resource, see {@link #setRange(long, long, SourceValidator)},
+ * or for a prefix of a source that lines were appended to, see {@link #setPrefixValidator(SourceValidator)}.
+ * 
+ * The resource is revalidated once, on the first call to {@link #exists()} or {@link #getInputStream()}.
+ * 
+ * This class is not thread safe, every partition should have its own resource
+ */
+public class RevalidatingUrlResource extends UrlResource {
+	
+	private static final String IF_NONE_MATCH = "If-None-Match";
+	private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+	private static final String ETAG = "ETag";
+	private static final String LAST_MODIFIED = "Last-Modified";
+	
+	private final CachedSource cachedSource;
+	private final RemoteResourceClient remoteResourceClient;
+	
+	private boolean revalidated;
+	private boolean exists;
+	private boolean notModified;
+	private SourceValidator validator;
+	private RemoteResponse response;
+	
+	private boolean range;
+	private long rangeStart;
+	private long rangeEnd;
+	private SourceValidator rangeValidator;
+	private SourceValidator prefixValidator;
+	
+	private UnaryOperator<InputStream> inputStreamDecorator;
+	
+	/**
+	 * @param url URL of the resource
+	 * @param cachedSource Source cached for the given URL, or {@code null} if there is none
+	 * @param remoteResourceClient Client used to read HTTP(S) URLs
+	 */
+	public RevalidatingUrlResource(String url, CachedSource cachedSource, RemoteResourceClient remoteResourceClient) throws MalformedURLException {
+		super(url);
+		this.cachedSource = cachedSource;
+		this.remoteResourceClient = remoteResourceClient;
+	}
+	
+	/**
+	 * Restricts this resource to the lines starting within a byte range of a remote resource, they are read with range requests, see {@link HttpRangeInputStream}.
+	 * The range is revalidated against the validator received when the remote resource was partitioned, no request is sent for that
+	 * @param rangeStart Offset of the first byte of the range (inclusive)
+	 * @param rangeEnd Offset following the last byte of the range (exclusive)
+	 * @param validator Validator of the remote resource, or {@code null}
+	 */
+	public void setRange(long rangeStart, long rangeEnd, SourceValidator validator) {
+		this.range = true;
+		this.rangeStart = rangeStart;
+		this.rangeEnd = rangeEnd;
+		this.rangeValidator = validator;
+	}
+	
+	/**
+	 * Makes this resource stand for a prefix of its source, as validated by the partitioner against a {@link CachedPrefix}: the resource is not modified 
+	 * if the cached source has the given validator, whatever the validator of the whole source. Otherwise the prefix is read, 
+	 * for a remote source as a range set by {@link #setRange(long, long, SourceValidator)}
+	 * @param prefixValidator Validator of the prefix content
+	 */
+	public void setPrefixValidator(SourceValidator prefixValidator) {
+		this.prefixValidator = prefixValidator;
+	}
+	
+	/**
+	 * @param inputStreamDecorator Applied to the content streams opened on this resource, e.g. to meter them
+	 */
+	public void setInputStreamDecorator(UnaryOperator<InputStream> inputStreamDecorator) {
+		this.inputStreamDecorator = inputStreamDecorator;
+	}
+	
+	public CachedSource getCachedSource() {
+		return cachedSource;
+	}
+	
+	/**
+	 * @return {@code true} if the cached source is still valid, in which case its content was not read again
+	 */
+	public boolean isNotModified() throws IOException {
+		revalidate();
+		return notModified;
+	}
+	
+	/**
+	 * @return the validator of the content of this resource, or {@code null} if it cannot be revalidated
+	 */
+	public SourceValidator getValidator() throws IOException {
+		revalidate();
+		return validator;
+	}
+	
+	/**
+	 * Discards the content received when this resource was revalidated, for a partition that reads the speeches of its source elsewhere,
+	 * see {@link ColumnarSourceStore}
+	 */
+	public void discardContent() throws IOException {
+		if (response != null) {
+			response.discard();
+			response = null;
+		}
+	}
+	
+	@Override
+	public boolean exists() {
+		try {
+			revalidate();
+			return exists;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * @return the content of this resource, or an empty stream if the cached source is still valid
+	 */
+	@Override
+	public InputStream getInputStream() throws IOException {
+		revalidate();
+		if (!exists)
+			throw new FileNotFoundException(getDescription() + " cannot be opened because it does not exist");
+		if (notModified)
+			return InputStream.nullInputStream();
+		InputStream inputStream;
+		if (range) {
+			inputStream = new HttpRangeInputStream(remoteResourceClient, getURI(), rangeStart, rangeEnd, 
+					rangeValidator != null ? rangeValidator.getEntityTag() : null, rangeValidator != null ? rangeValidator.getLastModified() : null);
+		} else if (response == null) {
+			inputStream = super.getInputStream();
+		} else {
+			//the response was received for the conditional request, its body is handed out only once
+			inputStream = response.getBody();
+			response = null;
+		}
+		return inputStreamDecorator != null ? inputStreamDecorator.apply(inputStream) : inputStream;
+	}
+	
+	private void revalidate() throws IOException {
+		if (revalidated)
+			return;
+		revalidated = true;
+		SourceValidator cachedValidator = cachedSource != null ? cachedSource.getValidator() : null;
+		
+		if (prefixValidator != null) {
+			exists = true;
+			validator = prefixValidator;
+			notModified = validator.equals(cachedValidator);
+			return;
+		}
+		
+		if (ResourceUtils.isFileURL(getURL())) {
+			File file = getFile();
+			exists = file.exists();
+			validator = exists ? SourceValidator.of(file.length() + "-" + file.lastModified(), null) : null;
+			notModified = exists && validator.equals(cachedValidator);
+			return;
+		}
+		
+		if (range) {
+			exists = true;
+			validator = rangeValidator;
+			notModified = validator != null && validator.equals(cachedValidator);
+			return;
+		}
+		
+		String protocol = getURL().getProtocol();
+		if (!"http".equalsIgnoreCase(protocol) && !"https".equalsIgnoreCase(protocol)) {
+			exists = super.exists();
+			return;
+		}
+		Map<String, String> headers = new HashMap<>();
+		if (cachedValidator != null) {
+			if (cachedValidator.getEntityTag() != null)
+				headers.put(IF_NONE_MATCH, cachedValidator.getEntityTag());
+			if (cachedValidator.getLastModified() != null)
+				headers.put(IF_MODIFIED_SINCE, cachedValidator.getLastModified());
+		}
+		RemoteResponse remoteResponse = remoteResourceClient.get(getURI(), headers);
+		int statusCode = remoteResponse.getStatusCode();
+		if (statusCode == HttpURLConnection.HTTP_NOT_MODIFIED && cachedValidator != null) {
+			exists = true;
+			notModified = true;
+			validator = cachedValidator;
+			remoteResponse.discard();
+		} else if (statusCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+			exists = false;
+			remoteResponse.discard();
+		} else {
+			exists = true;
+			validator = SourceValidator.of(remoteResponse.getHeader(ETAG), remoteResponse.getHeader(LAST_MODIFIED));
+			response = remoteResponse;
+		}
+	}
+}
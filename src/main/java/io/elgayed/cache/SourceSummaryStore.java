@@ -0,0 +1,120 @@
+package io.elgayed.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import io.elgayed.dictionary.SpeechDictionary;
+import io.elgayed.statistics.SpeechQuery;
+import io.elgayed.statistics.StatisticsReportAccumulator;
+
+/**
+ * Local directory of source summaries: the {@link CachedSource}s put in the {@link EvaluationCache}, i.e. the partial accumulator of a CSV source
+ * (or byte range of a source) and the validator of the content it was accumulated from, saved so that they outlive the application and the cache eviction.
+ * A source missing from the cache is looked up here: an evaluation of any set of summarized sources asking the same queries then merges their summaries,
+ * once revalidated, instead of reading a single speech, in a time that depends on the number of speakers of the summaries rather than on the number of speeches.
+ *
+ * There is one summary per source and set of answered queries, named after a digest of both: the summary of a source that changed is replaced
+ * once the source is evaluated again. The directory can be emptied at any time, summaries are only reused if they hold the source key and queries looked up
+ */
+@Component
+public class SourceSummaryStore {
+
+	private static final int VERSION = 1;
+	private static final String EXTENSION = ".summary";
+
+	private final boolean enabled;
+	private final Path directory;
+
+	/**
+	 * @param enabled {@code false} if no summary is saved nor loaded
+	 * @param directory Directory of the summaries, created if it does not exist
+	 */
+	public SourceSummaryStore(@Value("${cache.summaries.enabled}") boolean enabled, @Value("${cache.summaries.directory}") String directory) {
+		this.enabled = enabled;
+		this.directory = Paths.get(directory);
+	}
+
+	/**
+	 * @param sourceKey Key of a source
+	 * @param answeredQueries Questions of the report and queries as answered by an evaluation
+	 * @return the summary of the given source answering the given queries, or {@code null} if there is none. It still has to be revalidated
+	 */
+	public CachedSource load(String sourceKey, Collection<SpeechQuery> answeredQueries) {
+		if (!enabled)
+			return null;
+		Path file = pathOf(sourceKey, answeredQueries);
+		if (!Files.isRegularFile(file))
+			return null;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != VERSION || !sourceKey.equals(in.readUTF()))
+				return null;
+			SourceValidator validator = SourceValidator.of(readNullableUTF(in), readNullableUTF(in));
+			byte[] snapshot = new byte[in.readInt()];
+			in.readFully(snapshot);
+			CachedSource summary = new CachedSource(validator, StatisticsReportAccumulator.fromSnapshot(snapshot, new SpeechDictionary()));
+			return validator != null && summary.answers(answeredQueries) ? summary : null;
+		} catch (IOException | RuntimeException e) {
+			//a summary that cannot be read is replaced once the source is read again
+			return null;
+		}
+	}
+
+	/**
+	 * Saves the summary of a source, replacing its previous summary answering the same queries
+	 * @param sourceKey Key of a source
+	 * @param summary Partial accumulator of the source and validator of its content
+	 */
+	public void save(String sourceKey, CachedSource summary) throws IOException {
+		if (!enabled)
+			return;
+		Files.createDirectories(directory);
+		Path target = pathOf(sourceKey, summary.getPartial().getAnsweredQueries());
+		Path file = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+				out.writeInt(VERSION);
+				out.writeUTF(sourceKey);
+				writeNullableUTF(out, summary.getValidator().getEntityTag());
+				writeNullableUTF(out, summary.getValidator().getLastModified());
+				byte[] snapshot = summary.getPartial().toSnapshot();
+				out.writeInt(snapshot.length);
+				out.write(snapshot);
+			}
+			Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	private Path pathOf(String sourceKey, Collection<SpeechQuery> answeredQueries) {
+		String queries = answeredQueries.stream()
+				.map(query -> query.getName() + "=" + query.getDefinition())
+				.sorted()
+				.collect(Collectors.joining("\n"));
+		return directory.resolve(DigestUtils.md5DigestAsHex((sourceKey + "\n" + queries).getBytes(StandardCharsets.UTF_8)) + EXTENSION);
+	}
+
+	private static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null)
+			out.writeUTF(value);
+	}
+
+	private static String readNullableUTF(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
@@ -0,0 +1,60 @@
+package io.elgayed.cache;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Validator of the content of a CSV source, as returned by the server that hosts it: 
+ * HTTP entity tag ({@code ETag} header) and/or last modification date ({@code Last-Modified} header).
+ * 
+ * Two validators are equal if they hold the same entity tag and the same last modification date, 
+ * a source whose validator did not change since it was processed does not need to be processed again
+ */
+public class SourceValidator implements Serializable {
+	
+	private static final long serialVersionUID = -2617406342553935457L;
+	
+	private final String entityTag;
+	private final String lastModified;
+	
+	public SourceValidator(String entityTag, String lastModified) {
+		super();
+		this.entityTag = entityTag;
+		this.lastModified = lastModified;
+	}
+	
+	/**
+	 * @return a validator holding the given values, or {@code null} if both are {@code null}, since such a source cannot be revalidated
+	 */
+	public static SourceValidator of(String entityTag, String lastModified) {
+		return entityTag == null && lastModified == null ? null : new SourceValidator(entityTag, lastModified);
+	}
+	
+	public String getEntityTag() {
+		return entityTag;
+	}
+	
+	public String getLastModified() {
+		return lastModified;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof SourceValidator))
+			return false;
+		SourceValidator other = (SourceValidator) obj;
+		return Objects.equals(entityTag, other.entityTag) && Objects.equals(lastModified, other.lastModified);
+	}
+	
+	@Override
+	public int hashCode() {
+		return Objects.hash(entityTag, lastModified);
+	}
+	
+	@Override
+	public String toString() {
+		return "SourceValidator [entityTag=" + entityTag + ", lastModified=" + lastModified + "]";
+	}
+}
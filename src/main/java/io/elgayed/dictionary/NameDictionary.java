@@ -0,0 +1,71 @@
+package io.elgayed.dictionary;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps names to dense int ids, in the order names are first seen: the first name gets id 0, the second one gets id 1 and so on.
+ * 
+ * Lookups of known names are lock free, registering a new name takes this dictionary's lock.
+ * This dictionary is thread safe, so that partitions of the same job, running on different threads, can share it
+ */
+public class NameDictionary {
+	
+	private static final int INITIAL_CAPACITY = 64;
+	/**
+	 * Approximate heap footprint of a registered name of a few dozen characters, in bytes: the String, its map entry and its slot in the names array
+	 */
+	public static final int ESTIMATED_NAME_SIZE = 160;
+	
+	private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+	/**
+	 * Names indexed by their id, a name is stored before its id is published in {@link #ids}
+	 */
+	private volatile String[] names = new String[INITIAL_CAPACITY];
+	private int size;
+	
+	/**
+	 * @param name Name to look up
+	 * @return the id of the given name, the name is registered if it was not known yet
+	 */
+	public int idOf(String name) {
+		Integer id = ids.get(name);
+		return id != null ? id : register(name);
+	}
+	
+	/**
+	 * @param id Id of a registered name
+	 * @return the name having the given id
+	 */
+	public String nameOf(int id) {
+		return names[id];
+	}
+	
+	/**
+	 * @param name Name to look up
+	 * @return the id of the given name, or -1 if it is not registered
+	 */
+	public int find(String name) {
+		Integer id = ids.get(name);
+		return id != null ? id : -1;
+	}
+	
+	/**
+	 * @return number of registered names, ids are in [0, size)
+	 */
+	public int size() {
+		return ids.size();
+	}
+	
+	private synchronized int register(String name) {
+		Integer id = ids.get(name);
+		if (id != null)
+			return id;
+		if (size == names.length)
+			names = Arrays.copyOf(names, size * 2);
+		names[size] = name;
+		ids.put(name, size);
+		return size++;
+	}
+}
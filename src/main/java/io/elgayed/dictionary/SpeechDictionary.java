@@ -0,0 +1,18 @@
+package io.elgayed.dictionary;
+
+/**
+ * Dictionaries of the speakers and the themes of the speeches processed by a job
+ */
+public class SpeechDictionary {
+	
+	private final NameDictionary speakers = new NameDictionary();
+	private final NameDictionary themes = new NameDictionary();
+	
+	public NameDictionary speakers() {
+		return speakers;
+	}
+	
+	public NameDictionary themes() {
+		return themes;
+	}
+}
@@ -0,0 +1,93 @@
+package io.elgayed.dictionary;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Resolves names encoded in UTF-8 bytes into the ids of a {@link NameDictionary} without decoding them: 
+ * an open addressing table maps the bytes of every name seen by this cache to its id, so that a String is only created the first time 
+ * a name is seen.
+ * 
+ * This cache is not thread safe: every reader should have its own cache in front of the shared dictionary
+ */
+public class Utf8NameCache {
+	
+	private static final int INITIAL_CAPACITY = 256;
+	
+	private final NameDictionary dictionary;
+	
+	private byte[][] keys = new byte[INITIAL_CAPACITY][];
+	private int[] hashes = new int[INITIAL_CAPACITY];
+	private int[] ids = new int[INITIAL_CAPACITY];
+	private int size;
+	
+	public Utf8NameCache(NameDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+	
+	public NameDictionary getDictionary() {
+		return dictionary;
+	}
+	
+	/**
+	 * @param buffer Buffer holding the name, only absolute reads are made
+	 * @param start Offset of the first byte of the name
+	 * @param end Offset following the last byte of the name
+	 * @return the dictionary id of the name, the name is registered in the dictionary if it was not known yet
+	 */
+	public int idOf(ByteBuffer buffer, int start, int end) {
+		int hash = hash(buffer, start, end);
+		int mask = keys.length - 1;
+		int slot = hash & mask;
+		for (byte[] key = keys[slot]; key != null; key = keys[slot]) {
+			if (hashes[slot] == hash && equals(key, buffer, start, end))
+				return ids[slot];
+			slot = (slot + 1) & mask;
+		}
+		
+		byte[] key = new byte[end - start];
+		for (int i = 0; i < key.length; i++) key[i] = buffer.get(start + i);
+		int id = dictionary.idOf(new String(key, StandardCharsets.UTF_8));
+		keys[slot] = key;
+		hashes[slot] = hash;
+		ids[slot] = id;
+		if (++size * 2 > keys.length)
+			grow();
+		return id;
+	}
+	
+	private static int hash(ByteBuffer buffer, int start, int end) {
+		int hash = 1;
+		for (int i = start; i < end; i++)
+			hash = 31 * hash + buffer.get(i);
+		//spreads higher bits, as HashMap does, since the table index only uses the lower bits
+		return hash ^ (hash >>> 16);
+	}
+	
+	private static boolean equals(byte[] key, ByteBuffer buffer, int start, int end) {
+		if (key.length != end - start)
+			return false;
+		for (int i = 0; i < key.length; i++) {
+			if (key[i] != buffer.get(start + i)) return false;
+		}
+		return true;
+	}
+	
+	private void grow() {
+		byte[][] oldKeys = keys;
+		int[] oldHashes = hashes;
+		int[] oldIds = ids;
+		keys = new byte[oldKeys.length * 2][];
+		hashes = new int[oldKeys.length * 2];
+		ids = new int[oldKeys.length * 2];
+		int mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == null) continue;
+			int slot = oldHashes[i] & mask;
+			while (keys[slot] != null) slot = (slot + 1) & mask;
+			keys[slot] = oldKeys[i];
+			hashes[slot] = oldHashes[i];
+			ids[slot] = oldIds[i];
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package io.elgayed.metrics;
+
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Micrometer meters of the CSV files processing pipeline, they are exposed on {@code /actuator/metrics} and {@code /actuator/prometheus}:
+ * <ul>
+ * <li>{@link #DOWNLOAD_TIMER} and {@link #DOWNLOAD_BYTES}: time spent streaming the content of a CSV source, from its opening to its end, and its number of bytes</li>
+ * <li>{@link #PARSE_TIMER}: time spent reading and parsing CSV lines, its mean is the parse time per line</li>
+ * <li>{@link #READ_COUNTER} and {@link #SKIP_COUNTER}: speeches read and invalid records skipped, their rates are the records read and skipped per second</li>
+ * <li>{@link #MISSING_COUNTER}: CSV sources skipped by an evaluation because they do not exist</li>
+ * <li>{@link #CHUNK_COMMIT_TIMER}: time from the end of the write of a chunk to its commit, that is the checkpoint of the readers and the writer and the transaction commit</li>
+ * <li>{@link #SPEAKERS_SUMMARY}: distinct speakers of the accumulator merged by an evaluation</li>
+ * <li>{@link #EVALUATION_TIMER}: end to end time of a synchronous evaluation</li>
+ * <li>{@link #QUEUED_TIMER} and {@link #REJECTED_COUNTER}: time an evaluation waited to be admitted, and evaluations rejected because too many were waiting,
+ * see {@link io.elgayed.processing.EvaluationAdmission}</li>
+ * </ul>
+ * Meters are tagged by job name ({@link #JOB_TAG}) and, for the meters of a CSV source, by the host of its URL ({@link #HOST_TAG}).
+ * Hosts are used rather than URLs to bound the number of time series
+ */
+@Component
+public class BatchMetrics {
+
+	public static final String DOWNLOAD_TIMER = "speeches.source.download";
+	public static final String DOWNLOAD_BYTES = "speeches.source.bytes";
+	public static final String PARSE_TIMER = "speeches.parse";
+	public static final String READ_COUNTER = "speeches.records.read";
+	public static final String SKIP_COUNTER = "speeches.records.skipped";
+	public static final String MISSING_COUNTER = "speeches.source.missing";
+	public static final String CHUNK_COMMIT_TIMER = "speeches.chunk.commit";
+	public static final String SPEAKERS_SUMMARY = "speeches.accumulator.speakers";
+	public static final String EVALUATION_TIMER = "speeches.evaluation";
+	public static final String QUEUED_TIMER = "speeches.evaluation.queued";
+	public static final String REJECTED_COUNTER = "speeches.evaluation.rejected";
+
+	public static final String JOB_TAG = "job";
+	public static final String HOST_TAG = "host";
+	public static final String STATUS_TAG = "status";
+	/**
+	 * Host tag of the sources without host, e.g. local files
+	 */
+	public static final String LOCAL_HOST = "local";
+	/**
+	 * Status tag of the evaluations that raised an exception
+	 */
+	public static final String ERROR_STATUS = "ERROR";
+
+	private final MeterRegistry meterRegistry;
+	/**
+	 * Parse statistics backing the {@link #PARSE_TIMER} function timers, per tags
+	 */
+	private final Map<Tags, ParseStatistics> parseStatistics = new ConcurrentHashMap<>();
+
+	public BatchMetrics(MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+	}
+
+	/**
+	 * @param jobName Name of the job reading the source
+	 * @param url URL of a CSV source
+	 * @return the tags of the meters of the source
+	 */
+	public static Tags tagsOf(String jobName, String url) {
+		String host;
+		try {
+			host = new URL(url).getHost();
+		} catch (MalformedURLException e) {
+			host = null;
+		}
+		return Tags.of(JOB_TAG, jobName, HOST_TAG, StringUtils.hasText(host) ? host : LOCAL_HOST);
+	}
+
+	/**
+	 * @return a stream recording {@link #DOWNLOAD_TIMER} and {@link #DOWNLOAD_BYTES} once the given content stream is read to its end or closed
+	 */
+	public InputStream meterDownload(InputStream inputStream, Tags tags) {
+		return new MeteredInputStream(inputStream,
+				Timer.builder(DOWNLOAD_TIMER).description("Time spent streaming a CSV source").tags(tags).register(meterRegistry),
+				DistributionSummary.builder(DOWNLOAD_BYTES).description("Bytes of a CSV source").baseUnit("bytes").tags(tags).register(meterRegistry));
+	}
+
+	/**
+	 * @param lines Number of lines read and parsed, skipped ones included
+	 * @param nanos Time spent reading and parsing them
+	 */
+	public void recordParse(Tags tags, long lines, long nanos) {
+		ParseStatistics statistics = parseStatistics.computeIfAbsent(tags, parseTags -> {
+			ParseStatistics newStatistics = new ParseStatistics();
+			FunctionTimer.builder(PARSE_TIMER, newStatistics, stats -> stats.lines.sum(), stats -> stats.nanos.sum(), TimeUnit.NANOSECONDS)
+					.description("Time spent reading and parsing CSV lines, per line")
+					.tags(parseTags)
+					.register(meterRegistry);
+			return newStatistics;
+		});
+		statistics.lines.add(lines);
+		statistics.nanos.add(nanos);
+	}
+
+	public void recordRead(Tags tags, long speeches) {
+		meterRegistry.counter(READ_COUNTER, tags).increment(speeches);
+	}
+
+	public void recordSkip(Tags tags) {
+		meterRegistry.counter(SKIP_COUNTER, tags).increment();
+	}
+
+	public void recordMissingSource(Tags tags) {
+		meterRegistry.counter(MISSING_COUNTER, tags).increment();
+	}
+
+	public void recordChunkCommit(Tags tags, long nanos) {
+		meterRegistry.timer(CHUNK_COMMIT_TIMER, tags).record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void recordSpeakers(String jobName, int speakers) {
+		DistributionSummary.builder(SPEAKERS_SUMMARY)
+				.description("Distinct speakers of the accumulator merged by an evaluation")
+				.tags(JOB_TAG, jobName)
+				.register(meterRegistry)
+				.record(speakers);
+	}
+
+	/**
+	 * @return a sample to be stopped by {@link #stopEvaluation(Timer.Sample, String, String)} once the evaluation is done
+	 */
+	public Timer.Sample startEvaluation() {
+		return Timer.start(meterRegistry);
+	}
+
+	/**
+	 * @param status Batch status of the evaluation's job execution, or {@link #ERROR_STATUS}
+	 */
+	public void stopEvaluation(Timer.Sample sample, String jobName, String status) {
+		sample.stop(Timer.builder(EVALUATION_TIMER)
+				.description("End to end time of a synchronous evaluation")
+				.tags(JOB_TAG, jobName, STATUS_TAG, status)
+				.register(meterRegistry));
+	}
+
+	/**
+	 * @return a sample to be stopped by {@link #stopQueuedEvaluation(Timer.Sample)} once the evaluation is admitted
+	 */
+	public Timer.Sample startQueuedEvaluation() {
+		return Timer.start(meterRegistry);
+	}
+
+	public void stopQueuedEvaluation(Timer.Sample sample) {
+		sample.stop(Timer.builder(QUEUED_TIMER)
+				.description("Time an evaluation waited to be admitted")
+				.register(meterRegistry));
+	}
+
+	public void recordRejectedEvaluation() {
+		meterRegistry.counter(REJECTED_COUNTER).increment();
+	}
+
+	private static class ParseStatistics {
+		private final LongAdder lines = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+	}
+}
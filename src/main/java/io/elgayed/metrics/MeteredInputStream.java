@@ -0,0 +1,73 @@
+package io.elgayed.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Counts the bytes read from a stream and records them, along with the time elapsed since the stream was opened,
+ * once the end of the stream is reached or the stream is closed, whichever comes first
+ */
+class MeteredInputStream extends FilterInputStream {
+
+	private final Timer timer;
+	private final DistributionSummary bytes;
+	private final long start = System.nanoTime();
+
+	private long bytesRead;
+	private boolean recorded;
+
+	MeteredInputStream(InputStream in, Timer timer, DistributionSummary bytes) {
+		super(in);
+		this.timer = timer;
+		this.bytes = bytes;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b < 0)
+			record();
+		else
+			bytesRead++;
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read = super.read(b, off, len);
+		if (read < 0)
+			record();
+		else
+			bytesRead += read;
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		bytesRead += skipped;
+		return skipped;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		} finally {
+			record();
+		}
+	}
+
+	private void record() {
+		if (recorded)
+			return;
+		recorded = true;
+		timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		bytes.record(bytesRead);
+	}
+}
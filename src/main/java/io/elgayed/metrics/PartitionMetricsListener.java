@@ -0,0 +1,97 @@
+package io.elgayed.metrics;
+
+import java.util.List;
+
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.SkipListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.elgayed.model.Speech;
+import io.elgayed.processing.BatchProcessingConfiguration;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Records the chunk meters of a partition of the CSV files processing step, see {@link BatchMetrics}.
+ *
+ * A chunk is read, then written, then committed: the read phase, from the start of the chunk to its write, is recorded as the parse time
+ * of its lines and the time from the end of the write to the end of the chunk, which follows the commit, as the chunk commit latency.
+ * Invalid records are skipped once the chunk is written, they are counted in the parse time of the chunk they were read in.
+ *
+ * A partition runs on a single thread, so this step scoped listener keeps the timings of the current chunk in plain fields
+ */
+@Component
+@StepScope
+public class PartitionMetricsListener implements ChunkListener, ItemWriteListener<Speech>, SkipListener<Speech, Speech> {
+
+	@Autowired
+	private BatchMetrics batchMetrics;
+
+	private Tags tags;
+	private long chunkStart;
+	private long readNanos;
+	private long writeEnd;
+	private int chunkItems;
+	private int chunkSkips;
+
+	@Override
+	public void beforeChunk(ChunkContext context) {
+		if (tags == null) {
+			StepExecution stepExecution = context.getStepContext().getStepExecution();
+			tags = BatchMetrics.tagsOf(stepExecution.getJobExecution().getJobInstance().getJobName(),
+					stepExecution.getExecutionContext().getString(BatchProcessingConfiguration.CSV_FILE_URL_KEY));
+		}
+		chunkStart = System.nanoTime();
+		readNanos = 0;
+		writeEnd = 0;
+		chunkItems = 0;
+		chunkSkips = 0;
+	}
+
+	@Override
+	public void beforeWrite(List<? extends Speech> items) {
+		readNanos = System.nanoTime() - chunkStart;
+		chunkItems = items.size();
+	}
+
+	@Override
+	public void afterWrite(List<? extends Speech> items) {
+		writeEnd = System.nanoTime();
+	}
+
+	@Override
+	public void onSkipInRead(Throwable t) {
+		chunkSkips++;
+		batchMetrics.recordSkip(tags);
+	}
+
+	@Override
+	public void afterChunk(ChunkContext context) {
+		//the last chunk of a partition reads the end of the source and writes nothing
+		if (writeEnd == 0)
+			return;
+		batchMetrics.recordParse(tags, chunkItems + chunkSkips, readNanos);
+		batchMetrics.recordRead(tags, chunkItems);
+		batchMetrics.recordChunkCommit(tags, System.nanoTime() - writeEnd);
+	}
+
+	@Override
+	public void afterChunkError(ChunkContext context) {
+	}
+
+	@Override
+	public void onWriteError(Exception exception, List<? extends Speech> items) {
+	}
+
+	@Override
+	public void onSkipInWrite(Speech item, Throwable t) {
+	}
+
+	@Override
+	public void onSkipInProcess(Speech item, Throwable t) {
+	}
+}
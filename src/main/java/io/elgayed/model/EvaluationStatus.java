@@ -0,0 +1,66 @@
+package io.elgayed.model;
+
+/**
+ * Status of an evaluation launched asynchronously:
+ * <ul>
+ * <li>Id of the job execution processing the evaluation</li>
+ * <li>Batch status of the job execution, e.g. STARTED, COMPLETED or FAILED</li>
+ * <li>Progress: speeches read, written and skipped so far</li>
+ * <li>The {@link StatisticsReport}, once the job execution is completed</li>
+ * </ul>
+ */
+public class EvaluationStatus {
+	
+	private Long id;
+	private String status;
+	private long readCount;
+	private long writeCount;
+	private long skipCount;
+	private StatisticsReport report;
+	
+	public EvaluationStatus(Long id, String status, long readCount, long writeCount, long skipCount, StatisticsReport report) {
+		super();
+		this.id = id;
+		this.status = status;
+		this.readCount = readCount;
+		this.writeCount = writeCount;
+		this.skipCount = skipCount;
+		this.report = report;
+	}
+	
+	public Long getId() {
+		return id;
+	}
+	
+	public String getStatus() {
+		return status;
+	}
+	
+	/**
+	 * @return number of speeches read so far
+	 */
+	public long getReadCount() {
+		return readCount;
+	}
+	
+	/**
+	 * @return number of speeches accumulated so far
+	 */
+	public long getWriteCount() {
+		return writeCount;
+	}
+	
+	/**
+	 * @return number of invalid speech records skipped so far
+	 */
+	public long getSkipCount() {
+		return skipCount;
+	}
+	
+	/**
+	 * @return the report of the evaluation, {@code null} until the evaluation is completed
+	 */
+	public StatisticsReport getReport() {
+		return report;
+	}
+}
@@ -0,0 +1,32 @@
+package io.elgayed.model;
+
+import java.util.Map;
+
+/**
+ * {@link StatisticsReport} of an evaluation that was asked additional queries, along with the result of every query by name.
+ * All the queries of an evaluation are answered by the same scan of its CSV files
+ */
+public class QueryReport extends StatisticsReport {
+	
+	private static final long serialVersionUID = 6402457807622379283L;
+	
+	private Map<String, QueryResult> queries;
+	
+	public QueryReport(String mostSpeeches, String mostSecurity, String leastWordy, Map<String, QueryResult> queries) {
+		super(mostSpeeches, mostSecurity, leastWordy);
+		this.queries = queries;
+	}
+	
+	/**
+	 * @return The result of every query, by query name
+	 */
+	public Map<String, QueryResult> getQueries() {
+		return queries;
+	}
+
+	@Override
+	public String toString() {
+		return "QueryReport [mostSpeeches=" + getMostSpeeches() + ", mostSecurity=" + getMostSecurity() + ", leastWordy="
+				+ getLeastWordy() + ", queries=" + queries + "]";
+	}
+}
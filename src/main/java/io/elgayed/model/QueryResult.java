@@ -0,0 +1,69 @@
+package io.elgayed.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Result of a query of a {@link QueryReport}: the definition of the query, its leader and the ranking of its groups, speakers or themes.
+ * Ties are explicit: tied groups share the same rank, and there is no leader if the first rank is tied.
+ * Values of an approximated query are estimates, overestimating the exact values by at most {@link #getMaxError()}
+ */
+public class QueryResult implements Serializable {
+	
+	private static final long serialVersionUID = -2353452474263616474L;
+	
+	private String definition;
+	private String leader;
+	private List<RankedGroup> ranking;
+	private boolean tiedAtCutoff;
+	private long maxError;
+	
+	public QueryResult(String definition, String leader, List<RankedGroup> ranking, boolean tiedAtCutoff, long maxError) {
+		super();
+		this.definition = definition;
+		this.leader = leader;
+		this.ranking = ranking;
+		this.tiedAtCutoff = tiedAtCutoff;
+		this.maxError = maxError;
+	}
+	
+	/**
+	 * @return The canonical definition of the query, e.g. {@code aggregate=count;group-by=speaker;year=2013;top=10}
+	 */
+	public String getDefinition() {
+		return definition;
+	}
+	
+	/**
+	 * @return The name of the group ranked first, "zero" if no group matched or if several groups are tied for the first rank
+	 */
+	public String getLeader() {
+		return leader;
+	}
+	
+	/**
+	 * @return The ranked groups, in the order of the query and limited to its top if any, groups without matching speech are absent
+	 */
+	public List<RankedGroup> getRanking() {
+		return ranking;
+	}
+	
+	/**
+	 * @return true if the last ranked group is tied with groups left out of the ranking by the top of the query
+	 */
+	public boolean isTiedAtCutoff() {
+		return tiedAtCutoff;
+	}
+
+	/**
+	 * @return The maximum overestimation of the values of the ranking, 0 if the values are exact
+	 */
+	public long getMaxError() {
+		return maxError;
+	}
+
+	@Override
+	public String toString() {
+		return "QueryResult [definition=" + definition + ", leader=" + leader + ", ranking=" + ranking + ", tiedAtCutoff=" + tiedAtCutoff + ", maxError=" + maxError + "]";
+	}
+}
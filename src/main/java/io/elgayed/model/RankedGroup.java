@@ -0,0 +1,48 @@
+package io.elgayed.model;
+
+import java.io.Serializable;
+
+/**
+ * Group of a {@link QueryResult}, speaker or theme, along with its aggregated value and its rank
+ */
+public class RankedGroup implements Serializable {
+	
+	private static final long serialVersionUID = 7385246311820967541L;
+	
+	private int rank;
+	private String name;
+	private long value;
+	
+	public RankedGroup(int rank, String name, long value) {
+		super();
+		this.rank = rank;
+		this.name = name;
+		this.value = value;
+	}
+	
+	/**
+	 * @return The rank of the group, starting at 1, tied groups share the same rank, e.g. 1, 2, 2, 4
+	 */
+	public int getRank() {
+		return rank;
+	}
+	
+	/**
+	 * @return The name of the speaker or the theme
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * @return The aggregated value of the group
+	 */
+	public long getValue() {
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return "RankedGroup [rank=" + rank + ", name=" + name + ", value=" + value + "]";
+	}
+}
@@ -1,14 +1,22 @@
 package io.elgayed.model;
 
-import java.util.Date;
-
 //TODO add validation: https://stackoverflow.com/questions/58249060/validate-field-length-while-reading-csv-file-in-spring-batch
 public class Speech {
 	
+	/**
+	 * Id of a speaker or a theme that is not encoded in a dictionary
+	 */
+	public static final int UNKNOWN_ID = -1;
+	
 	private String speaker;
+	private int speakerId = UNKNOWN_ID;
 	private String theme;
-	private Long words;
-	private Date date;
+	private int themeId = UNKNOWN_ID;
+	private long words;
+	/**
+	 * Date packed as yyyymmdd, see {@link SpeechDate}
+	 */
+	private int date;
 	
 	public String getSpeaker() {
 		return speaker;
@@ -16,26 +24,47 @@ public class Speech {
 	public void setSpeaker(String speaker) {
 		this.speaker = speaker;
 	}
+	/**
+	 * @return Id of the speaker in the dictionary of the job that read this speech, or {@link #UNKNOWN_ID}
+	 */
+	public int getSpeakerId() {
+		return speakerId;
+	}
+	public void setSpeakerId(int speakerId) {
+		this.speakerId = speakerId;
+	}
 	public String getTheme() {
 		return theme;
 	}
 	public void setTheme(String theme) {
 		this.theme = theme;
 	}
-	public Long getWords() {
+	/**
+	 * @return Id of the theme in the dictionary of the job that read this speech, or {@link #UNKNOWN_ID}
+	 */
+	public int getThemeId() {
+		return themeId;
+	}
+	public void setThemeId(int themeId) {
+		this.themeId = themeId;
+	}
+	public long getWords() {
 		return words;
 	}
-	public void setWords(Long words) {
+	public void setWords(long words) {
 		this.words = words;
 	}
-	public Date getDate() {
+	/**
+	 * @return the date of the speech, packed as yyyymmdd (see {@link SpeechDate})
+	 */
+	public int getDate() {
 		return date;
 	}
-	public void setDate(Date date) {
+	public void setDate(int date) {
 		this.date = date;
 	}
 	@Override
 	public String toString() {
-		return "Speech [speaker=" + speaker + ", theme=" + theme + ", words=" + words + ", date=" + date + "]";
+		return "Speech [speaker=" + speaker + ", theme=" + theme + ", words=" + words + ", date=" + SpeechDate.format(date) + "]";
 	}
 }
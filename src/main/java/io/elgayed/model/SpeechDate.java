@@ -0,0 +1,89 @@
+package io.elgayed.model;
+
+import java.time.LocalDate;
+
+/**
+ * Speech dates are packed into an int as {@code yyyymmdd}, e.g. 2013-12-11 is 20131211: 
+ * packed dates compare like the dates they represent, so years, date ranges and date comparisons are plain integer comparisons, 
+ * without time zones or {@link java.util.Calendar} arithmetic
+ */
+public final class SpeechDate {
+	
+	private static final long DAYS_0000_TO_1970 = 719_528L;
+	
+	private SpeechDate() {
+	}
+	
+	public static int pack(int year, int month, int day) {
+		return year * 10_000 + month * 100 + day;
+	}
+	
+	public static int of(LocalDate date) {
+		return pack(date.getYear(), date.getMonthValue(), date.getDayOfMonth());
+	}
+	
+	public static int year(int date) {
+		return date / 10_000;
+	}
+	
+	public static int month(int date) {
+		return date / 100 % 100;
+	}
+	
+	public static int day(int date) {
+		return date % 100;
+	}
+	
+	/**
+	 * @return the first packed date of the given year
+	 */
+	public static int startOfYear(int year) {
+		return pack(year, 1, 1);
+	}
+	
+	/**
+	 * @return the last packed date of the given year
+	 */
+	public static int endOfYear(int year) {
+		return pack(year, 12, 31);
+	}
+	
+	public static LocalDate toLocalDate(int date) {
+		return LocalDate.of(year(date), month(date), day(date));
+	}
+	
+	/**
+	 * Same computation as {@link LocalDate#toEpochDay()} for non negative years, without creating a {@link LocalDate}
+	 */
+	public static long toEpochDay(int date) {
+		int year = year(date);
+		int month = month(date);
+		long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+		total += (367 * month - 362) / 12;
+		total += day(date) - 1;
+		if (month > 2) {
+			total--;
+			if (!isLeapYear(year)) total--;
+		}
+		return total - DAYS_0000_TO_1970;
+	}
+	
+	public static boolean isLeapYear(int year) {
+		return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+	}
+	
+	public static int lengthOfMonth(int year, int month) {
+		switch (month) {
+			case 2: return isLeapYear(year) ? 29 : 28;
+			case 4: case 6: case 9: case 11: return 30;
+			default: return 31;
+		}
+	}
+	
+	/**
+	 * @return the given packed date formatted as {@code yyyy-MM-dd}
+	 */
+	public static String format(int date) {
+		return String.format("%04d-%02d-%02d", year(date), month(date), day(date));
+	}
+}
@@ -1,59 +1,166 @@
 package io.elgayed.processing;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
+import javax.sql.DataSource;
+
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ItemWriteListener;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobParameter;
 import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.JobParametersInvalidException;
 import org.springframework.batch.core.JobParametersValidator;
+import org.springframework.batch.core.SkipListener;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.configuration.annotation.BatchConfigurer;
 import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.explore.support.JobExplorerFactoryBean;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.core.repository.ExecutionContextSerializer;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.dao.DefaultExecutionContextSerializer;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.item.ItemWriter;
-import org.springframework.batch.item.file.FlatFileItemReader;
 import org.springframework.batch.item.file.FlatFileParseException;
-import org.springframework.batch.item.file.LineMapper;
-import org.springframework.batch.item.file.MultiResourceItemReader;
-import org.springframework.batch.item.file.mapping.DefaultLineMapper;
-import org.springframework.batch.item.file.mapping.FieldSetMapper;
-import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.batch.BasicBatchConfigurer;
+import org.springframework.boot.autoconfigure.batch.BatchProperties;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
-import org.springframework.validation.BindException;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.StringUtils;
 
+import io.elgayed.cache.CachedSource;
+import io.elgayed.cache.ColumnarSourceStore;
+import io.elgayed.cache.EvaluationCache;
+import io.elgayed.cache.RevalidatingUrlResource;
+import io.elgayed.cache.SourceSummaryStore;
+import io.elgayed.dictionary.SpeechDictionary;
+import io.elgayed.metrics.BatchMetrics;
+import io.elgayed.metrics.PartitionMetricsListener;
 import io.elgayed.model.Speech;
+import io.elgayed.remote.RemoteResourceClient;
+import io.elgayed.statistics.SpeechQuery;
+import io.elgayed.statistics.StatisticsReportAccumulator;
+import io.micrometer.core.instrument.Tags;
 
 @Configuration
 @EnableBatchProcessing
+@EnableScheduling
 public class BatchProcessingConfiguration {
 	
 	public static final String CSV_FILES_BATCH_PROCESSING_JOB_NAME = "csvFilesProcessingJob";
 	public static final String CSV_FILES_BATCH_PROCESSING_STEP_NAME = "csvFilesProcessingStep";
-	public static final Integer CSV_FILES_BATCH_PROCESSING_STEP_CHUNK = 100;
+	public static final String CSV_FILE_BATCH_PROCESSING_STEP_NAME = "csvFileProcessingStep";
+	public static final Integer CSV_FILES_BATCH_PROCESSING_STEP_CHUNK = 1000;
+	/**
+	 * Key of the CSV file URL in the step execution context of every partition
+	 */
+	public static final String CSV_FILE_URL_KEY = "csvFileUrl";
+	/**
+	 * Keys of the byte range bounds in the step execution context of a partition covering a range of a local CSV file, see {@link CsvSourcePartitioner}
+	 */
+	public static final String CSV_FILE_RANGE_START_KEY = "csvFileRangeStart";
+	public static final String CSV_FILE_RANGE_END_KEY = "csvFileRangeEnd";
+	/**
+	 * Keys of the validator of a remote CSV file in the step execution context of a partition covering one of its ranges, see {@link CsvSourcePartitioner}
+	 */
+	public static final String CSV_FILE_ENTITY_TAG_KEY = "csvFileEntityTag";
+	public static final String CSV_FILE_LAST_MODIFIED_KEY = "csvFileLastModified";
+	/**
+	 * Key of the validator of the cached prefix of a CSV file in the step execution context of the partition covering that prefix, see {@link CsvSourcePartitioner}
+	 */
+	public static final String CSV_FILE_PREFIX_TAG_KEY = "csvFilePrefixTag";
+	/**
+	 * Keys of the end of the content of a CSV file read by an evaluation and of the validator of that content, in the step execution context of every partition of the file: 
+	 * once the evaluation is completed, the content is cached as the prefix of the file, see {@link StatisticsReportAggregator}.
+	 * The validator of the content of a local file is not known before it is read, it is made of the digests of the ranges read by the partitions instead
+	 */
+	public static final String CSV_FILE_END_KEY = "csvFileEnd";
+	public static final String CSV_FILE_END_TAG_KEY = "csvFileEndTag";
+	/**
+	 * Key of the job parameter making the parameters of every run unique, so that the same URLs can be evaluated again once a previous run is complete
+	 */
+	public static final String RUN_ID_KEY = "run.id";
+	/**
+	 * Prefix of the keys of the job parameters holding the queries of an evaluation: {@code query.<name>} holds the definition of the query {@code <name>},
+	 * see {@link SpeechQuery#parse(String, String)}. Job parameters that are neither the run id, nor queries nor the approximation error are CSV file URLs
+	 */
+	public static final String QUERY_KEY_PREFIX = "query.";
+	/**
+	 * Key of the optional job parameter switching an evaluation to approximate mode, see {@link StatisticsReportAccumulator#answeredQueries(List, double)}
+	 */
+	public static final String APPROXIMATION_ERROR_KEY = "approximation.error";
+	
+	/**
+	 * Job repository and explorer backed by the configured data source, so that interrupted evaluations can be restarted (see {@link InterruptedEvaluationsRecovery}).
+	 * Execution contexts are written with Java serialization: the statistics report and the source validators they hold are serializable but are not Java beans
+	 */
+	@Bean
+	public BatchConfigurer batchConfigurer(BatchProperties properties, DataSource dataSource, ObjectProvider<TransactionManagerCustomizers> transactionManagerCustomizers) {
+		ExecutionContextSerializer serializer = new DefaultExecutionContextSerializer();
+		return new BasicBatchConfigurer(properties, dataSource, transactionManagerCustomizers.getIfAvailable()) {
+			@Override
+			protected JobRepository createJobRepository() throws Exception {
+				JobRepositoryFactoryBean factory = new JobRepositoryFactoryBean();
+				factory.setDataSource(dataSource);
+				factory.setTransactionManager(getTransactionManager());
+				factory.setSerializer(serializer);
+				if (StringUtils.hasText(properties.getTablePrefix()))
+					factory.setTablePrefix(properties.getTablePrefix());
+				factory.afterPropertiesSet();
+				return factory.getObject();
+			}
+			
+			@Override
+			protected JobExplorer createJobExplorer() throws Exception {
+				JobExplorerFactoryBean factory = new JobExplorerFactoryBean();
+				factory.setDataSource(dataSource);
+				factory.setSerializer(serializer);
+				if (StringUtils.hasText(properties.getTablePrefix()))
+					factory.setTablePrefix(properties.getTablePrefix());
+				factory.afterPropertiesSet();
+				return factory.getObject();
+			}
+		};
+	}
 	
 	@Bean
 	public JobParametersValidator jobParametersValidator() {
 		return new JobParametersValidator() {
 			@Override
 			public void validate(JobParameters parameters) throws JobParametersInvalidException {
-				Map<String, JobParameter> paramsMap = parameters.getParameters();
-				if (paramsMap.isEmpty())
-					throw new JobParametersInvalidException("At least one url should be provided");
-				List<String> invalidUrls = paramsMap.entrySet().stream()
+				List<JobParameter> urlParams = parameters.getParameters().entrySet().stream()
+					.filter(entry -> isCsvFileUrlKey(entry.getKey()))
 					.map(Entry::getValue)
+					.collect(Collectors.toList());
+				if (urlParams.isEmpty())
+					throw new JobParametersInvalidException("At least one url should be provided");
+				List<String> invalidUrls = urlParams.stream()
 					.map(Objects::toString)
 					//returns invalid urls
 					.filter(value -> {try {new URL(value);return false;} catch (MalformedURLException e) {return true;}})
@@ -61,97 +168,295 @@ public class BatchProcessingConfiguration {
 				if (!invalidUrls.isEmpty()) {
 					throw new JobParametersInvalidException(String.format("The following URLs are not valid: %s", String.join(", ", invalidUrls)));
 				}
+				try {
+					//the accumulator also rejects duplicated query names, queries named after the report's questions and out of range approximation errors
+					accumulatorOf(parameters, new SpeechDictionary());
+				} catch (IllegalArgumentException e) {
+					throw new JobParametersInvalidException(e.getMessage());
+				}
 			}
 		};
 	}
 
+	/**
+	 * @return {@code true} if the job parameter of the given key is a CSV file URL
+	 */
+	public static boolean isCsvFileUrlKey(String key) {
+		return !RUN_ID_KEY.equals(key) && !key.startsWith(QUERY_KEY_PREFIX) && !APPROXIMATION_ERROR_KEY.equals(key);
+	}
+	
+	/**
+	 * @return the approximation error held by the given job parameters, {@link StatisticsReportAccumulator#EXACT} if there is none
+	 * @throws IllegalArgumentException if the approximation error is not a number
+	 */
+	public static double approximationErrorOf(JobParameters parameters) {
+		String approximationError = parameters.getString(APPROXIMATION_ERROR_KEY);
+		if (approximationError == null)
+			return StatisticsReportAccumulator.EXACT;
+		try {
+			return Double.parseDouble(approximationError);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Approximation error is not a number: " + approximationError, e);
+		}
+	}
+	
+	/**
+	 * @return the questions of the report and the queries answered by the accumulators of a job having the given parameters
+	 * @throws IllegalArgumentException if the queries or the approximation error are not valid
+	 */
+	public static List<SpeechQuery> answeredQueriesOf(JobParameters parameters) {
+		return StatisticsReportAccumulator.answeredQueries(queriesOf(parameters), approximationErrorOf(parameters));
+	}
+	
+	/**
+	 * @param parameters Parameters of a job
+	 * @param dictionary Dictionary of the accumulator
+	 * @return a new accumulator answering the queries of the given job, in its approximation mode
+	 * @throws IllegalArgumentException if the queries or the approximation error are not valid
+	 */
+	public static StatisticsReportAccumulator accumulatorOf(JobParameters parameters, SpeechDictionary dictionary) {
+		return new StatisticsReportAccumulator(dictionary, queriesOf(parameters), approximationErrorOf(parameters));
+	}
+	
+	/**
+	 * @return the queries held by the given job parameters, ordered by name
+	 * @throws IllegalArgumentException if a query definition is not valid
+	 */
+	public static List<SpeechQuery> queriesOf(JobParameters parameters) {
+		return parameters.getParameters().entrySet().stream()
+				.filter(entry -> entry.getKey().startsWith(QUERY_KEY_PREFIX))
+				.map(entry -> SpeechQuery.parse(entry.getKey().substring(QUERY_KEY_PREFIX.length()), entry.getValue().toString()))
+				.sorted(Comparator.comparing(SpeechQuery::getName))
+				.collect(Collectors.toList());
+	}
+
 	@Bean
-	public Job csvProcessingJob(JobBuilderFactory jobBuilderFactory, Step step, JobParametersValidator validator) {
+	public Job csvProcessingJob(JobBuilderFactory jobBuilderFactory, Step csvFilesProcessingStep, JobParametersValidator validator, InFlightEvaluations inFlightEvaluations,
+			JobRepositoryRetention jobRepositoryRetention) {
 		return jobBuilderFactory
 				.get(CSV_FILES_BATCH_PROCESSING_JOB_NAME)
 				.validator(validator)
-				.flow(step)
+				//removes the restart state of the partitions once the job is completed, after the callers got the job execution (listeners are called in reverse order after the job)
+				.listener(jobRepositoryRetention)
+				//hands the job execution to the callers sharing the evaluation
+				.listener(inFlightEvaluations)
+				.flow(csvFilesProcessingStep)
 				.end()
 				.build();
 	}
 	
+	/**
+	 * Partitioned step: {@link #csvFilesPartitioner(JobExecution, RemoteResourceClient, EvaluationCache, long, long)} creates one partition per CSV file URL, or per range of a large CSV file, every partition is
+	 * processed by {@link #csvFileProcessingStep(StepBuilderFactory, AbstractItemCountingItemStreamItemReader, ItemWriter, PartitionMetricsListener)} on its own worker thread of 
+	 * {@link #csvFilesProcessingTaskExecutor(int)}, so remote files are downloaded and parsed concurrently
+	 */
 	@Bean
-	public Step csvFilesProcessingStep(StepBuilderFactory stepBuilderFactory, 
-			MultiResourceItemReader<Speech> itemReader,
-			ItemWriter<Speech> itemWriter) {
+	public Step csvFilesProcessingStep(StepBuilderFactory stepBuilderFactory,
+			Partitioner csvFilesPartitioner,
+			Step csvFileProcessingStep,
+			TaskExecutor csvFilesProcessingTaskExecutor,
+			StatisticsReportAggregator statisticsReportAggregator) {
 		
 		return stepBuilderFactory.get(CSV_FILES_BATCH_PROCESSING_STEP_NAME)
+				.partitioner(CSV_FILE_BATCH_PROCESSING_STEP_NAME, csvFilesPartitioner)
+				.step(csvFileProcessingStep)
+				.taskExecutor(csvFilesProcessingTaskExecutor)
+				//publishes the report merged from the partial accumulators of all partitions
+				.listener(statisticsReportAggregator)
+				.build();
+	}
+	
+	@Bean
+	public Step csvFileProcessingStep(StepBuilderFactory stepBuilderFactory, 
+			AbstractItemCountingItemStreamItemReader<Speech> csvFileReader,
+			ItemWriter<Speech> itemWriter,
+			PartitionMetricsListener partitionMetricsListener) {
+		
+		return stepBuilderFactory.get(CSV_FILE_BATCH_PROCESSING_STEP_NAME)
 				.<Speech, Speech>chunk(CSV_FILES_BATCH_PROCESSING_STEP_CHUNK)
-				.reader(itemReader)
+				.reader(csvFileReader)
 				.writer(itemWriter)
 				.faultTolerant()
 				//skip if a speech record is not valid in the CSV file
 				.skip(FlatFileParseException.class)
 				.skipLimit(100)
+				//records the parse time, the read and skipped records and the commit latency of every chunk
+				.listener((ChunkListener) partitionMetricsListener)
+				.listener((ItemWriteListener<Speech>) partitionMetricsListener)
+				.listener((SkipListener<Speech, Speech>) partitionMetricsListener)
 				.build();
 	}
 	
+	@Bean
+	public TaskExecutor csvFilesProcessingTaskExecutor(@Value("${processing.partitions.max-concurrency}") int maxConcurrency) {
+		ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+		taskExecutor.setCorePoolSize(maxConcurrency);
+		taskExecutor.setMaxPoolSize(maxConcurrency);
+		taskExecutor.setThreadNamePrefix("csv-partition-");
+		return taskExecutor;
+	}
+	
+	/**
+	 * Runs the tasks reading remote CSV files ahead of their parsing, see {@link io.elgayed.remote.PrefetchingInputStream}: 
+	 * there is one task per partition reading a remote file, so it has as many threads as {@link #csvFilesProcessingTaskExecutor(int)}
+	 */
+	@Bean
+	public TaskExecutor csvFilesPrefetchTaskExecutor(@Value("${processing.partitions.max-concurrency}") int maxConcurrency) {
+		ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+		taskExecutor.setCorePoolSize(maxConcurrency);
+		taskExecutor.setMaxPoolSize(maxConcurrency);
+		taskExecutor.setThreadNamePrefix("csv-prefetch-");
+		return taskExecutor;
+	}
+	
+	/**
+	 * Launches jobs on {@link #evaluationTaskExecutor(int)} once admitted by {@link EvaluationAdmission} and returns right away, 
+	 * so that the caller does not wait for the job to complete
+	 */
+	@Bean
+	public JobLauncher asyncJobLauncher(JobRepository jobRepository, EvaluationAdmission evaluationAdmission) {
+		SimpleJobLauncher jobLauncher = new SimpleJobLauncher();
+		jobLauncher.setJobRepository(jobRepository);
+		jobLauncher.setTaskExecutor(evaluationAdmission);
+		return jobLauncher;
+	}
+	
+	@Bean
+	public TaskExecutor evaluationTaskExecutor(@Value("${processing.async.max-concurrency}") int maxConcurrency) {
+		ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+		taskExecutor.setCorePoolSize(maxConcurrency);
+		taskExecutor.setMaxPoolSize(maxConcurrency);
+		taskExecutor.setThreadNamePrefix("evaluation-");
+		return taskExecutor;
+	}
+	
+	/**
+	 * Partitioner of the job's CSV sources, the sources having a cached prefix answering the job's queries in its approximation mode are only read from the end of that prefix
+	 */
 	@Bean
 	@JobScope
-	public MultiResourceItemReader<Speech> multiResourceItemReader(
-			FlatFileItemReader<Speech> csvFileReader,
-			@Value("#{jobParameters}") Map<String, String> csvUrls) {
-		
-		MultiResourceItemReader<Speech> resourceItemReader = new MultiResourceItemReader<>();
-		resourceItemReader.setResources(
-				csvUrls.entrySet().stream()
-					.map(Entry::getValue)
-					.map(csvUrl -> {
-						try {
-							return new UrlResource(csvUrl);
-						// this exception should never be thrown since JobParametersValidator guarantees that URLs will be valid at this point
-						} catch (MalformedURLException e) {
-							return null;
-						}
-					})
-					.filter(Objects::nonNull)
-					.collect(Collectors.toSet())
-					.toArray(new Resource[0])
-				);
-		resourceItemReader.setDelegate(csvFileReader);
-		return resourceItemReader;
+	public Partitioner csvFilesPartitioner(@Value("#{jobExecution}") JobExecution jobExecution,
+			RemoteResourceClient remoteResourceClient,
+			EvaluationCache evaluationCache,
+			@Value("${processing.local.split-bytes}") long localSplitBytes,
+			@Value("${processing.remote.split-bytes}") long remoteSplitBytes,
+			@Value("${cache.prefixes.remote-enabled}") boolean remotePrefixes,
+			BatchMetrics batchMetrics) {
+		JobParameters jobParameters = jobExecution.getJobParameters();
+		List<String> csvUrls = jobParameters.getParameters().entrySet().stream()
+				.filter(entry -> isCsvFileUrlKey(entry.getKey()))
+				.map(entry -> entry.getValue().toString())
+				.collect(Collectors.toList());
+		return new CsvSourcePartitioner(csvUrls, localSplitBytes, remoteSplitBytes, remoteResourceClient, evaluationCache, answeredQueriesOf(jobParameters), remotePrefixes, batchMetrics);
 	}
 
+	/**
+	 * Reader of a partition: ranges of local files are memory mapped by a {@link MappedSpeechCsvItemReader}, other sources and ranges of remote sources 
+	 * are streamed by a {@link SpeechCsvItemReader}.
+	 * 
+	 * A restarted partition resumes from the offset saved by its last execution, unless its source changed since then: its restart state is then cleared
+	 * and the source is read again from the start. So is the source of a partition whose checkpoint file is lost, see {@link PartitionCheckpoint}.
+	 * 
+	 * Under a memory budget, speeches are not encoded with the job's dictionary: the names of spilled speakers would never be released,
+	 * see {@link StatisticReportWriter}.
+	 * 
+	 * A source parsed by a previous evaluation is read from its columnar file by a {@link ColumnarSpeechItemReader}, see {@link ColumnarSourceStore}
+	 */
 	@Bean
-	public FlatFileItemReader<Speech> csvFileReader(LineMapper<Speech> mapper) {
-		FlatFileItemReader<Speech> reader = new FlatFileItemReader<>();
-		reader.setLinesToSkip(1);
-		reader.setLineMapper(mapper);
-		reader.setEncoding(StandardCharsets.UTF_8.name());
+	@StepScope
+	public AbstractItemCountingItemStreamItemReader<Speech> csvFileReader(StatisticsReportAggregator statisticsReportAggregator,
+			RevalidatingUrlResource csvFileResource,
+			ColumnarSourceStore columnarSourceStore,
+			@Value("${processing.aggregation.memory-budget-bytes}") long memoryBudgetBytes,
+			@Value("#{stepExecution}") StepExecution stepExecution) throws IOException {
+		ExecutionContext context = stepExecution.getExecutionContext();
+		if (StatisticReportWriter.isRestarted(context) && (PartitionCheckpoint.isLost(context)
+				|| !Objects.equals(context.get(StatisticReportWriter.SOURCE_VALIDATOR_KEY), csvFileResource.getValidator())))
+			CsvSourcePartitioner.clearRestartState(context);
+		SpeechDictionary dictionary = memoryBudgetBytes > 0 ? null : statisticsReportAggregator.dictionaryOf(stepExecution.getJobExecutionId());
+		Path columnarFile = columnarFileOf(columnarSourceStore, csvFileResource, context);
+		if (columnarFile != null) {
+			//the content received when the source was revalidated is not parsed
+			csvFileResource.discardContent();
+			ColumnarSpeechItemReader reader = new ColumnarSpeechItemReader();
+			reader.setFile(columnarFile);
+			reader.setDictionary(dictionary);
+			return reader;
+		}
+		boolean range = CsvSourcePartitioner.isRange(context);
+		if (range && csvFileResource.isFile()) {
+			long rangeStart = context.getLong(CSV_FILE_RANGE_START_KEY);
+			MappedSpeechCsvItemReader reader = new MappedSpeechCsvItemReader();
+			reader.setResource(csvFileResource);
+			reader.setRange(rangeStart, context.getLong(CSV_FILE_RANGE_END_KEY));
+			if (dictionary != null)
+				reader.setDictionary(dictionary);
+			//only the first range holds the columns header
+			reader.setLinesToSkip(rangeStart == 0 ? 1 : 0);
+			reader.setStrict(Boolean.FALSE);
+			//the ranges of a file that can be appended to are digested, to be validated as its prefix later
+			reader.setDigested(CsvSourcePartitioner.isEnd(context));
+			return reader;
+		}
+		SpeechCsvItemReader reader = new SpeechCsvItemReader();
+		reader.setResource(csvFileResource);
+		if (dictionary != null)
+			reader.setDictionary(dictionary);
+		reader.setLinesToSkip(!range || context.getLong(CSV_FILE_RANGE_START_KEY) == 0 ? 1 : 0);
 		reader.setStrict(Boolean.FALSE);
 		return reader;
 	}
-
-	@Bean
-	public LineMapper<Speech> lineMapper(FieldSetMapper<Speech> speechRecordFieldSetMapper) {
-		DefaultLineMapper<Speech> lineMapper = new DefaultLineMapper<>();
-		DelimitedLineTokenizer lineTokenizer = new DelimitedLineTokenizer();
-		lineTokenizer.setNames(new String[] { 
-					SpeechRecordConstants.SPEAKER_COLUMN_NAME, 
-					SpeechRecordConstants.SPEECH_THEME_COLUMN_NAME,
-					SpeechRecordConstants.SPEECH_DATE_COLUMN_NAME,
-					SpeechRecordConstants.SPEECH_WORDS_COLUMN_NAME
-					});
-		lineMapper.setLineTokenizer(lineTokenizer);
-		lineMapper.setFieldSetMapper(speechRecordFieldSetMapper);
-		return lineMapper;
+	
+	/**
+	 * @return the columnar file of the content of a partition's source, or {@code null} if the source is parsed or not read at all.
+	 * A partition restarted after parsing its source goes on parsing it, a partition restarted after reading a columnar file that is gone
+	 * is processed from the start
+	 */
+	private static Path columnarFileOf(ColumnarSourceStore columnarSourceStore, RevalidatingUrlResource csvFileResource, ExecutionContext context) throws IOException {
+		if (!columnarSourceStore.isEnabled() || csvFileResource.isNotModified())
+			return null;
+		boolean restarted = StatisticReportWriter.isRestarted(context);
+		boolean readColumnar = context.containsKey(ColumnarSpeechItemReader.READ_COUNT_KEY);
+		if (restarted && !readColumnar)
+			return null;
+		Path columnarFile = columnarSourceStore.find(CsvSourcePartitioner.sourceKeyOf(context), csvFileResource.getValidator());
+		if (columnarFile == null && readColumnar)
+			CsvSourcePartitioner.clearRestartState(context);
+		return columnarFile;
 	}
 	
+	/**
+	 * CSV source of a partition, it is shared by the partition's reader and writer: 
+	 * the reader reads it only if it changed since it was cached, the writer then caches or reuses the partition's accumulator.
+	 * A cached accumulator answering other queries than the job's ones, or answering them in another approximation mode, is not reused.
+	 * The partition covering the cached prefix of a source reuses the prefix's accumulator if the prefix was not replaced since the source was partitioned.
+	 * A source missing from the cache, or cached for other queries, is looked up in the {@link SourceSummaryStore}
+	 */
 	@Bean
-	public FieldSetMapper<Speech> speechRecordFieldSetMapper() throws BindException {
-		return 
-			fieldSet -> {
-				Speech speech = new Speech();
-				speech.setSpeaker(fieldSet.readString(SpeechRecordConstants.SPEAKER_COLUMN_NAME));
-				speech.setTheme(fieldSet.readString(SpeechRecordConstants.SPEECH_THEME_COLUMN_NAME));
-				speech.setDate(fieldSet.readDate(SpeechRecordConstants.SPEECH_DATE_COLUMN_NAME));
-				speech.setWords(fieldSet.readLong(SpeechRecordConstants.SPEECH_WORDS_COLUMN_NAME));
-				return speech;
-			};
+	@StepScope
+	public RevalidatingUrlResource csvFileResource(EvaluationCache evaluationCache, SourceSummaryStore sourceSummaryStore, RemoteResourceClient remoteResourceClient, 
+			BatchMetrics batchMetrics, @Value("#{stepExecution}") StepExecution stepExecution) throws MalformedURLException {
+		ExecutionContext context = stepExecution.getExecutionContext();
+		String csvUrl = context.getString(CSV_FILE_URL_KEY);
+		String sourceKey = CsvSourcePartitioner.sourceKeyOf(context);
+		List<SpeechQuery> answeredQueries = answeredQueriesOf(stepExecution.getJobExecution().getJobParameters());
+		CachedSource cachedSource = CsvSourcePartitioner.isPrefix(context) ? evaluationCache.getPrefix(csvUrl) : evaluationCache.getSource(sourceKey);
+		if (cachedSource != null && !cachedSource.answers(answeredQueries))
+			cachedSource = null;
+		if (cachedSource == null && !CsvSourcePartitioner.isPrefix(context)) {
+			cachedSource = sourceSummaryStore.load(sourceKey, answeredQueries);
+			if (cachedSource != null)
+				evaluationCache.putSource(sourceKey, cachedSource);
+		}
+		RevalidatingUrlResource resource = new RevalidatingUrlResource(csvUrl, cachedSource, remoteResourceClient);
+		//meters the download of the streamed sources
+		Tags tags = BatchMetrics.tagsOf(CSV_FILES_BATCH_PROCESSING_JOB_NAME, csvUrl);
+		resource.setInputStreamDecorator(inputStream -> batchMetrics.meterDownload(inputStream, tags));
+		//ranges of local files are memory mapped by the reader, only ranges of remote sources are read through the resource
+		if (CsvSourcePartitioner.isRange(context) && !resource.isFile())
+			resource.setRange(context.getLong(CSV_FILE_RANGE_START_KEY), context.getLong(CSV_FILE_RANGE_END_KEY), CsvSourcePartitioner.rangeValidatorOf(context));
+		if (CsvSourcePartitioner.isPrefix(context))
+			resource.setPrefixValidator(CsvSourcePartitioner.prefixValidatorOf(context));
+		return resource;
 	}
 }
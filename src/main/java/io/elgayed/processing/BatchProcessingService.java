@@ -1,57 +1,246 @@
 package io.elgayed.processing;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+import org.springframework.batch.core.BatchStatus;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobParameter;
 import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.JobParametersInvalidException;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
 import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.launch.NoSuchJobExecutionException;
 import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
 import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteException;
 import org.springframework.batch.core.repository.JobRestartException;
-import org.springframework.batch.item.file.FlatFileItemWriter;
-import org.springframework.batch.item.file.MultiResourceItemReader;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import io.elgayed.metrics.BatchMetrics;
+import io.elgayed.model.EvaluationStatus;
 import io.elgayed.model.Speech;
 import io.elgayed.model.StatisticsReport;
-import io.elgayed.statistics.StatisticsReportCollector;
+import io.elgayed.processing.InFlightEvaluations.InFlightEvaluation;
+import io.elgayed.statistics.StatisticsReportAccumulator;
+import io.micrometer.core.instrument.Timer;
 
 @Service
 public class BatchProcessingService {
 	
 	@Autowired
-	private JobLauncher jobLauncher;
+	private JobLauncher asyncJobLauncher;
+	@Autowired
+	private EvaluationAdmission evaluationAdmission;
+	@Autowired
+	private JobExplorer jobExplorer;
 	@Autowired
 	private Job job;
+	@Autowired
+	private InFlightEvaluations inFlightEvaluations;
+	@Autowired
+	private BatchMetrics batchMetrics;
+	
+	private final AtomicLong lastRunId = new AtomicLong();
 	
 	/**
 	 * Given CSV File URLs, it loads the CSV files and extracts statistics, a batch processing job is launched for the task
-	 * The batch processing job has one step: 
+	 * The batch processing job has one partitioned step, with one partition per CSV file processed on its own worker thread: 
 	 * <ol>
-	 * <li>Item reader: Reads all CSV Files using a {@link MultiResourceItemReader} (delegates reading each CSV file to a {@link FlatFileItemWriter}) and produces a {@link Speech} per line
-	 * <li>Item writer: streams speeches and uses {@link StatisticsReportCollector} to derive a {@link StatisticsReport}
+	 * <li>Item reader: Reads the partition's CSV File using a {@link SpeechCsvItemReader} and produces a {@link Speech} per line
+	 * <li>Item writer: accumulates speeches in a partial {@link StatisticsReportAccumulator}
 	 * </ol>
-	 * @param csvFileUrls URLs of the CSV files to be processed
+	 * Partial accumulators of all partitions are merged by {@link StatisticsReportAggregator} to derive a {@link StatisticsReport}.
+	 * The queries of the request are answered in the same scan of the CSV files, see {@link EvaluationRequest}.
+	 * 
+	 * If an evaluation of the same URLs and queries is already in flight, no job is launched: this call waits for the running job and returns its report.
+	 * Otherwise the job waits to be admitted by {@link EvaluationAdmission}, in turn with the evaluations of other clients, 
+	 * and runs on {@link BatchProcessingConfiguration#evaluationTaskExecutor(int)}.
+	 * The end to end time of the call is recorded by {@link BatchMetrics#EVALUATION_TIMER}
+	 * @param request CSV files to be processed, queries and approximation mode of the evaluation, and client asking for it
 	 * @return {@link StatisticsReport} containing stats derived from speeches read the given CSV File URLs
 	 * 
 	 * @throws JobExecutionAlreadyRunningException
 	 * @throws JobRestartException
 	 * @throws JobInstanceAlreadyCompleteException
-	 * @throws JobParametersInvalidException if {@link JobParameters} are not valid, {@code JobParameters} are validated using {@link BatchProcessingConfiguration#jobParametersValidator()}
-	 */
-	public StatisticsReport processCsvFiles (Map<String, String> csvFileUrls) throws JobExecutionAlreadyRunningException, JobRestartException, JobInstanceAlreadyCompleteException, JobParametersInvalidException {
-		JobParameters jobParams = new JobParameters(
-				csvFileUrls.entrySet().stream().collect(
-						Collectors.toMap(Map.Entry::getKey, entry -> new JobParameter(entry.getValue().toString()))
-					)
-		);
-		JobExecution jobExecution = jobLauncher.run(job, jobParams);
-		StatisticsReport statisticsReport = (StatisticsReport) jobExecution.getExecutionContext().get(StatisticReportWriter.STATISTIC_REPORT_KEY);
-		return statisticsReport;
+	 * @throws JobParametersInvalidException if the URLs, the queries or the approximation error are not valid, 
+	 * {@code JobParameters} are validated using {@link BatchProcessingConfiguration#jobParametersValidator()}
+	 * @throws EvaluationRejectedException if too many evaluations are waiting to be admitted
+	 * @throws EvaluationFailedException if the job ended without being completed, e.g. when a CSV file could not be read
+	 */
+	public StatisticsReport processCsvFiles (EvaluationRequest request) throws JobExecutionAlreadyRunningException, JobRestartException, JobInstanceAlreadyCompleteException, JobParametersInvalidException {
+		Timer.Sample sample = batchMetrics.startEvaluation();
+		String status = BatchMetrics.ERROR_STATUS;
+		try {
+			JobExecution jobExecution = await(launch(toJobParameters(request), request.getClient()).getCompleted());
+			status = jobExecution.getStatus().name();
+			if (jobExecution.getStatus() != BatchStatus.COMPLETED)
+				throw new EvaluationFailedException(failureMessageOf(jobExecution), jobExecution.getId(), jobExecution.getStatus());
+			StatisticsReport statisticsReport = (StatisticsReport) jobExecution.getExecutionContext().get(StatisticReportWriter.STATISTIC_REPORT_KEY);
+			return statisticsReport;
+		} finally {
+			batchMetrics.stopEvaluation(sample, job.getName(), status);
+		}
+	}
+	
+	/**
+	 * Launches the same batch processing job as {@link #processCsvFiles(EvaluationRequest)} using {@link BatchProcessingConfiguration#asyncJobLauncher(org.springframework.batch.core.repository.JobRepository, EvaluationAdmission)}:
+	 * it returns as soon as the job execution is created, the job runs on another thread once admitted. Until then its status is {@code STARTING}.
+	 * 
+	 * If an evaluation of the same URLs and queries is already in flight, no job is launched and the running job execution is returned
+	 * @param request CSV files to be processed, queries and approximation mode of the evaluation, and client asking for it
+	 * @return the {@link JobExecution} of the launched job, its id can be used to get the status of the evaluation using {@link #getEvaluationStatus(Long)}
+	 * 
+	 * @throws JobExecutionAlreadyRunningException
+	 * @throws JobRestartException
+	 * @throws JobInstanceAlreadyCompleteException
+	 * @throws JobParametersInvalidException if the URLs, the queries or the approximation error are not valid
+	 * @throws EvaluationRejectedException if too many evaluations are waiting to be admitted
+	 */
+	public JobExecution startCsvFilesProcessing (EvaluationRequest request) throws JobExecutionAlreadyRunningException, JobRestartException, JobInstanceAlreadyCompleteException, JobParametersInvalidException {
+		return await(launch(toJobParameters(request), request.getClient()).getStarted());
+	}
+	
+	/**
+	 * Restarts the job instance of an evaluation that failed or was stopped, using {@link BatchProcessingConfiguration#asyncJobLauncher(org.springframework.batch.core.repository.JobRepository, EvaluationAdmission)}:
+	 * partitions completed by the previous executions are not processed again, the other partitions resume from their last committed chunk.
+	 * 
+	 * If an evaluation of the same URLs is already in flight, no job is launched and the running job execution is returned
+	 * @param jobExecutionId Id of a job execution of the evaluation
+	 * @param client Client restarting the evaluation, see {@link EvaluationAdmission}, {@link EvaluationClient#DEFAULT} for the application itself
+	 * @return the new {@link JobExecution} of the evaluation
+	 * 
+	 * @throws NoSuchJobExecutionException if there is no job execution with the given id
+	 * @throws JobExecutionAlreadyRunningException if the evaluation is still running
+	 * @throws JobRestartException
+	 * @throws JobInstanceAlreadyCompleteException if the evaluation is already completed
+	 * @throws JobParametersInvalidException
+	 * @throws EvaluationRejectedException if too many evaluations are waiting to be admitted
+	 */
+	public JobExecution restartEvaluation (Long jobExecutionId, EvaluationClient client) throws NoSuchJobExecutionException, JobExecutionAlreadyRunningException, JobRestartException, JobInstanceAlreadyCompleteException, JobParametersInvalidException {
+		JobExecution jobExecution = jobExplorer.getJobExecution(jobExecutionId);
+		if (jobExecution == null)
+			throw new NoSuchJobExecutionException(String.format("No evaluation found with id: %d", jobExecutionId));
+		return await(launch(jobExecution.getJobParameters(), client).getStarted());
+	}
+	
+	/**
+	 * @param jobExecutionId Id of the job execution processing an evaluation
+	 * @return {@link EvaluationStatus} holding the status and the progress of the job execution, and the {@link StatisticsReport} once the job is completed
+	 * @throws NoSuchJobExecutionException if there is no job execution with the given id
+	 */
+	public EvaluationStatus getEvaluationStatus (Long jobExecutionId) throws NoSuchJobExecutionException {
+		JobExecution jobExecution = jobExplorer.getJobExecution(jobExecutionId);
+		if (jobExecution == null)
+			throw new NoSuchJobExecutionException(String.format("No evaluation found with id: %d", jobExecutionId));
+		
+		long readCount = 0, writeCount = 0, skipCount = 0;
+		for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+			//the partitioned step sums the counts of its partitions once they are all done, so only partitions are counted
+			if (BatchProcessingConfiguration.CSV_FILES_BATCH_PROCESSING_STEP_NAME.equals(stepExecution.getStepName()))
+				continue;
+			readCount += stepExecution.getReadCount();
+			writeCount += stepExecution.getWriteCount();
+			skipCount += stepExecution.getSkipCount();
+		}
+		StatisticsReport statisticsReport = jobExecution.getStatus() == BatchStatus.COMPLETED ?
+				(StatisticsReport) jobExecution.getExecutionContext().get(StatisticReportWriter.STATISTIC_REPORT_KEY) : 
+				null;
+		return new EvaluationStatus(jobExecution.getId(), jobExecution.getStatus().name(), readCount, writeCount, skipCount, statisticsReport);
+	}
+	
+	/**
+	 * Single-flight launch: the first caller asking for a set of URLs and queries launches the job, callers asking for the same set while it is in flight share it.
+	 * The job is queued by {@link EvaluationAdmission} until admitted, the ticket reserved for it being bound to this thread while the job launcher submits it
+	 * @return the evaluation of the given job parameters
+	 */
+	private InFlightEvaluation launch (JobParameters jobParameters, EvaluationClient client) throws JobExecutionAlreadyRunningException, JobRestartException, JobInstanceAlreadyCompleteException, JobParametersInvalidException {
+		List<String> evaluationKey = InFlightEvaluations.keyOf(jobParameters);
+		InFlightEvaluation evaluation = new InFlightEvaluation();
+		InFlightEvaluation inFlightEvaluation = inFlightEvaluations.register(evaluationKey, evaluation);
+		if (inFlightEvaluation != null)
+			return inFlightEvaluation;
+		try {
+			EvaluationAdmission.Ticket ticket = evaluationAdmission.reserve(client, jobParameters.getParameters().entrySet().stream()
+					.filter(entry -> BatchProcessingConfiguration.isCsvFileUrlKey(entry.getKey()))
+					.map(entry -> entry.getValue().toString())
+					.collect(Collectors.toList()));
+			evaluationAdmission.bind(ticket);
+			try {
+				inFlightEvaluations.launched(evaluationKey, evaluation, asyncJobLauncher.run(job, jobParameters));
+			} catch (JobExecutionAlreadyRunningException | JobRestartException | JobInstanceAlreadyCompleteException | JobParametersInvalidException | RuntimeException e) {
+				evaluationAdmission.cancel(ticket);
+				throw e;
+			} finally {
+				evaluationAdmission.unbind();
+			}
+		} catch (JobExecutionAlreadyRunningException | JobRestartException | JobInstanceAlreadyCompleteException | JobParametersInvalidException | RuntimeException e) {
+			inFlightEvaluations.fail(evaluationKey, evaluation, e);
+			throw e;
+		}
+		return evaluation;
+	}
+	
+	/**
+	 * Waits for a job execution shared through an {@link InFlightEvaluation}, the exception raised when launching the job is thrown to every caller sharing it
+	 */
+	private static JobExecution await (CompletableFuture<JobExecution> jobExecution) throws JobExecutionAlreadyRunningException, JobRestartException, JobInstanceAlreadyCompleteException, JobParametersInvalidException {
+		try {
+			return jobExecution.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the evaluation", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof JobParametersInvalidException)
+				throw (JobParametersInvalidException) cause;
+			if (cause instanceof JobExecutionAlreadyRunningException)
+				throw (JobExecutionAlreadyRunningException) cause;
+			if (cause instanceof JobInstanceAlreadyCompleteException)
+				throw (JobInstanceAlreadyCompleteException) cause;
+			if (cause instanceof JobRestartException)
+				throw (JobRestartException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+	
+	/**
+	 * @return the message of an evaluation whose job ended without being completed: its status and the first failure of the job or of its steps, if any
+	 */
+	private static String failureMessageOf (JobExecution jobExecution) {
+		String message = String.format("Evaluation %d ended with status %s", jobExecution.getId(), jobExecution.getStatus());
+		List<Throwable> failures = jobExecution.getAllFailureExceptions();
+		return failures.isEmpty() ? message : message + ": " + failures.get(0).getMessage();
+	}
+	
+	/**
+	 * @return the URLs, queries (under {@link BatchProcessingConfiguration#QUERY_KEY_PREFIX}) and approximation error (if any) of the given request as job parameters, 
+	 * along with a unique {@link BatchProcessingConfiguration#RUN_ID_KEY} so that every run creates a new job instance
+	 */
+	private JobParameters toJobParameters (EvaluationRequest request) {
+		Map<String, JobParameter> parameters = request.getCsvFileUrls().entrySet().stream().collect(
+				Collectors.toMap(Map.Entry::getKey, entry -> new JobParameter(entry.getValue().toString()))
+			);
+		request.getQueries().forEach((name, definition) -> parameters.put(BatchProcessingConfiguration.QUERY_KEY_PREFIX + name, new JobParameter(definition)));
+		if (request.getApproximationError() != null)
+			parameters.put(BatchProcessingConfiguration.APPROXIMATION_ERROR_KEY, new JobParameter(request.getApproximationError().trim()));
+		parameters.put(BatchProcessingConfiguration.RUN_ID_KEY, new JobParameter(nextRunId()));
+		return new JobParameters(parameters);
+	}
+	
+	/**
+	 * @return the current time in milliseconds, or the previous run id plus one if several runs are launched within the same millisecond
+	 */
+	private long nextRunId () {
+		long now = System.currentTimeMillis();
+		return lastRunId.accumulateAndGet(now, (last, current) -> Math.max(last + 1, current));
 	}
 }
@@ -0,0 +1,159 @@
+package io.elgayed.processing;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import io.elgayed.cache.ColumnarSourceFile;
+import io.elgayed.dictionary.NameDictionary;
+import io.elgayed.dictionary.SpeechDictionary;
+import io.elgayed.model.Speech;
+
+/**
+ * Reads the speeches of a CSV source from its columnar file (see {@link ColumnarSourceFile}) instead of parsing the source:
+ * every block is read with one positional read and its columns are copied into int and long arrays with bulk buffer copies.
+ * The speaker and theme ids of the file are translated once into ids of the job's dictionary, so that speeches are encoded without any name lookup.
+ *
+ * Every block but the last one holding the same number of rows, a restarted reader moves to the block of the next speech without reading the previous blocks
+ */
+public class ColumnarSpeechItemReader extends AbstractItemCountingItemStreamItemReader<Speech> {
+
+	public static final String NAME = ClassUtils.getShortName(ColumnarSpeechItemReader.class);
+	/**
+	 * Key of the number of speeches read in the execution context, it tells whether a partition read its columnar file before being restarted
+	 */
+	public static final String READ_COUNT_KEY = NAME + ".read.count";
+
+	private Path file;
+	private SpeechDictionary dictionary;
+
+	private FileChannel channel;
+	private long[] blockOffsets;
+	private long blocksEnd;
+	private String[] speakers;
+	private String[] themes;
+	/**
+	 * Ids of the speakers and the themes of the file in the job's dictionary, {@code null} without dictionary
+	 */
+	private int[] speakerIds;
+	private int[] themeIds;
+
+	private final ByteBuffer block = ByteBuffer.allocateDirect(Integer.BYTES + ColumnarSourceFile.BLOCK_ROWS * ColumnarSourceFile.ROW_BYTES);
+	private final int[] blockSpeakers = new int[ColumnarSourceFile.BLOCK_ROWS];
+	private final int[] blockThemes = new int[ColumnarSourceFile.BLOCK_ROWS];
+	private final int[] blockDates = new int[ColumnarSourceFile.BLOCK_ROWS];
+	private final long[] blockWords = new long[ColumnarSourceFile.BLOCK_ROWS];
+	private int nextBlock;
+	private int blockSize;
+	private int row;
+
+	public ColumnarSpeechItemReader() {
+		setName(NAME);
+	}
+
+	/**
+	 * @param file Columnar file of the source, see {@link io.elgayed.cache.ColumnarSourceStore#find(String, io.elgayed.cache.SourceValidator)}
+	 */
+	public void setFile(Path file) {
+		this.file = file;
+	}
+
+	/**
+	 * @param dictionary Dictionary used to encode the speakers and the themes of the speeches read
+	 */
+	public void setDictionary(SpeechDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	@Override
+	protected void doOpen() throws Exception {
+		Assert.notNull(file, "A columnar file is required");
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		ColumnarSourceFile header = ColumnarSourceFile.readHeader(channel);
+		blockOffsets = header.readBlockIndex(channel);
+		blocksEnd = header.getBlocksEnd();
+		speakers = header.readSpeakers(channel);
+		themes = header.readThemes(channel);
+		if (dictionary != null) {
+			speakerIds = idsOf(speakers, dictionary.speakers());
+			themeIds = idsOf(themes, dictionary.themes());
+		}
+		nextBlock = 0;
+		blockSize = 0;
+		row = 0;
+	}
+
+	/**
+	 * @return the ids of the given names in the dictionary, the names are replaced by the dictionary's String instances so that speeches share them
+	 */
+	private static int[] idsOf(String[] names, NameDictionary dictionary) {
+		int[] ids = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			ids[i] = dictionary.idOf(names[i]);
+			names[i] = dictionary.nameOf(ids[i]);
+		}
+		return ids;
+	}
+
+	@Override
+	protected Speech doRead() throws Exception {
+		if (row == blockSize) {
+			if (nextBlock == blockOffsets.length)
+				return null;
+			readBlock(nextBlock++);
+		}
+		Speech speech = new Speech();
+		int speaker = blockSpeakers[row];
+		int theme = blockThemes[row];
+		speech.setSpeaker(speakers[speaker]);
+		speech.setTheme(themes[theme]);
+		if (speakerIds != null) {
+			speech.setSpeakerId(speakerIds[speaker]);
+			speech.setThemeId(themeIds[theme]);
+		}
+		speech.setDate(blockDates[row]);
+		speech.setWords(blockWords[row]);
+		row++;
+		return speech;
+	}
+
+	private void readBlock(int index) throws Exception {
+		block.clear();
+		long offset = blockOffsets[index];
+		long end = index + 1 < blockOffsets.length ? blockOffsets[index + 1] : blocksEnd;
+		block.limit((int) (end - offset));
+		ColumnarSourceFile.read(channel, offset, block);
+		blockSize = block.getInt();
+		block.asIntBuffer().get(blockSpeakers, 0, blockSize).get(blockThemes, 0, blockSize).get(blockDates, 0, blockSize);
+		block.position(block.position() + 3 * blockSize * Integer.BYTES);
+		block.asLongBuffer().get(blockWords, 0, blockSize);
+		row = 0;
+	}
+
+	/**
+	 * Moves to the block of the speech following the last committed one, instead of reading the previous blocks
+	 */
+	@Override
+	protected void jumpToItem(int itemIndex) throws Exception {
+		int index = itemIndex / ColumnarSourceFile.BLOCK_ROWS;
+		if (index >= blockOffsets.length) {
+			nextBlock = blockOffsets.length;
+			return;
+		}
+		readBlock(index);
+		nextBlock = index + 1;
+		row = Math.min(itemIndex % ColumnarSourceFile.BLOCK_ROWS, blockSize);
+	}
+
+	@Override
+	protected void doClose() throws Exception {
+		if (channel != null)
+			channel.close();
+		channel = null;
+	}
+}
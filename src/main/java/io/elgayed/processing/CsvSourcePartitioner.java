@@ -0,0 +1,583 @@
+package io.elgayed.processing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.UrlResource;
+import org.springframework.util.Assert;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.ResourceUtils;
+
+import io.elgayed.cache.CachedPrefix;
+import io.elgayed.cache.EvaluationCache;
+import io.elgayed.cache.SourceValidator;
+import io.elgayed.metrics.BatchMetrics;
+import io.elgayed.remote.HttpRangeInputStream;
+import io.elgayed.remote.RemoteResourceClient;
+import io.elgayed.remote.RemoteResponse;
+import io.elgayed.statistics.SpeechQuery;
+
+/**
+ * Creates the partitions of the CSV files processing step, every partition's step execution context holds the URL of its CSV source under {@link BatchProcessingConfiguration#CSV_FILE_URL_KEY}:
+ * <ul>
+ * <li>Local files ({@code file:} URLs) are cut into byte ranges of about {@code localSplitBytes} bytes, aligned to line boundaries, 
+ * one partition per range. The range bounds are held under {@link BatchProcessingConfiguration#CSV_FILE_RANGE_START_KEY} and 
+ * {@link BatchProcessingConfiguration#CSV_FILE_RANGE_END_KEY}, so that every range is memory mapped and parsed by {@link MappedSpeechCsvItemReader} on its own worker thread</li>
+ * <li>HTTP(S) sources are first requested with a {@code HEAD} request: if the server accepts range requests ({@code Accept-Ranges: bytes}) and the source
+ * is larger than {@code remoteSplitBytes}, it is cut into byte ranges of {@code remoteSplitBytes} bytes, one partition per range. Remote ranges are not aligned to line boundaries,
+ * {@link HttpRangeInputStream} aligns them while reading. The source validator is held under {@link BatchProcessingConfiguration#CSV_FILE_ENTITY_TAG_KEY} and 
+ * {@link BatchProcessingConfiguration#CSV_FILE_LAST_MODIFIED_KEY}, so that every range is read from the same version of the source</li>
+ * <li>Other sources, and remote sources that cannot be split, are read sequentially in a single partition</li>
+ * </ul>
+ * Sources that lines are appended to are read incrementally: once an evaluation is completed, the content it read from a local file or a remote source 
+ * accepting range requests is cached as a {@link CachedPrefix} of the source, along with the partial accumulator of its speeches (see {@link StatisticsReportAggregator}).
+ * The next evaluation asking the same queries gets one partition covering that prefix, which reuses the cached partial accumulator 
+ * (its context holds the prefix validator under {@link BatchProcessingConfiguration#CSV_FILE_PREFIX_TAG_KEY}), and the ranges of the appended tail only.
+ * Entity tags and modification dates change whenever lines are appended, so a prefix is validated by its length and a digest of its content instead:
+ * if the source is shorter than the prefix or its content up to the end of the prefix changed, the source was rewritten and it is read again from the start.
+ * A local file is not digested here: every range is digested by the partition reading it, see {@link MappedSpeechCsvItemReader}, and the validator of the prefix 
+ * lists the end and the digest of every range it was read in, see {@link #localPrefixValidatorOf(Collection)}. Only a cached prefix is digested again 
+ * when the file is partitioned, range by range in parallel, the appended tail is only read by its partitions. The prefix of a remote source is only digested over
+ * its last {@link #REMOTE_PREFIX_DIGEST_BYTES} bytes, to spare reading it again: a remote source whose earlier lines are rewritten without getting shorter
+ * is not detected, so remote prefixes are only cached if {@code remotePrefixes} is enabled, for sources that are only ever appended to.
+ * Only content ending with a line feed is cached as a prefix, so that an appended line is never split between the prefix and the tail.
+ * 
+ * A source that does not exist (a remote source answering the {@code HEAD} request with an error status) is skipped: a warning is logged,
+ * {@link BatchMetrics#MISSING_COUNTER} is incremented and the source has no partition, as the readers skip a source that does not exist
+ */
+public class CsvSourcePartitioner implements Partitioner {
+	
+	private static final Log LOGGER = LogFactory.getLog(CsvSourcePartitioner.class);
+	private static final String PARTITION_KEY = "partition";
+	private static final String CONTENT_LENGTH = "Content-Length";
+	private static final String ACCEPT_RANGES = "Accept-Ranges";
+	private static final String ETAG = "ETag";
+	private static final String LAST_MODIFIED = "Last-Modified";
+	private static final String RANGE = "Range";
+	private static final String IF_RANGE = "If-Range";
+	private static final String ACCEPT_ENCODING = "Accept-Encoding";
+	private static final String IDENTITY = "identity";
+	/**
+	 * Number of bytes preceding the end of the prefix of a remote source whose digest validates the prefix
+	 */
+	private static final int REMOTE_PREFIX_DIGEST_BYTES = 4 * 1024;
+	/**
+	 * Size of the block read to digest the ranges of the cached prefix of a local file
+	 */
+	private static final int DIGEST_BLOCK_SIZE = 1024 * 1024;
+	/**
+	 * Size of the block read to find the line feed following a range bound
+	 */
+	private static final int ALIGNMENT_BLOCK_SIZE = 8 * 1024;
+	/**
+	 * A range ends after the line crossing its nominal end, this bound leaves room for that line in a memory mapped buffer
+	 */
+	private static final long MAX_SPLIT_BYTES = 1L << 30;
+	/**
+	 * Keys of the step execution context of a partition set by this partitioner, the other keys are the restart state of the partition's reader and writer
+	 */
+	private static final Set<String> PARTITION_KEYS = Set.of(BatchProcessingConfiguration.CSV_FILE_URL_KEY, 
+			BatchProcessingConfiguration.CSV_FILE_RANGE_START_KEY, BatchProcessingConfiguration.CSV_FILE_RANGE_END_KEY,
+			BatchProcessingConfiguration.CSV_FILE_ENTITY_TAG_KEY, BatchProcessingConfiguration.CSV_FILE_LAST_MODIFIED_KEY,
+			BatchProcessingConfiguration.CSV_FILE_PREFIX_TAG_KEY, BatchProcessingConfiguration.CSV_FILE_END_KEY, BatchProcessingConfiguration.CSV_FILE_END_TAG_KEY);
+	
+	private final Collection<String> csvUrls;
+	private final long localSplitBytes;
+	private final long remoteSplitBytes;
+	private final RemoteResourceClient remoteResourceClient;
+	private final EvaluationCache evaluationCache;
+	private final Collection<SpeechQuery> answeredQueries;
+	private final boolean remotePrefixes;
+	private final BatchMetrics batchMetrics;
+	
+	/**
+	 * @param csvUrls URLs of the CSV sources, duplicates are processed once
+	 * @param localSplitBytes Approximate size of the ranges local files are cut into
+	 * @param remoteSplitBytes Size of the ranges remote sources are cut into
+	 * @param remoteResourceClient Client sending the {@code HEAD} and range requests to remote sources
+	 * @param evaluationCache Cache of the prefixes of the sources
+	 * @param answeredQueries Queries answered by the evaluation, only the prefixes answering them are reused
+	 * @param remotePrefixes Whether remote sources are read incrementally, their prefixes being only validated by their last bytes
+	 * @param batchMetrics Meters counting the sources that do not exist
+	 */
+	public CsvSourcePartitioner(Collection<String> csvUrls, long localSplitBytes, long remoteSplitBytes, RemoteResourceClient remoteResourceClient,
+			EvaluationCache evaluationCache, Collection<SpeechQuery> answeredQueries, boolean remotePrefixes, BatchMetrics batchMetrics) {
+		Assert.isTrue(localSplitBytes > 0 && localSplitBytes <= MAX_SPLIT_BYTES, "Split size must be positive and at most " + MAX_SPLIT_BYTES + " bytes");
+		Assert.isTrue(remoteSplitBytes > 0, "Split size must be positive");
+		this.csvUrls = new LinkedHashSet<>(csvUrls);
+		this.localSplitBytes = localSplitBytes;
+		this.remoteSplitBytes = remoteSplitBytes;
+		this.remoteResourceClient = remoteResourceClient;
+		this.evaluationCache = evaluationCache;
+		this.answeredQueries = answeredQueries;
+		this.remotePrefixes = remotePrefixes;
+		this.batchMetrics = batchMetrics;
+	}
+	
+	@Override
+	public Map<String, ExecutionContext> partition(int gridSize) {
+		Map<String, ExecutionContext> partitions = new HashMap<>();
+		for (String csvUrl : csvUrls) {
+			try {
+				UrlResource resource = new UrlResource(csvUrl);
+				String url = resource.getURL().toExternalForm();
+				if (!isHttp(resource) && !resource.exists())
+					skipMissing(url, "Input resource does not exist " + resource.getDescription());
+				else if (ResourceUtils.isFileURL(resource.getURL()))
+					partitionFile(partitions, resource.getFile(), url);
+				else if (isHttp(resource))
+					partitionRemote(partitions, resource, url);
+				else
+					addPartition(partitions, sourceContext(url));
+			} catch (MalformedURLException e) {
+				// this exception should never be thrown since JobParametersValidator guarantees that URLs will be valid at this point
+				throw new IllegalArgumentException(e);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return partitions;
+	}
+	
+	private void partitionFile(Map<String, ExecutionContext> partitions, File file, String url) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			CachedPrefix prefix = prefixOf(url, size);
+			//only content ending with a line feed can be appended to, its ranges are then digested by the partitions reading them
+			boolean appendable = lastByte(channel, size) == '\n';
+			long start = 0;
+			if (prefix != null && prefix.getValidator().equals(localPrefixValidatorOf(channel, prefix.getValidator()))) {
+				addPartition(partitions, withEnd(prefixContext(url, prefix), size, appendable));
+				start = prefix.getLength();
+				if (start == size)
+					return;
+			}
+			long[] bounds = lineAlignedBounds(channel, start, size, localSplitBytes);
+			for (int i = 0; i + 1 < bounds.length; i++)
+				addPartition(partitions, withEnd(rangeContext(url, bounds[i], bounds[i + 1]), size, appendable));
+		}
+	}
+	
+	private void partitionRemote(Map<String, ExecutionContext> partitions, UrlResource resource, String url) throws IOException {
+		RemoteResponse head = remoteResourceClient.head(resource.getURI());
+		head.discard();
+		if (head.getStatusCode() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+			skipMissing(url, "Input resource does not exist " + resource.getDescription() + ", HEAD request answered with status " + head.getStatusCode());
+			return;
+		}
+		String contentLength = head.getHeader(CONTENT_LENGTH);
+		long size = contentLength != null ? Long.parseLong(contentLength.trim()) : -1;
+		if (size >= 0)
+			evaluationCache.putSize(url, size);
+		if (!"bytes".equalsIgnoreCase(head.getHeader(ACCEPT_RANGES)) || size <= 0) {
+			addPartition(partitions, sourceContext(url));
+			return;
+		}
+		String entityTag = head.getHeader(ETAG);
+		String lastModified = head.getHeader(LAST_MODIFIED);
+		String ifRange = HttpRangeInputStream.ifRangeOf(entityTag, lastModified);
+		SourceValidator endValidator = null;
+		CachedPrefix prefix = null;
+		if (remotePrefixes) {
+			endValidator = prefixValidatorOf(size, lastBytes(resource.getURI(), size, ifRange));
+			prefix = prefixOf(url, size);
+			if (prefix != null && !prefix.getValidator().equals(prefix.getLength() == size ? 
+					endValidator : prefixValidatorOf(prefix.getLength(), lastBytes(resource.getURI(), prefix.getLength(), ifRange))))
+				prefix = null;
+		}
+		//small sources are read in a single partition, unless they are read by ranges to be appended to later
+		if (prefix == null && endValidator == null && size <= remoteSplitBytes) {
+			addPartition(partitions, sourceContext(url));
+			return;
+		}
+		long start = 0;
+		if (prefix != null) {
+			addPartition(partitions, withEnd(withRangeValidator(prefixContext(url, prefix), entityTag, lastModified), size, endValidator));
+			start = prefix.getLength();
+		}
+		for (; start < size; start += remoteSplitBytes) {
+			ExecutionContext context = rangeContext(url, start, Math.min(size, start + remoteSplitBytes));
+			addPartition(partitions, withEnd(withRangeValidator(context, entityTag, lastModified), size, endValidator));
+		}
+	}
+	
+	/**
+	 * Skips a source that does not exist, it gets no partition
+	 */
+	private void skipMissing(String url, String message) {
+		LOGGER.warn(message);
+		batchMetrics.recordMissingSource(BatchMetrics.tagsOf(BatchProcessingConfiguration.CSV_FILES_BATCH_PROCESSING_JOB_NAME, url));
+	}
+	
+	/**
+	 * @return the cached prefix of the given source if it answers the evaluation's queries and the source is not shorter, or {@code null}
+	 */
+	private CachedPrefix prefixOf(String url, long size) {
+		CachedPrefix prefix = evaluationCache.getPrefix(url);
+		return prefix != null && prefix.getLength() <= size && prefix.answers(answeredQueries) ? prefix : null;
+	}
+	
+	/**
+	 * @return the bytes of a remote source preceding the given offset, at most {@link #REMOTE_PREFIX_DIGEST_BYTES}, 
+	 * or no byte if they cannot be requested from the representation of the source the partitions are cut from
+	 */
+	private byte[] lastBytes(URI uri, long end, String ifRange) throws IOException {
+		long start = Math.max(0, end - REMOTE_PREFIX_DIGEST_BYTES);
+		Map<String, String> headers = new HashMap<>();
+		headers.put(RANGE, "bytes=" + start + "-" + (end - 1));
+		headers.put(ACCEPT_ENCODING, IDENTITY);
+		if (ifRange != null)
+			headers.put(IF_RANGE, ifRange);
+		RemoteResponse response = remoteResourceClient.get(uri, headers);
+		if (response.getStatusCode() != HttpURLConnection.HTTP_PARTIAL) {
+			response.discard();
+			return new byte[0];
+		}
+		try (InputStream body = response.getBody()) {
+			byte[] bytes = body.readNBytes((int) (end - start));
+			return bytes.length == end - start ? bytes : new byte[0];
+		}
+	}
+	
+	/**
+	 * Digests the ranges of a local file listed by the validator of its cached prefix again, in parallel
+	 * @return the validator of the current content of those ranges, or {@code null} if the given validator is not the validator of a local prefix
+	 */
+	private static SourceValidator localPrefixValidatorOf(FileChannel channel, SourceValidator cachedValidator) {
+		String[] rangeDigests = cachedValidator.getEntityTag().split(",");
+		long[] bounds = new long[rangeDigests.length + 1];
+		for (int i = 0; i < rangeDigests.length; i++) {
+			int separator = rangeDigests[i].indexOf(':');
+			if (separator < 0)
+				return null;
+			bounds[i + 1] = Long.parseLong(rangeDigests[i].substring(0, separator));
+		}
+		List<String> digests = IntStream.range(0, rangeDigests.length).parallel()
+				.mapToObj(i -> rangeDigestOf(bounds[i + 1], digestOf(channel, bounds[i], bounds[i + 1])))
+				.collect(Collectors.toList());
+		return localPrefixValidatorOf(digests);
+	}
+	
+	/**
+	 * @return the hexadecimal digest of the bytes of a file from the given start to the given end
+	 */
+	private static String digestOf(FileChannel channel, long start, long end) {
+		try {
+			MessageDigest digest = md5();
+			digest(channel, start, end, digest);
+			return hexDigestOf(digest);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * @return the hexadecimal digest of the remaining bytes of the given buffer, its position is left untouched
+	 */
+	static String digestOf(ByteBuffer bytes) {
+		MessageDigest digest = md5();
+		digest.update(bytes.duplicate());
+		return hexDigestOf(digest);
+	}
+	
+	/**
+	 * Updates the given digest with the bytes of a file from the given start to the given end
+	 */
+	private static void digest(FileChannel channel, long start, long end, MessageDigest digest) throws IOException {
+		ByteBuffer block = ByteBuffer.allocateDirect((int) Math.min(DIGEST_BLOCK_SIZE, Math.max(1, end - start)));
+		for (long position = start; position < end; ) {
+			block.clear().limit((int) Math.min(block.capacity(), end - position));
+			int read = channel.read(block, position);
+			if (read < 0)
+				throw new IOException("Unexpected end of file while digesting it");
+			digest.update(block.flip());
+			position += read;
+		}
+	}
+	
+	/**
+	 * @return the byte of a file preceding the given offset, or {@code -1} if the offset is 0
+	 */
+	private static int lastByte(FileChannel channel, long end) throws IOException {
+		if (end == 0)
+			return -1;
+		ByteBuffer lastByte = ByteBuffer.allocate(1);
+		return channel.read(lastByte, end - 1) == 1 ? lastByte.get(0) : -1;
+	}
+	
+	/**
+	 * @return the hexadecimal digest of the bytes the given digest was updated with so far, the digest itself can be updated further
+	 */
+	private static String hexDigestOf(MessageDigest digest) {
+		try {
+			return String.format("%032x", new BigInteger(1, ((MessageDigest) digest.clone()).digest()));
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private static MessageDigest md5() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * @param end Offset following the last byte of a prefix of a source
+	 * @param lastBytes Last bytes of the prefix
+	 * @return the validator of the prefix of a remote source, see {@link #prefixValidatorOf(long, int, String)}
+	 */
+	static SourceValidator prefixValidatorOf(long end, byte[] lastBytes) {
+		if (lastBytes.length == 0)
+			return null;
+		return prefixValidatorOf(end, lastBytes[lastBytes.length - 1], DigestUtils.md5DigestAsHex(lastBytes));
+	}
+	
+	/**
+	 * @param end Offset following the last byte of a prefix of a source
+	 * @param lastByte Last byte of the prefix, or {@code -1} if it is empty
+	 * @param digest Hexadecimal digest of the prefix
+	 * @return the validator of the prefix: its length and its digest, or {@code null} if the prefix does not end with a line feed,
+	 * it cannot be appended to then
+	 */
+	static SourceValidator prefixValidatorOf(long end, int lastByte, String digest) {
+		if (lastByte != '\n')
+			return null;
+		return SourceValidator.of(end + "-" + digest, null);
+	}
+	
+	private static ExecutionContext prefixContext(String url, CachedPrefix prefix) {
+		ExecutionContext context = rangeContext(url, 0, prefix.getLength());
+		context.putString(BatchProcessingConfiguration.CSV_FILE_PREFIX_TAG_KEY, prefix.getValidator().getEntityTag());
+		return context;
+	}
+	
+	private static ExecutionContext withRangeValidator(ExecutionContext context, String entityTag, String lastModified) {
+		if (entityTag != null)
+			context.putString(BatchProcessingConfiguration.CSV_FILE_ENTITY_TAG_KEY, entityTag);
+		if (lastModified != null)
+			context.putString(BatchProcessingConfiguration.CSV_FILE_LAST_MODIFIED_KEY, lastModified);
+		return context;
+	}
+	
+	/**
+	 * Marks the partition as one of the partitions reading a source up to the given end, whose content is cached as the source's prefix once the evaluation is completed
+	 * @param endValidator Validator of the source content up to the end, or {@code null} if it cannot be cached as a prefix
+	 */
+	private static ExecutionContext withEnd(ExecutionContext context, long end, SourceValidator endValidator) {
+		if (endValidator != null)
+			withEnd(context, end, true).putString(BatchProcessingConfiguration.CSV_FILE_END_TAG_KEY, endValidator.getEntityTag());
+		return context;
+	}
+	
+	/**
+	 * Marks the partition as one of the partitions reading a local file up to the given end, see {@link #withEnd(ExecutionContext, long, SourceValidator)}:
+	 * the validator of the content is made of the digests of the ranges read, see {@link #rangeDigestOf(ExecutionContext)}
+	 * @param appendable Whether the content up to the end can be cached as a prefix
+	 */
+	private static ExecutionContext withEnd(ExecutionContext context, long end, boolean appendable) {
+		if (appendable)
+			context.putLong(BatchProcessingConfiguration.CSV_FILE_END_KEY, end);
+		return context;
+	}
+	
+	private static ExecutionContext sourceContext(String url) {
+		ExecutionContext context = new ExecutionContext();
+		context.putString(BatchProcessingConfiguration.CSV_FILE_URL_KEY, url);
+		return context;
+	}
+	
+	private static ExecutionContext rangeContext(String url, long start, long end) {
+		ExecutionContext context = sourceContext(url);
+		context.putLong(BatchProcessingConfiguration.CSV_FILE_RANGE_START_KEY, start);
+		context.putLong(BatchProcessingConfiguration.CSV_FILE_RANGE_END_KEY, end);
+		return context;
+	}
+	
+	private static void addPartition(Map<String, ExecutionContext> partitions, ExecutionContext context) {
+		partitions.put(PARTITION_KEY + partitions.size(), context);
+	}
+	
+	private static boolean isHttp(UrlResource resource) throws IOException {
+		String protocol = resource.getURL().getProtocol();
+		return "http".equalsIgnoreCase(protocol) || "https".equalsIgnoreCase(protocol);
+	}
+	
+	/**
+	 * @return the validator of the source held by the step execution context of a partition covering a range of a remote source, or {@code null}
+	 */
+	public static SourceValidator rangeValidatorOf(ExecutionContext context) {
+		return SourceValidator.of(
+				(String) context.get(BatchProcessingConfiguration.CSV_FILE_ENTITY_TAG_KEY), 
+				(String) context.get(BatchProcessingConfiguration.CSV_FILE_LAST_MODIFIED_KEY));
+	}
+	
+	/**
+	 * @return {@code true} if the partition of the given step execution context covers the cached prefix of a source
+	 */
+	public static boolean isPrefix(ExecutionContext context) {
+		return context.containsKey(BatchProcessingConfiguration.CSV_FILE_PREFIX_TAG_KEY);
+	}
+	
+	/**
+	 * @return the validator of the cached prefix covered by the partition of the given step execution context, or {@code null}
+	 */
+	public static SourceValidator prefixValidatorOf(ExecutionContext context) {
+		return SourceValidator.of((String) context.get(BatchProcessingConfiguration.CSV_FILE_PREFIX_TAG_KEY), null);
+	}
+	
+	/**
+	 * @return the validator of the content of a remote source read by the partitions of an evaluation, held by the step execution context of every such partition, 
+	 * or {@code null} if the content cannot be cached as the source's prefix or is read from a local file, see {@link #rangeDigestOf(ExecutionContext)}
+	 * @see #endOf(ExecutionContext)
+	 */
+	public static SourceValidator endValidatorOf(ExecutionContext context) {
+		return SourceValidator.of((String) context.get(BatchProcessingConfiguration.CSV_FILE_END_TAG_KEY), null);
+	}
+	
+	/**
+	 * @return the end of the content of a source read by the partitions of an evaluation, see {@link #endValidatorOf(ExecutionContext)}
+	 */
+	public static long endOf(ExecutionContext context) {
+		return context.getLong(BatchProcessingConfiguration.CSV_FILE_END_KEY);
+	}
+	
+	/**
+	 * @return {@code true} if the content of a source read by the partitions of an evaluation, the partition of the given step execution context being one of them,
+	 * is cached as the source's prefix once the evaluation is completed
+	 */
+	public static boolean isEnd(ExecutionContext context) {
+		return context.containsKey(BatchProcessingConfiguration.CSV_FILE_END_KEY);
+	}
+	
+	/**
+	 * @param context Step execution context of a partition reading a local file up to an end, see {@link #isEnd(ExecutionContext)}
+	 * @return the digests of the content read by the partition, as listed by the validator of a prefix of the file: the end of its range
+	 * and the digest saved by its reader (see {@link MappedSpeechCsvItemReader#DIGEST_KEY}), or the validator of the cached prefix covered by the partition 
+	 * if it was not read, or {@code null} if the range was not digested, e.g. when it was read from its columnar file
+	 */
+	public static String rangeDigestOf(ExecutionContext context) {
+		if (context.containsKey(MappedSpeechCsvItemReader.DIGEST_KEY))
+			return rangeDigestOf(context.getLong(BatchProcessingConfiguration.CSV_FILE_RANGE_END_KEY), context.getString(MappedSpeechCsvItemReader.DIGEST_KEY));
+		return isPrefix(context) ? context.getString(BatchProcessingConfiguration.CSV_FILE_PREFIX_TAG_KEY) : null;
+	}
+	
+	private static String rangeDigestOf(long end, String digest) {
+		return end + ":" + digest;
+	}
+	
+	/**
+	 * @param rangeDigests Digests of the consecutive ranges of the content of a local file from its start, see {@link #rangeDigestOf(ExecutionContext)}
+	 * @return the validator of the content as a prefix of the file
+	 */
+	public static SourceValidator localPrefixValidatorOf(Collection<String> rangeDigests) {
+		return SourceValidator.of(String.join(",", rangeDigests), null);
+	}
+	
+	/**
+	 * @param context Step execution context of a partition
+	 * @return the key identifying the partition's source in the {@link io.elgayed.cache.EvaluationCache}: 
+	 * the CSV source URL, followed by the range bounds for a range of a source
+	 */
+	public static String sourceKeyOf(ExecutionContext context) {
+		String csvUrl = context.getString(BatchProcessingConfiguration.CSV_FILE_URL_KEY);
+		if (!isRange(context))
+			return csvUrl;
+		return csvUrl + "#" + context.getLong(BatchProcessingConfiguration.CSV_FILE_RANGE_START_KEY) 
+				+ "-" + context.getLong(BatchProcessingConfiguration.CSV_FILE_RANGE_END_KEY);
+	}
+	
+	/**
+	 * @return {@code true} if the partition of the given step execution context covers a range of a source
+	 */
+	public static boolean isRange(ExecutionContext context) {
+		return context.containsKey(BatchProcessingConfiguration.CSV_FILE_RANGE_START_KEY);
+	}
+	
+	/**
+	 * Removes the restart state saved in the step execution context of a partition, so that the partition is processed from the start
+	 * @param context Step execution context of a partition
+	 */
+	public static void clearRestartState(ExecutionContext context) {
+		List<String> restartKeys = context.entrySet().stream()
+				.map(Map.Entry::getKey)
+				.filter(key -> !PARTITION_KEYS.contains(key))
+				.collect(Collectors.toList());
+		restartKeys.forEach(context::remove);
+	}
+	
+	/**
+	 * Cuts a file into ranges of about {@code splitBytes} bytes, every range but the last one ends right after a line feed
+	 * @return the bounds of the ranges: the first one is 0 and the last one is the file size, range {@code i} starts at {@code bounds[i]} (inclusive)
+	 * and ends at {@code bounds[i + 1]} (exclusive)
+	 */
+	static long[] lineAlignedBounds(File file, long splitBytes) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return lineAlignedBounds(channel, 0, channel.size(), splitBytes);
+		}
+	}
+	
+	/**
+	 * Cuts a part of a file starting at a line start into ranges, see {@link #lineAlignedBounds(File, long)}
+	 * @param start Offset of the first range, a line start
+	 * @param size Offset following the last range
+	 */
+	private static long[] lineAlignedBounds(FileChannel channel, long start, long size, long splitBytes) throws IOException {
+		List<Long> bounds = new ArrayList<>();
+		bounds.add(start);
+		ByteBuffer block = ByteBuffer.allocate(ALIGNMENT_BLOCK_SIZE);
+		long bound = start;
+		while (size - bound > splitBytes) {
+			bound = nextLineStart(channel, bound + splitBytes, size, block);
+			if (bound >= size)
+				break;
+			bounds.add(bound);
+		}
+		bounds.add(size);
+		return bounds.stream().mapToLong(Long::longValue).toArray();
+	}
+	
+	/**
+	 * @return the offset following the first line feed found from {@code position}, or {@code size} if there is none
+	 */
+	private static long nextLineStart(FileChannel channel, long position, long size, ByteBuffer block) throws IOException {
+		while (position < size) {
+			block.clear();
+			int read = channel.read(block, position);
+			if (read <= 0)
+				break;
+			for (int i = 0; i < read; i++) {
+				if (block.get(i) == '\n')
+					return position + i + 1;
+			}
+			position += read;
+		}
+		return size;
+	}
+}
@@ -0,0 +1,329 @@
+package io.elgayed.processing;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ResourceUtils;
+
+import io.elgayed.cache.EvaluationCache;
+import io.elgayed.metrics.BatchMetrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Admission control of the evaluations, in front of {@link BatchProcessingConfiguration#evaluationTaskExecutor(int)}: the job of an evaluation is only handed to the executor once admitted,
+ * so that a burst of evaluations waits in a bounded queue instead of running together and slowing each other down.
+ * <ul>
+ * <li>At most {@code processing.async.max-concurrency} evaluations run at once, and the estimated input bytes of the running evaluations
+ * stay within {@code processing.admission.max-running-bytes}, unless a single evaluation exceeds it on its own: it then runs alone</li>
+ * <li>Evaluations are weighed by the size of their CSV sources: the length of a local file, the {@code Content-Length} of a remote file
+ * as last seen by the partitioner (see {@link EvaluationCache#getSize(String)}), or {@code processing.admission.default-source-bytes} if it is unknown.
+ * Remote sources are not requested here: weighing an evaluation never waits for their servers</li>
+ * <li>Waiting evaluations are queued per client address and admitted in round robin across addresses, in arrival order for an address,
+ * so that a client launching many evaluations does not delay the evaluations of other clients. The clients of an address that give themselves
+ * an id (see {@link EvaluationClient}) share the turns of the address in round robin as well</li>
+ * <li>At most {@code processing.admission.max-queued} evaluations wait, {@code processing.admission.max-queued-per-client} of an address
+ * whatever the ids of its clients: past these bounds an evaluation is rejected with an {@link EvaluationRejectedException} rather than queued.
+ * Ids are given by the clients themselves, so they neither bound nor extend the share of the queue of an address</li>
+ * </ul>
+ * The next evaluation to admit is never skipped for a lighter one, so that heavy evaluations are not starved: the waiting time of a queued evaluation
+ * is bounded by the evaluations ahead of it.
+ *
+ * {@link BatchProcessingService} reserves a {@link Ticket} before launching a job and binds it to the launching thread, see {@link #bind(Ticket)}:
+ * the task submitted by the job launcher on that thread is queued with the ticket, other tasks are handed to the executor right away
+ */
+@Component
+public class EvaluationAdmission implements TaskExecutor {
+
+	private final TaskExecutor evaluationTaskExecutor;
+	private final EvaluationCache evaluationCache;
+	private final BatchMetrics batchMetrics;
+	private final int maxRunning;
+	private final long maxRunningBytes;
+	private final int maxQueued;
+	private final int maxQueuedPerClient;
+	private final long defaultSourceBytes;
+	private final long retryAfterSeconds;
+
+	private final ThreadLocal<Ticket> boundTicket = new ThreadLocal<>();
+	/**
+	 * Queued tickets per client address, addresses are ordered by their turn: the address of an admitted ticket moves to the end
+	 */
+	private final Map<String, AddressQueue> queues = new LinkedHashMap<>();
+	private int queued;
+	private int running;
+	private long runningBytes;
+
+	public EvaluationAdmission(TaskExecutor evaluationTaskExecutor,
+			EvaluationCache evaluationCache,
+			BatchMetrics batchMetrics,
+			@Value("${processing.async.max-concurrency}") int maxRunning,
+			@Value("${processing.admission.max-running-bytes}") long maxRunningBytes,
+			@Value("${processing.admission.max-queued}") int maxQueued,
+			@Value("${processing.admission.max-queued-per-client}") int maxQueuedPerClient,
+			@Value("${processing.admission.default-source-bytes}") long defaultSourceBytes,
+			@Value("${processing.admission.retry-after-seconds}") long retryAfterSeconds) {
+		this.evaluationTaskExecutor = evaluationTaskExecutor;
+		this.evaluationCache = evaluationCache;
+		this.batchMetrics = batchMetrics;
+		this.maxRunning = maxRunning;
+		this.maxRunningBytes = maxRunningBytes;
+		this.maxQueued = maxQueued;
+		this.maxQueuedPerClient = maxQueuedPerClient;
+		this.defaultSourceBytes = defaultSourceBytes;
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	/**
+	 * Reserves a place in the queue of the address of the given client for an evaluation of the given CSV sources
+	 * @param client Client launching the evaluation, {@link EvaluationClient#DEFAULT} if {@code null}
+	 * @param csvUrls URLs of the CSV sources of the evaluation, they are weighed once the place is reserved
+	 * @return the ticket of the evaluation, to be bound to the thread launching its job, or cancelled if the job is not launched
+	 * @throws EvaluationRejectedException if the queue or the queue of the client's address is full
+	 */
+	public Ticket reserve(EvaluationClient client, Collection<String> csvUrls) {
+		Ticket ticket = new Ticket(client != null ? client : EvaluationClient.DEFAULT);
+		String address = ticket.client.getAddress();
+		synchronized (this) {
+			AddressQueue queue = queues.get(address);
+			if (queued >= maxQueued || queue != null && queue.size >= maxQueuedPerClient) {
+				batchMetrics.recordRejectedEvaluation();
+				throw new EvaluationRejectedException(String.format("Too many evaluations are waiting (%d queued, %d from address %s), retry later",
+						queued, queue != null ? queue.size : 0, address), retryAfterSeconds);
+			}
+			queues.computeIfAbsent(address, key -> new AddressQueue()).add(ticket);
+			queued++;
+		}
+		ticket.weight = weightOf(csvUrls);
+		return ticket;
+	}
+
+	/**
+	 * Binds a ticket to the current thread, the next task submitted by this thread is queued with it
+	 */
+	public void bind(Ticket ticket) {
+		boundTicket.set(ticket);
+	}
+
+	public void unbind() {
+		boundTicket.remove();
+	}
+
+	/**
+	 * Queues the given task with the ticket bound to the current thread, or hands it to the evaluation executor right away if there is none
+	 */
+	@Override
+	public void execute(Runnable task) {
+		Ticket ticket = boundTicket.get();
+		if (ticket == null) {
+			evaluationTaskExecutor.execute(task);
+			return;
+		}
+		boundTicket.remove();
+		ticket.task = task;
+		ticket.queuedSample = batchMetrics.startQueuedEvaluation();
+		dispatch();
+	}
+
+	/**
+	 * Removes a ticket whose job could not be launched from its queue
+	 */
+	public void cancel(Ticket ticket) {
+		String address = ticket.client.getAddress();
+		synchronized (this) {
+			AddressQueue queue = queues.get(address);
+			if (queue == null || !queue.remove(ticket))
+				return;
+			queued--;
+			if (queue.size == 0)
+				queues.remove(address);
+		}
+		dispatch();
+	}
+
+	/**
+	 * Admits the queued tickets in round robin across addresses while the running evaluations leave room for them,
+	 * their tasks are handed to the evaluation executor outside of the lock.
+	 * A task rejected by the executor (it only rejects tasks once shut down) gives its place back without admitting other tickets,
+	 * the rejection is thrown once the other tasks are handed: to the job launcher, if it is the task it submits
+	 */
+	private void dispatch() {
+		Deque<Ticket> admitted = new ArrayDeque<>();
+		synchronized (this) {
+			Ticket next;
+			while (running < maxRunning && (next = nextTicket()) != null) {
+				if (running > 0 && runningBytes + next.weight > maxRunningBytes)
+					break;
+				String address = next.client.getAddress();
+				AddressQueue queue = queues.remove(address);
+				queue.admit(next);
+				if (queue.size > 0)
+					queues.put(address, queue);
+				queued--;
+				running++;
+				runningBytes += next.weight;
+				next.admitted = true;
+				admitted.add(next);
+			}
+		}
+		TaskRejectedException rejection = null;
+		for (Ticket ticket : admitted) {
+			batchMetrics.stopQueuedEvaluation(ticket.queuedSample);
+			Runnable task = ticket.task;
+			try {
+				evaluationTaskExecutor.execute(() -> {
+					try {
+						task.run();
+					} finally {
+						release(ticket);
+					}
+				});
+			} catch (TaskRejectedException e) {
+				free(ticket);
+				rejection = rejection != null ? rejection : e;
+			}
+		}
+		if (rejection != null)
+			throw rejection;
+	}
+
+	/**
+	 * @return the next ticket of the first address in turn, or {@code null} if no queued task is ready, see {@link AddressQueue#nextTicket()}
+	 */
+	private Ticket nextTicket() {
+		for (AddressQueue queue : queues.values()) {
+			Ticket next = queue.nextTicket();
+			if (next != null)
+				return next;
+		}
+		return null;
+	}
+
+	private void release(Ticket ticket) {
+		if (free(ticket))
+			dispatch();
+	}
+
+	/**
+	 * @return {@code true} if the given ticket was running and gave its place back
+	 */
+	private synchronized boolean free(Ticket ticket) {
+		if (!ticket.admitted)
+			return false;
+		ticket.admitted = false;
+		running--;
+		runningBytes -= ticket.weight;
+		return true;
+	}
+
+	/**
+	 * @return the sum of the estimated sizes of the given CSV sources
+	 */
+	private long weightOf(Collection<String> csvUrls) {
+		long weight = 0;
+		for (String csvUrl : InFlightEvaluations.normalize(csvUrls))
+			weight += sizeOf(csvUrl);
+		return weight;
+	}
+
+	/**
+	 * @return the length of a local file, the last known {@code Content-Length} of a remote file, or {@link #defaultSourceBytes} if it is not known
+	 */
+	private long sizeOf(String csvUrl) {
+		try {
+			URL url = new URL(csvUrl);
+			if (ResourceUtils.isFileURL(url))
+				return Files.size(Paths.get(ResourceUtils.toURI(url)));
+			Long size = evaluationCache.getSize(url.toExternalForm());
+			if (size != null)
+				return size;
+		} catch (IOException | URISyntaxException | IllegalArgumentException e) {
+			//the job reports the sources that cannot be read, the evaluation is only weighed here
+		}
+		return defaultSourceBytes;
+	}
+
+	/**
+	 * Queued tickets of a client address, per id of the clients behind it
+	 */
+	private static final class AddressQueue {
+
+		/**
+		 * Queued tickets per client id ({@code null} for the clients without id), ids are ordered by their turn like the addresses
+		 */
+		private final Map<String, Deque<Ticket>> queues = new LinkedHashMap<>();
+		private int size;
+
+		private void add(Ticket ticket) {
+			queues.computeIfAbsent(ticket.client.getId(), key -> new ArrayDeque<>()).add(ticket);
+			size++;
+		}
+
+		/**
+		 * @return the head of the queue of the first client id in turn, or {@code null} if no queued task is ready.
+		 * A head whose task is not submitted yet is being launched: its client keeps its turn and the next client's head is returned
+		 */
+		private Ticket nextTicket() {
+			for (Deque<Ticket> queue : queues.values()) {
+				Ticket head = queue.peek();
+				if (head.task != null)
+					return head;
+			}
+			return null;
+		}
+
+		/**
+		 * Removes the given head returned by {@link #nextTicket()}, its client id moves to the end
+		 */
+		private void admit(Ticket head) {
+			Deque<Ticket> queue = queues.remove(head.client.getId());
+			queue.poll();
+			if (!queue.isEmpty())
+				queues.put(head.client.getId(), queue);
+			size--;
+		}
+
+		/**
+		 * @return {@code true} if the given ticket was queued and is removed
+		 */
+		private boolean remove(Ticket ticket) {
+			Deque<Ticket> queue = queues.get(ticket.client.getId());
+			if (queue == null || !queue.remove(ticket))
+				return false;
+			if (queue.isEmpty())
+				queues.remove(ticket.client.getId());
+			size--;
+			return true;
+		}
+	}
+
+	/**
+	 * Place of an evaluation in the queue of its client, then in the running evaluations once admitted
+	 */
+	public static final class Ticket {
+
+		private final EvaluationClient client;
+		private long weight;
+		/**
+		 * Task running the job, {@code null} until it is submitted by the job launcher
+		 */
+		private volatile Runnable task;
+		private Timer.Sample queuedSample;
+		private boolean admitted;
+
+		private Ticket(EvaluationClient client) {
+			this.client = client;
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package io.elgayed.processing;
+
+import java.util.Objects;
+
+/**
+ * Client launching an evaluation, see {@link EvaluationAdmission}: the address it connects from, and the id it optionally gives itself.
+ *
+ * The address bounds the evaluations a client can have waiting. The id is supplied by the caller, so it only shares the turn of its address
+ * between the clients behind that address (e.g. the users of a gateway): a caller rotating ids does not get more of the queue
+ */
+public final class EvaluationClient {
+
+	/**
+	 * Client of the evaluations launched by the application itself, e.g. the restarts of interrupted evaluations
+	 */
+	public static final EvaluationClient DEFAULT = new EvaluationClient("default", null);
+
+	private final String address;
+	private final String id;
+
+	/**
+	 * @param address Address the client connects from
+	 * @param id Id the client gives itself, or {@code null}
+	 */
+	public EvaluationClient(String address, String id) {
+		this.address = Objects.requireNonNull(address);
+		this.id = id;
+	}
+
+	public String getAddress() {
+		return address;
+	}
+
+	/**
+	 * @return the id the client gives itself, or {@code null}
+	 */
+	public String getId() {
+		return id;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof EvaluationClient))
+			return false;
+		EvaluationClient other = (EvaluationClient) obj;
+		return address.equals(other.address) && Objects.equals(id, other.id);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(address, id);
+	}
+
+	@Override
+	public String toString() {
+		return id != null ? id + "@" + address : address;
+	}
+}
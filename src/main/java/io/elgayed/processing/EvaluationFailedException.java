@@ -0,0 +1,35 @@
+package io.elgayed.processing;
+
+import org.springframework.batch.core.BatchStatus;
+
+/**
+ * Thrown when the job of an evaluation ends without being completed, e.g. when one of its partitions failed: it has no report then.
+ * The evaluation can be restarted from its job execution id, see {@link BatchProcessingService#restartEvaluation(Long, EvaluationClient)}
+ */
+public class EvaluationFailedException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Long jobExecutionId;
+	private final BatchStatus status;
+
+	public EvaluationFailedException(String message, Long jobExecutionId, BatchStatus status) {
+		super(message);
+		this.jobExecutionId = jobExecutionId;
+		this.status = status;
+	}
+
+	/**
+	 * @return the id of the job execution of the evaluation
+	 */
+	public Long getJobExecutionId() {
+		return jobExecutionId;
+	}
+
+	/**
+	 * @return the status the job execution ended with
+	 */
+	public BatchStatus getStatus() {
+		return status;
+	}
+}
@@ -0,0 +1,23 @@
+package io.elgayed.processing;
+
+/**
+ * Thrown when an evaluation cannot be queued because too many evaluations are waiting, see {@link EvaluationAdmission}
+ */
+public class EvaluationRejectedException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long retryAfterSeconds;
+
+	public EvaluationRejectedException(String message, long retryAfterSeconds) {
+		super(message);
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	/**
+	 * @return the number of seconds after which the evaluation may be launched again
+	 */
+	public long getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+}
@@ -0,0 +1,50 @@
+package io.elgayed.processing;
+
+import java.util.Map;
+
+/**
+ * Evaluation asked to {@link BatchProcessingService}: the CSV files to process, the queries to answer in the same scan of the files,
+ * the approximation mode, and the client asking for it
+ */
+public final class EvaluationRequest {
+
+	private final Map<String, String> csvFileUrls;
+	private final Map<String, String> queries;
+	private final String approximationError;
+	private final EvaluationClient client;
+
+	/**
+	 * @param csvFileUrls URLs of the CSV files to be processed, by job parameter name (e.g. {@code url1})
+	 * @param queries Definitions of the queries by name, see {@link io.elgayed.statistics.SpeechQuery#parse(String, String)}, or {@code null} for none.
+	 * If there are queries, the report of the evaluation is a {@link io.elgayed.model.QueryReport} holding the result of every query
+	 * @param approximationError Error bound relative to the total value of a question or query, e.g. {@code 0.001}, or {@code null} for exact answers:
+	 * the speakers with most speeches and the count or sum queries are then answered with fixed size sketches,
+	 * see {@link io.elgayed.statistics.StatisticsReportAccumulator#answeredQueries(java.util.List, double)}
+	 * @param client Client asking for the evaluation, see {@link EvaluationAdmission}, or {@code null} for {@link EvaluationClient#DEFAULT}
+	 */
+	public EvaluationRequest(Map<String, String> csvFileUrls, Map<String, String> queries, String approximationError, EvaluationClient client) {
+		this.csvFileUrls = Map.copyOf(csvFileUrls);
+		this.queries = queries != null ? Map.copyOf(queries) : Map.of();
+		this.approximationError = approximationError;
+		this.client = client != null ? client : EvaluationClient.DEFAULT;
+	}
+
+	public Map<String, String> getCsvFileUrls() {
+		return csvFileUrls;
+	}
+
+	public Map<String, String> getQueries() {
+		return queries;
+	}
+
+	/**
+	 * @return the error bound of the approximated answers, or {@code null} for exact answers
+	 */
+	public String getApproximationError() {
+		return approximationError;
+	}
+
+	public EvaluationClient getClient() {
+		return client;
+	}
+}
@@ -0,0 +1,133 @@
+package io.elgayed.processing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.stereotype.Component;
+
+/**
+ * Registry of the evaluations in flight, keyed by their normalized set of CSV file URLs and their queries, see {@link #normalize(Collection)}.
+ * 
+ * {@link BatchProcessingService} registers an evaluation before launching its job, so that callers asking for the same URLs 
+ * while the job is running share its execution instead of launching another job.
+ * As a {@link JobExecutionListener} of the CSV files processing job, it completes the evaluation's futures when the job starts and when it ends,
+ * the evaluation is unregistered once its job ends, so that later evaluations of the same URLs revalidate their sources.
+ * A job that the job launcher did not run (e.g. its executor rejected it) never ends: its evaluation is completed and unregistered once launched instead
+ */
+@Component
+public class InFlightEvaluations implements JobExecutionListener {
+	
+	private final Map<List<String>, InFlightEvaluation> evaluations = new ConcurrentHashMap<>();
+	
+	/**
+	 * Registers a new evaluation of the given URLs, unless one is already in flight
+	 * @param csvFileUrls Normalized URLs of the evaluation
+	 * @param evaluation Evaluation to register
+	 * @return the evaluation already in flight for the same URLs, or {@code null} if the given evaluation was registered
+	 */
+	public InFlightEvaluation register(List<String> csvFileUrls, InFlightEvaluation evaluation) {
+		return evaluations.putIfAbsent(csvFileUrls, evaluation);
+	}
+	
+	/**
+	 * Unregisters an evaluation whose job could not be launched, the failure is handed to the callers sharing it
+	 */
+	public void fail(List<String> csvFileUrls, InFlightEvaluation evaluation, Exception failure) {
+		evaluations.remove(csvFileUrls, evaluation);
+		evaluation.started.completeExceptionally(failure);
+		evaluation.completed.completeExceptionally(failure);
+	}
+	
+	/**
+	 * Hands the job execution of an evaluation to the callers sharing it as soon as it is created: its job may wait to be admitted before it starts,
+	 * see {@link EvaluationAdmission}. If the job launcher returned an execution that is not running, e.g. that it marked as failed because
+	 * its executor rejected the job, the job never ends: the evaluation is unregistered and completed with that execution
+	 * @param csvFileUrls Key of the evaluation, see {@link #register(List, InFlightEvaluation)}
+	 */
+	public void launched(List<String> csvFileUrls, InFlightEvaluation evaluation, JobExecution jobExecution) {
+		evaluation.started.complete(jobExecution);
+		BatchStatus status = jobExecution.getStatus();
+		if (status == BatchStatus.COMPLETED || status.isGreaterThan(BatchStatus.STOPPING)) {
+			evaluations.remove(csvFileUrls, evaluation);
+			evaluation.completed.complete(jobExecution);
+		}
+	}
+	
+	@Override
+	public void beforeJob(JobExecution jobExecution) {
+		InFlightEvaluation evaluation = evaluations.get(keyOf(jobExecution.getJobParameters()));
+		if (evaluation != null)
+			evaluation.started.complete(jobExecution);
+	}
+	
+	@Override
+	public void afterJob(JobExecution jobExecution) {
+		InFlightEvaluation evaluation = evaluations.remove(keyOf(jobExecution.getJobParameters()));
+		if (evaluation != null) {
+			evaluation.started.complete(jobExecution);
+			evaluation.completed.complete(jobExecution);
+		}
+	}
+	
+	/**
+	 * Normalizes URLs so that evaluations of the same URLs share the same key whatever their order, their query parameter names or their duplicates
+	 * @return the distinct trimmed URLs, sorted
+	 */
+	public static List<String> normalize(Collection<String> csvFileUrls) {
+		return csvFileUrls.stream()
+				.map(String::trim)
+				.distinct()
+				.sorted()
+				.collect(Collectors.toUnmodifiableList());
+	}
+	
+	/**
+	 * @return the normalized URLs of the given job parameters, followed by their queries as {@code query.<name>=<definition>} and their approximation error,
+	 * ordered by key: evaluations of the same URLs asking other queries or in another approximation mode are not shared
+	 */
+	static List<String> keyOf(JobParameters jobParameters) {
+		List<String> key = new ArrayList<>(normalize(jobParameters.getParameters().entrySet().stream()
+				.filter(entry -> BatchProcessingConfiguration.isCsvFileUrlKey(entry.getKey()))
+				.map(entry -> entry.getValue().toString())
+				.collect(Collectors.toList())));
+		jobParameters.getParameters().entrySet().stream()
+				.filter(entry -> entry.getKey().startsWith(BatchProcessingConfiguration.QUERY_KEY_PREFIX) 
+						|| BatchProcessingConfiguration.APPROXIMATION_ERROR_KEY.equals(entry.getKey()))
+				.map(entry -> entry.getKey() + "=" + entry.getValue().toString().trim())
+				.sorted()
+				.forEach(key::add);
+		return List.copyOf(key);
+	}
+	
+	/**
+	 * Evaluation shared by the callers asking for the same URLs while its job is running
+	 */
+	public static class InFlightEvaluation {
+		
+		private final CompletableFuture<JobExecution> started = new CompletableFuture<>();
+		private final CompletableFuture<JobExecution> completed = new CompletableFuture<>();
+		
+		/**
+		 * @return completes with the job execution as soon as it is created, or as soon as the job starts
+		 */
+		public CompletableFuture<JobExecution> getStarted() {
+			return started;
+		}
+		
+		/**
+		 * @return completes with the job execution once the job ends
+		 */
+		public CompletableFuture<JobExecution> getCompleted() {
+			return completed;
+		}
+	}
+}
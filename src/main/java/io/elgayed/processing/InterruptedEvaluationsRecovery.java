@@ -0,0 +1,79 @@
+package io.elgayed.processing;
+
+import java.util.Date;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersInvalidException;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.NoSuchJobExecutionException;
+import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
+import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteException;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.JobRestartException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Recovers the evaluations interrupted by a shutdown of the application: their job executions are left running in the job repository,
+ * so once the application is ready they are marked as failed, which makes their job instances restartable.
+ * When {@code processing.restart-interrupted} is {@code true}, they are then restarted right away (see {@link BatchProcessingService#restartEvaluation(Long, EvaluationClient)}).
+ *
+ * The job repository is expected to be used by this application only: a job execution running in another application sharing it would be marked as failed
+ */
+@Component
+public class InterruptedEvaluationsRecovery {
+
+	private static final Log LOGGER = LogFactory.getLog(InterruptedEvaluationsRecovery.class);
+
+	@Autowired
+	private JobExplorer jobExplorer;
+	@Autowired
+	private JobRepository jobRepository;
+	@Autowired
+	private BatchProcessingService batchProcessingService;
+
+	@Value("${processing.restart-interrupted}")
+	private boolean restartInterrupted;
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void recoverInterruptedEvaluations() {
+		for (JobExecution jobExecution : jobExplorer.findRunningJobExecutions(BatchProcessingConfiguration.CSV_FILES_BATCH_PROCESSING_JOB_NAME)) {
+			markInterrupted(jobExecution);
+			if (!restartInterrupted)
+				continue;
+			try {
+				JobExecution restartedExecution = batchProcessingService.restartEvaluation(jobExecution.getId(), EvaluationClient.DEFAULT);
+				LOGGER.info(String.format("Evaluation %d interrupted by a shutdown is restarted as %d", jobExecution.getId(), restartedExecution.getId()));
+			} catch (NoSuchJobExecutionException | JobExecutionAlreadyRunningException | JobRestartException | JobInstanceAlreadyCompleteException | JobParametersInvalidException
+					| EvaluationRejectedException e) {
+				LOGGER.warn(String.format("Evaluation %d interrupted by a shutdown could not be restarted", jobExecution.getId()), e);
+			}
+		}
+	}
+
+	private void markInterrupted(JobExecution jobExecution) {
+		Date now = new Date();
+		ExitStatus interrupted = ExitStatus.FAILED.addExitDescription("Interrupted by a shutdown of the application");
+		for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+			if (!stepExecution.getStatus().isRunning())
+				continue;
+			stepExecution.setStatus(BatchStatus.FAILED);
+			stepExecution.setExitStatus(interrupted);
+			stepExecution.setEndTime(now);
+			jobRepository.update(stepExecution);
+		}
+		jobExecution.setStatus(BatchStatus.FAILED);
+		jobExecution.setExitStatus(interrupted);
+		jobExecution.setEndTime(now);
+		jobRepository.update(jobExecution);
+		LOGGER.info(String.format("Evaluation %d was interrupted by a shutdown, it is marked as failed", jobExecution.getId()));
+	}
+}
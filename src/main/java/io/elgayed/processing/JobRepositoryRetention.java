@@ -0,0 +1,104 @@
+package io.elgayed.processing;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the job repository from growing without limit: every evaluation creates a new job instance (see {@link BatchProcessingConfiguration#RUN_ID_KEY}),
+ * and every partition saves a snapshot of its partial accumulator in its step execution context so that a restarted job does not process it again,
+ * see {@link StatisticReportWriter}.
+ * <ul>
+ * <li>As a {@link JobExecutionListener} of the CSV files processing job, once a job is completed, it removes the snapshots, source validators 
+ * and spilled run paths from the step execution contexts of its partitions: a completed job instance cannot be restarted</li>
+ * <li>Every {@code processing.repository.purge-interval-ms}, it deletes the job instances completed more than {@code processing.repository.retention-days} ago,
+ * along with all their executions: their status and report cannot be requested anymore, see {@link BatchProcessingService#getEvaluationStatus(Long)}.
+ * Job instances that are not completed are kept, they can be restarted</li>
+ * </ul>
+ */
+@Component
+public class JobRepositoryRetention implements JobExecutionListener {
+
+	private static final Log LOGGER = LogFactory.getLog(JobRepositoryRetention.class);
+	/**
+	 * Keys of the step execution context of a partition only used to restart it, see {@link StatisticReportWriter}
+	 */
+	private static final List<String> RESTART_KEYS = List.of(StatisticReportWriter.PARTIAL_SNAPSHOT_KEY, StatisticReportWriter.SOURCE_VALIDATOR_KEY,
+			StatisticReportWriter.SPILLED_RUNS_KEY);
+
+	private final JobRepository jobRepository;
+	private final JobExplorer jobExplorer;
+	private final JdbcTemplate jdbcTemplate;
+	private final String tablePrefix;
+	private final long retentionDays;
+
+	public JobRepositoryRetention(JobRepository jobRepository, JobExplorer jobExplorer, JdbcTemplate jdbcTemplate,
+			@Value("${spring.batch.table-prefix:BATCH_}") String tablePrefix,
+			@Value("${processing.repository.retention-days}") long retentionDays) {
+		this.jobRepository = jobRepository;
+		this.jobExplorer = jobExplorer;
+		this.jdbcTemplate = jdbcTemplate;
+		this.tablePrefix = tablePrefix;
+		this.retentionDays = retentionDays;
+	}
+
+	@Override
+	public void beforeJob(JobExecution jobExecution) {
+		//nothing to do before the job
+	}
+
+	/**
+	 * Removes the restart state of the partitions of a completed job, including the partitions completed by the previous executions of its job instance
+	 */
+	@Override
+	public void afterJob(JobExecution jobExecution) {
+		if (jobExecution.getStatus() != BatchStatus.COMPLETED)
+			return;
+		for (JobExecution execution : jobExplorer.getJobExecutions(jobExecution.getJobInstance())) {
+			for (StepExecution stepExecution : execution.getStepExecutions()) {
+				if (RESTART_KEYS.stream().noneMatch(stepExecution.getExecutionContext()::containsKey))
+					continue;
+				RESTART_KEYS.forEach(stepExecution.getExecutionContext()::remove);
+				jobRepository.updateExecutionContext(stepExecution);
+			}
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${processing.repository.purge-interval-ms}")
+	public void purgeCompletedJobInstances() {
+		Date completedBefore = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays));
+		List<Long> jobInstanceIds = jdbcTemplate.queryForList(
+				"SELECT DISTINCT JOB_INSTANCE_ID FROM " + tablePrefix + "JOB_EXECUTION WHERE STATUS = ? AND END_TIME < ?", 
+				Long.class, BatchStatus.COMPLETED.name(), completedBefore);
+		jobInstanceIds.forEach(this::deleteJobInstance);
+		if (!jobInstanceIds.isEmpty())
+			LOGGER.info(String.format("%d evaluations completed before %s were deleted from the job repository", jobInstanceIds.size(), completedBefore));
+	}
+
+	/**
+	 * Deletes a job instance and its executions, the execution rows are deleted last so that an interrupted deletion is completed by the next purge
+	 */
+	private void deleteJobInstance(Long jobInstanceId) {
+		String jobExecutionIds = "SELECT JOB_EXECUTION_ID FROM " + tablePrefix + "JOB_EXECUTION WHERE JOB_INSTANCE_ID = ?";
+		jdbcTemplate.update("DELETE FROM " + tablePrefix + "STEP_EXECUTION_CONTEXT WHERE STEP_EXECUTION_ID IN (SELECT STEP_EXECUTION_ID FROM " 
+				+ tablePrefix + "STEP_EXECUTION WHERE JOB_EXECUTION_ID IN (" + jobExecutionIds + "))", jobInstanceId);
+		jdbcTemplate.update("DELETE FROM " + tablePrefix + "STEP_EXECUTION WHERE JOB_EXECUTION_ID IN (" + jobExecutionIds + ")", jobInstanceId);
+		jdbcTemplate.update("DELETE FROM " + tablePrefix + "JOB_EXECUTION_CONTEXT WHERE JOB_EXECUTION_ID IN (" + jobExecutionIds + ")", jobInstanceId);
+		jdbcTemplate.update("DELETE FROM " + tablePrefix + "JOB_EXECUTION_PARAMS WHERE JOB_EXECUTION_ID IN (" + jobExecutionIds + ")", jobInstanceId);
+		jdbcTemplate.update("DELETE FROM " + tablePrefix + "JOB_EXECUTION WHERE JOB_INSTANCE_ID = ?", jobInstanceId);
+		jdbcTemplate.update("DELETE FROM " + tablePrefix + "JOB_INSTANCE WHERE JOB_INSTANCE_ID = ?", jobInstanceId);
+	}
+}
@@ -0,0 +1,202 @@
+package io.elgayed.processing;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import io.elgayed.cache.RevalidatingUrlResource;
+import io.elgayed.dictionary.SpeechDictionary;
+import io.elgayed.model.Speech;
+
+/**
+ * Reads speeches from a byte range of a local UTF-8 CSV file: the range is memory mapped with {@link FileChannel#map(FileChannel.MapMode, long, long)}
+ * and every line is parsed straight from the mapped buffer by a {@link SpeechRecordParser}, bytes are neither copied into a heap buffer nor decoded into characters.
+ * 
+ * The range is expected to start at the beginning of a line and to end right after a line feed or at the end of the file, see {@link CsvSourcePartitioner}.
+ * Line numbers reported in parse errors are relative to the start of the range.
+ * 
+ * If the resource is a {@link RevalidatingUrlResource} whose cached source is still valid, nothing is read.
+ * 
+ * If the range is digested, see {@link #setDigested(boolean)}, the digest of the mapped range is saved in the execution context under {@link #DIGEST_KEY} once it is opened:
+ * every partition digests its own range, so that the content of a file is digested in parallel, see {@link CsvSourcePartitioner}.
+ * 
+ * The offset and the number of the next line are saved in the execution context, so that a restarted reader resumes right where it stopped
+ */
+public class MappedSpeechCsvItemReader extends AbstractItemCountingItemStreamItemReader<Speech> {
+	
+	private static final Log LOGGER = LogFactory.getLog(MappedSpeechCsvItemReader.class);
+	private static final String OFFSET_KEY = "offset";
+	private static final String LINE_NUMBER_KEY = "line.number";
+	public static final String DIGEST_KEY = ClassUtils.getShortName(MappedSpeechCsvItemReader.class) + ".digest";
+	
+	private SpeechRecordParser parser = new SpeechRecordParser();
+	
+	private Resource resource;
+	private long rangeStart;
+	private long rangeEnd = Long.MAX_VALUE;
+	private int linesToSkip = 0;
+	private boolean strict = true;
+	private boolean digested;
+	
+	private MappedByteBuffer buffer;
+	/**
+	 * Offset of the first byte of the next line in {@link #buffer}
+	 */
+	private int position;
+	private int limit;
+	private int lineNumber;
+	/**
+	 * Offset and line number restored from the execution context, -1 if the reader is not restarted
+	 */
+	private int restartOffset = -1;
+	private int restartLineNumber;
+	
+	public MappedSpeechCsvItemReader() {
+		setName(ClassUtils.getShortName(MappedSpeechCsvItemReader.class));
+	}
+	
+	/**
+	 * @param resource Local file resource
+	 */
+	public void setResource(Resource resource) {
+		this.resource = resource;
+	}
+	
+	/**
+	 * @param rangeStart Offset of the first byte of the range (inclusive)
+	 * @param rangeEnd Offset following the last byte of the range (exclusive), it is bounded by the file size
+	 */
+	public void setRange(long rangeStart, long rangeEnd) {
+		this.rangeStart = rangeStart;
+		this.rangeEnd = rangeEnd;
+	}
+	
+	/**
+	 * @param dictionary Dictionary used to encode the speakers and the themes of the speeches read
+	 */
+	public void setDictionary(SpeechDictionary dictionary) {
+		this.parser = new SpeechRecordParser(dictionary);
+	}
+	
+	/**
+	 * @param linesToSkip Number of lines to skip at the start of the range, e.g. 1 for the columns header of the first range
+	 */
+	public void setLinesToSkip(int linesToSkip) {
+		this.linesToSkip = linesToSkip;
+	}
+	
+	/**
+	 * @param strict If {@code true} (default) opening a file that does not exist fails, otherwise a warning is logged and no speech is read
+	 */
+	public void setStrict(boolean strict) {
+		this.strict = strict;
+	}
+	
+	/**
+	 * @param digested If {@code true} the range is digested once it is mapped, default is {@code false}
+	 */
+	public void setDigested(boolean digested) {
+		this.digested = digested;
+	}
+	
+	@Override
+	protected void doOpen() throws Exception {
+		Assert.notNull(resource, "A resource is required");
+		Assert.isTrue(rangeStart >= 0 && rangeStart <= rangeEnd, "Invalid range");
+		position = 0;
+		limit = 0;
+		lineNumber = 0;
+		
+		if (!resource.exists()) {
+			if (strict)
+				throw new IllegalStateException("Input resource must exist (reader is in 'strict' mode): " + resource);
+			LOGGER.warn("Input resource does not exist " + resource.getDescription());
+			return;
+		}
+		if (resource instanceof RevalidatingUrlResource && ((RevalidatingUrlResource) resource).isNotModified())
+			return;
+		
+		try (FileChannel channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ)) {
+			long end = Math.min(rangeEnd, channel.size());
+			if (end <= rangeStart)
+				return;
+			Assert.state(end - rangeStart <= Integer.MAX_VALUE, "Range is too large to be memory mapped: " + rangeStart + "-" + end);
+			//the mapping stays valid once the channel is closed, it is released when the buffer is garbage collected
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, rangeStart, end - rangeStart);
+			limit = buffer.limit();
+		}
+		for (int i = 0; i < linesToSkip && position < limit; i++) {
+			position = Math.min(lineEnd(position) + 1, limit);
+			lineNumber++;
+		}
+	}
+	
+	@Override
+	protected Speech doRead() throws Exception {
+		while (position < limit) {
+			int lineStart = position;
+			int lineEnd = lineEnd(lineStart);
+			position = Math.min(lineEnd + 1, limit);
+			lineNumber++;
+			if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') lineEnd--;
+			if (lineEnd > lineStart)
+				return parser.parse(buffer, lineStart, lineEnd, lineNumber);
+			//blank lines are ignored
+		}
+		return null;
+	}
+	
+	@Override
+	public void open(ExecutionContext executionContext) {
+		restartOffset = isSaveState() && executionContext.containsKey(getExecutionContextKey(OFFSET_KEY)) ? 
+				executionContext.getInt(getExecutionContextKey(OFFSET_KEY)) : -1;
+		restartLineNumber = restartOffset >= 0 ? executionContext.getInt(getExecutionContextKey(LINE_NUMBER_KEY)) : 0;
+		super.open(executionContext);
+		if (digested && buffer != null)
+			executionContext.putString(DIGEST_KEY, CsvSourcePartitioner.digestOf(buffer));
+	}
+	
+	@Override
+	public void update(ExecutionContext executionContext) {
+		super.update(executionContext);
+		if (isSaveState()) {
+			executionContext.putInt(getExecutionContextKey(OFFSET_KEY), position);
+			executionContext.putInt(getExecutionContextKey(LINE_NUMBER_KEY), lineNumber);
+		}
+	}
+	
+	/**
+	 * Moves to the offset saved before the restart, instead of reading and parsing the items already read
+	 */
+	@Override
+	protected void jumpToItem(int itemIndex) throws Exception {
+		if (restartOffset < 0) {
+			super.jumpToItem(itemIndex);
+			return;
+		}
+		position = Math.min(restartOffset, limit);
+		lineNumber = restartLineNumber;
+	}
+	
+	@Override
+	protected void doClose() throws Exception {
+		buffer = null;
+	}
+	
+	/**
+	 * @return the offset of the line feed ending the line starting at {@code from}, or {@link #limit} for a last line without line feed
+	 */
+	private int lineEnd(int from) {
+		int i = from;
+		while (i < limit && buffer.get(i) != '\n') i++;
+		return i;
+	}
+}
@@ -0,0 +1,281 @@
+package io.elgayed.processing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+
+import io.elgayed.model.Speech;
+import io.elgayed.statistics.StatisticsReportAccumulator;
+
+/**
+ * Checkpoint of the partial accumulator of a partition, so that a restarted partition resumes from its last committed chunk.
+ *
+ * The step execution context is saved as a whole at every chunk commit: a snapshot of the partial accumulator saved in it would cost a write
+ * of every group of every query at every commit, which grows with the number of distinct speakers. Instead, the speeches of the chunks written
+ * since the last commit are serialized as they are written, and only they are appended to a checkpoint file at the commit,
+ * in a time that depends on the chunk size only. The step execution context holds the path of the file under {@link #CHECKPOINT_FILE_KEY}
+ * and its committed length under {@link #CHECKPOINT_LENGTH_KEY}: a restarted partition replays the records of the file up to that length,
+ * the records appended by a chunk whose commit failed being truncated.
+ *
+ * Once the file is longer than twice its length after its last compaction (and than a minimum length), a snapshot of the whole partial accumulator
+ * is written to a new file instead, so that the file of a partition does not grow with its number of chunks and is replayed in a bounded time.
+ * The previous file is deleted at the next commit, once the step execution context points to the new one.
+ *
+ * This class is not thread safe
+ */
+public class PartitionCheckpoint implements Closeable {
+
+	public static final String CHECKPOINT_FILE_KEY = "checkpoint_file";
+	public static final String CHECKPOINT_LENGTH_KEY = "checkpoint_length";
+
+	/**
+	 * Length below which a checkpoint file is not compacted
+	 */
+	static final long MIN_COMPACTION_BYTES = 16 * 1024 * 1024;
+	/**
+	 * Kinds of the records of a checkpoint file: a snapshot of a partial accumulator, or the speeches of the chunks committed after it
+	 */
+	private static final byte SNAPSHOT_RECORD = 0;
+	private static final byte SPEECHES_RECORD = 1;
+	/**
+	 * Length of the header of a record: its kind and the length of its content
+	 */
+	private static final int RECORD_HEADER_BYTES = Byte.BYTES + Integer.BYTES;
+
+	private final Path directory;
+	private final long minCompactionBytes;
+
+	private Path file;
+	private FileChannel channel;
+	private long length;
+	private long compactedLength;
+	/**
+	 * File replaced by the last compaction, deleted at the next commit
+	 */
+	private Path replacedFile;
+	/**
+	 * Speeches written since the last commit: their speaker and theme names, date and words
+	 */
+	private final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+	private final DataOutputStream deltaOutput = new DataOutputStream(delta);
+	private int deltaCount;
+	private boolean compactionRequired;
+
+	/**
+	 * @param directory Directory of the checkpoint files, created if it does not exist
+	 */
+	public PartitionCheckpoint(Path directory) {
+		this(directory, MIN_COMPACTION_BYTES);
+	}
+
+	PartitionCheckpoint(Path directory, long minCompactionBytes) {
+		this.directory = directory;
+		this.minCompactionBytes = minCompactionBytes;
+	}
+
+	/**
+	 * @param context Step execution context of a partition
+	 * @return {@code true} if the context points to a checkpoint file that is missing or shorter than its committed length,
+	 * the partition then has to be processed from the start
+	 */
+	public static boolean isLost(ExecutionContext context) {
+		if (!context.containsKey(CHECKPOINT_FILE_KEY))
+			return false;
+		try {
+			Path file = Paths.get(context.getString(CHECKPOINT_FILE_KEY));
+			return !Files.isRegularFile(file) || Files.size(file) < context.getLong(CHECKPOINT_LENGTH_KEY);
+		} catch (IOException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Replays the records committed to the checkpoint file of the given context, if any, into the given accumulator
+	 * @param context Step execution context of a restarted partition
+	 * @param accumulator Partial accumulator of the partition
+	 */
+	public void restore(ExecutionContext context, StatisticsReportAccumulator accumulator) {
+		if (!context.containsKey(CHECKPOINT_FILE_KEY))
+			return;
+		Path restoredFile = Paths.get(context.getString(CHECKPOINT_FILE_KEY));
+		long committedLength = context.getLong(CHECKPOINT_LENGTH_KEY);
+		try {
+			FileChannel restoredChannel = FileChannel.open(restoredFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			try {
+				if (restoredChannel.size() < committedLength)
+					throw new ItemStreamException("Checkpoint file is shorter than its committed length: " + restoredFile);
+				//records appended by a chunk that was not committed
+				restoredChannel.truncate(committedLength);
+				ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+				long position = 0;
+				while (position < committedLength) {
+					header.clear();
+					readFully(restoredChannel, header, position);
+					header.flip();
+					byte kind = header.get();
+					ByteBuffer content = ByteBuffer.allocate(header.getInt());
+					readFully(restoredChannel, content, position + RECORD_HEADER_BYTES);
+					if (kind == SNAPSHOT_RECORD)
+						accumulator.merge(StatisticsReportAccumulator.fromSnapshot(content.array(), accumulator.getDictionary()));
+					else
+						replaySpeeches(content.array(), accumulator);
+					position += RECORD_HEADER_BYTES + content.capacity();
+				}
+			} catch (IOException | RuntimeException e) {
+				restoredChannel.close();
+				throw e;
+			}
+			file = restoredFile;
+			channel = restoredChannel;
+			length = committedLength;
+			compactedLength = committedLength;
+		} catch (IOException e) {
+			throw new ItemStreamException("Checkpoint could not be restored from " + restoredFile, e);
+		}
+	}
+
+	/**
+	 * Records the speeches of a chunk written by the partition, they are checkpointed at the next {@link #save(ExecutionContext, StatisticsReportAccumulator)}
+	 */
+	public void record(List<? extends Speech> speeches) {
+		try {
+			for (Speech speech : speeches) {
+				deltaOutput.writeUTF(speech.getSpeaker());
+				deltaOutput.writeUTF(speech.getTheme());
+				deltaOutput.writeInt(speech.getDate());
+				deltaOutput.writeLong(speech.getWords());
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		deltaCount += speeches.size();
+	}
+
+	/**
+	 * Writes the whole partial accumulator at the next save instead of the delta, e.g. once the partial accumulator was spilled and replaced
+	 */
+	public void requireCompaction() {
+		compactionRequired = true;
+		clearDelta();
+	}
+
+	/**
+	 * Checkpoints the chunks recorded since the last save, to be called when the step execution context is updated before a chunk commit
+	 * @param context Step execution context of the partition
+	 * @param accumulator Partial accumulator of the partition, holding the recorded chunks
+	 */
+	public void save(ExecutionContext context, StatisticsReportAccumulator accumulator) {
+		try {
+			if (replacedFile != null) {
+				Files.deleteIfExists(replacedFile);
+				replacedFile = null;
+			}
+			if (channel == null || compactionRequired || length > Math.max(minCompactionBytes, 2 * compactedLength))
+				compact(accumulator);
+			else if (deltaCount > 0)
+				append(SPEECHES_RECORD, deflatedDelta());
+			clearDelta();
+		} catch (IOException e) {
+			throw new ItemStreamException("Checkpoint could not be saved", e);
+		}
+		context.putString(CHECKPOINT_FILE_KEY, file.toString());
+		context.putLong(CHECKPOINT_LENGTH_KEY, length);
+	}
+
+	/**
+	 * Removes the checkpoint from the given context and deletes its files, e.g. once the partition is completed
+	 */
+	public void delete(ExecutionContext context) throws IOException {
+		context.remove(CHECKPOINT_FILE_KEY);
+		context.remove(CHECKPOINT_LENGTH_KEY);
+		close();
+		if (file != null)
+			Files.deleteIfExists(file);
+		if (replacedFile != null)
+			Files.deleteIfExists(replacedFile);
+		file = null;
+		replacedFile = null;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel != null)
+			channel.close();
+		channel = null;
+	}
+
+	private void compact(StatisticsReportAccumulator accumulator) throws IOException {
+		Files.createDirectories(directory);
+		Path compactedFile = Files.createTempFile(directory, "partition-", ".checkpoint");
+		FileChannel compactedChannel = FileChannel.open(compactedFile, StandardOpenOption.WRITE);
+		close();
+		replacedFile = file;
+		file = compactedFile;
+		channel = compactedChannel;
+		length = 0;
+		append(SNAPSHOT_RECORD, accumulator.toSnapshot());
+		compactedLength = length;
+		compactionRequired = false;
+	}
+
+	private void append(byte kind, byte[] content) throws IOException {
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + content.length).put(kind).putInt(content.length).put(content);
+		record.flip();
+		while (record.hasRemaining())
+			length += channel.write(record, length);
+	}
+
+	/**
+	 * @return the number of recorded speeches followed by the speeches, deflated
+	 */
+	private byte[] deflatedDelta() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+			out.writeInt(deltaCount);
+			delta.writeTo(out);
+		}
+		return bytes.toByteArray();
+	}
+
+	private void clearDelta() {
+		delta.reset();
+		deltaCount = 0;
+	}
+
+	private static void replaySpeeches(byte[] content, StatisticsReportAccumulator accumulator) throws IOException {
+		try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(content)))) {
+			int count = in.readInt();
+			Speech speech = new Speech();
+			for (int i = 0; i < count; i++) {
+				speech.setSpeaker(in.readUTF());
+				speech.setTheme(in.readUTF());
+				speech.setDate(in.readInt());
+				speech.setWords(in.readLong());
+				accumulator.accumulate(speech);
+			}
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("Unexpected end of checkpoint file");
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package io.elgayed.processing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import io.elgayed.dictionary.SpeechDictionary;
+import io.elgayed.model.Speech;
+
+/**
+ * Reads speeches from a UTF-8 CSV resource without decoding it into characters: the resource bytes are read into a
+ * reusable buffer, lines are located in the buffer and handed to a {@link SpeechRecordParser}.
+ *
+ * It replaces a {@link org.springframework.batch.item.file.FlatFileItemReader} with a
+ * {@link org.springframework.batch.item.file.transform.DelimitedLineTokenizer} and a {@link org.springframework.batch.item.file.mapping.FieldSetMapper},
+ * which allocate a String per line, a String per token and a field set before mapping a speech.
+ * Invalid records raise a {@link org.springframework.batch.item.file.FlatFileParseException}, as the flat file reader does, so that they can be skipped.
+ * 
+ * The byte offset and the number of the next line are saved in the execution context, so that a restarted reader skips the bytes already read without parsing them
+ */
+public class SpeechCsvItemReader extends AbstractItemCountingItemStreamItemReader<Speech> {
+
+	private static final Log LOGGER = LogFactory.getLog(SpeechCsvItemReader.class);
+
+	private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	private static final String OFFSET_KEY = "offset";
+	private static final String LINE_NUMBER_KEY = "line.number";
+
+	private SpeechRecordParser parser = new SpeechRecordParser();
+
+	private Resource resource;
+	private int linesToSkip = 0;
+	private boolean strict = true;
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+	private InputStream inputStream;
+	private byte[] buffer;
+	private ByteBuffer wrappedBuffer;
+	/**
+	 * Offset of the first byte of the next line in {@link #buffer}
+	 */
+	private int position;
+	/**
+	 * Number of valid bytes in {@link #buffer}
+	 */
+	private int limit;
+	/**
+	 * Offset in the resource of the first byte of {@link #buffer}
+	 */
+	private long bufferOffset;
+	private boolean endOfStream;
+	private int lineNumber;
+	/**
+	 * Offset and line number restored from the execution context, -1 if the reader is not restarted
+	 */
+	private long restartOffset = -1;
+	private int restartLineNumber;
+
+	public SpeechCsvItemReader() {
+		setName(ClassUtils.getShortName(SpeechCsvItemReader.class));
+	}
+
+	public void setResource(Resource resource) {
+		this.resource = resource;
+	}
+
+	/**
+	 * @param dictionary Dictionary used to encode the speakers and the themes of the speeches read
+	 */
+	public void setDictionary(SpeechDictionary dictionary) {
+		this.parser = new SpeechRecordParser(dictionary);
+	}
+
+	/**
+	 * @param linesToSkip Number of lines to skip at the start of the resource, e.g. 1 for the columns header
+	 */
+	public void setLinesToSkip(int linesToSkip) {
+		this.linesToSkip = linesToSkip;
+	}
+
+	/**
+	 * @param strict If {@code true} (default) opening a resource that does not exist fails, otherwise a warning is logged and no speech is read
+	 */
+	public void setStrict(boolean strict) {
+		this.strict = strict;
+	}
+
+	/**
+	 * @param bufferSize Initial size of the read buffer, it grows if a line does not fit in it
+	 */
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	@Override
+	protected void doOpen() throws Exception {
+		Assert.notNull(resource, "A resource is required");
+		buffer = new byte[bufferSize];
+		wrappedBuffer = ByteBuffer.wrap(buffer);
+		position = 0;
+		limit = 0;
+		bufferOffset = 0;
+		lineNumber = 0;
+		endOfStream = false;
+
+		if (!resource.exists()) {
+			if (strict)
+				throw new IllegalStateException("Input resource must exist (reader is in 'strict' mode): " + resource);
+			LOGGER.warn("Input resource does not exist " + resource.getDescription());
+			endOfStream = true;
+			return;
+		}
+		inputStream = resource.getInputStream();
+		for (int i = 0; i < linesToSkip; i++) {
+			int lineEnd = nextLineEnd();
+			if (lineEnd < 0)
+				break;
+			lineNumber++;
+			position = Math.min(lineEnd + 1, limit);
+		}
+	}
+
+	@Override
+	protected Speech doRead() throws Exception {
+		while (true) {
+			int lineEnd = nextLineEnd();
+			if (lineEnd < 0)
+				return null;
+			lineNumber++;
+			int lineStart = position;
+			position = Math.min(lineEnd + 1, limit);
+			if (lineEnd > lineStart && buffer[lineEnd - 1] == '\r') lineEnd--;
+			if (lineEnd > lineStart)
+				return parser.parse(wrappedBuffer, lineStart, lineEnd, lineNumber);
+			//blank lines are ignored
+		}
+	}
+
+	@Override
+	public void open(ExecutionContext executionContext) {
+		restartOffset = isSaveState() && executionContext.containsKey(getExecutionContextKey(OFFSET_KEY)) ? 
+				executionContext.getLong(getExecutionContextKey(OFFSET_KEY)) : -1;
+		restartLineNumber = restartOffset >= 0 ? executionContext.getInt(getExecutionContextKey(LINE_NUMBER_KEY)) : 0;
+		super.open(executionContext);
+	}
+	
+	@Override
+	public void update(ExecutionContext executionContext) {
+		super.update(executionContext);
+		if (isSaveState() && buffer != null) {
+			executionContext.putLong(getExecutionContextKey(OFFSET_KEY), bufferOffset + position);
+			executionContext.putInt(getExecutionContextKey(LINE_NUMBER_KEY), lineNumber);
+		}
+	}
+	
+	/**
+	 * Skips the bytes read before the restart, instead of reading and parsing the items already read
+	 */
+	@Override
+	protected void jumpToItem(int itemIndex) throws Exception {
+		if (restartOffset < 0) {
+			super.jumpToItem(itemIndex);
+			return;
+		}
+		while (bufferOffset + limit < restartOffset && !endOfStream) {
+			//the whole buffer precedes the restart offset
+			bufferOffset += limit;
+			position = 0;
+			limit = 0;
+			int read = inputStream.read(buffer, 0, buffer.length);
+			if (read < 0)
+				endOfStream = true;
+			else
+				limit = read;
+		}
+		position = (int) Math.min(restartOffset - bufferOffset, limit);
+		lineNumber = restartLineNumber;
+	}
+
+	@Override
+	protected void doClose() throws Exception {
+		if (inputStream != null) {
+			inputStream.close();
+			inputStream = null;
+		}
+		buffer = null;
+		wrappedBuffer = null;
+	}
+
+	/**
+	 * Locates the end of the line starting at {@link #position}, reading more bytes from the resource when needed
+	 * @return the offset of the line feed ending the line, or {@link #limit} for a last line without line feed, or -1 at the end of the resource
+	 */
+	private int nextLineEnd() throws IOException {
+		int searchFrom = position;
+		while (true) {
+			for (int i = searchFrom; i < limit; i++) {
+				if (buffer[i] == '\n') return i;
+			}
+			if (endOfStream)
+				return position < limit ? limit : -1;
+			searchFrom = limit - position;
+			fill();
+			searchFrom += position;
+		}
+	}
+
+	/**
+	 * Moves the pending bytes to the start of the buffer, grows it if it is full, then reads more bytes from the resource
+	 */
+	private void fill() throws IOException {
+		int pending = limit - position;
+		if (pending == buffer.length) {
+			byte[] grown = new byte[buffer.length * 2];
+			System.arraycopy(buffer, position, grown, 0, pending);
+			buffer = grown;
+			wrappedBuffer = ByteBuffer.wrap(buffer);
+		} else if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, pending);
+		}
+		bufferOffset += position;
+		position = 0;
+		limit = pending;
+		int read = inputStream.read(buffer, limit, buffer.length - limit);
+		if (read < 0)
+			endOfStream = true;
+		else
+			limit += read;
+	}
+}
@@ -0,0 +1,213 @@
+package io.elgayed.processing;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.batch.item.file.FlatFileParseException;
+
+import io.elgayed.dictionary.SpeechDictionary;
+import io.elgayed.dictionary.Utf8NameCache;
+import io.elgayed.model.Speech;
+import io.elgayed.model.SpeechDate;
+
+/**
+ * Parses a speech record straight from the UTF-8 bytes of a CSV line: field bounds are located in place,
+ * the date (packed as yyyymmdd, see {@link SpeechDate}) and the words count are parsed as primitives and only the speaker and the theme are copied out as Strings.
+ * When the parser is given a {@link SpeechDictionary}, the speaker and the theme are encoded into dictionary ids and speeches share
+ * the dictionary's String instances, so names are only copied out the first time they are seen.
+ *
+ * Fields are separated by {@link #DELIMITER}, surrounding white spaces are trimmed and a field may be quoted with {@link #QUOTE}
+ * (a quote inside a quoted field is escaped by doubling it).
+ *
+ * This class is not thread safe: it reuses its field bounds and scratch buffer from one line to the next, every reader should
+ * have its own parser
+ */
+public class SpeechRecordParser {
+
+	public static final byte DELIMITER = ',';
+	public static final byte QUOTE = '"';
+
+	private static final int FIELDS_COUNT = 4;
+	private static final int SPEAKER_FIELD = 0;
+	private static final int THEME_FIELD = 1;
+	private static final int DATE_FIELD = 2;
+	private static final int WORDS_FIELD = 3;
+
+	/**
+	 * Start (inclusive) and end (exclusive) offsets of every field of the current line
+	 */
+	private final int[] fieldBounds = new int[FIELDS_COUNT * 2];
+	private final boolean[] quotedFields = new boolean[FIELDS_COUNT];
+	/**
+	 * Used to copy out Strings from buffers that are not backed by an array
+	 */
+	private byte[] scratch = new byte[256];
+
+	private final Utf8NameCache speakers;
+	private final Utf8NameCache themes;
+	
+	/**
+	 * Creates a parser that copies out the speaker and the theme of every speech, without encoding them
+	 */
+	public SpeechRecordParser() {
+		this.speakers = null;
+		this.themes = null;
+	}
+	
+	/**
+	 * Creates a parser that encodes speakers and themes using the given dictionary
+	 * @param dictionary Dictionary of the job, it can be shared with other parsers
+	 */
+	public SpeechRecordParser(SpeechDictionary dictionary) {
+		this.speakers = new Utf8NameCache(dictionary.speakers());
+		this.themes = new Utf8NameCache(dictionary.themes());
+	}
+
+	/**
+	 * Parses the line held by the given buffer between {@code start} (inclusive) and {@code end} (exclusive)
+	 * @param buffer Buffer holding the line, only absolute reads are made so its position and limit are left untouched
+	 * @param start Offset of the first byte of the line
+	 * @param end Offset following the last byte of the line, line terminators should be excluded
+	 * @param lineNumber Number of the line, used for error reporting
+	 * @return Parsed {@link Speech}
+	 * @throws FlatFileParseException if the line is not a valid speech record
+	 */
+	public Speech parse(ByteBuffer buffer, int start, int end, int lineNumber) {
+		int fieldsCount = tokenize(buffer, start, end);
+		if (fieldsCount != FIELDS_COUNT)
+			throw parseException(String.format("Incorrect number of fields: expected %d actual %d", FIELDS_COUNT, fieldsCount), buffer, start, end, lineNumber);
+
+		Speech speech = new Speech();
+		if (speakers != null) {
+			int speakerId = readId(buffer, SPEAKER_FIELD, speakers);
+			speech.setSpeakerId(speakerId);
+			speech.setSpeaker(speakers.getDictionary().nameOf(speakerId));
+			int themeId = readId(buffer, THEME_FIELD, themes);
+			speech.setThemeId(themeId);
+			speech.setTheme(themes.getDictionary().nameOf(themeId));
+		} else {
+			speech.setSpeaker(readString(buffer, SPEAKER_FIELD));
+			speech.setTheme(readString(buffer, THEME_FIELD));
+		}
+		speech.setDate(readDate(buffer, start, end, lineNumber));
+		speech.setWords(readWords(buffer, start, end, lineNumber));
+		return speech;
+	}
+
+	/**
+	 * Locates the bounds of the fields of the line
+	 * @return the number of fields found in the line
+	 */
+	private int tokenize(ByteBuffer buffer, int start, int end) {
+		int fieldsCount = 0;
+		int i = start;
+		while (true) {
+			while (i < end && isWhitespace(buffer.get(i))) i++;
+			int fieldStart = i;
+			int fieldEnd;
+			boolean quoted = i < end && buffer.get(i) == QUOTE;
+			if (quoted) {
+				fieldStart = ++i;
+				while (i < end && (buffer.get(i) != QUOTE || (i + 1 < end && buffer.get(i + 1) == QUOTE)))
+					i += buffer.get(i) == QUOTE ? 2 : 1;
+				fieldEnd = Math.min(i, end);
+				while (i < end && buffer.get(i) != DELIMITER) i++;
+			} else {
+				while (i < end && buffer.get(i) != DELIMITER) i++;
+				fieldEnd = i;
+				while (fieldEnd > fieldStart && isWhitespace(buffer.get(fieldEnd - 1))) fieldEnd--;
+			}
+			if (fieldsCount < FIELDS_COUNT) {
+				fieldBounds[fieldsCount * 2] = fieldStart;
+				fieldBounds[fieldsCount * 2 + 1] = fieldEnd;
+				quotedFields[fieldsCount] = quoted;
+			}
+			fieldsCount++;
+			if (i >= end) return fieldsCount;
+			//skip the delimiter
+			i++;
+		}
+	}
+
+	private int readId(ByteBuffer buffer, int field, Utf8NameCache names) {
+		//escaped quotes have to be unescaped, names holding them are rare enough to go through a String
+		if (quotedFields[field])
+			return names.getDictionary().idOf(readString(buffer, field));
+		return names.idOf(buffer, fieldBounds[field * 2], fieldBounds[field * 2 + 1]);
+	}
+
+	private String readString(ByteBuffer buffer, int field) {
+		int start = fieldBounds[field * 2];
+		int length = fieldBounds[field * 2 + 1] - start;
+		String value;
+		if (buffer.hasArray()) {
+			value = new String(buffer.array(), buffer.arrayOffset() + start, length, StandardCharsets.UTF_8);
+		} else {
+			if (scratch.length < length) scratch = new byte[Math.max(length, scratch.length * 2)];
+			for (int i = 0; i < length; i++) scratch[i] = buffer.get(start + i);
+			value = new String(scratch, 0, length, StandardCharsets.UTF_8);
+		}
+		return quotedFields[field] ? value.replace("\"\"", "\"") : value;
+	}
+
+	/**
+	 * Parses a {@code yyyy-MM-dd} date, as {@link java.text.SimpleDateFormat} would do with leniency turned off
+	 * @return the date packed as yyyymmdd, see {@link SpeechDate}
+	 */
+	private int readDate(ByteBuffer buffer, int lineStart, int lineEnd, int lineNumber) {
+		int start = fieldBounds[DATE_FIELD * 2];
+		int end = fieldBounds[DATE_FIELD * 2 + 1];
+		if (end - start != 10 || buffer.get(start + 4) != '-' || buffer.get(start + 7) != '-')
+			throw parseException("Unparseable date, expected format is yyyy-MM-dd", buffer, lineStart, lineEnd, lineNumber);
+		int year = readDigits(buffer, start, start + 4);
+		int month = readDigits(buffer, start + 5, start + 7);
+		int day = readDigits(buffer, start + 8, start + 10);
+		if (year < 0 || month < 1 || month > 12 || day < 1 || day > SpeechDate.lengthOfMonth(year, month))
+			throw parseException("Unparseable date, expected format is yyyy-MM-dd", buffer, lineStart, lineEnd, lineNumber);
+		return SpeechDate.pack(year, month, day);
+	}
+
+	private long readWords(ByteBuffer buffer, int lineStart, int lineEnd, int lineNumber) {
+		int start = fieldBounds[WORDS_FIELD * 2];
+		int end = fieldBounds[WORDS_FIELD * 2 + 1];
+		//the least wordy speakers are found with error bounds that only hold for non negative counts
+		if (start < end && buffer.get(start) == '-')
+			throw parseException("Negative words count", buffer, lineStart, lineEnd, lineNumber);
+		if (start < end && buffer.get(start) == '+') start++;
+		//more than 18 digits could overflow a long
+		if (start == end || end - start > 18)
+			throw parseException("Unparseable words count", buffer, lineStart, lineEnd, lineNumber);
+		long words = 0;
+		for (int i = start; i < end; i++) {
+			int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9)
+				throw parseException("Unparseable words count", buffer, lineStart, lineEnd, lineNumber);
+			words = words * 10 + digit;
+		}
+		return words;
+	}
+
+	/**
+	 * @return the value of the given decimal digits, or -1 if a byte is not a digit
+	 */
+	private static int readDigits(ByteBuffer buffer, int start, int end) {
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9) return -1;
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t';
+	}
+
+	private FlatFileParseException parseException(String message, ByteBuffer buffer, int start, int end, int lineNumber) {
+		byte[] line = new byte[end - start];
+		for (int i = 0; i < line.length; i++) line[i] = buffer.get(start + i);
+		String input = new String(line, StandardCharsets.UTF_8);
+		return new FlatFileParseException(String.format("%s, at line: %d, input: [%s]", message, lineNumber, input), input, lineNumber);
+	}
+}
@@ -1,37 +1,225 @@
 package io.elgayed.processing;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
-import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.ExitStatus;
 import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.annotation.AfterStep;
 import org.springframework.batch.core.annotation.BeforeStep;
-import org.springframework.batch.core.configuration.annotation.JobScope;
-import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import io.elgayed.cache.CachedSource;
+import io.elgayed.cache.ColumnarSourceStore;
+import io.elgayed.cache.ColumnarSpeechWriter;
+import io.elgayed.cache.EvaluationCache;
+import io.elgayed.cache.RevalidatingUrlResource;
+import io.elgayed.cache.SourceSummaryStore;
+import io.elgayed.cache.SourceValidator;
+import io.elgayed.dictionary.SpeechDictionary;
 import io.elgayed.model.Speech;
-import io.elgayed.model.StatisticsReport;
+import io.elgayed.statistics.StatisticsReportAccumulator;
 import io.elgayed.statistics.StatisticsReportCollector;
-import io.elgayed.statistics.StatisticsReportConstants;
 
+/**
+ * Accumulates the speeches of every chunk of a partition in one step scoped {@link StatisticsReportAccumulator} answering the queries of the job,
+ * once the partition is done the partial accumulator is handed to the job's {@link StatisticsReportAggregator}.
+ * 
+ * When the partition's source was not modified since it was cached, nothing is read and the cached partial accumulator is handed instead.
+ * Otherwise, once the whole source is read, the partial accumulator is cached along with the source validator.
+ * 
+ * The chunks written since the last commit and the source validator are checkpointed at every chunk commit, see {@link PartitionCheckpoint},
+ * so that a restarted partition resumes from the last committed chunk in a commit time that does not grow with the number of distinct speakers.
+ * Once the partition is done, a snapshot of the partial accumulator is saved in the step execution context instead,
+ * so that a completed partition can be aggregated again without being read. It is removed once the job is completed, see {@link JobRepositoryRetention}
+ * 
+ * Under a memory budget ({@code processing.aggregation.memory-budget-bytes}), the partial accumulator has its own dictionary and every concurrent partition
+ * gets an equal share of the budget: once the estimated size of the partial accumulator exceeds it, the accumulator is spilled to a sorted run file
+ * and replaced by an empty one, along with its dictionary. Once the partition is done, the rest of the accumulator is spilled as well and an empty
+ * partial accumulator is handed to the aggregator, which merges the run files of the job, see {@link io.elgayed.statistics.SortedRunMerger}.
+ * The paths of the run files are saved in the step execution context under {@link #SPILLED_RUNS_KEY} along with the checkpoint.
+ * A partition that spilled is not cached, its partial accumulator does not hold its speeches.
+ * 
+ * When columnar files are enabled, a partition parsing its source from the start also writes the speeches to the columnar file of the source,
+ * which is committed once the partition is completed, see {@link ColumnarSourceStore}. The partial accumulator cached for the source
+ * is also saved as its summary, see {@link SourceSummaryStore}
+ */
 @Component
-@JobScope
-public class StatisticReportWriter implements ItemWriter<Speech> {
+@StepScope
+public class StatisticReportWriter implements ItemStreamWriter<Speech> {
 	
 	public static final String STATISTIC_REPORT_KEY = "statistic_report";
+	public static final String PARTIAL_SNAPSHOT_KEY = "partial_snapshot";
+	public static final String SOURCE_VALIDATOR_KEY = "source_validator";
+	public static final String SPILLED_RUNS_KEY = "spilled_runs";
 	
-	private JobExecution jobExecution;
+	@Autowired
+	private StatisticsReportAggregator aggregator;
+	@Autowired
+	private EvaluationCache evaluationCache;
+	@Autowired
+	private RevalidatingUrlResource csvFileResource;
+	@Autowired
+	private ColumnarSourceStore columnarSourceStore;
+	@Autowired
+	private SourceSummaryStore sourceSummaryStore;
+	@Value("${processing.aggregation.memory-budget-bytes}")
+	private long memoryBudgetBytes;
+	@Value("${processing.partitions.max-concurrency}")
+	private int maxConcurrency;
+	@Value("${processing.aggregation.spill-directory}")
+	private String spillDirectory;
+	@Value("${processing.checkpoint.directory}")
+	private String checkpointDirectory;
+	
+	private StatisticsReportAccumulator accumulator;
+	private PartitionCheckpoint checkpoint;
+	/**
+	 * Paths of the run files spilled by the partition
+	 */
+	private ArrayList<String> spilledRuns = new ArrayList<>();
+	/**
+	 * Writer of the columnar file of the source, {@code null} if the partition does not parse its source from the start
+	 */
+	private ColumnarSpeechWriter columnarWriter;
+
+	@BeforeStep
+	public void beforeStep(StepExecution stepExecution) {
+		accumulator = BatchProcessingConfiguration.accumulatorOf(stepExecution.getJobParameters(), 
+				isSpilling() ? new SpeechDictionary() : aggregator.dictionaryOf(stepExecution.getJobExecutionId()));
+	}
 
-    @BeforeStep
-    public void beforeStep(StepExecution stepExecution) {
-        jobExecution = stepExecution.getJobExecution();
-        jobExecution.getExecutionContext().put(STATISTIC_REPORT_KEY, new StatisticsReport(StatisticsReportConstants.NO_CLEAR_ANSWER, StatisticsReportConstants.NO_CLEAR_ANSWER, StatisticsReportConstants.NO_CLEAR_ANSWER));
-    }
+	@AfterStep
+	public ExitStatus afterStep(StepExecution stepExecution) throws IOException {
+		String sourceKey = CsvSourcePartitioner.sourceKeyOf(stepExecution.getExecutionContext());
+		SourceValidator validator = csvFileResource.getValidator();
+		boolean completed = ExitStatus.COMPLETED.getExitCode().equals(stepExecution.getExitStatus().getExitCode());
+		StatisticsReportAccumulator partial = accumulator;
+		CachedSource summary = null;
+		if (csvFileResource.isNotModified())
+			partial = csvFileResource.getCachedSource().getPartial();
+		else {
+			if (isSpilling() && accumulator.getSpeakersCount() > 0) {
+				spill();
+				partial = accumulator;
+			}
+			if (validator != null && spilledRuns.isEmpty() && completed) {
+				summary = new CachedSource(validator, accumulator);
+				evaluationCache.putSource(sourceKey, summary);
+			}
+		}
+		stepExecution.getExecutionContext().put(SPILLED_RUNS_KEY, new ArrayList<>(spilledRuns));
+		aggregator.aggregate(stepExecution.getJobExecutionId(), stepExecution.getExecutionContext(), validator, partial);
+		//the step execution context is saved after the listeners, the final partial accumulator is kept for restarts
+		stepExecution.getExecutionContext().put(PARTIAL_SNAPSHOT_KEY, partial.toSnapshot());
+		stepExecution.getExecutionContext().put(SOURCE_VALIDATOR_KEY, validator);
+		if (completed && checkpoint != null)
+			checkpoint.delete(stepExecution.getExecutionContext());
+		//the columnar file and the summary of the source are saved once the partition is aggregated, failing to save them does not lose the partition
+		if (columnarWriter != null) {
+			try (ColumnarSpeechWriter writer = columnarWriter) {
+				columnarWriter = null;
+				if (completed)
+					writer.commit();
+			}
+		}
+		if (summary != null)
+			sourceSummaryStore.save(sourceKey, summary);
+		return stepExecution.getExitStatus();
+	}
+	
+	/**
+	 * @param context Step execution context of a partition
+	 * @return {@code true} if the partition was restarted after committing chunks or after being completed
+	 */
+	public static boolean isRestarted(ExecutionContext context) {
+		return context.containsKey(PartitionCheckpoint.CHECKPOINT_FILE_KEY) || context.containsKey(PARTIAL_SNAPSHOT_KEY);
+	}
+	
+	@Override
+	public void open(ExecutionContext executionContext) {
+		if (executionContext.containsKey(PARTIAL_SNAPSHOT_KEY))
+			accumulator = StatisticsReportAccumulator.fromSnapshot((byte[]) executionContext.get(PARTIAL_SNAPSHOT_KEY), accumulator.getDictionary());
+		checkpoint = new PartitionCheckpoint(Paths.get(checkpointDirectory));
+		checkpoint.restore(executionContext, accumulator);
+		if (executionContext.containsKey(SPILLED_RUNS_KEY)) {
+			@SuppressWarnings("unchecked")
+			List<String> runs = (List<String>) executionContext.get(SPILLED_RUNS_KEY);
+			spilledRuns = new ArrayList<>(runs);
+		}
+		if (columnarSourceStore.isEnabled() && !isRestarted(executionContext))
+			createColumnarWriter(CsvSourcePartitioner.sourceKeyOf(executionContext));
+	}
+	
+	@Override
+	public void update(ExecutionContext executionContext) {
+		checkpoint.save(executionContext, accumulator);
+		executionContext.put(SPILLED_RUNS_KEY, new ArrayList<>(spilledRuns));
+		try {
+			executionContext.put(SOURCE_VALIDATOR_KEY, csvFileResource.getValidator());
+		} catch (IOException e) {
+			throw new ItemStreamException("Source validator could not be read", e);
+		}
+	}
+	
+	@Override
+	public void close() {
+		//the accumulator is handed to the aggregator after the step, the checkpoint file is kept for restarts
+		try {
+			checkpoint.close();
+		} catch (IOException e) {
+			throw new ItemStreamException("Checkpoint file could not be closed", e);
+		}
+	}
 	
 	@Override
 	public void write(List<? extends Speech> items) throws Exception {
-		//Collects StatisticsReport using StatisticsReportCollector
-		StatisticsReport statisticsReport = items.stream().collect(new StatisticsReportCollector());
-		jobExecution.getExecutionContext().put(STATISTIC_REPORT_KEY, statisticsReport);
+		//Large chunks are collected in parallel then merged, smaller ones are accumulated in place
+		if (items.size() >= StatisticsReportCollector.PARALLEL_COLLECTION_THRESHOLD)
+			accumulator.merge(StatisticsReportCollector.accumulate(items, accumulator));
+		else
+			items.forEach(accumulator::accumulate);
+		checkpoint.record(items);
+		if (columnarWriter != null) {
+			for (Speech speech : items)
+				columnarWriter.append(speech);
+		}
+		if (isSpilling() && accumulator.estimatedSize() > memoryBudgetBytes / maxConcurrency)
+			spill();
+	}
+	
+	/**
+	 * Creates the writer of the columnar file of the source, unless the source is not read or is read from its columnar file
+	 */
+	private void createColumnarWriter(String sourceKey) {
+		try {
+			SourceValidator validator = csvFileResource.getValidator();
+			if (!csvFileResource.isNotModified() && validator != null && columnarSourceStore.find(sourceKey, validator) == null)
+				columnarWriter = columnarSourceStore.create(sourceKey, validator);
+		} catch (IOException e) {
+			throw new ItemStreamException("Columnar file could not be created", e);
+		}
+	}
+	
+	private boolean isSpilling() {
+		return memoryBudgetBytes > 0;
+	}
+	
+	/**
+	 * Spills the partial accumulator to a sorted run file, then replaces it by an empty accumulator and dictionary, so that the counters and the names
+	 * of the spilled speakers can be collected
+	 */
+	private void spill() throws IOException {
+		spilledRuns.add(accumulator.spill(Paths.get(spillDirectory)).toString());
+		accumulator = accumulator.emptyCopy(new SpeechDictionary());
+		checkpoint.requireCompaction();
 	}
 }
@@ -0,0 +1,315 @@
+package io.elgayed.processing;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.elgayed.cache.CachedPrefix;
+import io.elgayed.cache.EvaluationCache;
+import io.elgayed.cache.SourceValidator;
+import io.elgayed.dictionary.SpeechDictionary;
+import io.elgayed.metrics.BatchMetrics;
+import io.elgayed.model.StatisticsReport;
+import io.elgayed.statistics.SortedRunMerger;
+import io.elgayed.statistics.SpeechQuery;
+import io.elgayed.statistics.StatisticsReportAccumulator;
+
+/**
+ * Aggregates the partial {@link StatisticsReportAccumulator}s produced by the partitions of the CSV files processing step.
+ * 
+ * Partitions run on worker threads where the job scope is not active, so aggregations are kept per job execution id. 
+ * The job's accumulator also holds the {@link SpeechDictionary} shared by the readers and the partial accumulators of the job.
+ * Partitions of the same job run concurrently, so partial accumulators are collected under the lock of the job's aggregation.
+ * Once the partitioned step is completed, the partial accumulators are merged and finished and the resulting report is stored in the job execution
+ * context under {@link StatisticReportWriter#STATISTIC_REPORT_KEY}. If a partition failed or was stopped, no report is stored: it would only hold
+ * the speeches of the other partitions.
+ * 
+ * When every CSV source of the job has a validator, the report is cached in the {@link EvaluationCache} along with the validators and the job's queries,
+ * as answered in the job's approximation mode: a later job whose sources have the same validators and asking the same queries in the same mode
+ * reuses it instead of merging the partial accumulators again.
+ * 
+ * Once the job is completed, the partial accumulators of the partitions that read a source up to an end it can be appended from are merged
+ * and cached as the {@link CachedPrefix} of the source, so that the next job only reads the lines appended since then, see {@link CsvSourcePartitioner}.
+ * The validator of the prefix of a local file is made of the digests of the ranges read by the partitions: a file with a range that was not digested is not cached.
+ * 
+ * When partitions spilled sorted run files under the memory budget, see {@link StatisticReportWriter}, the partial accumulators are merged
+ * and spilled as one more run, then the report is merged from the runs by a {@link SortedRunMerger}. A source whose partitions spilled is not cached
+ * as a prefix. Run files are deleted once the job is completed, they are kept for restarts otherwise.
+ * 
+ * When a job is restarted, the partitions completed by its previous executions are not processed again:
+ * their partial accumulators are restored from the snapshots saved in their step execution contexts by {@link StatisticReportWriter}
+ */
+@Component
+public class StatisticsReportAggregator implements StepExecutionListener {
+	
+	@Autowired
+	private EvaluationCache evaluationCache;
+	@Autowired
+	private JobExplorer jobExplorer;
+	@Autowired
+	private BatchMetrics batchMetrics;
+	@Value("${processing.aggregation.spill-directory}")
+	private String spillDirectory;
+	
+	/**
+	 * Partitions are named after the worker step, see {@link org.springframework.batch.core.partition.support.SimpleStepExecutionSplitter}
+	 */
+	private static final String PARTITION_STEP_NAME_PREFIX = BatchProcessingConfiguration.CSV_FILE_BATCH_PROCESSING_STEP_NAME + ":";
+	
+	private final Map<Long, JobAggregation> aggregations = new ConcurrentHashMap<>();
+	
+	/**
+	 * Collects the partial accumulator of a partition 
+	 * @param jobExecutionId Id of the job execution the partition belongs to
+	 * @param partitionContext Step execution context of the partition, see {@link CsvSourcePartitioner}, holding the sorted runs it spilled if any
+	 * @param validator Validator of the CSV source content, or {@code null} if it cannot be revalidated
+	 * @param partial Accumulator holding the speeches of one partition, it is left untouched
+	 */
+	public void aggregate(Long jobExecutionId, ExecutionContext partitionContext, SourceValidator validator, StatisticsReportAccumulator partial) {
+		String sourceKey = CsvSourcePartitioner.sourceKeyOf(partitionContext);
+		@SuppressWarnings("unchecked")
+		List<String> runs = (List<String>) partitionContext.get(StatisticReportWriter.SPILLED_RUNS_KEY);
+		boolean spilled = runs != null && !runs.isEmpty();
+		JobAggregation aggregation = aggregationOf(jobExecutionId);
+		synchronized (aggregation) {
+			aggregation.partials.add(partial);
+			if (spilled)
+				runs.forEach(run -> aggregation.runs.add(Paths.get(run)));
+			if (validator != null)
+				aggregation.validators.put(sourceKey, validator);
+			else
+				aggregation.revalidable = false;
+			if (CsvSourcePartitioner.isEnd(partitionContext)) {
+				SourceEnd end = aggregation.ends.computeIfAbsent(partitionContext.getString(BatchProcessingConfiguration.CSV_FILE_URL_KEY), 
+						url -> new SourceEnd(CsvSourcePartitioner.endOf(partitionContext), CsvSourcePartitioner.endValidatorOf(partitionContext)));
+				end.partials.add(partial);
+				end.spilled |= spilled;
+				if (end.validator == null)
+					end.addRange(partitionContext.getLong(BatchProcessingConfiguration.CSV_FILE_RANGE_START_KEY), 
+							partitionContext.getLong(BatchProcessingConfiguration.CSV_FILE_RANGE_END_KEY), CsvSourcePartitioner.rangeDigestOf(partitionContext));
+			}
+		}
+	}
+
+	/**
+	 * @param jobExecutionId Id of a job execution
+	 * @return the dictionary used to encode the speakers and themes of the given job execution
+	 */
+	public SpeechDictionary dictionaryOf(Long jobExecutionId) {
+		return aggregationOf(jobExecutionId).accumulator.getDictionary();
+	}
+	
+	private JobAggregation aggregationOf(Long jobExecutionId) {
+		return aggregations.computeIfAbsent(jobExecutionId, id -> new JobAggregation(new StatisticsReportAccumulator()));
+	}
+
+	@Override
+	public void beforeStep(StepExecution stepExecution) {
+		JobExecution jobExecution = stepExecution.getJobExecution();
+		//the job's accumulator answers the job's queries in the job's approximation mode, before any partition is collected
+		aggregations.computeIfAbsent(jobExecution.getId(), id -> new JobAggregation(
+				BatchProcessingConfiguration.accumulatorOf(stepExecution.getJobParameters(), new SpeechDictionary())));
+		//last execution of every partition run by the previous executions of the job instance
+		Map<String, StepExecution> lastPartitionExecutions = new HashMap<>();
+		for (JobExecution previousExecution : jobExplorer.getJobExecutions(jobExecution.getJobInstance())) {
+			if (previousExecution.getId().equals(jobExecution.getId()))
+				continue;
+			for (StepExecution partitionExecution : previousExecution.getStepExecutions()) {
+				if (partitionExecution.getStepName().startsWith(PARTITION_STEP_NAME_PREFIX))
+					lastPartitionExecutions.merge(partitionExecution.getStepName(), partitionExecution, 
+							(execution, other) -> execution.getId() > other.getId() ? execution : other);
+			}
+		}
+		for (StepExecution partitionExecution : lastPartitionExecutions.values()) {
+			ExecutionContext context = partitionExecution.getExecutionContext();
+			if (partitionExecution.getStatus() != BatchStatus.COMPLETED || !context.containsKey(StatisticReportWriter.PARTIAL_SNAPSHOT_KEY))
+				continue;
+			StatisticsReportAccumulator partial = StatisticsReportAccumulator.fromSnapshot(
+					(byte[]) context.get(StatisticReportWriter.PARTIAL_SNAPSHOT_KEY), dictionaryOf(jobExecution.getId()));
+			aggregate(jobExecution.getId(), context, (SourceValidator) context.get(StatisticReportWriter.SOURCE_VALIDATOR_KEY), partial);
+		}
+	}
+
+	@Override
+	public ExitStatus afterStep(StepExecution stepExecution) {
+		JobAggregation aggregation = aggregations.remove(stepExecution.getJobExecutionId());
+		//the partial accumulators of an incomplete step are not reported, the run files are kept for restarts
+		if (!ExitStatus.COMPLETED.getExitCode().equals(stepExecution.getExitStatus().getExitCode()))
+			return stepExecution.getExitStatus();
+		if (aggregation == null)
+			aggregation = new JobAggregation(BatchProcessingConfiguration.accumulatorOf(stepExecution.getJobParameters(), new SpeechDictionary()));
+		boolean cacheable = aggregation.revalidable && !aggregation.validators.isEmpty();
+		
+		List<SpeechQuery> queries = BatchProcessingConfiguration.answeredQueriesOf(stepExecution.getJobParameters());
+		for (Map.Entry<String, SourceEnd> end : aggregation.ends.entrySet()) {
+			if (!end.getValue().spilled)
+				cachePrefix(end.getKey(), end.getValue(), aggregation.accumulator, queries);
+		}
+		StatisticsReport statisticsReport = cacheable ? evaluationCache.getReport(aggregation.validators, queries) : null;
+		if (statisticsReport == null) {
+			aggregation.partials.forEach(aggregation.accumulator::merge);
+			String jobName = stepExecution.getJobExecution().getJobInstance().getJobName();
+			if (aggregation.runs.isEmpty()) {
+				statisticsReport = aggregation.accumulator.toStatisticsReport();
+				batchMetrics.recordSpeakers(jobName, aggregation.accumulator.getSpeakersCount());
+			} else {
+				SortedRunMerger merger = new SortedRunMerger(spillJobAccumulator(aggregation));
+				statisticsReport = mergeRuns(merger);
+				batchMetrics.recordSpeakers(jobName, merger.getSpeakersCount());
+			}
+			if (cacheable)
+				evaluationCache.putReport(aggregation.validators, queries, statisticsReport);
+		}
+		deleteRuns(aggregation.runs);
+		stepExecution.getJobExecution().getExecutionContext().put(StatisticReportWriter.STATISTIC_REPORT_KEY, statisticsReport);
+		return stepExecution.getExitStatus();
+	}
+	
+	/**
+	 * Spills the job's accumulator, holding the partial accumulators merged, as one more run unless it is empty
+	 * @return the runs of the job
+	 */
+	private List<Path> spillJobAccumulator(JobAggregation aggregation) {
+		if (aggregation.accumulator.getSpeakersCount() > 0) {
+			try {
+				aggregation.runs.add(aggregation.accumulator.spill(Paths.get(spillDirectory)));
+			} catch (IOException e) {
+				throw new UncheckedIOException("Job accumulator could not be spilled", e);
+			}
+		}
+		return aggregation.runs;
+	}
+	
+	private static StatisticsReport mergeRuns(SortedRunMerger merger) {
+		try {
+			return merger.merge();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Sorted runs could not be merged", e);
+		}
+	}
+	
+	private static void deleteRuns(List<Path> runs) {
+		for (Path run : runs) {
+			try {
+				Files.deleteIfExists(run);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Sorted run could not be deleted", e);
+			}
+		}
+	}
+	
+	/**
+	 * Caches the content of a source read by a job as the source's prefix, unless the same prefix is already cached:
+	 * the partial accumulators of the partitions of the source are merged into a new accumulator answering the job's queries
+	 */
+	private void cachePrefix(String url, SourceEnd end, StatisticsReportAccumulator jobAccumulator, List<SpeechQuery> queries) {
+		SourceValidator validator = end.validator();
+		if (validator == null)
+			return;
+		CachedPrefix cachedPrefix = evaluationCache.getPrefix(url);
+		if (cachedPrefix != null && cachedPrefix.getValidator().equals(validator) && cachedPrefix.answers(queries))
+			return;
+		StatisticsReportAccumulator prefix = jobAccumulator.emptyCopy();
+		end.partials.forEach(prefix::merge);
+		evaluationCache.putPrefix(url, new CachedPrefix(end.length, validator, prefix));
+	}
+	
+	/**
+	 * Partial accumulators and source validators collected from the partitions of a job execution
+	 */
+	private static class JobAggregation {
+		private final StatisticsReportAccumulator accumulator;
+		private final List<StatisticsReportAccumulator> partials = new ArrayList<>();
+		private final Map<String, SourceValidator> validators = new HashMap<>();
+		/**
+		 * Sorted runs spilled by the partitions
+		 */
+		private final List<Path> runs = new ArrayList<>();
+		/**
+		 * Ends of the sources that can be cached as prefixes, keyed by source URL
+		 */
+		private final Map<String, SourceEnd> ends = new HashMap<>();
+		/**
+		 * {@code false} once a source without validator is collected
+		 */
+		private boolean revalidable = true;
+		
+		private JobAggregation(StatisticsReportAccumulator accumulator) {
+			this.accumulator = accumulator;
+		}
+	}
+	
+	/**
+	 * End of the content of a source read by a job, its validator and the partial accumulators of the partitions that read it
+	 */
+	private static class SourceEnd {
+		private final long length;
+		/**
+		 * Validator of the content of a remote source, {@code null} for a local file
+		 */
+		private final SourceValidator validator;
+		private final List<StatisticsReportAccumulator> partials = new ArrayList<>();
+		/**
+		 * Digests and ends of the ranges of a local file read by the partitions, keyed by range start
+		 */
+		private final NavigableMap<Long, String> rangeDigests = new TreeMap<>();
+		private final Map<Long, Long> rangeEnds = new HashMap<>();
+		/**
+		 * {@code true} once a partition of the source spilled sorted runs, its partial accumulator then does not hold its speeches
+		 */
+		private boolean spilled;
+		/**
+		 * {@code true} once a range of a local file that was not digested is collected
+		 */
+		private boolean undigested;
+		
+		private SourceEnd(long length, SourceValidator validator) {
+			this.length = length;
+			this.validator = validator;
+		}
+		
+		private void addRange(long start, long end, String rangeDigest) {
+			if (rangeDigest == null) {
+				undigested = true;
+				return;
+			}
+			rangeDigests.put(start, rangeDigest);
+			rangeEnds.put(start, end);
+		}
+		
+		/**
+		 * @return the validator of the content read, or {@code null} if a range of a local file was not digested
+		 */
+		private SourceValidator validator() {
+			if (validator != null || undigested)
+				return validator;
+			long next = 0;
+			for (Long start : rangeDigests.keySet()) {
+				if (start != next)
+					return null;
+				next = rangeEnds.get(start);
+			}
+			return next == length ? CsvSourcePartitioner.localPrefixValidatorOf(rangeDigests.values()) : null;
+		}
+	}
+}
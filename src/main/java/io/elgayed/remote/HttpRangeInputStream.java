@@ -0,0 +1,195 @@
+package io.elgayed.remote;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the lines starting within a byte range of a remote text resource, using HTTP range requests ({@code Range: bytes=first-last}).
+ * 
+ * Ranges are cut at arbitrary offsets, every line is read by the range holding its first byte:
+ * <ul>
+ * <li>Unless the range starts at offset 0, the line started before the range is skipped, up to and including its line feed</li>
+ * <li>If the last line of the range does not end within the range, it is completed with small additional range requests</li>
+ * </ul>
+ * So the ranges of a resource together hold every line exactly once.
+ * 
+ * Range responses must all come from the same representation of the resource: requests carry an {@code If-Range} header holding 
+ * the resource's strong entity tag or last modification date, and a full response (the resource changed) fails the read.
+ * Compression is not requested, since range offsets apply to the uncompressed resource.
+ * 
+ * This class is not thread safe
+ */
+public class HttpRangeInputStream extends InputStream {
+	
+	private static final String RANGE = "Range";
+	private static final String IF_RANGE = "If-Range";
+	private static final String ACCEPT_ENCODING = "Accept-Encoding";
+	private static final String IDENTITY = "identity";
+	private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+	/**
+	 * Size of the additional range requests completing the last line of the range
+	 */
+	private static final int TAIL_BLOCK_SIZE = 64 * 1024;
+	
+	private final RemoteResourceClient client;
+	private final URI uri;
+	private final long start;
+	private final long end;
+	private final String ifRange;
+	
+	private InputStream body;
+	/**
+	 * Offset in the resource of the next byte read from {@link #body}
+	 */
+	private long position;
+	/**
+	 * Offset following the last byte requested from {@link #body}
+	 */
+	private long bodyEnd;
+	private boolean opened;
+	private boolean ended;
+	private byte lastByte = '\n';
+	
+	/**
+	 * @param client Client sending the range requests
+	 * @param uri URI of the remote resource
+	 * @param start Offset of the first byte of the range (inclusive)
+	 * @param end Offset following the last byte of the range (exclusive)
+	 * @param entityTag Entity tag of the resource, or {@code null}
+	 * @param lastModified Last modification date of the resource, or {@code null}
+	 */
+	public HttpRangeInputStream(RemoteResourceClient client, URI uri, long start, long end, String entityTag, String lastModified) {
+		this.client = client;
+		this.uri = uri;
+		this.start = start;
+		this.end = end;
+		this.ifRange = ifRangeOf(entityTag, lastModified);
+	}
+	
+	/**
+	 * @return the value of the {@code If-Range} header of range requests to a resource having the given validator, or {@code null} if it has none:
+	 * its strong entity tag, or its last modification date since weak entity tags cannot be used in {@code If-Range} headers
+	 */
+	public static String ifRangeOf(String entityTag, String lastModified) {
+		return entityTag != null && !entityTag.startsWith("W/") ? entityTag : lastModified;
+	}
+	
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		if (!opened)
+			open();
+		while (!ended) {
+			if (position < end) {
+				int read = readBody(b, off, (int) Math.min(len, end - position));
+				if (read > 0)
+					return read;
+				continue;
+			}
+			//past the end of the range: the last line is completed up to its line feed
+			if (lastByte == '\n') {
+				ended = true;
+				break;
+			}
+			if (position >= bodyEnd && !fetch(position, position + TAIL_BLOCK_SIZE))
+				break;
+			int read = readBody(b, off, len);
+			if (read <= 0)
+				continue;
+			for (int i = 0; i < read; i++) {
+				if (b[off + i] == '\n') {
+					lastByte = '\n';
+					return i + 1;
+				}
+			}
+			return read;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Reads from the current body, the stream ends if the resource has no more bytes
+	 * @return the number of bytes read, or -1 at the end of the resource
+	 */
+	private int readBody(byte[] b, int off, int len) throws IOException {
+		int read = body.read(b, off, (int) Math.min(len, bodyEnd - position));
+		if (read < 0) {
+			//the resource ends before the requested range
+			ended = true;
+			return -1;
+		}
+		position += read;
+		if (read > 0)
+			lastByte = b[off + read - 1];
+		return read;
+	}
+	
+	/**
+	 * Requests the range, from the last byte preceding it, and skips the line started before the range
+	 */
+	private void open() throws IOException {
+		opened = true;
+		if (start >= end || !fetch(start > 0 ? start - 1 : 0, end)) {
+			ended = true;
+			return;
+		}
+		if (start == 0)
+			return;
+		while (position < end) {
+			int b = body.read();
+			if (b < 0)
+				break;
+			position++;
+			if (b == '\n')
+				return;
+		}
+		//no line starts within the range
+		ended = true;
+	}
+	
+	/**
+	 * Requests the bytes from {@code from} (inclusive) to {@code to} (exclusive), replacing the current body
+	 * @return {@code false} if the resource has no byte from {@code from}
+	 */
+	private boolean fetch(long from, long to) throws IOException {
+		close();
+		Map<String, String> headers = new HashMap<>();
+		headers.put(RANGE, "bytes=" + from + "-" + (to - 1));
+		headers.put(ACCEPT_ENCODING, IDENTITY);
+		if (ifRange != null)
+			headers.put(IF_RANGE, ifRange);
+		RemoteResponse response = client.get(uri, headers);
+		if (response.getStatusCode() == HTTP_RANGE_NOT_SATISFIABLE) {
+			response.discard();
+			ended = true;
+			return false;
+		}
+		if (response.getStatusCode() != HttpURLConnection.HTTP_PARTIAL) {
+			response.discard();
+			throw new IOException(String.format("Expected a partial response from %s for range %d-%d, got status %d: the resource may have changed", uri, from, to - 1, response.getStatusCode()));
+		}
+		body = response.getBody();
+		position = from;
+		bodyEnd = to;
+		return true;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if (body != null) {
+			body.close();
+			body = null;
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package io.elgayed.remote;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Input stream reading ahead of its consumer: a task of the given executor reads the source stream into chunks and queues them,
+ * so that waiting for the network (and decompressing) overlaps with parsing the bytes already received.
+ * 
+ * Read-ahead is bounded: once {@code readAheadBytes} are queued, the prefetch task waits for the consumer to take chunks.
+ * The source stream is decoded (e.g. decompressed), read and closed by the prefetch task. Closing this stream closes the source as well
+ * and interrupts the prefetch task, so that it stops even if the source stalls in the middle of a read.
+ * 
+ * A consumer waiting for bytes gives up after {@code idleTimeoutMillis} without any byte received: the stream is closed and a {@link SocketTimeoutException}
+ * is thrown, so that a source that stalls neither blocks the consumer nor holds the prefetch task forever
+ * 
+ * This class is not thread safe, it is meant to have one consumer
+ */
+public class PrefetchingInputStream extends InputStream {
+	
+	private static final byte[] END_OF_STREAM = new byte[0];
+	private static final long POLL_TIMEOUT_MILLIS = 100;
+	
+	private final InputStream source;
+	private final Decoder decoder;
+	private final int chunkSize;
+	private final long idleTimeoutMillis;
+	private final BlockingQueue<byte[]> chunks;
+	/**
+	 * Thread running the prefetch task while it reads the source, interrupted when this stream is closed
+	 */
+	private Thread prefetchThread;
+	
+	private volatile boolean closed;
+	private volatile boolean prefetchDone;
+	private volatile IOException failure;
+	
+	private byte[] chunk;
+	private int position;
+	private boolean endOfStream;
+	
+	/**
+	 * Starts prefetching the given source
+	 * @param source Stream to prefetch
+	 * @param decoder Decoder of the source, applied by the prefetch task, e.g. to read the header of a compressed stream
+	 * @param executor Executor running the prefetch task, it should have a thread available for every stream being prefetched
+	 * @param readAheadBytes Maximum number of bytes read ahead of the consumer
+	 * @param chunkSize Size of the chunks handed from the prefetch task to the consumer
+	 * @param idleTimeoutMillis Maximum time the consumer waits for the next bytes
+	 */
+	public PrefetchingInputStream(InputStream source, Decoder decoder, Executor executor, int readAheadBytes, int chunkSize, long idleTimeoutMillis) {
+		this.source = source;
+		this.decoder = decoder;
+		this.chunkSize = chunkSize;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.chunks = new ArrayBlockingQueue<>(Math.max(1, readAheadBytes / chunkSize));
+		executor.execute(this::prefetch);
+	}
+	
+	private void prefetch() {
+		synchronized (this) {
+			prefetchThread = Thread.currentThread();
+		}
+		try (InputStream in = decode()) {
+			while (!closed) {
+				byte[] buffer = new byte[chunkSize];
+				int length = in.readNBytes(buffer, 0, chunkSize);
+				if (length > 0)
+					enqueue(length < chunkSize ? Arrays.copyOf(buffer, length) : buffer);
+				//readNBytes only returns a partial chunk at the end of the source
+				if (length < chunkSize)
+					break;
+			}
+		} catch (IOException e) {
+			failure = e;
+		} catch (InterruptedException e) {
+			failure = new InterruptedIOException("Interrupted while prefetching");
+			Thread.currentThread().interrupt();
+		} finally {
+			chunks.offer(END_OF_STREAM);
+			prefetchDone = true;
+			synchronized (this) {
+				prefetchThread = null;
+				//the interrupt of a closed stream must not leak to the next task of the executor's thread
+				Thread.interrupted();
+			}
+		}
+	}
+	
+	/**
+	 * @return the decoded source, the source is closed if it cannot be decoded
+	 */
+	private InputStream decode() throws IOException {
+		try {
+			return decoder.decode(source);
+		} catch (IOException | RuntimeException e) {
+			source.close();
+			throw e;
+		}
+	}
+	
+	private void enqueue(byte[] bytes) throws InterruptedException {
+		while (!closed && !chunks.offer(bytes, POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+	}
+	
+	@Override
+	public int read() throws IOException {
+		if (!ensureChunk())
+			return -1;
+		return chunk[position++] & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		if (!ensureChunk())
+			return -1;
+		int length = Math.min(len, chunk.length - position);
+		System.arraycopy(chunk, position, b, off, length);
+		position += length;
+		return length;
+	}
+	
+	@Override
+	public int available() {
+		return chunk != null ? chunk.length - position : 0;
+	}
+	
+	/**
+	 * @return {@code false} at the end of the stream, {@code true} if {@link #chunk} holds bytes to read
+	 */
+	private boolean ensureChunk() throws IOException {
+		if (closed)
+			throw new IOException("Stream closed");
+		while (!endOfStream && (chunk == null || position == chunk.length)) {
+			chunk = nextChunk();
+			position = 0;
+			if (chunk == END_OF_STREAM)
+				endOfStream = true;
+		}
+		if (endOfStream && failure != null)
+			throw failure;
+		return !endOfStream;
+	}
+	
+	private byte[] nextChunk() throws IOException {
+		try {
+			byte[] next;
+			long waitStart = System.nanoTime();
+			//the end of stream marker may be lost if the queue was full when the prefetch task ended
+			while ((next = chunks.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+				if (prefetchDone && chunks.isEmpty())
+					return END_OF_STREAM;
+				if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waitStart) >= idleTimeoutMillis) {
+					close();
+					throw new SocketTimeoutException("No byte received for " + idleTimeoutMillis + " ms");
+				}
+			}
+			return next;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for prefetched bytes");
+		}
+	}
+	
+	@Override
+	public void close() {
+		closed = true;
+		chunk = null;
+		//unblocks the prefetch task if it waits for room in the queue
+		chunks.clear();
+		//or if it waits for the source: a source may only give up a blocked read once it is closed
+		try {
+			source.close();
+		} catch (IOException e) {
+			//the prefetch task fails on its own
+		}
+		synchronized (this) {
+			if (prefetchThread != null)
+				prefetchThread.interrupt();
+		}
+	}
+	
+	/**
+	 * Decoder of a prefetched stream
+	 */
+	@FunctionalInterface
+	public interface Decoder {
+		
+		/**
+		 * @return the decoded stream, closing it closes the given stream
+		 */
+		InputStream decode(InputStream source) throws IOException;
+	}
+}
@@ -0,0 +1,88 @@
+package io.elgayed.remote;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Client shared by every partition reading a remote CSV source over HTTP(S):
+ * <ul>
+ * <li>Connections are pooled per host by a single {@link HttpClient}, sources hosted on the same server reuse kept alive connections</li>
+ * <li>Compressed responses are accepted ({@code Accept-Encoding: gzip, deflate}) and decompressed as they are read</li>
+ * <li>Response bodies are read ahead of the parser into a bounded buffer, see {@link PrefetchingInputStream}</li>
+ * <li>A request fails once its response headers are not received within {@code remote.read-timeout-seconds},
+ * and reading its body fails once no byte is received for as long, so that a stalled server does not hold a partition forever</li>
+ * <li>Byte ranges of large resources can be read on their own, see {@link HttpRangeInputStream}</li>
+ * </ul>
+ */
+@Component
+public class RemoteResourceClient {
+	
+	private static final String ACCEPT_ENCODING = "Accept-Encoding";
+	private static final String SUPPORTED_ENCODINGS = "gzip, deflate";
+	private static final int CHUNK_SIZE = 64 * 1024;
+	
+	private final HttpClient httpClient;
+	private final TaskExecutor prefetchExecutor;
+	private final int readAheadBytes;
+	private final Duration readTimeout;
+	
+	public RemoteResourceClient(TaskExecutor csvFilesPrefetchTaskExecutor,
+			@Value("${remote.connect-timeout-seconds}") long connectTimeoutSeconds,
+			@Value("${remote.read-timeout-seconds}") long readTimeoutSeconds,
+			@Value("${remote.read-ahead-bytes}") int readAheadBytes) {
+		this.httpClient = HttpClient.newBuilder()
+				.connectTimeout(Duration.ofSeconds(connectTimeoutSeconds))
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.build();
+		this.prefetchExecutor = csvFilesPrefetchTaskExecutor;
+		this.readAheadBytes = readAheadBytes;
+		this.readTimeout = Duration.ofSeconds(readTimeoutSeconds);
+	}
+	
+	/**
+	 * Sends a GET request and returns as soon as the response headers are received
+	 * @param uri URI of the remote resource
+	 * @param headers Additional request headers, e.g. conditional request headers, they replace the default {@code Accept-Encoding} header
+	 * @return the response, whose body is read on demand
+	 */
+	public RemoteResponse get(URI uri, Map<String, String> headers) throws IOException {
+		HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+				.timeout(readTimeout)
+				.GET()
+				.header(ACCEPT_ENCODING, SUPPORTED_ENCODINGS);
+		headers.forEach(request::setHeader);
+		return send(request.build());
+	}
+	
+	/**
+	 * Sends a HEAD request, e.g. to get the size of a remote resource and whether its server accepts range requests.
+	 * Compression is not requested, so that the {@code Content-Length} header holds the size of the resource itself
+	 * @param uri URI of the remote resource
+	 * @return the response, it has no body
+	 */
+	public RemoteResponse head(URI uri) throws IOException {
+		return send(HttpRequest.newBuilder(uri)
+				.timeout(readTimeout)
+				.method("HEAD", HttpRequest.BodyPublishers.noBody())
+				.build());
+	}
+	
+	private RemoteResponse send(HttpRequest request) throws IOException {
+		try {
+			return new RemoteResponse(httpClient.send(request, BodyHandlers.ofInputStream()), prefetchExecutor, readAheadBytes, CHUNK_SIZE, readTimeout.toMillis());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while requesting " + request.uri());
+		}
+	}
+}
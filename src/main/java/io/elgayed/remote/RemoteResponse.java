@@ -0,0 +1,88 @@
+package io.elgayed.remote;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Response to a GET request sent by {@link RemoteResourceClient}, its body is not read until {@link #getBody()} is called
+ */
+public class RemoteResponse {
+	
+	private static final String CONTENT_ENCODING = "Content-Encoding";
+	private static final int DECOMPRESSION_BUFFER_SIZE = 64 * 1024;
+	
+	private final HttpResponse<InputStream> response;
+	private final Executor prefetchExecutor;
+	private final int readAheadBytes;
+	private final int chunkSize;
+	private final long idleTimeoutMillis;
+	
+	RemoteResponse(HttpResponse<InputStream> response, Executor prefetchExecutor, int readAheadBytes, int chunkSize, long idleTimeoutMillis) {
+		this.response = response;
+		this.prefetchExecutor = prefetchExecutor;
+		this.readAheadBytes = readAheadBytes;
+		this.chunkSize = chunkSize;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+	
+	public int getStatusCode() {
+		return response.statusCode();
+	}
+	
+	/**
+	 * @return the first value of the given response header, or {@code null}
+	 */
+	public String getHeader(String name) {
+		return response.headers().firstValue(name).orElse(null);
+	}
+	
+	/**
+	 * Starts prefetching the body, decompressed if it is encoded with gzip or deflate, see {@link PrefetchingInputStream}:
+	 * reading the body fails once no byte is received for the read timeout of the client
+	 * @return the response body, the caller is responsible for closing it
+	 */
+	public InputStream getBody() throws IOException {
+		return new PrefetchingInputStream(response.body(), this::decode, prefetchExecutor, readAheadBytes, chunkSize, idleTimeoutMillis);
+	}
+	
+	/**
+	 * Closes the body without reading it, e.g. for a {@code 304 Not Modified} or an error response
+	 */
+	public void discard() throws IOException {
+		response.body().close();
+	}
+	
+	/**
+	 * @return the given body, decompressed if it is encoded with gzip or deflate. The gzip header is read right away
+	 */
+	private InputStream decode(InputStream body) throws IOException {
+		String contentEncoding = getHeader(CONTENT_ENCODING);
+		if (contentEncoding == null)
+			return body;
+		switch (contentEncoding.trim().toLowerCase(Locale.ROOT)) {
+			case "gzip":
+			case "x-gzip":
+				return new GZIPInputStream(body, DECOMPRESSION_BUFFER_SIZE);
+			case "deflate":
+				return new InflaterInputStream(body, new Inflater(), DECOMPRESSION_BUFFER_SIZE) {
+					//the inflater is not the stream's default one, so closing the stream does not release it
+					@Override
+					public void close() throws IOException {
+						try {
+							super.close();
+						} finally {
+							inf.end();
+						}
+					}
+				};
+			default:
+				return body;
+		}
+	}
+}
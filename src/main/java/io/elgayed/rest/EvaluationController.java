@@ -1,28 +1,43 @@
 package io.elgayed.rest;
 
+import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import javax.servlet.http.HttpServletRequest;
+
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobParametersInvalidException;
+import org.springframework.batch.core.launch.NoSuchJobExecutionException;
 import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
 import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteException;
 import org.springframework.batch.core.repository.JobRestartException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import io.elgayed.model.EvaluationStatus;
 import io.elgayed.model.StatisticsReport;
 import io.elgayed.processing.BatchProcessingService;
+import io.elgayed.processing.EvaluationClient;
+import io.elgayed.processing.EvaluationFailedException;
+import io.elgayed.processing.EvaluationRejectedException;
+import io.elgayed.processing.EvaluationRequest;
 
 @RestController
 @RequestMapping(path = "evaluation")
@@ -30,30 +45,123 @@ public class EvaluationController {
 
 	
 	public static final Pattern QUERY_PARAM_URLS_PATTERN = Pattern.compile("url\\d+");
+	/**
+	 * Query params holding the queries of an evaluation: {@code query.<name>=<definition>}, see {@link io.elgayed.statistics.SpeechQuery#parse(String, String)}
+	 */
+	public static final Pattern QUERY_PARAM_QUERIES_PATTERN = Pattern.compile("query\\.([\\w-]+)");
+	/**
+	 * Optional query param switching an evaluation to approximate mode: the error bound of the approximated answers relative to their total, e.g. {@code 0.001}
+	 */
+	public static final String QUERY_PARAM_APPROXIMATION = "approximation";
+	/**
+	 * Optional header identifying the client of an evaluation among the clients sharing its remote address, see {@link EvaluationClient}:
+	 * evaluations waiting to be admitted are admitted in turn across addresses, then across the ids of an address
+	 */
+	public static final String CLIENT_ID_HEADER = "X-Client-Id";
 	
 	@Autowired
 	private BatchProcessingService batchProcessingService;
 	
 	
 	@GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
-	public ResponseEntity<StatisticsReport> evaluate (@RequestParam final Map<String, String> queryParams) throws 
+	public ResponseEntity<StatisticsReport> evaluate (@RequestParam final Map<String, String> queryParams, final HttpServletRequest request) throws 
 		JobExecutionAlreadyRunningException, 
 		JobRestartException, 
 		JobInstanceAlreadyCompleteException, 
 		JobParametersInvalidException {
 		
-		//Filter query params: only pramas that the key patches url{index}, e.g. url1, url2,...,url{n}, and the value is not blank
-		final Map<String, String> csvFileUrls = queryParams.entrySet().stream()
-					.filter(entry -> QUERY_PARAM_URLS_PATTERN.matcher(entry.getKey()).matches())
-					.filter(entry -> StringUtils.isNotBlank(entry.getValue()))
-					.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-		
-		StatisticsReport statisticsReport = batchProcessingService.processCsvFiles(csvFileUrls);
+		StatisticsReport statisticsReport = batchProcessingService.processCsvFiles(evaluationRequestOf(queryParams, request));
 		
 		return new ResponseEntity<StatisticsReport>(statisticsReport, HttpStatus.OK);
 	}
 	
+	/**
+	 * Starts an evaluation without waiting for it to complete, the status of the evaluation is available at the returned location
+	 * (see {@link #getEvaluation(Long)})
+	 */
+	@PostMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<EvaluationStatus> startEvaluation (@RequestParam final Map<String, String> queryParams, final HttpServletRequest request) throws 
+		JobExecutionAlreadyRunningException, 
+		JobRestartException, 
+		JobInstanceAlreadyCompleteException, 
+		JobParametersInvalidException, 
+		NoSuchJobExecutionException {
+		
+		JobExecution jobExecution = batchProcessingService.startCsvFilesProcessing(evaluationRequestOf(queryParams, request));
+		
+		return ResponseEntity
+				.accepted()
+				.location(ServletUriComponentsBuilder.fromCurrentRequestUri().path("/{id}").buildAndExpand(jobExecution.getId()).toUri())
+				.body(batchProcessingService.getEvaluationStatus(jobExecution.getId()));
+	}
+	
+	@GetMapping(path = "{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<EvaluationStatus> getEvaluation (@PathVariable final Long id) throws NoSuchJobExecutionException {
+		return new ResponseEntity<EvaluationStatus>(batchProcessingService.getEvaluationStatus(id), HttpStatus.OK);
+	}
+	
+	/**
+	 * Restarts an evaluation that failed or was interrupted, partitions already completed are not processed again. 
+	 * The status of the restarted evaluation is available at the returned location
+	 */
+	@PostMapping(path = "{id}/restart", produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<EvaluationStatus> restartEvaluation (@PathVariable final Long id, final HttpServletRequest request) throws 
+		JobExecutionAlreadyRunningException, 
+		JobRestartException, 
+		JobInstanceAlreadyCompleteException, 
+		JobParametersInvalidException, 
+		NoSuchJobExecutionException {
+		
+		JobExecution jobExecution = batchProcessingService.restartEvaluation(id, clientOf(request));
+		
+		return ResponseEntity
+				.accepted()
+				.location(ServletUriComponentsBuilder.fromCurrentContextPath().path("/evaluation/{id}").buildAndExpand(jobExecution.getId()).toUri())
+				.body(batchProcessingService.getEvaluationStatus(jobExecution.getId()));
+	}
+	
+	private EvaluationRequest evaluationRequestOf (Map<String, String> queryParams, HttpServletRequest request) {
+		return new EvaluationRequest(filterCsvFileUrls(queryParams), filterQueries(queryParams), filterApproximationError(queryParams), clientOf(request));
+	}
 	
+	/**
+	 * Filter query params: only pramas that the key patches url{index}, e.g. url1, url2,...,url{n}, and the value is not blank
+	 */
+	private Map<String, String> filterCsvFileUrls (Map<String, String> queryParams) {
+		return queryParams.entrySet().stream()
+					.filter(entry -> QUERY_PARAM_URLS_PATTERN.matcher(entry.getKey()).matches())
+					.filter(entry -> StringUtils.isNotBlank(entry.getValue()))
+					.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+	}
+
+	/**
+	 * Filter query params: only params that the key matches query.{name}, the value being the definition of the query {name}
+	 */
+	private Map<String, String> filterQueries (Map<String, String> queryParams) {
+		Map<String, String> queries = new HashMap<>();
+		queryParams.forEach((key, value) -> {
+			Matcher matcher = QUERY_PARAM_QUERIES_PATTERN.matcher(key);
+			if (matcher.matches())
+				queries.put(matcher.group(1), value);
+		});
+		return queries;
+	}
+
+	/**
+	 * Client of a request: its remote address, and its {@link #CLIENT_ID_HEADER} header unless it is missing or blank
+	 */
+	private EvaluationClient clientOf (HttpServletRequest request) {
+		String clientId = request.getHeader(CLIENT_ID_HEADER);
+		return new EvaluationClient(request.getRemoteAddr(), StringUtils.isNotBlank(clientId) ? clientId.trim() : null);
+	}
+
+	/**
+	 * Filter query params: the approximation error, or {@code null} if it is missing or blank
+	 */
+	private String filterApproximationError (Map<String, String> queryParams) {
+		String approximationError = queryParams.get(QUERY_PARAM_APPROXIMATION);
+		return StringUtils.isNotBlank(approximationError) ? approximationError : null;
+	}
 
 	@ExceptionHandler(JobParametersInvalidException.class)
 	@ResponseStatus(value = HttpStatus.UNPROCESSABLE_ENTITY)
@@ -62,4 +170,39 @@ public class EvaluationController {
 		return new ApiError(HttpStatus.UNPROCESSABLE_ENTITY.name(), ex.getMessage());
 	}
 	
+	@ExceptionHandler({JobExecutionAlreadyRunningException.class, JobInstanceAlreadyCompleteException.class, JobRestartException.class})
+	@ResponseStatus(value = HttpStatus.CONFLICT)
+	@ResponseBody
+	protected ApiError handleJobRestartConflict(Exception ex) {
+		return new ApiError(HttpStatus.CONFLICT.name(), ex.getMessage());
+	}
+	
+	/**
+	 * Too many evaluations are waiting to be admitted: {@code Retry-After} tells the client when to launch the evaluation again
+	 */
+	@ExceptionHandler(EvaluationRejectedException.class)
+	protected ResponseEntity<ApiError> handleEvaluationRejectedException(EvaluationRejectedException ex) {
+		return ResponseEntity
+				.status(HttpStatus.TOO_MANY_REQUESTS)
+				.header(HttpHeaders.RETRY_AFTER, Long.toString(ex.getRetryAfterSeconds()))
+				.body(new ApiError(HttpStatus.TOO_MANY_REQUESTS.name(), ex.getMessage()));
+	}
+	
+	/**
+	 * The job of the evaluation ended without being completed, it has no report: the message holds the job execution id the evaluation can be restarted from
+	 */
+	@ExceptionHandler(EvaluationFailedException.class)
+	@ResponseStatus(value = HttpStatus.INTERNAL_SERVER_ERROR)
+	@ResponseBody
+	protected ApiError handleEvaluationFailedException(EvaluationFailedException ex) {
+		return new ApiError(HttpStatus.INTERNAL_SERVER_ERROR.name(), ex.getMessage());
+	}
+	
+	@ExceptionHandler(NoSuchJobExecutionException.class)
+	@ResponseStatus(value = HttpStatus.NOT_FOUND)
+	@ResponseBody
+	protected ApiError handleNoSuchJobExecutionException(NoSuchJobExecutionException ex) {
+		return new ApiError(HttpStatus.NOT_FOUND.name(), ex.getMessage());
+	}
+	
 }
@@ -0,0 +1,33 @@
+package io.elgayed.statistics;
+
+/**
+ * Read view of the values of the groups of a query, speakers or themes, held in slots: 
+ * the slot of a group is its id for exact {@link SpeakerCounters}, any slot of a bounded {@link SpaceSavingSketch}
+ */
+interface GroupValues {
+
+	/**
+	 * @return the upper bound (exclusive) of the slots
+	 */
+	int slots();
+
+	/**
+	 * @return the id of the group held by the given slot, or -1 if the slot is empty
+	 */
+	int groupAt(int slot);
+
+	/**
+	 * @return the value of the group held by the given slot
+	 */
+	long valueAt(int slot);
+
+	/**
+	 * @return the maximum overestimation of the value of the group held by the given slot, 0 for exact values
+	 */
+	long errorAt(int slot);
+
+	/**
+	 * @return the number of groups
+	 */
+	int size();
+}
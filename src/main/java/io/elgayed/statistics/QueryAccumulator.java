@@ -0,0 +1,188 @@
+package io.elgayed.statistics;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+import io.elgayed.dictionary.NameDictionary;
+import io.elgayed.dictionary.SpeechDictionary;
+
+/**
+ * Accumulates the speeches matching a {@link SpeechQuery} into primitive per group {@link SpeakerCounters},
+ * groups being the speaker ids or the theme ids of the accumulator's {@link SpeechDictionary}.
+ * Queries having an error bound (see {@link SpeechQuery#getError()}) are accumulated into a fixed size {@link SpaceSavingSketch} instead.
+ *
+ * Filters are resolved once: the theme is encoded into its id and the year and date range are folded into bounds of packed dates,
+ * so matching a speech is a few int comparisons.
+ *
+ * This class is not thread safe
+ */
+class QueryAccumulator {
+
+	private static final int ANY_THEME = -1;
+	/**
+	 * Approximate heap footprint of a slot of exact counters (a value and a presence flag) and of a sketch counter (group, count, error, heap and table entries)
+	 */
+	private static final int COUNTER_SLOT_BYTES = Long.BYTES + 1;
+	private static final int SKETCH_SLOT_BYTES = 40;
+
+	private final SpeechQuery query;
+	private final SpeechQuery.Aggregate aggregate;
+	private final SpeechDictionary dictionary;
+	private final int themeId;
+	private final int firstDate;
+	private final int lastDate;
+	private final boolean groupedBySpeaker;
+	private final boolean counting;
+	/**
+	 * Exact counters, {@code null} if the query is approximated
+	 */
+	private final SpeakerCounters counters;
+	/**
+	 * Approximate counters, {@code null} if the query is exact
+	 */
+	private final SpaceSavingSketch sketch;
+
+	QueryAccumulator(SpeechQuery query, SpeechDictionary dictionary) {
+		this.query = query;
+		this.aggregate = query.getAggregate();
+		this.dictionary = dictionary;
+		this.themeId = query.getTheme() != null ? dictionary.themes().idOf(query.getTheme()) : ANY_THEME;
+		this.firstDate = query.firstDate();
+		this.lastDate = query.lastDate();
+		this.groupedBySpeaker = query.getGroupBy() == SpeechQuery.GroupBy.SPEAKER;
+		this.counting = aggregate == SpeechQuery.Aggregate.COUNT;
+		this.counters = query.getError() == null ? new SpeakerCounters() : null;
+		this.sketch = query.getError() != null ? new SpaceSavingSketch(SpaceSavingSketch.capacityOf(query.getError())) : null;
+	}
+
+	SpeechQuery getQuery() {
+		return query;
+	}
+
+	/**
+	 * @return the values of the groups of this query, exact or approximated
+	 */
+	GroupValues values() {
+		return sketch != null ? sketch : counters;
+	}
+
+	/**
+	 * @return {@code true} if the groups of this query are approximated by a sketch
+	 */
+	boolean isSketched() {
+		return sketch != null;
+	}
+	
+	/**
+	 * @return the approximate heap footprint of the counters of this query, in bytes
+	 */
+	long estimatedSize() {
+		return sketch != null ? (long) sketch.size() * SKETCH_SLOT_BYTES : (long) counters.capacity() * COUNTER_SLOT_BYTES;
+	}
+
+	/**
+	 * @return the dictionary of the groups of this query, speakers or themes
+	 */
+	NameDictionary groups() {
+		return groupedBySpeaker ? dictionary.speakers() : dictionary.themes();
+	}
+
+	void accumulate(int speakerId, int speechThemeId, int date, long words) {
+		if (date < firstDate || date > lastDate || (themeId != ANY_THEME && speechThemeId != themeId))
+			return;
+		int group = groupedBySpeaker ? speakerId : speechThemeId;
+		if (sketch != null)
+			sketch.add(group, counting ? 1 : words);
+		else if (counting)
+			counters.add(group, 1);
+		else
+			add(group, words);
+	}
+
+	/**
+	 * Combines a value into the counter of a group: counts and sums are added up, minimums and maximums are kept
+	 */
+	void add(int group, long value) {
+		if (sketch != null)
+			sketch.add(group, value);
+		else if (aggregate == SpeechQuery.Aggregate.MIN)
+			counters.min(group, value);
+		else if (aggregate == SpeechQuery.Aggregate.MAX)
+			counters.max(group, value);
+		else
+			counters.add(group, value);
+	}
+
+	/**
+	 * Merges the counters of the same query accumulated by another accumulator
+	 * @param groupIdTranslation Translation of the other accumulator's group ids into this accumulator's ones
+	 */
+	void merge(QueryAccumulator other, IntUnaryOperator groupIdTranslation) {
+		if (sketch != null) {
+			sketch.merge(other.sketch, groupIdTranslation);
+			return;
+		}
+		SpeakerCounters otherCounters = other.counters;
+		for (int group = 0; group < otherCounters.capacity(); group++) {
+			if (otherCounters.isPresent(group))
+				add(groupIdTranslation.applyAsInt(group), otherCounters.get(group));
+		}
+	}
+
+	/**
+	 * Writes the counters of this query by group name: the name and the value of every present group,
+	 * preceded by the total value and followed by the error of every group if the query is approximated
+	 * @param sortedByName {@code true} to write exact counters in the order of the group names, so that they can be merged with a k-way merge (see {@link SortedRunMerger})
+	 */
+	void writeGroups(DataOutputStream out, boolean sortedByName) throws IOException {
+		GroupValues values = values();
+		NameDictionary groups = groups();
+		if (sketch != null)
+			out.writeLong(sketch.totalValue());
+		out.writeInt(values.size());
+		if (sketch == null && sortedByName) {
+			String[] names = new String[values.size()];
+			int i = 0;
+			for (int group = 0; group < counters.capacity(); group++) {
+				if (counters.isPresent(group))
+					names[i++] = groups.nameOf(group);
+			}
+			Arrays.sort(names);
+			for (String name : names) {
+				out.writeUTF(name);
+				out.writeLong(counters.get(groups.find(name)));
+			}
+			return;
+		}
+		for (int slot = 0; slot < values.slots(); slot++) {
+			int group = values.groupAt(slot);
+			if (group == -1)
+				continue;
+			out.writeUTF(groups.nameOf(group));
+			out.writeLong(values.valueAt(slot));
+			if (sketch != null)
+				out.writeLong(values.errorAt(slot));
+		}
+	}
+
+	/**
+	 * Reads counters written by {@link #writeGroups(DataOutputStream, boolean)} into this query, which holds no counter yet
+	 */
+	void readGroups(DataInputStream in) throws IOException {
+		NameDictionary groups = groups();
+		if (sketch != null)
+			sketch.restoreTotalValue(in.readLong());
+		int groupsCount = in.readInt();
+		for (int i = 0; i < groupsCount; i++) {
+			int group = groups.idOf(in.readUTF());
+			long value = in.readLong();
+			if (sketch != null)
+				sketch.restore(group, value, in.readLong());
+			else
+				add(group, value);
+		}
+	}
+}
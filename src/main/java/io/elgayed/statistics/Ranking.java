@@ -0,0 +1,153 @@
+package io.elgayed.statistics;
+
+import io.elgayed.dictionary.NameDictionary;
+
+/**
+ * Top groups of {@link GroupValues}, ranked by value and selected with a bounded heap: ranking the top K of n groups
+ * takes O(n log K) time and O(K) memory, the groups are never all sorted.
+ *
+ * One more group than asked for is selected, so that ties are detected explicitly: a tie for the first rank means there is no clear leader
+ * (see {@link #leader()}), a tie between the last ranked group and the first group left out is reported by {@link #isTiedAtCutoff()}.
+ * Tied groups are ordered by name, so that rankings do not depend on the order in which ids were given, or by id when names are not given.
+ *
+ * This class is not thread safe
+ */
+class Ranking {
+
+	private static final int NO_GROUP = -1;
+
+	private final GroupValues values;
+	private final NameDictionary names;
+	private final boolean ascending;
+	/**
+	 * Slots of the selected groups, a heap rooted at the group ranked last while selecting, then sorted from the first rank to the last
+	 */
+	private final int[] slots;
+	private int selected;
+	private final int size;
+
+	/**
+	 * @param values Values of the ranked groups
+	 * @param names Names of the groups, used to order tied groups, or {@code null} to order them by id
+	 * @param top Number of groups to rank, at least 1
+	 * @param ascending {@code true} to rank the lowest values first, {@code false} to rank the highest values first
+	 */
+	Ranking(GroupValues values, NameDictionary names, int top, boolean ascending) {
+		if (top < 1)
+			throw new IllegalArgumentException("Ranking size must be at least 1: " + top);
+		this.values = values;
+		this.names = names;
+		this.ascending = ascending;
+		this.slots = new int[(int) Math.min((long) top + 1, values.size())];
+		for (int slot = 0; slot < values.slots(); slot++) {
+			if (values.groupAt(slot) != NO_GROUP)
+				offer(slot);
+		}
+		for (int last = selected - 1; last > 0; last--) {
+			swap(0, last);
+			siftDown(0, last);
+		}
+		this.size = Math.min(top, selected);
+	}
+
+	private void offer(int slot) {
+		if (selected < slots.length) {
+			slots[selected] = slot;
+			siftUp(selected++);
+		} else if (selected > 0 && precedes(slot, slots[0])) {
+			slots[0] = slot;
+			siftDown(0, selected);
+		}
+	}
+
+	private void siftUp(int index) {
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (!precedes(slots[parent], slots[index]))
+				return;
+			swap(parent, index);
+			index = parent;
+		}
+	}
+
+	private void siftDown(int index, int heapSize) {
+		while (true) {
+			int last = index;
+			int left = 2 * index + 1;
+			int right = left + 1;
+			if (left < heapSize && precedes(slots[last], slots[left]))
+				last = left;
+			if (right < heapSize && precedes(slots[last], slots[right]))
+				last = right;
+			if (last == index)
+				return;
+			swap(index, last);
+			index = last;
+		}
+	}
+
+	private void swap(int i, int j) {
+		int slot = slots[i];
+		slots[i] = slots[j];
+		slots[j] = slot;
+	}
+
+	/**
+	 * @return {@code true} if the group of the first slot ranks before the group of the second one: its value comes first, or values are equal and its name comes first
+	 */
+	private boolean precedes(int first, int second) {
+		int comparison = Long.compare(values.valueAt(first), values.valueAt(second));
+		if (comparison == 0 && names == null)
+			return values.groupAt(first) < values.groupAt(second);
+		if (comparison == 0)
+			return names.nameOf(values.groupAt(first)).compareTo(names.nameOf(values.groupAt(second))) < 0;
+		return ascending ? comparison < 0 : comparison > 0;
+	}
+
+	/**
+	 * @return the number of ranked groups, the asked size unless fewer groups are present
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @param index Index of a ranked group, in [0, {@link #size()})
+	 * @return the id of the group at the given index
+	 */
+	int groupAt(int index) {
+		return values.groupAt(slots[index]);
+	}
+
+	/**
+	 * @param index Index of a ranked group, in [0, {@link #size()})
+	 * @return the value of the group at the given index
+	 */
+	long valueAt(int index) {
+		return values.valueAt(slots[index]);
+	}
+
+	/**
+	 * @param index Index of a ranked group, in [0, {@link #size()})
+	 * @return the maximum overestimation of the value of the group at the given index, 0 for exact values
+	 */
+	long errorAt(int index) {
+		return values.errorAt(slots[index]);
+	}
+
+	/**
+	 * @return the id of the group ranked first, or -1 if no group is present or if the first rank is tied
+	 */
+	int leader() {
+		if (selected == 0 || (selected > 1 && valueAt(0) == valueAt(1)))
+			return NO_GROUP;
+		return groupAt(0);
+	}
+
+	/**
+	 * @return {@code true} if the last ranked group is tied with groups left out of the ranking
+	 */
+	boolean isTiedAtCutoff() {
+		return selected > size && valueAt(size - 1) == valueAt(size);
+	}
+}
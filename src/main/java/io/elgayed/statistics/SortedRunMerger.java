@@ -0,0 +1,188 @@
+package io.elgayed.statistics;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.IntUnaryOperator;
+import java.util.zip.InflaterInputStream;
+
+import io.elgayed.dictionary.NameDictionary;
+import io.elgayed.dictionary.SpeechDictionary;
+import io.elgayed.model.StatisticsReport;
+
+/**
+ * Merges the sorted runs spilled by accumulators of the same questions and queries (see {@link StatisticsReportAccumulator#spill(Path)}) into a report,
+ * without loading the counters of the runs:
+ * <ul>
+ * <li>The exact counters of a query are written by every run in the order of the group names, they are merged with a k-way merge over a heap of the runs:
+ * the counters of a group are combined as it comes out of the merge and offered to {@link TopGroups}, which only keeps the groups that can still be ranked.
+ * The questions of the report keep their 2 first groups, queries keep their top + 1 groups</li>
+ * <li>Approximated counters are sketches of fixed size, they are loaded and merged</li>
+ * </ul>
+ * So the memory used to merge the runs does not depend on the number of distinct speakers, except for a query without top, whose ranking holds all its groups.
+ * Runs are read query after query, every run being streamed once.
+ */
+public class SortedRunMerger {
+
+	private final List<Path> runs;
+	private int speakersCount;
+
+	/**
+	 * @param runs Sorted run files, spilled by accumulators answering the same questions and queries, at least one
+	 */
+	public SortedRunMerger(List<Path> runs) {
+		if (runs.isEmpty())
+			throw new IllegalArgumentException("At least one sorted run is required");
+		this.runs = runs;
+	}
+
+	/**
+	 * @return the report answering the questions and queries of the runs
+	 * @throws IllegalStateException if runs answer different questions or queries
+	 */
+	public StatisticsReport merge() throws IOException {
+		List<DataInputStream> inputs = new ArrayList<>(runs.size());
+		try {
+			for (Path run : runs)
+				inputs.add(new DataInputStream(new BufferedInputStream(new InflaterInputStream(Files.newInputStream(run)))));
+			int queriesCount = -1;
+			for (DataInputStream in : inputs) {
+				int version = in.readInt();
+				if (version != StatisticsReportAccumulator.SNAPSHOT_VERSION)
+					throw new IllegalStateException("Unsupported sorted run version: " + version);
+				int count = in.readInt();
+				if (queriesCount != -1 && count != queriesCount)
+					throw new IllegalStateException("Sorted runs answer different queries");
+				queriesCount = count;
+			}
+			List<SpeechQuery> definitions = new ArrayList<>(queriesCount);
+			List<GroupValues> values = new ArrayList<>(queriesCount);
+			List<NameDictionary> groups = new ArrayList<>(queriesCount);
+			for (int i = 0; i < queriesCount; i++) {
+				SpeechQuery query = readQuery(inputs);
+				definitions.add(query);
+				if (query.getError() != null) {
+					QueryAccumulator sketch = mergeSketches(query, inputs);
+					values.add(sketch.values());
+					groups.add(sketch.groups());
+				} else {
+					TopGroups topGroups = new TopGroups(i < StatisticsReportAccumulator.REPORT_QUESTIONS ? Integer.valueOf(1) : query.getTop(),
+							query.getOrder() == SpeechQuery.Order.ASC);
+					int mergedGroups = mergeCounters(query, inputs, topGroups);
+					if (i == StatisticsReportAccumulator.LEAST_WORDY)
+						speakersCount = mergedGroups;
+					values.add(topGroups);
+					groups.add(topGroups.names());
+				}
+			}
+			return StatisticsReportAccumulator.toStatisticsReport(definitions, values, groups);
+		} finally {
+			for (DataInputStream in : inputs)
+				in.close();
+		}
+	}
+
+	/**
+	 * @return the number of distinct speakers of the merged runs, once they are merged
+	 */
+	public int getSpeakersCount() {
+		return speakersCount;
+	}
+
+	/**
+	 * Reads the name and the definition of the next query of every run
+	 */
+	private static SpeechQuery readQuery(List<DataInputStream> inputs) throws IOException {
+		SpeechQuery query = null;
+		for (DataInputStream in : inputs) {
+			SpeechQuery runQuery = SpeechQuery.parse(in.readUTF(), in.readUTF());
+			if (query != null && !query.equals(runQuery))
+				throw new IllegalStateException(String.format("Sorted runs answer different queries: %s and %s", query.getDefinition(), runQuery.getDefinition()));
+			query = runQuery;
+		}
+		return query;
+	}
+
+	private static QueryAccumulator mergeSketches(SpeechQuery query, List<DataInputStream> inputs) throws IOException {
+		SpeechDictionary dictionary = new SpeechDictionary();
+		QueryAccumulator merged = new QueryAccumulator(query, dictionary);
+		for (DataInputStream in : inputs) {
+			QueryAccumulator run = new QueryAccumulator(query, dictionary);
+			run.readGroups(in);
+			merged.merge(run, IntUnaryOperator.identity());
+		}
+		return merged;
+	}
+
+	/**
+	 * Merges the exact counters of a query written by every run, the counters of a group being combined as {@link QueryAccumulator#add(int, long)} does
+	 * @return the number of distinct groups
+	 */
+	private static int mergeCounters(SpeechQuery query, List<DataInputStream> inputs, TopGroups topGroups) throws IOException {
+		PriorityQueue<RunCursor> cursors = new PriorityQueue<>(Math.max(inputs.size(), 1), Comparator.comparing((RunCursor cursor) -> cursor.name));
+		for (DataInputStream in : inputs) {
+			RunCursor cursor = new RunCursor(in, in.readInt());
+			if (cursor.next())
+				cursors.add(cursor);
+		}
+		int mergedGroups = 0;
+		while (!cursors.isEmpty()) {
+			RunCursor cursor = cursors.poll();
+			String name = cursor.name;
+			long value = cursor.value;
+			while (!cursors.isEmpty() && cursors.peek().name.equals(name)) {
+				RunCursor other = cursors.poll();
+				value = combine(query.getAggregate(), value, other.value);
+				if (other.next())
+					cursors.add(other);
+			}
+			if (cursor.next())
+				cursors.add(cursor);
+			topGroups.add(name, value);
+			mergedGroups++;
+		}
+		return mergedGroups;
+	}
+
+	private static long combine(SpeechQuery.Aggregate aggregate, long value, long other) {
+		if (aggregate == SpeechQuery.Aggregate.MIN)
+			return Math.min(value, other);
+		if (aggregate == SpeechQuery.Aggregate.MAX)
+			return Math.max(value, other);
+		return value + other;
+	}
+
+	/**
+	 * Current group of the counters of a query in a run, sorted by name
+	 */
+	private static class RunCursor {
+
+		private final DataInputStream in;
+		private int remaining;
+		private String name;
+		private long value;
+
+		private RunCursor(DataInputStream in, int count) {
+			this.in = in;
+			this.remaining = count;
+		}
+
+		/**
+		 * @return {@code false} once the counters of the query are all read
+		 */
+		private boolean next() throws IOException {
+			if (remaining == 0)
+				return false;
+			remaining--;
+			name = in.readUTF();
+			value = in.readLong();
+			return true;
+		}
+	}
+}
@@ -0,0 +1,325 @@
+package io.elgayed.statistics;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Space-Saving heavy hitters sketch: approximate counters of at most {@code capacity} groups, however many distinct groups are added.
+ *
+ * Once the sketch is full, a new group replaces the group having the lowest counter and inherits its counter as error:
+ * a counter never underestimates the value of its group and overestimates it by at most {@link #errorAt(int)},
+ * itself at most the total added value divided by the capacity. So a sketch of capacity {@code ceil(1 / e)} has an error bound of
+ * {@code e} times the total, and every group whose value exceeds that bound is held by the sketch.
+ *
+ * Sketches of the same capacity are mergeable (Agarwal et al., Mergeable Summaries): the merged counters keep the same guarantees,
+ * their error bound being relative to the total of both sketches.
+ *
+ * Groups are located through an open addressing table and the group to replace through a min-heap of the counters,
+ * so adding a value does not allocate, except when the arrays grow up to the capacity.
+ *
+ * This class is not thread safe
+ */
+class SpaceSavingSketch implements GroupValues {
+
+	private static final int INITIAL_CAPACITY = 64;
+	private static final int NO_SLOT = -1;
+
+	private final int capacity;
+	private long total;
+
+	private int size;
+	private int[] groups;
+	private long[] counts;
+	private long[] errors;
+	/**
+	 * Min-heap of the used slots by count, and the position of every slot in the heap
+	 */
+	private int[] heap;
+	private int[] heapPositions;
+	/**
+	 * Open addressing table of the used slots by group, holding slot + 1 so that 0 is an empty bucket, at most half full
+	 */
+	private int[] table;
+
+	/**
+	 * @param capacity Maximum number of groups held by this sketch
+	 */
+	SpaceSavingSketch(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Sketch capacity must be at least 1: " + capacity);
+		this.capacity = capacity;
+		allocate(Math.min(capacity, INITIAL_CAPACITY));
+	}
+
+	/**
+	 * @param error Error bound relative to the total added value, in (0, 1)
+	 * @return the capacity of a sketch having the given error bound
+	 */
+	static int capacityOf(double error) {
+		return (int) Math.ceil(1 / error);
+	}
+
+	/**
+	 * Adds the given value to the counter of the given group, replacing the group with the lowest counter if the group is not held and the sketch is full
+	 */
+	void add(int group, long value) {
+		total += value;
+		int slot = find(group);
+		if (slot != NO_SLOT) {
+			counts[slot] += value;
+			siftDown(heapPositions[slot]);
+		} else if (size < capacity) {
+			insert(group, value, 0);
+		} else {
+			slot = heap[0];
+			remove(groups[slot]);
+			groups[slot] = group;
+			errors[slot] = counts[slot];
+			counts[slot] += value;
+			put(group, slot);
+			siftDown(0);
+		}
+	}
+
+	/**
+	 * Merges a sketch of the same capacity: a group held by both sketches gets the sum of both counters and errors,
+	 * a group held by one sketch only gets the lowest counter of the other one added to its counter and to its error if the other one is full.
+	 * The groups with the highest merged counters are kept
+	 * @param groupIdTranslation Translation of the other sketch's group ids into this sketch's ones
+	 */
+	void merge(SpaceSavingSketch other, IntUnaryOperator groupIdTranslation) {
+		if (other.capacity != capacity)
+			throw new IllegalArgumentException(String.format("Sketches of different capacities cannot be merged: %d and %d", capacity, other.capacity));
+		long otherMinimum = other.isFull() ? other.counts[other.heap[0]] : 0;
+		long minimum = isFull() ? counts[heap[0]] : 0;
+		int mergedSize = size;
+		int[] mergedGroups = Arrays.copyOf(groups, size + other.size);
+		long[] mergedCounts = Arrays.copyOf(counts, size + other.size);
+		long[] mergedErrors = Arrays.copyOf(errors, size + other.size);
+		for (int slot = 0; slot < size; slot++) {
+			mergedCounts[slot] += otherMinimum;
+			mergedErrors[slot] += otherMinimum;
+		}
+		for (int otherSlot = 0; otherSlot < other.size; otherSlot++) {
+			int group = groupIdTranslation.applyAsInt(other.groups[otherSlot]);
+			int slot = find(group);
+			if (slot != NO_SLOT) {
+				mergedCounts[slot] = counts[slot] + other.counts[otherSlot];
+				mergedErrors[slot] = errors[slot] + other.errors[otherSlot];
+			} else {
+				mergedGroups[mergedSize] = group;
+				mergedCounts[mergedSize] = other.counts[otherSlot] + minimum;
+				mergedErrors[mergedSize] = other.errors[otherSlot] + minimum;
+				mergedSize++;
+			}
+		}
+		long mergedTotal = total + other.total;
+		clear();
+		if (mergedSize <= capacity) {
+			for (int i = 0; i < mergedSize; i++)
+				insert(mergedGroups[i], mergedCounts[i], mergedErrors[i]);
+		} else {
+			Ranking ranking = new Ranking(new Entries(mergedGroups, mergedCounts, mergedErrors, mergedSize), null, capacity, false);
+			for (int i = 0; i < ranking.size(); i++)
+				insert(ranking.groupAt(i), ranking.valueAt(i), ranking.errorAt(i));
+		}
+		total = mergedTotal;
+	}
+
+	/**
+	 * Restores a counter saved from a sketch of the same capacity, see {@link #totalValue()}
+	 */
+	void restore(int group, long count, long error) {
+		if (find(group) != NO_SLOT || size == capacity)
+			throw new IllegalStateException("Counter of group " + group + " cannot be restored");
+		insert(group, count, error);
+	}
+
+	/**
+	 * @return the total value added to this sketch, its error bound is this total divided by the capacity
+	 */
+	long totalValue() {
+		return total;
+	}
+
+	void restoreTotalValue(long total) {
+		this.total = total;
+	}
+
+	private boolean isFull() {
+		return size == capacity;
+	}
+
+	@Override
+	public int slots() {
+		return size;
+	}
+
+	@Override
+	public int groupAt(int slot) {
+		return groups[slot];
+	}
+
+	@Override
+	public long valueAt(int slot) {
+		return counts[slot];
+	}
+
+	@Override
+	public long errorAt(int slot) {
+		return errors[slot];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	private void insert(int group, long count, long error) {
+		if (size == groups.length)
+			allocate(Math.min(capacity, groups.length * 2));
+		int slot = size++;
+		groups[slot] = group;
+		counts[slot] = count;
+		errors[slot] = error;
+		put(group, slot);
+		heap[slot] = slot;
+		heapPositions[slot] = slot;
+		siftUp(slot);
+	}
+
+	private void clear() {
+		size = 0;
+		Arrays.fill(table, 0);
+	}
+
+	private void allocate(int length) {
+		int[] previousGroups = groups;
+		groups = previousGroups != null ? Arrays.copyOf(previousGroups, length) : new int[length];
+		counts = counts != null ? Arrays.copyOf(counts, length) : new long[length];
+		errors = errors != null ? Arrays.copyOf(errors, length) : new long[length];
+		heap = heap != null ? Arrays.copyOf(heap, length) : new int[length];
+		heapPositions = heapPositions != null ? Arrays.copyOf(heapPositions, length) : new int[length];
+		table = new int[Integer.highestOneBit(Math.max(length, 2) * 2 - 1) * 2];
+		for (int slot = 0; slot < size; slot++)
+			put(groups[slot], slot);
+	}
+
+	private int bucketOf(int group) {
+		return (group * 0x9E3779B9) >>> (Integer.numberOfLeadingZeros(table.length) + 1) & (table.length - 1);
+	}
+
+	private int find(int group) {
+		int mask = table.length - 1;
+		for (int bucket = bucketOf(group); table[bucket] != 0; bucket = (bucket + 1) & mask) {
+			if (groups[table[bucket] - 1] == group)
+				return table[bucket] - 1;
+		}
+		return NO_SLOT;
+	}
+
+	private void put(int group, int slot) {
+		int mask = table.length - 1;
+		int bucket = bucketOf(group);
+		while (table[bucket] != 0)
+			bucket = (bucket + 1) & mask;
+		table[bucket] = slot + 1;
+	}
+
+	/**
+	 * Removes a group from the table, shifting back the following buckets of its probe sequence so that lookups need no tombstone
+	 */
+	private void remove(int group) {
+		int mask = table.length - 1;
+		int bucket = bucketOf(group);
+		while (groups[table[bucket] - 1] != group)
+			bucket = (bucket + 1) & mask;
+		int hole = bucket;
+		for (int next = (hole + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+			int home = bucketOf(groups[table[next] - 1]);
+			//the entry can fill the hole if its home bucket is not within (hole, next]
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				table[hole] = table[next];
+				hole = next;
+			}
+		}
+		table[hole] = 0;
+	}
+
+	private void siftUp(int position) {
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			if (counts[heap[parent]] <= counts[heap[position]])
+				return;
+			swap(parent, position);
+			position = parent;
+		}
+	}
+
+	private void siftDown(int position) {
+		while (true) {
+			int lowest = position;
+			int left = 2 * position + 1;
+			int right = left + 1;
+			if (left < size && counts[heap[left]] < counts[heap[lowest]])
+				lowest = left;
+			if (right < size && counts[heap[right]] < counts[heap[lowest]])
+				lowest = right;
+			if (lowest == position)
+				return;
+			swap(position, lowest);
+			position = lowest;
+		}
+	}
+
+	private void swap(int first, int second) {
+		int slot = heap[first];
+		heap[first] = heap[second];
+		heap[second] = slot;
+		heapPositions[heap[first]] = first;
+		heapPositions[heap[second]] = second;
+	}
+
+	/**
+	 * Counters being merged, ranked to keep the highest ones
+	 */
+	private static class Entries implements GroupValues {
+
+		private final int[] groups;
+		private final long[] counts;
+		private final long[] errors;
+		private final int size;
+
+		private Entries(int[] groups, long[] counts, long[] errors, int size) {
+			this.groups = groups;
+			this.counts = counts;
+			this.errors = errors;
+			this.size = size;
+		}
+
+		@Override
+		public int slots() {
+			return size;
+		}
+
+		@Override
+		public int groupAt(int slot) {
+			return groups[slot];
+		}
+
+		@Override
+		public long valueAt(int slot) {
+			return counts[slot];
+		}
+
+		@Override
+		public long errorAt(int slot) {
+			return errors[slot];
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+}
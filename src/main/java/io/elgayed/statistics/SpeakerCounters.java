@@ -0,0 +1,118 @@
+package io.elgayed.statistics;
+
+import java.util.Arrays;
+
+/**
+ * Dense primitive counters indexed by speaker id, or by theme id for counters grouped by theme (see {@link io.elgayed.dictionary.NameDictionary}): 
+ * updating a counter neither boxes nor allocates, except when the arrays grow to make room for a new id.
+ * 
+ * A speaker is present once its counter has been updated, even if it was added 0
+ * 
+ * This class is not thread safe
+ */
+public class SpeakerCounters implements GroupValues {
+	
+	private static final int INITIAL_CAPACITY = 64;
+	
+	private long[] values = new long[INITIAL_CAPACITY];
+	private boolean[] present = new boolean[INITIAL_CAPACITY];
+	private int presentCount;
+	
+	/**
+	 * Adds the given value to the counter of the given speaker
+	 * @param speakerId Speaker's id
+	 * @param value Value to add
+	 * @return the updated value of the counter
+	 */
+	public long add(int speakerId, long value) {
+		if (speakerId >= values.length)
+			grow(speakerId);
+		if (!present[speakerId]) {
+			present[speakerId] = true;
+			presentCount++;
+		}
+		return values[speakerId] += value;
+	}
+	
+	/**
+	 * Sets the counter of the given speaker to the given value if it is lower, or if the speaker is not present yet
+	 * @return the updated value of the counter
+	 */
+	public long min(int speakerId, long value) {
+		if (!isPresent(speakerId) || value < values[speakerId])
+			set(speakerId, value);
+		return values[speakerId];
+	}
+	
+	/**
+	 * Sets the counter of the given speaker to the given value if it is higher, or if the speaker is not present yet
+	 * @return the updated value of the counter
+	 */
+	public long max(int speakerId, long value) {
+		if (!isPresent(speakerId) || value > values[speakerId])
+			set(speakerId, value);
+		return values[speakerId];
+	}
+	
+	private void set(int speakerId, long value) {
+		if (speakerId >= values.length)
+			grow(speakerId);
+		if (!present[speakerId]) {
+			present[speakerId] = true;
+			presentCount++;
+		}
+		values[speakerId] = value;
+	}
+	
+	/**
+	 * @return the counter of the given speaker, 0 if it is not present
+	 */
+	public long get(int speakerId) {
+		return speakerId < values.length ? values[speakerId] : 0;
+	}
+	
+	public boolean isPresent(int speakerId) {
+		return speakerId < present.length && present[speakerId];
+	}
+	
+	/**
+	 * @return the number of present speakers
+	 */
+	@Override
+	public int size() {
+		return presentCount;
+	}
+	
+	/**
+	 * @return the upper bound (exclusive) of the ids of present speakers
+	 */
+	public int capacity() {
+		return values.length;
+	}
+	
+	@Override
+	public int slots() {
+		return capacity();
+	}
+	
+	@Override
+	public int groupAt(int slot) {
+		return isPresent(slot) ? slot : -1;
+	}
+	
+	@Override
+	public long valueAt(int slot) {
+		return get(slot);
+	}
+	
+	@Override
+	public long errorAt(int slot) {
+		return 0;
+	}
+	
+	private void grow(int speakerId) {
+		int capacity = Math.max(values.length * 2, speakerId + 1);
+		values = Arrays.copyOf(values, capacity);
+		present = Arrays.copyOf(present, capacity);
+	}
+}
@@ -0,0 +1,302 @@
+package io.elgayed.statistics;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+import io.elgayed.model.SpeechDate;
+
+/**
+ * Definition of a question over speeches: an aggregate of the speeches matching optional filters, grouped by speaker or by theme.
+ *
+ * Queries are defined as text, e.g. {@code aggregate=count;group-by=speaker;year=2013;theme=Innere Sicherheit}, see {@link #parse(String, String)}:
+ * <ul>
+ * <li>{@code aggregate}: {@code count} of the speeches, or {@code sum}, {@code min} or {@code max} of their words</li>
+ * <li>{@code group-by}: {@code speaker} or {@code theme}</li>
+ * <li>{@code year}, {@code theme}, {@code from} and {@code to} (ISO dates, inclusive): optional filters, a speech is aggregated if it matches all of them</li>
+ * <li>{@code order}: {@code desc} (default) to rank the groups from the highest value to the lowest, {@code asc} from the lowest to the highest</li>
+ * <li>{@code top}: optional number of groups to rank, every group is ranked by default</li>
+ * <li>{@code error}: optional error bound relative to the total value, in [{@link #MIN_ERROR}, 1), to answer a {@code count} or {@code sum}
+ * ranked in {@code desc} order with a fixed size {@link SpaceSavingSketch} instead of a counter per group, see {@link #isApproximable()}</li>
+ * </ul>
+ * Any number of queries are answered by a single scan of the speeches, see {@link StatisticsReportAccumulator}.
+ *
+ * Queries are immutable, they are equal if they have the same name and the same definition
+ */
+public final class SpeechQuery {
+
+	public enum Aggregate {
+		COUNT, SUM, MIN, MAX
+	}
+
+	public enum GroupBy {
+		SPEAKER, THEME
+	}
+
+	public enum Order {
+		DESC, ASC
+	}
+
+	public static final String AGGREGATE = "aggregate";
+	public static final String GROUP_BY = "group-by";
+	public static final String YEAR = "year";
+	public static final String THEME = "theme";
+	public static final String FROM = "from";
+	public static final String TO = "to";
+	public static final String ORDER = "order";
+	public static final String TOP = "top";
+	public static final String ERROR = "error";
+	/**
+	 * Lowest error bound of an approximated query, its sketch holds up to a million groups
+	 */
+	public static final double MIN_ERROR = 1e-6;
+
+	private static final String SEPARATOR = ";";
+
+	private final String name;
+	private final Aggregate aggregate;
+	private final GroupBy groupBy;
+	private final Integer year;
+	private final String theme;
+	private final LocalDate from;
+	private final LocalDate to;
+	private final Order order;
+	private final Integer top;
+	private final Double error;
+
+	/**
+	 * @param name Name of the query, the key of its result in the report
+	 * @param aggregate Aggregate of the matching speeches
+	 * @param groupBy Grouping of the matching speeches
+	 * @param year Year of the matching speeches, or {@code null} for any year
+	 * @param theme Theme of the matching speeches, or {@code null} for any theme
+	 * @param from First date of the matching speeches, or {@code null}
+	 * @param to Last date of the matching speeches, or {@code null}
+	 * @param order Order of the ranked groups
+	 * @param top Number of ranked groups, or {@code null} to rank every group
+	 * @param error Error bound of the approximated values relative to their total, or {@code null} for exact values
+	 * @throws IllegalArgumentException if the error bound is out of range or if the query is not approximable
+	 */
+	public SpeechQuery(String name, Aggregate aggregate, GroupBy groupBy, Integer year, String theme, LocalDate from, LocalDate to,
+			Order order, Integer top, Double error) {
+		if (name == null || name.isBlank())
+			throw new IllegalArgumentException("Query name must not be blank");
+		this.name = name;
+		this.aggregate = Objects.requireNonNull(aggregate, "Query aggregate is required");
+		this.groupBy = Objects.requireNonNull(groupBy, "Query grouping is required");
+		this.year = year;
+		this.theme = theme;
+		this.from = from;
+		this.to = to;
+		this.order = Objects.requireNonNull(order, "Query order is required");
+		if (top != null && top < 1)
+			throw new IllegalArgumentException(String.format("Query %s: invalid %s '%s'", name, TOP, top));
+		this.top = top;
+		if (error != null && !(error >= MIN_ERROR && error < 1))
+			throw new IllegalArgumentException(String.format("Query %s: invalid %s '%s'", name, ERROR, error));
+		if (error != null && !isApproximable())
+			throw new IllegalArgumentException(String.format("Query %s: only a count or a sum ranked in desc order can have an %s", name, ERROR));
+		this.error = error;
+	}
+
+	/**
+	 * @param name Name of the query
+	 * @param definition Definition of the query, as {@code key=value} pairs separated by {@code ;}
+	 * @return the defined query
+	 * @throws IllegalArgumentException if the definition is not valid
+	 */
+	public static SpeechQuery parse(String name, String definition) {
+		Aggregate aggregate = null;
+		GroupBy groupBy = null;
+		Integer year = null;
+		String theme = null;
+		LocalDate from = null;
+		LocalDate to = null;
+		Order order = Order.DESC;
+		Integer top = null;
+		Double error = null;
+		for (String pair : definition.split(SEPARATOR)) {
+			if (pair.isBlank())
+				continue;
+			String[] keyValue = pair.split("=", 2);
+			if (keyValue.length != 2)
+				throw new IllegalArgumentException(String.format("Query %s: expected key=value but got '%s'", name, pair.trim()));
+			String key = keyValue[0].trim().toLowerCase(Locale.ROOT);
+			String value = keyValue[1].trim();
+			try {
+				switch (key) {
+				case AGGREGATE:
+					aggregate = valueOf(Aggregate.class, name, key, value);
+					break;
+				case GROUP_BY:
+					groupBy = valueOf(GroupBy.class, name, key, value);
+					break;
+				case YEAR:
+					year = Integer.valueOf(value);
+					break;
+				case THEME:
+					theme = value;
+					break;
+				case FROM:
+					from = LocalDate.parse(value);
+					break;
+				case TO:
+					to = LocalDate.parse(value);
+					break;
+				case ORDER:
+					order = valueOf(Order.class, name, key, value);
+					break;
+				case TOP:
+					top = Integer.valueOf(value);
+					break;
+				case ERROR:
+					error = Double.valueOf(value);
+					break;
+				default:
+					throw new IllegalArgumentException(String.format("Query %s: unknown key '%s'", name, key));
+				}
+			} catch (NumberFormatException | DateTimeParseException e) {
+				throw invalidValue(name, key, value, e);
+			}
+		}
+		if (aggregate == null || groupBy == null)
+			throw new IllegalArgumentException(String.format("Query %s: %s and %s are required", name, AGGREGATE, GROUP_BY));
+		return new SpeechQuery(name, aggregate, groupBy, year, theme, from, to, order, top, error);
+	}
+
+	private static <E extends Enum<E>> E valueOf(Class<E> type, String name, String key, String value) {
+		try {
+			return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw invalidValue(name, key, value, e);
+		}
+	}
+
+	private static IllegalArgumentException invalidValue(String name, String key, String value, Exception cause) {
+		return new IllegalArgumentException(String.format("Query %s: invalid %s '%s'", name, key, value), cause);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Aggregate getAggregate() {
+		return aggregate;
+	}
+
+	public GroupBy getGroupBy() {
+		return groupBy;
+	}
+
+	/**
+	 * @return the year of the matching speeches, or {@code null} for any year
+	 */
+	public Integer getYear() {
+		return year;
+	}
+
+	/**
+	 * @return the theme of the matching speeches, or {@code null} for any theme
+	 */
+	public String getTheme() {
+		return theme;
+	}
+
+	public Order getOrder() {
+		return order;
+	}
+
+	/**
+	 * @return the number of ranked groups, or {@code null} if every group is ranked
+	 */
+	public Integer getTop() {
+		return top;
+	}
+
+	/**
+	 * @return the error bound of the approximated values relative to their total, or {@code null} if values are exact
+	 */
+	public Double getError() {
+		return error;
+	}
+
+	/**
+	 * @return {@code true} if this query can be answered by a heavy hitters sketch: a count or a sum ranked from the highest value,
+	 * the lowest values or the minimum and maximum of a group cannot be approximated with a bounded error
+	 */
+	public boolean isApproximable() {
+		return (aggregate == Aggregate.COUNT || aggregate == Aggregate.SUM) && order == Order.DESC;
+	}
+
+	/**
+	 * @param error Error bound relative to the total value
+	 * @return this query approximated with the given error bound if it is approximable and exact, this query otherwise
+	 */
+	public SpeechQuery approximated(double error) {
+		if (!isApproximable() || this.error != null)
+			return this;
+		return new SpeechQuery(name, aggregate, groupBy, year, theme, from, to, order, top, error);
+	}
+
+	/**
+	 * @return the first packed date (see {@link SpeechDate}) of the matching speeches, combining the year and the date range filters
+	 */
+	public int firstDate() {
+		int first = from != null ? SpeechDate.of(from) : Integer.MIN_VALUE;
+		return year != null ? Math.max(first, SpeechDate.startOfYear(year)) : first;
+	}
+
+	/**
+	 * @return the last packed date (see {@link SpeechDate}) of the matching speeches, combining the year and the date range filters
+	 */
+	public int lastDate() {
+		int last = to != null ? SpeechDate.of(to) : Integer.MAX_VALUE;
+		return year != null ? Math.min(last, SpeechDate.endOfYear(year)) : last;
+	}
+
+	/**
+	 * @return the canonical definition of this query, {@link #parse(String, String)} reads it back
+	 */
+	public String getDefinition() {
+		StringJoiner definition = new StringJoiner(SEPARATOR);
+		definition.add(AGGREGATE + "=" + aggregate.name().toLowerCase(Locale.ROOT));
+		definition.add(GROUP_BY + "=" + groupBy.name().toLowerCase(Locale.ROOT));
+		if (year != null)
+			definition.add(YEAR + "=" + year);
+		if (theme != null)
+			definition.add(THEME + "=" + theme);
+		if (from != null)
+			definition.add(FROM + "=" + from);
+		if (to != null)
+			definition.add(TO + "=" + to);
+		if (order != Order.DESC)
+			definition.add(ORDER + "=" + order.name().toLowerCase(Locale.ROOT));
+		if (top != null)
+			definition.add(TOP + "=" + top);
+		if (error != null)
+			definition.add(ERROR + "=" + error);
+		return definition.toString();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof SpeechQuery))
+			return false;
+		SpeechQuery other = (SpeechQuery) obj;
+		return name.equals(other.name) && getDefinition().equals(other.getDefinition());
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(name, getDefinition());
+	}
+
+	@Override
+	public String toString() {
+		return name + "[" + getDefinition() + "]";
+	}
+}
@@ -1,221 +1,414 @@
 package io.elgayed.statistics;
 
-import java.util.Calendar;
-import java.util.HashMap;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.function.Function;
-
-import org.apache.commons.lang3.tuple.Pair;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.IntUnaryOperator;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
+import io.elgayed.dictionary.NameDictionary;
+import io.elgayed.dictionary.SpeechDictionary;
+import io.elgayed.model.QueryReport;
+import io.elgayed.model.QueryResult;
+import io.elgayed.model.RankedGroup;
 import io.elgayed.model.Speech;
 import io.elgayed.model.StatisticsReport;
 
+/**
+ * Accumulates speeches to derive a {@link StatisticsReport}, answering any number of {@link SpeechQuery}s in the same pass.
+ *
+ * The questions of the report are themselves queries ({@link StatisticsReportConstants#MOST_SPEECHES_QUERY}, {@link StatisticsReportConstants#MOST_SECURITY_QUERY}
+ * and {@link StatisticsReportConstants#LEAST_WORDY_QUERY}), the queries of an evaluation are accumulated along with them,
+ * every speech being offered to every query, so answering twenty queries costs a single read of the data.
+ *
+ * Speakers and themes are encoded into the int ids of a {@link SpeechDictionary}, so query counters are indexed by speaker or theme id and
+ * ids are only turned back into names by {@link #toStatisticsReport()}. Speeches already holding ids (see {@link Speech#getSpeakerId()})
+ * are expected to have been encoded with this accumulator's dictionary, other speeches are encoded by this accumulator.
+ *
+ * Counters are primitive {@link SpeakerCounters}, so accumulating a speech does not allocate.
+ * In approximate mode (see {@link #StatisticsReportAccumulator(SpeechDictionary, List, double)}), the counters of the heavy hitter questions,
+ * the speakers with most speeches, and of the approximable queries are fixed size {@link SpaceSavingSketch}s instead,
+ * so their memory does not grow with the number of distinct speakers.
+ *
+ * Exact counters can also be kept within a memory budget: an accumulator can be spilled to a sorted run file (see {@link #spill(Path)}) and replaced
+ * by an empty copy having its own dictionary, the runs being merged into the report by a {@link SortedRunMerger}.
+ *
+ * This class is not thread safe
+ */
 public class StatisticsReportAccumulator {
-	
+
+	private static final int NO_GROUP = -1;
 	/**
-	 * Map for accumulating words per speaker
-	 * <ul>
-	 * <li>Key: speaker name</li>
-	 * <li>Value: number of words in overall</li>
-	 * </ul>
+	 * Version 1 snapshots hold the counters of the report's questions per speaker, version 2 snapshots hold the counters of every query
 	 */
-	private Map<String, Long> wordsPerSpeaker = new HashMap<>();
+	private static final int SPEAKERS_SNAPSHOT_VERSION = 1;
+	static final int SNAPSHOT_VERSION = 2;
+	private static final List<SpeechQuery> REPORT_QUERIES = List.of(StatisticsReportConstants.MOST_SPEECHES_QUERY,
+			StatisticsReportConstants.MOST_SECURITY_QUERY, StatisticsReportConstants.LEAST_WORDY_QUERY);
+	private static final int MOST_SPEECHES = 0;
+	private static final int MOST_SECURITY = 1;
+	static final int LEAST_WORDY = 2;
 	/**
-	 * Map for accumulating speeches in 2013 per speaker
-	 * <ul>
-	 * <li>Key: speaker's name</li>
-	 * <li>Value: number of speeches given in 2013</li>
-	 * </ul>
+	 * Number of questions of the report, they are the first queries of an accumulator
 	 */
-	private Map<String, Long> speechesIn2013PerSpeaker = new HashMap<>();
+	static final int REPORT_QUESTIONS = REPORT_QUERIES.size();
 	/**
-	 * Map for accumulating internal security speeches per speaker
-	 * <ul>
-	 * <li>Key: speaker's name</li>
-	 * <li>Value: number of speeches about the theme of internal security</li>
-	 * <ul>
+	 * Approximation error of an accumulator whose counters are all exact
 	 */
-	private Map<String, Long> internalSecuritySpeechesPerSpeaker = new HashMap<>();
-	
+	public static final double EXACT = 0;
+
+	private final SpeechDictionary dictionary;
+
 	/**
-	 * Holds the name of the speaker with least words in his speeches
+	 * Queries of the report, at {@link #MOST_SPEECHES}, {@link #MOST_SECURITY} and {@link #LEAST_WORDY}, followed by the queries of the evaluation.
+	 * Words per speaker ({@link #LEAST_WORDY}) are accumulated for every speech, so it holds every speaker
 	 */
-	private Optional<String> leastWordySpeaker = Optional.empty();
-	
+	private QueryAccumulator[] queries;
+
 	/**
-	 * Holds the name of the speaker with most speeches in 2013
+	 * Creates an accumulator with its own dictionary
 	 */
-	private Optional<String> speakerWithMostSpeechesIn2013 = Optional.empty();
-	
+	public StatisticsReportAccumulator() {
+		this(new SpeechDictionary());
+	}
+
 	/**
-	 * Holds the name of the speaker with most speeches about security
+	 * @param dictionary Dictionary used to encode speakers and themes, usually shared by all accumulators of a job
 	 */
-	private Optional<String> speakerWithMostSecuritySpeeches = Optional.empty();
-	
-	
-	public Map<String, Long> getWordsPerSpeaker() {
-		return wordsPerSpeaker;
+	public StatisticsReportAccumulator(SpeechDictionary dictionary) {
+		this(dictionary, List.of());
 	}
 
-	public Map<String, Long> getSpeechesIn2013PerSpeaker() {
-		return speechesIn2013PerSpeaker;
+	/**
+	 * @param dictionary Dictionary used to encode speakers and themes, usually shared by all accumulators of a job
+	 * @param queries Queries answered along with the questions of the report
+	 * @throws IllegalArgumentException if two queries have the same name, or if a query is named after a question of the report
+	 */
+	public StatisticsReportAccumulator(SpeechDictionary dictionary, List<SpeechQuery> queries) {
+		this(dictionary, queries, EXACT);
 	}
 
-	public Map<String, Long> getInternalSecuritySpeechesPerSpeaker() {
-		return internalSecuritySpeechesPerSpeaker;
+	/**
+	 * @param dictionary Dictionary used to encode speakers and themes, usually shared by all accumulators of a job
+	 * @param queries Queries answered along with the questions of the report
+	 * @param approximationError {@link #EXACT}, or the error bound of the approximated questions and queries, see {@link #answeredQueries(List, double)}
+	 * @throws IllegalArgumentException if two queries have the same name, if a query is named after a question of the report
+	 * or if the approximation error is out of range
+	 */
+	public StatisticsReportAccumulator(SpeechDictionary dictionary, List<SpeechQuery> queries, double approximationError) {
+		this.dictionary = dictionary;
+		this.queries = answeredQueries(queries, approximationError).stream()
+				.map(query -> new QueryAccumulator(query, dictionary))
+				.toArray(QueryAccumulator[]::new);
 	}
 
-	public void accumulate (Speech speech) {
-		Optional<Pair<String, Long>> speakerUpdatedSecuritySpeechesCount = updateInternalSecuritySpeechesPerSpeeker(speech);
-		speakerUpdatedSecuritySpeechesCount.ifPresent(
-				update -> updateSpeakerWithMostSecuritySpeeches(update.getLeft(), update.getRight())
-				);
-		
-		Optional<Pair<String, Long>> speakerUpdated2013SpeechesCount = updateSpeechIn2013PerSpeeker(speech);
-		speakerUpdated2013SpeechesCount.ifPresent(
-				update -> updateSpeakerWithMostSpeechesIn2013(update.getLeft(), update.getRight())
-				);
-		
-//		Pair<String, Long> speakerUpdatedWordsCount = updateWordsPerSpeeker(speech);
-//		updateLeastWordySpeaker(speakerUpdatedWordsCount.getLeft(), speakerUpdatedWordsCount.getRight());
-		updateLeastWordyFunction.apply(speech);
+	/**
+	 * @param queries Queries answered along with the questions of the report
+	 * @param approximationError {@link #EXACT}, or an error bound in [{@link SpeechQuery#MIN_ERROR}, 1) relative to the total value of a question or query:
+	 * the most speeches questions and the approximable queries without error bound (see {@link SpeechQuery#isApproximable()}) are then approximated,
+	 * the least wordy question and the other queries stay exact
+	 * @return the questions of the report followed by the given queries, as answered by an accumulator of the given approximation error
+	 * @throws IllegalArgumentException if two queries have the same name, if a query is named after a question of the report
+	 * or if the approximation error is out of range
+	 */
+	public static List<SpeechQuery> answeredQueries(List<SpeechQuery> queries, double approximationError) {
+		if (approximationError != EXACT && !(approximationError >= SpeechQuery.MIN_ERROR && approximationError < 1))
+			throw new IllegalArgumentException("Approximation error must be 0 or in [" + SpeechQuery.MIN_ERROR + ", 1): " + approximationError);
+		List<SpeechQuery> answeredQueries = new ArrayList<>(REPORT_QUERIES.size() + queries.size());
+		Set<String> names = new HashSet<>();
+		for (SpeechQuery query : REPORT_QUERIES) {
+			names.add(query.getName());
+			answeredQueries.add(approximationError != EXACT ? query.approximated(approximationError) : query);
+		}
+		for (SpeechQuery query : queries) {
+			if (!names.add(query.getName()))
+				throw new IllegalArgumentException("Query name is already used: " + query.getName());
+			answeredQueries.add(approximationError != EXACT ? query.approximated(approximationError) : query);
+		}
+		return answeredQueries;
 	}
-	
-/*
- * For the sake of experimentation: 
- * Implementing the update of leastWordy in a functional style: 
- * A composed function that updates wordsPerSpeakerMap then updates leastWordy field 
- * 
- * This function is not pure: it neither have the same return value for the same input and 
- * it does have side effects (updating object level variables) so it might be debatable to keep 
- * the implementation in OOP paradigm via message passing (method invocation in java)
- * like for updating speakerWithMostSpeechesIn2013 and speakerWithMostSecuritySpeeches
- */
-	private Function<Speech, Pair<String, Long>> updateWordsPerSpeekerFunction = speech -> {
-			Long mergedValue = wordsPerSpeaker.merge(speech.getSpeaker(), speech.getWords(), Long::sum);
-			return Pair.of(speech.getSpeaker(), mergedValue);
-		};
-	
-	private Function<Speech, String> updateLeastWordyFunction = updateWordsPerSpeekerFunction.andThen(
-			updatedWordsCount -> {
-				String speaker = updatedWordsCount.getLeft();
-				Long wordsCount = updatedWordsCount.getRight();
-				leastWordySpeaker.ifPresentOrElse(
-						currentLeastWordy -> {
-							Long currentLeastWordyCount = wordsPerSpeaker.get(currentLeastWordy);
-							if (wordsCount <= currentLeastWordyCount) leastWordySpeaker = Optional.of(speaker);
-						},
-						() -> {
-							leastWordySpeaker = Optional.of(speaker);
-						});
-				return leastWordySpeaker.get();
-			}
-		);
-	
+
 	/**
-	 * Given a speech, this method updates {@link #wordsPerSpeaker} accumulation map, by summing
-	 * the given speech words count for the giving speaker 
-	 * @param speech Speech Object
-	 * @return a {@link Pair} holding in left the speaker's name and in right his total words count
+	 * @return a new accumulator without speeches, sharing the dictionary of this accumulator and answering the same questions and queries
 	 */
-	@SuppressWarnings("unused")
-	private Pair<String, Long> updateWordsPerSpeeker (Speech speech) {
-		String speaker = speech.getSpeaker();
-		Long mergedValue = wordsPerSpeaker.merge(speaker, speech.getWords(), Long::sum);
-		return Pair.of(speaker, mergedValue);
+	public StatisticsReportAccumulator emptyCopy() {
+		return emptyCopy(dictionary);
 	}
 	
 	/**
-	 * Given a speaker and his total words count, updates {@link #leastWordySpeaker} field by comparing existing and 
-	 * new given values
-	 * @param speaker Speaker's name
-	 * @param wordsCount Speaker's total words count
-	 */
-	@SuppressWarnings("unused")
-	private void updateLeastWordySpeaker (String speaker, Long wordsCount) {
-		leastWordySpeaker.ifPresentOrElse(
-				currentLeastWordy -> {
-					Long currentLeastWordyWordsCount = wordsPerSpeaker.get(currentLeastWordy);
-					if (wordsCount <= currentLeastWordyWordsCount) leastWordySpeaker = Optional.of(speaker);
-				},
-				() -> {
-					leastWordySpeaker = Optional.of(speaker);
-				});
+	 * @param dictionary Dictionary of the copy
+	 * @return a new accumulator without speeches, using the given dictionary and answering the same questions and queries as this accumulator
+	 */
+	public StatisticsReportAccumulator emptyCopy(SpeechDictionary dictionary) {
+		StatisticsReportAccumulator copy = new StatisticsReportAccumulator(dictionary);
+		copy.queries = Arrays.stream(queries)
+				.map(query -> new QueryAccumulator(query.getQuery(), dictionary))
+				.toArray(QueryAccumulator[]::new);
+		return copy;
+	}
+
+	public SpeechDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * @return the questions of the report followed by the queries, as answered by this accumulator, see {@link #answeredQueries(List, double)}
+	 */
+	public List<SpeechQuery> getAnsweredQueries() {
+		List<SpeechQuery> answeredQueries = new ArrayList<>(queries.length);
+		for (QueryAccumulator query : queries)
+			answeredQueries.add(query.getQuery());
+		return answeredQueries;
+	}
+
+	/**
+	 * @return the queries answered along with the questions of the report
+	 */
+	public List<SpeechQuery> getQueries() {
+		List<SpeechQuery> evaluationQueries = new ArrayList<>();
+		for (int i = REPORT_QUERIES.size(); i < queries.length; i++)
+			evaluationQueries.add(queries[i].getQuery());
+		return evaluationQueries;
+	}
+
+	/**
+	 * @return number of distinct speakers accumulated so far
+	 */
+	public int getSpeakersCount() {
+		return queries[LEAST_WORDY].values().size();
 	}
 	
 	/**
-	 * Given a speech, this method updates {@link #speechesIn2013PerSpeaker} accumulation map, by 
-	 * incrementing the count of speeches in 2013 for the giving speaker 
-	 * @param speech Speech Object
-	 * @return an optional {@link Pair} holding in left the speaker's name and in right the total count
-	 * of his speeches in 2013
-	 */
-	private Optional<Pair<String, Long>> updateSpeechIn2013PerSpeeker (Speech speech) {
-		Calendar calendar = Calendar.getInstance();
-		calendar.setTime(speech.getDate());
-		if ( calendar.get(Calendar.YEAR) == StatisticsReportConstants.MOST_SPEECHES_YEAR) {
-			Long mergedValue = speechesIn2013PerSpeaker.merge(speech.getSpeaker(), Long.valueOf(1), Long::sum);
-			return Optional.of(Pair.of(speech.getSpeaker(), mergedValue));
+	 * @return the approximate heap footprint of this accumulator, in bytes: its counters and the names of its dictionary
+	 */
+	public long estimatedSize() {
+		long size = (long) (dictionary.speakers().size() + dictionary.themes().size()) * NameDictionary.ESTIMATED_NAME_SIZE;
+		for (QueryAccumulator query : queries)
+			size += query.estimatedSize();
+		return size;
+	}
+
+	public void accumulate (Speech speech) {
+		int speakerId = speech.getSpeakerId() != Speech.UNKNOWN_ID ? speech.getSpeakerId() : dictionary.speakers().idOf(speech.getSpeaker());
+		int themeId = speech.getThemeId() != Speech.UNKNOWN_ID ? speech.getThemeId() : dictionary.themes().idOf(speech.getTheme());
+		int date = speech.getDate();
+		long words = speech.getWords();
+		for (QueryAccumulator query : queries)
+			query.accumulate(speakerId, themeId, date, words);
+	}
+
+	/**
+	 * Merges the given accumulator into this one: the counters of every query are combined per group.
+	 * Queries of the given accumulator that this one does not answer yet are added to this one, so that a job's accumulator answers the queries of its partials.
+	 * When the given accumulator uses another dictionary, its speaker and theme ids are translated into this accumulator's ids through their names
+	 * @param other Accumulator to merge into this one, it is left untouched
+	 * @return this accumulator, holding the merged state
+	 * @throws IllegalArgumentException if both accumulators have a query of the same name with different definitions
+	 */
+	public StatisticsReportAccumulator merge (StatisticsReportAccumulator other) {
+		IntUnaryOperator speakerIdTranslation = other.dictionary == dictionary ?
+				IntUnaryOperator.identity() :
+				speaker -> dictionary.speakers().idOf(other.dictionary.speakers().nameOf(speaker));
+		IntUnaryOperator themeIdTranslation = other.dictionary == dictionary ?
+				IntUnaryOperator.identity() :
+				theme -> dictionary.themes().idOf(other.dictionary.themes().nameOf(theme));
+		for (QueryAccumulator otherQuery : other.queries) {
+			QueryAccumulator query = queryAccumulatorOf(otherQuery.getQuery());
+			query.merge(otherQuery, otherQuery.getQuery().getGroupBy() == SpeechQuery.GroupBy.SPEAKER ? speakerIdTranslation : themeIdTranslation);
 		}
-		return Optional.empty();
+		return this;
 	}
-	
+
 	/**
-	 * Given a speaker and the count of his speeches in 2013, updates {@link #speakerWithMostSpeechesIn2013} field by comparing existing and 
-	 * new given values
-	 * @param speaker Speaker's name
-	 * @param wordsCount Speaker's count of speeches given in 2013
-	 */
-	private void updateSpeakerWithMostSpeechesIn2013 (String speaker, Long speechesCountIn2013) {
-		speakerWithMostSpeechesIn2013.ifPresentOrElse(
-				currentSpeakerWithMostSpeechesIn2013 -> {
-					Long currentMostSpeechesIn2013Count = speechesIn2013PerSpeaker.get(currentSpeakerWithMostSpeechesIn2013);
-					if (speechesCountIn2013 >= currentMostSpeechesIn2013Count) speakerWithMostSpeechesIn2013 = Optional.of(speaker);
-				},
-				() -> {
-					speakerWithMostSpeechesIn2013 = Optional.of(speaker);
-				});
+	 * @return the accumulator of the given query, added to this accumulator if it does not answer the query yet
+	 */
+	private QueryAccumulator queryAccumulatorOf (SpeechQuery query) {
+		for (QueryAccumulator queryAccumulator : queries) {
+			if (!queryAccumulator.getQuery().getName().equals(query.getName()))
+				continue;
+			if (!queryAccumulator.getQuery().equals(query))
+				throw new IllegalArgumentException(String.format("Query %s is defined differently: %s and %s", query.getName(),
+						queryAccumulator.getQuery().getDefinition(), query.getDefinition()));
+			return queryAccumulator;
+		}
+		QueryAccumulator queryAccumulator = new QueryAccumulator(query, dictionary);
+		queries = Arrays.copyOf(queries, queries.length + 1);
+		queries[queries.length - 1] = queryAccumulator;
+		return queryAccumulator;
 	}
-	
+
 	/**
-	 * Given a speech, this method updates {@link #internalSecuritySpeechesPerSpeaker} accumulation map, by 
-	 * incrementing the count of internal security speeches for the giving speaker 
-	 * @param speech Speech Object
-	 * @return an optional {@link Pair} holding in left the speaker's name and in right the total count
-	 * of his internal security speeches
+	 * Writes a compact binary snapshot of this accumulator, e.g. to checkpoint it in a step execution context:
+	 * for every query, its name, its definition and the name and counter of every present group (see {@link QueryAccumulator#writeGroups(DataOutputStream, boolean)}),
+	 * the whole snapshot being deflated.
+	 * Groups are written by name, so a snapshot does not depend on the dictionary of the accumulator it was taken from
+	 * @return the snapshot, see {@link #fromSnapshot(byte[], SpeechDictionary)}
 	 */
-	private Optional<Pair<String, Long>> updateInternalSecuritySpeechesPerSpeeker (Speech speech) {
-		if (StatisticsReportConstants.INTERNAL_SECURITY_THEME.equals(speech.getTheme())) {
-			Long mergedValue = internalSecuritySpeechesPerSpeaker.merge(speech.getSpeaker(), Long.valueOf(1), Long::sum);
-			return Optional.of(Pair.of(speech.getSpeaker(), mergedValue));
+	public byte[] toSnapshot () {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			write(bytes, false);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
-		return Optional.empty();
+		return bytes.toByteArray();
 	}
 	
 	/**
-	 * Given a speaker and the count of his speeches about internal security, updates {@link #speakerWithMostSecuritySpeeches} field by comparing existing and 
-	 * new given values
-	 * @param speaker Speaker's name
-	 * @param wordsCount Speaker's count of speeches about internal security
-	 */
-	private void updateSpeakerWithMostSecuritySpeeches(String speaker, Long securitySpeechesCount) {
-		speakerWithMostSecuritySpeeches.ifPresentOrElse(
-				currentSpeakerWithMostSecuritySpeeches -> {
-					Long currentMostSecuritySpeechesCount = internalSecuritySpeechesPerSpeaker.get(currentSpeakerWithMostSecuritySpeeches);
-					if (securitySpeechesCount >= currentMostSecuritySpeechesCount) speakerWithMostSecuritySpeeches = Optional.of(speaker);
-				},
-				() -> {
-					speakerWithMostSecuritySpeeches = Optional.of(speaker);
-				});
+	 * Writes this accumulator to a new sorted run file: a snapshot whose exact counters are written in the order of the group names,
+	 * so that the runs of a job are merged with a k-way merge instead of being loaded, see {@link SortedRunMerger}
+	 * @param directory Directory of the run file, created if it does not exist
+	 * @return the path of the run file
+	 */
+	public Path spill(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		Path run = Files.createTempFile(directory, "speeches-", ".run");
+		try (OutputStream out = Files.newOutputStream(run)) {
+			write(out, true);
+		}
+		return run;
 	}
 	
+	private void write (OutputStream outputStream, boolean sortedByName) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(outputStream))) {
+			out.writeInt(SNAPSHOT_VERSION);
+			out.writeInt(queries.length);
+			for (QueryAccumulator query : queries) {
+				out.writeUTF(query.getQuery().getName());
+				out.writeUTF(query.getQuery().getDefinition());
+				query.writeGroups(out, sortedByName);
+			}
+		}
+	}
+
+	/**
+	 * Restores an accumulator from a snapshot written by {@link #toSnapshot()}, along with its queries and its approximation
+	 * @param snapshot Snapshot of an accumulator
+	 * @param dictionary Dictionary of the restored accumulator
+	 * @return a new accumulator holding the state of the snapshot
+	 */
+	public static StatisticsReportAccumulator fromSnapshot (byte[] snapshot, SpeechDictionary dictionary) {
+		StatisticsReportAccumulator accumulator = new StatisticsReportAccumulator(dictionary);
+		try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(snapshot)))) {
+			int version = in.readInt();
+			if (version == SPEAKERS_SNAPSHOT_VERSION) {
+				accumulator.readSpeakersSnapshot(in);
+				return accumulator;
+			}
+			if (version != SNAPSHOT_VERSION)
+				throw new IllegalArgumentException("Unsupported accumulator snapshot version: " + version);
+			int queriesCount = in.readInt();
+			for (int i = 0; i < queriesCount; i++)
+				accumulator.restoredQueryAccumulatorOf(SpeechQuery.parse(in.readUTF(), in.readUTF())).readGroups(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return accumulator;
+	}
+
+	/**
+	 * @return the accumulator of a query read from a snapshot: the questions of the report take the definitions of the snapshot,
+	 * e.g. approximated ones, other queries are added to this accumulator
+	 */
+	private QueryAccumulator restoredQueryAccumulatorOf (SpeechQuery query) {
+		for (int i = 0; i < REPORT_QUERIES.size(); i++) {
+			if (queries[i].getQuery().getName().equals(query.getName()) && !queries[i].getQuery().equals(query))
+				queries[i] = new QueryAccumulator(query, dictionary);
+		}
+		return queryAccumulatorOf(query);
+	}
+
+	/**
+	 * Reads the counters of a version 1 snapshot, kept for the restart state saved before queries
+	 */
+	private void readSpeakersSnapshot (DataInputStream in) throws IOException {
+		int speakersCount = in.readInt();
+		for (int i = 0; i < speakersCount; i++) {
+			int speaker = dictionary.speakers().idOf(in.readUTF());
+			queries[LEAST_WORDY].add(speaker, in.readLong());
+			int presentCounters = in.readByte();
+			if ((presentCounters & 1) != 0)
+				queries[MOST_SPEECHES].add(speaker, in.readLong());
+			if ((presentCounters & 2) != 0)
+				queries[MOST_SECURITY].add(speaker, in.readLong());
+		}
+	}
+
+	/**
+	 * @return the report answering the questions of {@link StatisticsReport}, a {@link QueryReport} also holding the result of every query
+	 * if this accumulator answers queries
+	 */
 	public StatisticsReport toStatisticsReport () {
-		return new StatisticsReport(
-				speakerWithMostSpeechesIn2013.orElse(StatisticsReportConstants.NO_CLEAR_ANSWER), 
-				speakerWithMostSecuritySpeeches.orElse(StatisticsReportConstants.NO_CLEAR_ANSWER),
-				leastWordySpeaker.orElse(StatisticsReportConstants.NO_CLEAR_ANSWER));
-		
+		List<SpeechQuery> definitions = new ArrayList<>(queries.length);
+		List<GroupValues> values = new ArrayList<>(queries.length);
+		List<NameDictionary> groups = new ArrayList<>(queries.length);
+		for (QueryAccumulator query : queries) {
+			definitions.add(query.getQuery());
+			values.add(query.values());
+			groups.add(query.groups());
+		}
+		return toStatisticsReport(definitions, values, groups);
 	}
 	
+	/**
+	 * @param definitions Questions of the report followed by the queries, as answered
+	 * @param values Values of the groups of every question and query
+	 * @param groups Dictionaries of the groups of every question and query
+	 * @return the report answering the given questions and queries
+	 */
+	static StatisticsReport toStatisticsReport (List<SpeechQuery> definitions, List<GroupValues> values, List<NameDictionary> groups) {
+		String mostSpeeches = leaderOf(values.get(MOST_SPEECHES), groups.get(MOST_SPEECHES), false);
+		String mostSecurity = leaderOf(values.get(MOST_SECURITY), groups.get(MOST_SECURITY), false);
+		String leastWordy = leaderOf(values.get(LEAST_WORDY), groups.get(LEAST_WORDY), true);
+		if (definitions.size() == REPORT_QUESTIONS)
+			return new StatisticsReport(mostSpeeches, mostSecurity, leastWordy);
+		Map<String, QueryResult> results = new TreeMap<>();
+		for (int i = REPORT_QUESTIONS; i < definitions.size(); i++)
+			results.put(definitions.get(i).getName(), toQueryResult(definitions.get(i), values.get(i), groups.get(i)));
+		return new QueryReport(mostSpeeches, mostSecurity, leastWordy, results);
+	}
+
+	/**
+	 * @return the name of the speaker ranked first by a question of the report, "zero" if there is none or if the first rank is tied
+	 */
+	private static String leaderOf (GroupValues values, NameDictionary groups, boolean ascending) {
+		return nameOf(groups, new Ranking(values, groups, 1, ascending).leader());
+	}
+
+	/**
+	 * @return the ranking of the groups of a query, limited to its top: the top groups are selected with a bounded heap,
+	 * so ranking a few leaders among hundreds of thousands of speakers does not sort them all
+	 */
+	private static QueryResult toQueryResult (SpeechQuery definition, GroupValues values, NameDictionary groups) {
+		int top = definition.getTop() != null ? definition.getTop() : Math.max(values.size(), 1);
+		Ranking ranking = new Ranking(values, groups, top, definition.getOrder() == SpeechQuery.Order.ASC);
+		List<RankedGroup> rankedGroups = new ArrayList<>(ranking.size());
+		int rank = 0;
+		long maxError = 0;
+		for (int i = 0; i < ranking.size(); i++) {
+			if (i == 0 || ranking.valueAt(i) != ranking.valueAt(i - 1))
+				rank = i + 1;
+			rankedGroups.add(new RankedGroup(rank, groups.nameOf(ranking.groupAt(i)), ranking.valueAt(i)));
+			maxError = Math.max(maxError, ranking.errorAt(i));
+		}
+		return new QueryResult(definition.getDefinition(), nameOf(groups, ranking.leader()), rankedGroups, ranking.isTiedAtCutoff(), maxError);
+	}
+
+	private static String nameOf (NameDictionary groups, int group) {
+		return group == NO_GROUP ? StatisticsReportConstants.NO_CLEAR_ANSWER : groups.nameOf(group);
+	}
 }
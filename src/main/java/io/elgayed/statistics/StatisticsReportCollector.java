@@ -1,44 +1,70 @@
 package io.elgayed.statistics;
 
+import java.util.Collection;
 import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collector;
+import java.util.stream.Stream;
 
+import io.elgayed.dictionary.SpeechDictionary;
 import io.elgayed.model.Speech;
 import io.elgayed.model.StatisticsReport;
 
 /**
  * Collects statistics from a stream of speeches:
- * It uses 3 internal Map data structures as data accumulators for this collector
+ * It uses the per speaker counters of the report's queries as data accumulators for this collector (see {@link StatisticsReportAccumulator})
  * <ul>
  * <li>Words per speaker</li>
  * <li>Speeches in 2013 per speaker</li>
  * <li>Speeches about internal security theme per speaker</li>
  * </ul>
- * 
+ *
  * This collectors finilizer returns an {@link StatisticsReport} instance holding information about:
  * least wordy speaker, the speaker with most speeches in 2013, and the speaker with most speeches about internal security
+ *
+ * This collector can be used with parallel streams: each fork-join task fills its own {@link StatisticsReportAccumulator}
+ * and partial accumulators are combined using {@link StatisticsReportAccumulator#merge(StatisticsReportAccumulator)}
  */
 public class StatisticsReportCollector implements Collector<Speech, StatisticsReportAccumulator, StatisticsReport> {
+
+	/**
+	 * Minimum number of speeches from which {@link #accumulate(Collection, SpeechDictionary)} splits the work across the common fork-join pool,
+	 * below this size the cost of forking outweighs the gain
+	 */
+	public static final int PARALLEL_COLLECTION_THRESHOLD = 10_000;
+	
+	private final SpeechDictionary dictionary;
 	
+	/**
+	 * Creates a collector encoding speakers and themes with its own dictionary
+	 */
+	public StatisticsReportCollector() {
+		this(new SpeechDictionary());
+	}
+	
+	/**
+	 * @param dictionary Dictionary shared by the accumulators of this collector
+	 */
+	public StatisticsReportCollector(SpeechDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+
 	@Override
 	public Supplier<StatisticsReportAccumulator> supplier() {
-		return StatisticsReportAccumulator::new;
+		return () -> new StatisticsReportAccumulator(dictionary);
 	}
 
 	@Override
 	public BiConsumer<StatisticsReportAccumulator, Speech> accumulator() {
 		return StatisticsReportAccumulator::accumulate;
 	}
-	
-	//TODO if this collector is to be used in a parallel stream this implementation should be changed
-	//to merge accumulation maps from two different instants and accumulator should use ConcurentHashMaps
+
 	@Override
 	public BinaryOperator<StatisticsReportAccumulator> combiner() {
-		return (accumulator, other) -> accumulator;
+		return StatisticsReportAccumulator::merge;
 	}
 
 	@Override
@@ -46,11 +72,56 @@ public class StatisticsReportCollector implements Collector<Speech, StatisticsRe
 		return StatisticsReportAccumulator::toStatisticsReport;
 	}
 
+	/**
+	 * {@link StatisticsReportAccumulator} is not thread safe, so this collector is not {@link Characteristics#CONCURRENT}:
+	 * parallel streams give each thread its own accumulator and merge them
+	 */
 	@Override
 	public Set<Characteristics> characteristics() {
-		return Set.of(
-				Characteristics.UNORDERED, 
-				Characteristics.CONCURRENT);
+		return Set.of(Characteristics.UNORDERED);
+	}
+
+	/**
+	 * @param dictionary Dictionary shared by the accumulators of the collector
+	 * @return a collector similar to {@link StatisticsReportCollector} that returns the {@link StatisticsReportAccumulator}
+	 * itself instead of finishing it, so that it can be merged later with other accumulators
+	 */
+	public static Collector<Speech, StatisticsReportAccumulator, StatisticsReportAccumulator> toAccumulator(SpeechDictionary dictionary) {
+		return toAccumulator(new StatisticsReportAccumulator(dictionary));
+	}
+
+	/**
+	 * @param accumulator Accumulator whose dictionary, questions and queries are used by the accumulators of the collector, it is left untouched
+	 * @return a collector similar to {@link #toAccumulator(SpeechDictionary)} whose accumulators answer the same queries as the given one
+	 */
+	public static Collector<Speech, StatisticsReportAccumulator, StatisticsReportAccumulator> toAccumulator(StatisticsReportAccumulator accumulator) {
+		return Collector.of(
+				accumulator::emptyCopy,
+				StatisticsReportAccumulator::accumulate,
+				StatisticsReportAccumulator::merge,
+				Characteristics.UNORDERED,
+				Characteristics.IDENTITY_FINISH);
+	}
+
+	/**
+	 * Accumulates the given speeches, using a parallel stream on the common fork-join pool when there are at least
+	 * {@link #PARALLEL_COLLECTION_THRESHOLD} speeches
+	 * @param speeches Speeches to accumulate, e.g. a chunk or a whole dataset
+	 * @param dictionary Dictionary the speeches were encoded with
+	 * @return {@link StatisticsReportAccumulator} holding the accumulated speeches
+	 */
+	public static StatisticsReportAccumulator accumulate(Collection<? extends Speech> speeches, SpeechDictionary dictionary) {
+		return accumulate(speeches, new StatisticsReportAccumulator(dictionary));
+	}
+
+	/**
+	 * Same as {@link #accumulate(Collection, SpeechDictionary)}, answering the same queries as the given accumulator
+	 * @param speeches Speeches to accumulate
+	 * @param accumulator Accumulator whose dictionary, questions and queries are used, it is left untouched
+	 * @return a new {@link StatisticsReportAccumulator} holding the accumulated speeches, to be merged into the given one
+	 */
+	public static StatisticsReportAccumulator accumulate(Collection<? extends Speech> speeches, StatisticsReportAccumulator accumulator) {
+		Stream<? extends Speech> stream = speeches.size() >= PARALLEL_COLLECTION_THRESHOLD ? speeches.parallelStream() : speeches.stream();
+		return stream.collect(toAccumulator(accumulator));
 	}
-	
 }
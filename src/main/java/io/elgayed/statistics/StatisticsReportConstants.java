@@ -8,4 +8,12 @@ public class StatisticsReportConstants {
 	public static final String INTERNAL_SECURITY_THEME = "Innere Sicherheit";
 	public static final int MOST_SPEECHES_YEAR = 2013;
 	public static final String NO_CLEAR_ANSWER = "zero";
+	
+	/**
+	 * Queries answering the questions of the {@link io.elgayed.model.StatisticsReport}, the name of a query is the report field it answers.
+	 * They are answered along with the queries of an evaluation, so their names are reserved
+	 */
+	public static final SpeechQuery MOST_SPEECHES_QUERY = SpeechQuery.parse("mostSpeeches", "aggregate=count;group-by=speaker;year=" + MOST_SPEECHES_YEAR);
+	public static final SpeechQuery MOST_SECURITY_QUERY = SpeechQuery.parse("mostSecurity", "aggregate=count;group-by=speaker;theme=" + INTERNAL_SECURITY_THEME);
+	public static final SpeechQuery LEAST_WORDY_QUERY = SpeechQuery.parse("leastWordy", "aggregate=sum;group-by=speaker;order=asc");
 }
@@ -0,0 +1,92 @@
+package io.elgayed.statistics;
+
+import java.util.Arrays;
+
+import io.elgayed.dictionary.NameDictionary;
+
+/**
+ * Groups offered one by one by name and value, of which only the groups that can still be ranked within a top are kept:
+ * once the buffer is full, it is compacted to the top + 1 groups selected by a {@link Ranking}, so that ties at the cutoff are still detected.
+ * Keeping the top K of n groups then takes O(K) memory however many groups are offered. Without top, every group is kept.
+ *
+ * Every name must be offered once, its value being final.
+ *
+ * This class is not thread safe
+ */
+class TopGroups implements GroupValues {
+
+	private static final int MIN_CAPACITY = 64;
+
+	/**
+	 * Number of groups to keep, {@code null} to keep them all
+	 */
+	private final Integer top;
+	private final boolean ascending;
+
+	private NameDictionary names = new NameDictionary();
+	private long[] values = new long[MIN_CAPACITY];
+
+	/**
+	 * @param top Number of ranked groups, or {@code null} to keep every group
+	 * @param ascending {@code true} if the lowest values are ranked first
+	 */
+	TopGroups(Integer top, boolean ascending) {
+		this.top = top;
+		this.ascending = ascending;
+	}
+
+	void add(String name, long value) {
+		if (names.size() == values.length) {
+			if (top != null && top < values.length / 2)
+				compact();
+			else
+				values = Arrays.copyOf(values, values.length * 2);
+		}
+		values[names.idOf(name)] = value;
+	}
+
+	private void compact() {
+		Ranking ranking = new Ranking(this, names, top + 1, ascending);
+		String[] keptNames = new String[ranking.size()];
+		long[] keptValues = new long[ranking.size()];
+		for (int i = 0; i < ranking.size(); i++) {
+			keptNames[i] = names.nameOf(ranking.groupAt(i));
+			keptValues[i] = ranking.valueAt(i);
+		}
+		names = new NameDictionary();
+		for (int i = 0; i < keptNames.length; i++)
+			values[names.idOf(keptNames[i])] = keptValues[i];
+	}
+
+	/**
+	 * @return the dictionary of the kept groups
+	 */
+	NameDictionary names() {
+		return names;
+	}
+
+	@Override
+	public int slots() {
+		return names.size();
+	}
+
+	@Override
+	public int groupAt(int slot) {
+		return slot;
+	}
+
+	@Override
+	public long valueAt(int slot) {
+		return values[slot];
+	}
+
+	@Override
+	public long errorAt(int slot) {
+		return 0;
+	}
+
+	@Override
+	public int size() {
+		return names.size();
+	}
+}
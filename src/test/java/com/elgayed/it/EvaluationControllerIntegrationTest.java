@@ -15,6 +15,8 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.util.StopWatch;
 import org.testcontainers.containers.BindMode;
 import org.testcontainers.containers.NginxContainer;
@@ -22,6 +24,7 @@ import org.testcontainers.containers.output.Slf4jLogConsumer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import io.elgayed.model.EvaluationStatus;
 import io.elgayed.model.StatisticsReport;
 
 @Testcontainers
@@ -79,13 +82,34 @@ public class EvaluationControllerIntegrationTest {
 		watch.stop();
 		double executionTime = watch.getTotalTimeSeconds();
 		
-		assertEquals("John Doe", statisticReport.getMostSpeeches());
-		assertEquals("John Doe", statisticReport.getMostSecurity());
-		assertEquals("Lee Sin", statisticReport.getLeastWordy());
+		assertEquals("Caesare Collins", statisticReport.getMostSpeeches());
+		assertEquals("Amir Elgayed", statisticReport.getMostSecurity());
+		assertEquals("Bernhard Belling", statisticReport.getLeastWordy());
 		//Assert that processing took less than 2s
 		assertTrue(executionTime < 2);
 	}
 	
+	@Test
+	public void asyncEvaluationEndpointTest () throws UnsupportedOperationException, IOException, InterruptedException {
+		ResponseEntity<EvaluationStatus> response = restTemplate.postForEntity(
+				String.format("http://localhost:%d/evaluation?url1=%s", port, getNginxFileUrl("/speeches1.csv").toString()),
+				null,
+				EvaluationStatus.class);
+		assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+		
+		//Poll the evaluation until it is done
+		EvaluationStatus evaluationStatus = response.getBody();
+		for (int i = 0; i < 50 && !"COMPLETED".equals(evaluationStatus.getStatus()); i++) {
+			Thread.sleep(100);
+			evaluationStatus = restTemplate.getForObject(response.getHeaders().getLocation(), EvaluationStatus.class);
+		}
+		
+		assertEquals("COMPLETED", evaluationStatus.getStatus());
+		assertEquals(5, evaluationStatus.getReadCount());
+		assertEquals("Amir Elgayed", evaluationStatus.getReport().getMostSpeeches());
+		assertEquals("Amir Elgayed", evaluationStatus.getReport().getLeastWordy());
+	}
+	
 	static URL getNginxFileUrl (String filePath) throws MalformedURLException {
 		return new URL (nginxContainer.getBaseUrl("http", 80), filePath);
 	}
@@ -0,0 +1,45 @@
+package io.elgayed.cache;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.elgayed.model.StatisticsReport;
+import io.elgayed.statistics.StatisticsReportAccumulator;
+
+public class EvaluationCacheTest {
+
+	private static CachedSource source(String entityTag) {
+		return new CachedSource(new SourceValidator(entityTag, null), new StatisticsReportAccumulator());
+	}
+
+	@Test
+	public void evictsTheLeastRecentlyUsedSource() {
+		EvaluationCache cache = new EvaluationCache(2, 2, 2);
+		cache.putSource("a", source("\"a\""));
+		cache.putSource("b", source("\"b\""));
+		//a is used after b
+		assertNotNull(cache.getSource("a"));
+
+		cache.putSource("c", source("\"c\""));
+
+		assertNull(cache.getSource("b"));
+		assertNotNull(cache.getSource("a"));
+		assertNotNull(cache.getSource("c"));
+	}
+
+	@Test
+	public void keysReportsByTheValidatorsOfTheirSources() {
+		EvaluationCache cache = new EvaluationCache(2, 2, 2);
+		StatisticsReport report = new StatisticsReport("Alexander Abel", null, "Caesare Collins");
+		cache.putReport(Map.of("a", new SourceValidator("\"v1\"", null)), List.of(), report);
+
+		assertSame(report, cache.getReport(Map.of("a", new SourceValidator("\"v1\"", null)), List.of()));
+		assertNull(cache.getReport(Map.of("a", new SourceValidator("\"v2\"", null)), List.of()));
+	}
+}
@@ -0,0 +1,109 @@
+package io.elgayed.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.elgayed.remote.RemoteResourceClient;
+import io.elgayed.remote.StaticResourceServer;
+import io.elgayed.statistics.StatisticsReportAccumulator;
+
+public class RevalidatingUrlResourceTest {
+
+	private static final String CONTENT = "Redner, Thema, Datum, Wörter\nAlexander Abel, Bildungspolitik, 2012-10-30, 5310\n";
+	private static final String MONDAY = "Mon, 05 Oct 2020 10:00:00 GMT";
+	private static final String TUESDAY = "Tue, 06 Oct 2020 10:00:00 GMT";
+
+	@TempDir
+	Path directory;
+
+	private final RemoteResourceClient client = new RemoteResourceClient(task -> new Thread(task).start(), 5, 5, 64 * 1024);
+	private StaticResourceServer server;
+
+	@AfterEach
+	public void stopServer() {
+		if (server != null)
+			server.close();
+	}
+
+	private RevalidatingUrlResource remoteResource(SourceValidator cachedValidator) throws Exception {
+		return new RevalidatingUrlResource(server.getUri().toString(), cached(cachedValidator), client);
+	}
+
+	private static CachedSource cached(SourceValidator validator) {
+		return validator != null ? new CachedSource(validator, new StatisticsReportAccumulator()) : null;
+	}
+
+	private static String read(RevalidatingUrlResource resource) throws Exception {
+		try (InputStream in = resource.getInputStream()) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	@Test
+	public void reusesARemoteSourceNotModified() throws Exception {
+		server = new StaticResourceServer(CONTENT.getBytes(StandardCharsets.UTF_8), "\"v1\"", MONDAY);
+		RevalidatingUrlResource resource = remoteResource(new SourceValidator("\"v1\"", MONDAY));
+
+		assertTrue(resource.isNotModified());
+		assertEquals(new SourceValidator("\"v1\"", MONDAY), resource.getValidator());
+		assertEquals("", read(resource));
+		assertEquals(List.of(304), server.getStatuses());
+	}
+
+	@Test
+	public void readsAgainARemoteSourceWhoseEntityTagChanged() throws Exception {
+		server = new StaticResourceServer(CONTENT.getBytes(StandardCharsets.UTF_8), "\"v2\"", MONDAY);
+		RevalidatingUrlResource resource = remoteResource(new SourceValidator("\"v1\"", MONDAY));
+
+		assertFalse(resource.isNotModified());
+		assertEquals(new SourceValidator("\"v2\"", MONDAY), resource.getValidator());
+		//the content is received with the conditional request, it is not requested again
+		assertEquals(CONTENT, read(resource));
+		assertEquals(List.of(200), server.getStatuses());
+	}
+
+	@Test
+	public void readsAgainARemoteSourceWhoseLastModificationDateChanged() throws Exception {
+		server = new StaticResourceServer(CONTENT.getBytes(StandardCharsets.UTF_8), null, MONDAY);
+		assertTrue(remoteResource(new SourceValidator(null, MONDAY)).isNotModified());
+
+		server.update(CONTENT.getBytes(StandardCharsets.UTF_8), null, TUESDAY);
+		RevalidatingUrlResource resource = remoteResource(new SourceValidator(null, MONDAY));
+
+		assertFalse(resource.isNotModified());
+		assertEquals(new SourceValidator(null, TUESDAY), resource.getValidator());
+		assertEquals(CONTENT, read(resource));
+	}
+
+	@Test
+	public void readsAgainALocalFileWhoseLengthOrModificationDateChanged() throws Exception {
+		Path file = Files.write(directory.resolve("speeches.csv"), CONTENT.getBytes(StandardCharsets.UTF_8));
+		String url = file.toUri().toString();
+		SourceValidator validator = new RevalidatingUrlResource(url, null, null).getValidator();
+		assertTrue(new RevalidatingUrlResource(url, cached(validator), null).isNotModified());
+
+		Files.write(file, "Bernhard Berg, Energiepolitik, 2012-11-01, 1000\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		RevalidatingUrlResource appended = new RevalidatingUrlResource(url, cached(validator), null);
+		assertFalse(appended.isNotModified());
+		validator = appended.getValidator();
+
+		//same length, rewritten later
+		Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 60_000));
+		RevalidatingUrlResource rewritten = new RevalidatingUrlResource(url, cached(validator), null);
+		assertFalse(rewritten.isNotModified());
+		assertTrue(read(rewritten).startsWith(CONTENT));
+	}
+}
@@ -0,0 +1,105 @@
+package io.elgayed.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.elgayed.dictionary.SpeechDictionary;
+import io.elgayed.model.Speech;
+import io.elgayed.model.SpeechDate;
+import io.elgayed.statistics.SpeechQuery;
+import io.elgayed.statistics.StatisticsReportAccumulator;
+
+public class SourceSummaryStoreTest {
+
+	private static final String URL = "https://example.org/speeches.csv";
+	private static final SourceValidator VALIDATOR = new SourceValidator("\"v1\"", null);
+
+	@TempDir
+	Path directory;
+
+	private SourceSummaryStore store() {
+		return new SourceSummaryStore(true, directory.toString());
+	}
+
+	private static CachedSource summary(List<SpeechQuery> queries) {
+		StatisticsReportAccumulator partial = new StatisticsReportAccumulator(new SpeechDictionary(), queries);
+		partial.accumulate(speech("Alexander Abel", "Innere Sicherheit", 100));
+		partial.accumulate(speech("Bernhard Belling", "Kohlesubventionen", 20));
+		partial.accumulate(speech("Alexander Abel", "Bildungspolitik", 50));
+		return new CachedSource(VALIDATOR, partial);
+	}
+
+	private static Speech speech(String speaker, String theme, long words) {
+		Speech speech = new Speech();
+		speech.setSpeaker(speaker);
+		speech.setTheme(theme);
+		speech.setDate(SpeechDate.of(LocalDate.parse("2013-01-01")));
+		speech.setWords(words);
+		return speech;
+	}
+
+	private List<Path> summaryFiles() throws Exception {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.collect(Collectors.toList());
+		}
+	}
+
+	@Test
+	public void loadsASavedSummary() throws Exception {
+		CachedSource summary = summary(List.of());
+		store().save(URL, summary);
+
+		CachedSource loaded = store().load(URL, summary.getPartial().getAnsweredQueries());
+
+		assertNotNull(loaded);
+		assertEquals(VALIDATOR, loaded.getValidator());
+		assertEquals(summary.getPartial().getSpeakersCount(), loaded.getPartial().getSpeakersCount());
+		assertEquals(summary.getPartial().toStatisticsReport().toString(), loaded.getPartial().toStatisticsReport().toString());
+	}
+
+	@Test
+	public void ignoresTheSummaryOfAnotherSourceOrOfOtherQueries() throws Exception {
+		CachedSource summary = summary(List.of());
+		store().save(URL, summary);
+		List<SpeechQuery> queries = List.of(SpeechQuery.parse("speechesPerTheme2013", "aggregate=count;group-by=theme;year=2013"));
+
+		assertNull(store().load(URL, summary(queries).getPartial().getAnsweredQueries()));
+		assertNull(store().load(URL + "?range=0-100", summary.getPartial().getAnsweredQueries()));
+
+		//a summary found under the name of another source is not reused
+		String otherUrl = "https://example.org/other.csv";
+		store().save(otherUrl, summary);
+		List<Path> files = summaryFiles();
+		assertEquals(2, files.size());
+		Files.copy(files.get(0), files.get(1), StandardCopyOption.REPLACE_EXISTING);
+		assertEquals(1, Stream.of(URL, otherUrl).filter(url -> store().load(url, summary.getPartial().getAnsweredQueries()) != null).count());
+	}
+
+	@Test
+	public void ignoresACorruptSummary() throws Exception {
+		CachedSource summary = summary(List.of());
+		store().save(URL, summary);
+		Path file = summaryFiles().get(0);
+		byte[] bytes = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+
+		assertNull(store().load(URL, summary.getPartial().getAnsweredQueries()));
+
+		//the summary is replaced once the source is read again
+		store().save(URL, summary);
+		assertNotNull(store().load(URL, summary.getPartial().getAnsweredQueries()));
+	}
+}
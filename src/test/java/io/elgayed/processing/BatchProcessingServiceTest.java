@@ -0,0 +1,214 @@
+package io.elgayed.processing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.repository.JobRestartException;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.elgayed.cache.EvaluationCache;
+import io.elgayed.metrics.BatchMetrics;
+import io.elgayed.model.StatisticsReport;
+import io.elgayed.statistics.StatisticsReportAccumulator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class BatchProcessingServiceTest {
+
+	@TempDir
+	Path directory;
+
+	private final BatchProcessingService service = new BatchProcessingService();
+	private final InFlightEvaluations inFlightEvaluations = new InFlightEvaluations();
+	private final AtomicInteger launches = new AtomicInteger();
+	private final AtomicLong lastExecutionId = new AtomicLong();
+	/**
+	 * Launcher of the tested service, replaced by every test
+	 */
+	private JobLauncher jobLauncher;
+	private Map<String, String> csvFileUrls;
+
+	@BeforeEach
+	public void createService() throws Exception {
+		BatchMetrics batchMetrics = new BatchMetrics(new SimpleMeterRegistry());
+		Job job = mock(Job.class);
+		when(job.getName()).thenReturn("csvFilesProcessing");
+		ReflectionTestUtils.setField(service, "asyncJobLauncher", (JobLauncher) (launchedJob, jobParameters) -> {
+			launches.incrementAndGet();
+			return jobLauncher.run(launchedJob, jobParameters);
+		});
+		ReflectionTestUtils.setField(service, "evaluationAdmission", new EvaluationAdmission(task -> new Thread(task).start(), null, batchMetrics,
+				2, Long.MAX_VALUE, 10, 10, 1, 1));
+		ReflectionTestUtils.setField(service, "job", job);
+		ReflectionTestUtils.setField(service, "inFlightEvaluations", inFlightEvaluations);
+		ReflectionTestUtils.setField(service, "batchMetrics", batchMetrics);
+		csvFileUrls = Map.of("url", Files.write(directory.resolve("speeches.csv"), new byte[10]).toUri().toString());
+	}
+
+	/**
+	 * Processes the CSV files on a new thread
+	 * @param result Completed with the report of the evaluation, or with its failure
+	 * @return the calling thread
+	 */
+	private Thread process(CompletableFuture<StatisticsReport> result) {
+		Thread caller = new Thread(() -> {
+			try {
+				result.complete(service.processCsvFiles(new EvaluationRequest(csvFileUrls, null, null, new EvaluationClient("localhost", null))));
+			} catch (Exception e) {
+				result.completeExceptionally(e);
+			}
+		});
+		caller.start();
+		return caller;
+	}
+
+	/**
+	 * Waits for the given caller to wait for the evaluation it launched or joined
+	 */
+	private static void awaitWaiting(Thread caller) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (caller.getState() != Thread.State.WAITING) {
+			assertTrue(System.nanoTime() < deadline, "The caller does not wait for the evaluation");
+			Thread.sleep(10);
+		}
+	}
+
+	private static Throwable failureOf(CompletableFuture<StatisticsReport> result) throws Exception {
+		return assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS)).getCause();
+	}
+
+	@Test
+	public void identicalConcurrentEvaluationsShareOneExecution() throws Exception {
+		StatisticsReport report = new StatisticsReport("Alexander Abel", null, "Caesare Collins");
+		CountDownLatch jobEnd = new CountDownLatch(1);
+		jobLauncher = (launchedJob, jobParameters) -> {
+			JobExecution jobExecution = new JobExecution(lastExecutionId.incrementAndGet(), jobParameters);
+			new Thread(() -> {
+				try {
+					jobEnd.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				jobExecution.setStatus(BatchStatus.COMPLETED);
+				jobExecution.getExecutionContext().put(StatisticReportWriter.STATISTIC_REPORT_KEY, report);
+				inFlightEvaluations.afterJob(jobExecution);
+			}).start();
+			return jobExecution;
+		};
+		CompletableFuture<StatisticsReport> first = new CompletableFuture<>();
+		CompletableFuture<StatisticsReport> second = new CompletableFuture<>();
+		awaitWaiting(process(first));
+		awaitWaiting(process(second));
+
+		jobEnd.countDown();
+
+		assertSame(report, first.get(10, TimeUnit.SECONDS));
+		assertSame(report, second.get(10, TimeUnit.SECONDS));
+		assertEquals(1, launches.get());
+	}
+
+	@Test
+	public void aLaunchFailureReachesEveryCallerSharingTheEvaluation() throws Exception {
+		CountDownLatch secondCallerWaiting = new CountDownLatch(1);
+		jobLauncher = (launchedJob, jobParameters) -> {
+			try {
+				secondCallerWaiting.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			throw new JobRestartException("Job could not be launched");
+		};
+		CompletableFuture<StatisticsReport> first = new CompletableFuture<>();
+		CompletableFuture<StatisticsReport> second = new CompletableFuture<>();
+		process(first);
+		//the first caller launches the job, it is in flight once its launcher is called
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (launches.get() == 0) {
+			assertTrue(System.nanoTime() < deadline, "The job is not launched");
+			Thread.sleep(10);
+		}
+		awaitWaiting(process(second));
+
+		secondCallerWaiting.countDown();
+
+		assertTrue(failureOf(first) instanceof JobRestartException);
+		assertTrue(failureOf(second) instanceof JobRestartException);
+		//the evaluation is unregistered, the next one launches a job again
+		assertTrue(failureOf(processed()) instanceof JobRestartException);
+		assertEquals(2, launches.get());
+	}
+
+	@Test
+	public void anExecutionTheLauncherDidNotRunIsUnregistered() throws Exception {
+		//as SimpleJobLauncher once its executor rejected the job: the execution is marked as failed, and the job never ends
+		jobLauncher = (launchedJob, jobParameters) -> {
+			JobExecution jobExecution = new JobExecution(lastExecutionId.incrementAndGet(), jobParameters);
+			jobExecution.upgradeStatus(BatchStatus.FAILED);
+			return jobExecution;
+		};
+
+		assertTrue(failureOf(processed()) instanceof EvaluationFailedException);
+		assertTrue(failureOf(processed()) instanceof EvaluationFailedException);
+		assertEquals(2, launches.get());
+	}
+
+	@Test
+	public void aFailedPartitionFailsTheEvaluation() throws Exception {
+		StatisticsReportAggregator aggregator = new StatisticsReportAggregator();
+		ReflectionTestUtils.setField(aggregator, "evaluationCache", new EvaluationCache(16, 16, 16));
+		AtomicReference<JobExecution> failedExecution = new AtomicReference<>();
+		//one partition is collected by the aggregator, the other one fails
+		jobLauncher = (launchedJob, jobParameters) -> {
+			JobExecution jobExecution = new JobExecution(lastExecutionId.incrementAndGet(), jobParameters);
+			ExecutionContext partitionContext = new ExecutionContext();
+			partitionContext.putString(BatchProcessingConfiguration.CSV_FILE_URL_KEY, csvFileUrls.get("url"));
+			aggregator.aggregate(jobExecution.getId(), partitionContext, null, new StatisticsReportAccumulator());
+			StepExecution stepExecution = jobExecution.createStepExecution(BatchProcessingConfiguration.CSV_FILES_BATCH_PROCESSING_STEP_NAME);
+			stepExecution.addFailureException(new IllegalStateException("Partition failed"));
+			stepExecution.setExitStatus(ExitStatus.FAILED);
+			aggregator.afterStep(stepExecution);
+			jobExecution.upgradeStatus(BatchStatus.FAILED);
+			failedExecution.set(jobExecution);
+			return jobExecution;
+		};
+
+		Throwable failure = failureOf(processed());
+
+		assertTrue(failure instanceof EvaluationFailedException);
+		assertEquals(BatchStatus.FAILED, ((EvaluationFailedException) failure).getStatus());
+		assertTrue(failure.getMessage().contains("Partition failed"));
+		//no report is built from the partition that was collected
+		assertFalse(failedExecution.get().getExecutionContext().containsKey(StatisticReportWriter.STATISTIC_REPORT_KEY));
+	}
+
+	private CompletableFuture<StatisticsReport> processed() {
+		CompletableFuture<StatisticsReport> result = new CompletableFuture<>();
+		process(result);
+		return result;
+	}
+}
@@ -0,0 +1,74 @@
+package io.elgayed.processing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+
+import io.elgayed.cache.ColumnarSourceFile;
+import io.elgayed.cache.ColumnarSourceStore;
+import io.elgayed.cache.ColumnarSpeechWriter;
+import io.elgayed.cache.SourceValidator;
+import io.elgayed.dictionary.SpeechDictionary;
+import io.elgayed.model.Speech;
+
+public class ColumnarSpeechItemReaderTest {
+
+	private static final int SPEECHES = 2 * ColumnarSourceFile.BLOCK_ROWS + 10;
+
+	@TempDir
+	Path directory;
+
+	private static Speech speech(int i) {
+		Speech speech = new Speech();
+		speech.setSpeaker("Speaker " + i % 7);
+		speech.setTheme("Thema " + i % 3);
+		speech.setDate(20130101 + i % 28);
+		speech.setWords(i * 1_000_000_000L);
+		return speech;
+	}
+
+	@Test
+	public void readsTheSpeechesWrittenAndResumesFromTheirCount() throws Exception {
+		ColumnarSourceStore store = new ColumnarSourceStore(true, directory.toString());
+		SourceValidator validator = SourceValidator.of("\"v1\"", null);
+		try (ColumnarSpeechWriter writer = store.create("file:/speeches.csv", validator)) {
+			for (int i = 0; i < SPEECHES; i++)
+				writer.append(speech(i));
+			writer.commit();
+		}
+
+		assertNull(store.find("file:/speeches.csv", SourceValidator.of("\"v2\"", null)));
+		assertNull(store.find("file:/other.csv", validator));
+		Path file = store.find("file:/speeches.csv", validator);
+		assertNotNull(file);
+
+		SpeechDictionary dictionary = new SpeechDictionary();
+		ColumnarSpeechItemReader reader = new ColumnarSpeechItemReader();
+		reader.setFile(file);
+		reader.setDictionary(dictionary);
+		ExecutionContext context = new ExecutionContext();
+		reader.open(context);
+		for (int i = 0; i < ColumnarSourceFile.BLOCK_ROWS + 5; i++) {
+			Speech speech = reader.read();
+			assertEquals(speech(i).toString(), speech.toString());
+			assertEquals(dictionary.speakers().find(speech.getSpeaker()), speech.getSpeakerId());
+			assertEquals(dictionary.themes().find(speech.getTheme()), speech.getThemeId());
+		}
+		reader.update(context);
+		reader.close();
+
+		ColumnarSpeechItemReader restarted = new ColumnarSpeechItemReader();
+		restarted.setFile(file);
+		restarted.open(context);
+		for (int i = ColumnarSourceFile.BLOCK_ROWS + 5; i < SPEECHES; i++)
+			assertEquals(speech(i).toString(), restarted.read().toString());
+		assertNull(restarted.read());
+		restarted.close();
+	}
+}
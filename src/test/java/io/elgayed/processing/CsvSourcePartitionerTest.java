@@ -0,0 +1,196 @@
+package io.elgayed.processing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.util.DigestUtils;
+
+import io.elgayed.cache.CachedPrefix;
+import io.elgayed.cache.EvaluationCache;
+import io.elgayed.cache.SourceValidator;
+import io.elgayed.metrics.BatchMetrics;
+import io.elgayed.remote.HttpRangeInputStream;
+import io.elgayed.remote.RemoteResourceClient;
+import io.elgayed.remote.StaticResourceServer;
+import io.elgayed.statistics.StatisticsReportAccumulator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CsvSourcePartitionerTest {
+
+	private static final long SPLIT_BYTES = 4 * 1024;
+
+	@TempDir
+	Path directory;
+
+	private final EvaluationCache evaluationCache = new EvaluationCache(16, 16, 16);
+	private final StatisticsReportAccumulator partial = new StatisticsReportAccumulator();
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private static String lines(int from, int to) {
+		StringBuilder lines = new StringBuilder();
+		for (int i = from; i < to; i++)
+			lines.append("Speaker ").append(i % 7).append(", Thema ").append(i).append(", 2013-01-01, ").append(i).append("\n");
+		return lines.toString();
+	}
+
+	private Path write(String content) throws Exception {
+		return Files.write(directory.resolve("speeches.csv"), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private Collection<ExecutionContext> partition(Path... files) throws Exception {
+		CsvSourcePartitioner partitioner = new CsvSourcePartitioner(Stream.of(files).map(file -> file.toUri().toString()).collect(Collectors.toList()), 
+				SPLIT_BYTES, SPLIT_BYTES, null, evaluationCache, partial.getAnsweredQueries(), false, new BatchMetrics(meterRegistry));
+		return partitioner.partition(1).values();
+	}
+
+	/**
+	 * Digests the ranges read by the given partitions as their readers do, then caches the content read as the prefix of their source,
+	 * as a completed evaluation does
+	 */
+	private void complete(Path file, Collection<ExecutionContext> partitions) throws Exception {
+		byte[] content = Files.readAllBytes(file);
+		List<ExecutionContext> ranges = partitions.stream()
+				.sorted(Comparator.comparing(context -> context.getLong(BatchProcessingConfiguration.CSV_FILE_RANGE_START_KEY)))
+				.collect(Collectors.toList());
+		for (ExecutionContext context : ranges) {
+			if (!CsvSourcePartitioner.isPrefix(context))
+				context.putString(MappedSpeechCsvItemReader.DIGEST_KEY, DigestUtils.md5DigestAsHex(Arrays.copyOfRange(content,
+						(int) context.getLong(BatchProcessingConfiguration.CSV_FILE_RANGE_START_KEY), (int) context.getLong(BatchProcessingConfiguration.CSV_FILE_RANGE_END_KEY))));
+		}
+		ExecutionContext context = ranges.get(0);
+		evaluationCache.putPrefix(context.getString(BatchProcessingConfiguration.CSV_FILE_URL_KEY), new CachedPrefix(CsvSourcePartitioner.endOf(context), 
+				CsvSourcePartitioner.localPrefixValidatorOf(ranges.stream().map(CsvSourcePartitioner::rangeDigestOf).collect(Collectors.toList())), partial));
+	}
+
+	private static List<Long> rangeStarts(Collection<ExecutionContext> partitions) {
+		return partitions.stream()
+				.filter(context -> !CsvSourcePartitioner.isPrefix(context))
+				.map(context -> context.getLong(BatchProcessingConfiguration.CSV_FILE_RANGE_START_KEY))
+				.sorted()
+				.collect(Collectors.toList());
+	}
+
+	private static boolean hasPrefix(Collection<ExecutionContext> partitions) {
+		return partitions.stream().anyMatch(CsvSourcePartitioner::isPrefix);
+	}
+
+	@Test
+	public void readsOnlyTheAppendedTail() throws Exception {
+		Path file = write("Redner, Thema, Datum, Wörter\n" + lines(0, 1000));
+		long prefixLength = Files.size(file);
+		complete(file, partition(file));
+		Files.write(file, lines(1000, 1100).getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+		Collection<ExecutionContext> partitions = partition(file);
+
+		assertTrue(hasPrefix(partitions));
+		assertEquals(prefixLength, (long) rangeStarts(partitions).get(0));
+		for (ExecutionContext context : partitions)
+			assertEquals(Files.size(file), CsvSourcePartitioner.endOf(context));
+
+		//the prefix read by the first evaluation and the tail read by the second one are validated together once more lines are appended
+		complete(file, partitions);
+		long secondPrefixLength = Files.size(file);
+		Files.write(file, lines(1100, 1200).getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+		partitions = partition(file);
+
+		assertTrue(hasPrefix(partitions));
+		assertEquals(secondPrefixLength, (long) rangeStarts(partitions).get(0));
+	}
+
+	@Test
+	public void readsAgainASourceWhoseEarlierLineWasRewritten() throws Exception {
+		Path file = write("Redner, Thema, Datum, Wörter\n" + lines(0, 1000));
+		complete(file, partition(file));
+		//same length, the last bytes of the prefix are unchanged
+		write("Redner, Thema, Datum, Wörter\n" + lines(0, 1000).replaceFirst("Speaker 1", "Speaker 2") + lines(1000, 1100));
+
+		Collection<ExecutionContext> partitions = partition(file);
+
+		assertFalse(hasPrefix(partitions));
+		assertEquals(0L, (long) rangeStarts(partitions).get(0));
+	}
+
+	@Test
+	public void readsAgainASourceThatGotShorter() throws Exception {
+		Path file = write("Redner, Thema, Datum, Wörter\n" + lines(0, 1000));
+		complete(file, partition(file));
+		write("Redner, Thema, Datum, Wörter\n" + lines(0, 900));
+
+		Collection<ExecutionContext> partitions = partition(file);
+
+		assertFalse(hasPrefix(partitions));
+		assertEquals(0L, (long) rangeStarts(partitions).get(0));
+	}
+
+	@Test
+	public void doesNotCacheAPrefixNotEndingWithALineFeed() throws Exception {
+		String lines = lines(0, 1000);
+		Path file = write("Redner, Thema, Datum, Wörter\n" + lines.substring(0, lines.length() - 1));
+		Collection<ExecutionContext> partitions = partition(file);
+		assertFalse(CsvSourcePartitioner.isEnd(partitions.iterator().next()));
+
+		//the last line is completed and lines are appended, the whole source is read
+		Files.write(file, ("\n" + lines(1000, 1100)).getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		partitions = partition(file);
+
+		assertFalse(hasPrefix(partitions));
+		assertEquals(0L, (long) rangeStarts(partitions).get(0));
+		assertTrue(CsvSourcePartitioner.isEnd(partitions.iterator().next()));
+	}
+
+	@Test
+	public void skipsAMissingSource() throws Exception {
+		Path file = write("Redner, Thema, Datum, Wörter\n" + lines(0, 10));
+
+		Collection<ExecutionContext> partitions = partition(directory.resolve("missing.csv"), file);
+
+		assertEquals(1, partitions.size());
+		assertEquals(file.toUri().toURL().toExternalForm(), partitions.iterator().next().getString(BatchProcessingConfiguration.CSV_FILE_URL_KEY));
+		assertEquals(1, meterRegistry.counter(BatchMetrics.MISSING_COUNTER, BatchMetrics.tagsOf(BatchProcessingConfiguration.CSV_FILES_BATCH_PROCESSING_JOB_NAME, 
+				directory.resolve("missing.csv").toUri().toURL().toExternalForm())).count());
+	}
+
+	@Test
+	public void readsEveryLineOfARemoteSourceOnceAcrossItsRanges() throws Exception {
+		String content = "Redner, Thema, Datum, Wörter\n" + lines(0, 1000);
+		RemoteResourceClient client = new RemoteResourceClient(task -> new Thread(task).start(), 5, 5, 64 * 1024);
+		try (StaticResourceServer server = new StaticResourceServer(content.getBytes(StandardCharsets.UTF_8), "\"v1\"", null)) {
+			CsvSourcePartitioner partitioner = new CsvSourcePartitioner(List.of(server.getUri().toString()), SPLIT_BYTES, SPLIT_BYTES, client,
+					evaluationCache, partial.getAnsweredQueries(), false, new BatchMetrics(meterRegistry));
+			List<ExecutionContext> partitions = partitioner.partition(1).values().stream()
+					.sorted(Comparator.comparing(context -> context.getLong(BatchProcessingConfiguration.CSV_FILE_RANGE_START_KEY)))
+					.collect(Collectors.toList());
+			assertEquals(content.getBytes(StandardCharsets.UTF_8).length / SPLIT_BYTES + 1, partitions.size());
+
+			//the ranges are cut at arbitrary offsets, the lines straddling them are read by the range holding their first byte
+			StringBuilder read = new StringBuilder();
+			for (ExecutionContext context : partitions) {
+				SourceValidator validator = CsvSourcePartitioner.rangeValidatorOf(context);
+				assertEquals("\"v1\"", validator.getEntityTag());
+				try (InputStream in = new HttpRangeInputStream(client, server.getUri(), context.getLong(BatchProcessingConfiguration.CSV_FILE_RANGE_START_KEY),
+						context.getLong(BatchProcessingConfiguration.CSV_FILE_RANGE_END_KEY), validator.getEntityTag(), validator.getLastModified())) {
+					read.append(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+				}
+			}
+			assertEquals(content, read.toString());
+		}
+	}
+}
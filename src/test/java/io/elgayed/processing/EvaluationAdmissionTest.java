@@ -0,0 +1,134 @@
+package io.elgayed.processing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.task.TaskRejectedException;
+
+import io.elgayed.cache.EvaluationCache;
+import io.elgayed.metrics.BatchMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class EvaluationAdmissionTest {
+
+	@TempDir
+	Path directory;
+
+	/**
+	 * Tasks handed to the evaluation executor, run by the test one at a time
+	 */
+	private final List<Runnable> submitted = new ArrayList<>();
+	private final List<String> ran = new ArrayList<>();
+	private final EvaluationCache evaluationCache = new EvaluationCache(16, 16, 16);
+
+	private EvaluationAdmission admission(int maxRunning, long maxRunningBytes, int maxQueued, int maxQueuedPerClient) {
+		return new EvaluationAdmission(submitted::add, evaluationCache, new BatchMetrics(new SimpleMeterRegistry()),
+				maxRunning, maxRunningBytes, maxQueued, maxQueuedPerClient, 1, 7);
+	}
+
+	private String file(String name, int bytes) throws Exception {
+		return Files.write(directory.resolve(name), new byte[bytes]).toUri().toString();
+	}
+
+	private void launch(EvaluationAdmission admission, String address, String name, String url) {
+		launch(admission, new EvaluationClient(address, null), name, url);
+	}
+
+	private void launch(EvaluationAdmission admission, EvaluationClient client, String name, String url) {
+		admission.bind(admission.reserve(client, List.of(url)));
+		admission.execute(() -> ran.add(name));
+		admission.unbind();
+	}
+
+	private void runSubmitted() {
+		while (!submitted.isEmpty())
+			submitted.remove(0).run();
+	}
+
+	@Test
+	public void admitsClientsInTurnAndRejectsPastTheQueueBounds() throws Exception {
+		EvaluationAdmission admission = admission(1, Long.MAX_VALUE, 3, 2);
+		String url = file("speeches.csv", 10);
+		launch(admission, "a", "a1", url);
+		launch(admission, "a", "a2", url);
+		launch(admission, "a", "a3", url);
+		launch(admission, "b", "b1", url);
+		EvaluationRejectedException rejected = assertThrows(EvaluationRejectedException.class, () -> admission.reserve(new EvaluationClient("c", null), List.of(url)));
+		assertEquals(7, rejected.getRetryAfterSeconds());
+
+		runSubmitted();
+		assertEquals(List.of("a1", "a2", "b1", "a3"), ran);
+		launch(admission, "c", "c1", url);
+		runSubmitted();
+		assertEquals("c1", ran.get(4));
+	}
+
+	@Test
+	public void boundsAnAddressWhateverTheIdsOfItsClients() throws Exception {
+		EvaluationAdmission admission = admission(1, Long.MAX_VALUE, 10, 4);
+		String url = file("speeches.csv", 10);
+		launch(admission, "x", "x", url);
+		launch(admission, new EvaluationClient("a", "1"), "a1", url);
+		launch(admission, new EvaluationClient("a", "1"), "a1'", url);
+		launch(admission, new EvaluationClient("a", "2"), "a2", url);
+		launch(admission, new EvaluationClient("a", "3"), "a3", url);
+		//rotating ids does not take more of the queue
+		assertThrows(EvaluationRejectedException.class, () -> admission.reserve(new EvaluationClient("a", "4"), List.of(url)));
+		launch(admission, "b", "b", url);
+
+		runSubmitted();
+		//the ids of an address take turns within the turns of the address
+		assertEquals(List.of("x", "a1", "b", "a2", "a3", "a1'"), ran);
+	}
+
+	@Test
+	public void runsEvaluationsTogetherWithinTheBytesBudget() throws Exception {
+		EvaluationAdmission admission = admission(2, 100, 10, 10);
+		launch(admission, "a", "large", file("large.csv", 80));
+		launch(admission, "b", "small", file("small.csv", 30));
+		assertEquals(1, submitted.size());
+		runSubmitted();
+		assertEquals(List.of("large", "small"), ran);
+
+		launch(admission, "a", "huge", file("huge.csv", 200));
+		assertEquals(1, submitted.size());
+	}
+
+	@Test
+	public void weighsRemoteSourcesWithoutRequestingThem() throws Exception {
+		EvaluationAdmission admission = admission(3, 100, 10, 10);
+		//the host cannot be resolved, a remote source is weighed by its size cached by the partitioner or by the default size
+		String known = "http://speeches.invalid/known.csv";
+		evaluationCache.putSize(known, 80);
+		launch(admission, "a", "known", known);
+		launch(admission, "b", "unknown", "http://speeches.invalid/unknown.csv");
+		assertEquals(2, submitted.size());
+
+		launch(admission, "c", "known again", known);
+		assertEquals(2, submitted.size());
+	}
+
+	@Test
+	public void aRejectedTaskGivesItsPlaceBack() throws Exception {
+		List<Runnable> accepted = new ArrayList<>();
+		boolean[] shutDown = { true };
+		EvaluationAdmission admission = new EvaluationAdmission(task -> {
+			if (shutDown[0])
+				throw new TaskRejectedException("Executor is shut down");
+			accepted.add(task);
+		}, null, new BatchMetrics(new SimpleMeterRegistry()), 1, Long.MAX_VALUE, 10, 10, 1, 7);
+		String url = file("speeches.csv", 10);
+		assertThrows(TaskRejectedException.class, () -> launch(admission, "a", "a", url));
+
+		shutDown[0] = false;
+		launch(admission, "b", "b", url);
+		assertEquals(1, accepted.size());
+	}
+}
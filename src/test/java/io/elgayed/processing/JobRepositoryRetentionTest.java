@@ -0,0 +1,113 @@
+package io.elgayed.processing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.explore.support.JobExplorerFactoryBean;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.dao.DefaultExecutionContextSerializer;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class JobRepositoryRetentionTest {
+
+	private static final String PARTITION_STEP_NAME = BatchProcessingConfiguration.CSV_FILE_BATCH_PROCESSING_STEP_NAME + ":partition0";
+
+	private EmbeddedDatabase database;
+	private JobRepository jobRepository;
+	private JobExplorer jobExplorer;
+	private JobRepositoryRetention retention;
+
+	@BeforeEach
+	public void createRepository() throws Exception {
+		database = new EmbeddedDatabaseBuilder()
+				.setType(EmbeddedDatabaseType.H2)
+				.generateUniqueName(true)
+				.addScript("org/springframework/batch/core/schema-h2.sql")
+				.build();
+		JobRepositoryFactoryBean repositoryFactory = new JobRepositoryFactoryBean();
+		repositoryFactory.setDataSource(database);
+		repositoryFactory.setTransactionManager(new DataSourceTransactionManager(database));
+		repositoryFactory.setSerializer(new DefaultExecutionContextSerializer());
+		repositoryFactory.afterPropertiesSet();
+		jobRepository = repositoryFactory.getObject();
+		JobExplorerFactoryBean explorerFactory = new JobExplorerFactoryBean();
+		explorerFactory.setDataSource(database);
+		explorerFactory.setSerializer(new DefaultExecutionContextSerializer());
+		explorerFactory.afterPropertiesSet();
+		jobExplorer = explorerFactory.getObject();
+		retention = new JobRepositoryRetention(jobRepository, jobExplorer, new JdbcTemplate(database), "BATCH_", 7);
+	}
+
+	@AfterEach
+	public void shutdownDatabase() {
+		database.shutdown();
+	}
+
+	/**
+	 * @return a job execution whose partition saved its restart state, ended with the given status the given number of days ago
+	 */
+	private JobExecution jobExecution(long runId, BatchStatus status, long daysAgo) throws Exception {
+		JobExecution jobExecution = jobRepository.createJobExecution(BatchProcessingConfiguration.CSV_FILES_BATCH_PROCESSING_JOB_NAME,
+				new JobParametersBuilder().addLong(BatchProcessingConfiguration.RUN_ID_KEY, runId).toJobParameters());
+		StepExecution partition = jobExecution.createStepExecution(PARTITION_STEP_NAME);
+		jobRepository.add(partition);
+		partition.getExecutionContext().put(StatisticReportWriter.PARTIAL_SNAPSHOT_KEY, new byte[1024]);
+		partition.getExecutionContext().putString(BatchProcessingConfiguration.CSV_FILE_URL_KEY, "file:/speeches.csv");
+		jobRepository.updateExecutionContext(partition);
+		jobExecution.upgradeStatus(status);
+		jobExecution.setEndTime(new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(daysAgo)));
+		jobRepository.update(jobExecution);
+		return jobExecution;
+	}
+
+	private StepExecution partitionOf(JobExecution jobExecution) {
+		return jobExplorer.getJobExecution(jobExecution.getId()).getStepExecutions().iterator().next();
+	}
+
+	@Test
+	public void removesTheRestartStateOfACompletedJob() throws Exception {
+		JobExecution completed = jobExecution(1, BatchStatus.COMPLETED, 0);
+		JobExecution failed = jobExecution(2, BatchStatus.FAILED, 0);
+
+		retention.afterJob(completed);
+		retention.afterJob(failed);
+
+		assertFalse(partitionOf(completed).getExecutionContext().containsKey(StatisticReportWriter.PARTIAL_SNAPSHOT_KEY));
+		assertEquals("file:/speeches.csv", partitionOf(completed).getExecutionContext().getString(BatchProcessingConfiguration.CSV_FILE_URL_KEY));
+		//a failed job can be restarted, its completed partitions are not processed again
+		assertTrue(partitionOf(failed).getExecutionContext().containsKey(StatisticReportWriter.PARTIAL_SNAPSHOT_KEY));
+	}
+
+	@Test
+	public void purgesTheJobsCompletedBeforeTheRetention() throws Exception {
+		JobExecution old = jobExecution(1, BatchStatus.COMPLETED, 8);
+		JobExecution recent = jobExecution(2, BatchStatus.COMPLETED, 1);
+		JobExecution oldFailed = jobExecution(3, BatchStatus.FAILED, 8);
+
+		retention.purgeCompletedJobInstances();
+
+		assertNull(jobExplorer.getJobExecution(old.getId()));
+		assertNull(jobExplorer.getJobInstance(old.getJobId()));
+		assertNotNull(jobExplorer.getJobExecution(recent.getId()));
+		assertNotNull(jobExplorer.getJobExecution(oldFailed.getId()));
+	}
+}
@@ -0,0 +1,66 @@
+package io.elgayed.processing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.FileSystemResource;
+
+import io.elgayed.model.Speech;
+
+public class MappedSpeechCsvItemReaderTest {
+	
+	@TempDir
+	Path directory;
+	
+	@Test
+	public void readsEveryLineOnceAcrossLineAlignedRanges() throws Exception {
+		StringBuilder csv = new StringBuilder("Redner, Thema, Datum, Wörter\r\n");
+		for (int i = 0; i < 500; i++)
+			csv.append("Speaker ").append(i % 7).append(", Thema ").append(i).append(", 2013-01-01, ").append(i).append("\r\n");
+		//last line without line feed
+		csv.append("Last Speaker, Thema, 2013-01-01, 500");
+		File file = Files.write(directory.resolve("speeches.csv"), csv.toString().getBytes(StandardCharsets.UTF_8)).toFile();
+		
+		long[] bounds = CsvSourcePartitioner.lineAlignedBounds(file, 1000);
+		
+		List<Speech> speeches = new ArrayList<>();
+		for (int i = 0; i + 1 < bounds.length; i++) {
+			MappedSpeechCsvItemReader reader = new MappedSpeechCsvItemReader();
+			reader.setResource(new FileSystemResource(file));
+			reader.setRange(bounds[i], bounds[i + 1]);
+			reader.setLinesToSkip(bounds[i] == 0 ? 1 : 0);
+			reader.open(new ExecutionContext());
+			Speech speech;
+			while ((speech = reader.read()) != null)
+				speeches.add(speech);
+			reader.close();
+		}
+		
+		assertEquals(file.length(), bounds[bounds.length - 1]);
+		assertEquals(501, speeches.size());
+		for (int i = 0; i <= 500; i++)
+			assertEquals(i, speeches.get(i).getWords());
+		assertEquals("Last Speaker", speeches.get(500).getSpeaker());
+	}
+	
+	@Test
+	public void readsNothingFromEmptyRange() throws Exception {
+		File file = Files.write(directory.resolve("empty.csv"), new byte[0]).toFile();
+		MappedSpeechCsvItemReader reader = new MappedSpeechCsvItemReader();
+		reader.setResource(new FileSystemResource(file));
+		reader.open(new ExecutionContext());
+		
+		assertNull(reader.read());
+		reader.close();
+	}
+}
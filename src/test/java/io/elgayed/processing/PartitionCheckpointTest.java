@@ -0,0 +1,128 @@
+package io.elgayed.processing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+
+import io.elgayed.model.Speech;
+import io.elgayed.statistics.StatisticsReportAccumulator;
+
+public class PartitionCheckpointTest {
+
+	private static final int CHUNK_SIZE = 1000;
+
+	@TempDir
+	Path directory;
+
+	private static Speech speech(int speaker, int i) {
+		Speech speech = new Speech();
+		speech.setSpeaker("Speaker " + speaker);
+		speech.setTheme(i % 2 == 0 ? "Innere Sicherheit" : "Bildungspolitik");
+		speech.setDate(20130101 + i % 28);
+		speech.setWords(100 + i % 1000);
+		return speech;
+	}
+
+	/**
+	 * Writes a chunk of speeches of speakers {@code [firstSpeaker, firstSpeaker + CHUNK_SIZE)} and commits it
+	 */
+	private static void commitChunk(PartitionCheckpoint checkpoint, ExecutionContext context, StatisticsReportAccumulator accumulator, int firstSpeaker) {
+		List<Speech> chunk = new ArrayList<>();
+		for (int i = 0; i < CHUNK_SIZE; i++)
+			chunk.add(speech(firstSpeaker + i, i));
+		chunk.forEach(accumulator::accumulate);
+		checkpoint.record(chunk);
+		checkpoint.save(context, accumulator);
+	}
+
+	@Test
+	public void restoresTheCommittedChunksOnly() throws Exception {
+		PartitionCheckpoint checkpoint = new PartitionCheckpoint(directory);
+		StatisticsReportAccumulator accumulator = new StatisticsReportAccumulator();
+		ExecutionContext context = new ExecutionContext();
+		for (int chunk = 0; chunk < 5; chunk++)
+			commitChunk(checkpoint, context, accumulator, chunk * 100);
+		String committed = accumulator.toStatisticsReport().toString();
+		ExecutionContext committedContext = new ExecutionContext(context);
+		//a chunk appended to the file whose commit failed
+		commitChunk(checkpoint, context, accumulator, 10_000);
+		checkpoint.close();
+
+		PartitionCheckpoint restarted = new PartitionCheckpoint(directory);
+		StatisticsReportAccumulator restored = new StatisticsReportAccumulator();
+		restarted.restore(committedContext, restored);
+		assertEquals(committed, restored.toStatisticsReport().toString());
+
+		commitChunk(restarted, committedContext, restored, 10_000);
+		assertEquals(accumulator.toStatisticsReport().toString(), restored.toStatisticsReport().toString());
+		restarted.close();
+		StatisticsReportAccumulator restoredAgain = new StatisticsReportAccumulator();
+		new PartitionCheckpoint(directory).restore(committedContext, restoredAgain);
+		assertEquals(accumulator.toStatisticsReport().toString(), restoredAgain.toStatisticsReport().toString());
+	}
+
+	@Test
+	public void commitCostDoesNotGrowWithDistinctSpeakers() throws Exception {
+		long[] committedBytes = new long[2];
+		int[] speakers = {1_000, 200_000};
+		for (int i = 0; i < speakers.length; i++) {
+			PartitionCheckpoint checkpoint = new PartitionCheckpoint(directory.resolve("speakers-" + speakers[i]));
+			StatisticsReportAccumulator accumulator = new StatisticsReportAccumulator();
+			ExecutionContext context = new ExecutionContext();
+			for (int speaker = 0; speaker < speakers[i]; speaker += CHUNK_SIZE)
+				commitChunk(checkpoint, context, accumulator, speaker);
+			long length = context.getLong(PartitionCheckpoint.CHECKPOINT_LENGTH_KEY);
+			commitChunk(checkpoint, context, accumulator, speakers[i]);
+			committedBytes[i] = context.getLong(PartitionCheckpoint.CHECKPOINT_LENGTH_KEY) - length;
+			assertTrue(committedBytes[i] * 20 < accumulator.toSnapshot().length || speakers[i] < 10_000);
+			checkpoint.close();
+		}
+		//the same chunk size costs about the same bytes, however many speakers the partition accumulated before it
+		assertTrue(Math.abs(committedBytes[1] - committedBytes[0]) < committedBytes[0] / 10, committedBytes[0] + " vs " + committedBytes[1]);
+	}
+
+	@Test
+	public void compactsTheFileOnceItDoubled() throws Exception {
+		PartitionCheckpoint checkpoint = new PartitionCheckpoint(directory, 0);
+		StatisticsReportAccumulator accumulator = new StatisticsReportAccumulator();
+		ExecutionContext context = new ExecutionContext();
+		commitChunk(checkpoint, context, accumulator, 0);
+		Path first = Paths.get(context.getString(PartitionCheckpoint.CHECKPOINT_FILE_KEY));
+		for (int chunk = 0; chunk < 3; chunk++)
+			commitChunk(checkpoint, context, accumulator, 0);
+		Path compacted = Paths.get(context.getString(PartitionCheckpoint.CHECKPOINT_FILE_KEY));
+		assertNotEquals(first, compacted);
+		commitChunk(checkpoint, context, accumulator, 0);
+		assertFalse(Files.exists(first));
+
+		StatisticsReportAccumulator restored = new StatisticsReportAccumulator();
+		new PartitionCheckpoint(directory).restore(context, restored);
+		assertEquals(accumulator.toStatisticsReport().toString(), restored.toStatisticsReport().toString());
+
+		checkpoint.delete(context);
+		assertFalse(Files.exists(compacted));
+		assertFalse(context.containsKey(PartitionCheckpoint.CHECKPOINT_FILE_KEY));
+	}
+
+	@Test
+	public void aCheckpointShorterThanItsCommittedLengthIsLost() throws Exception {
+		PartitionCheckpoint checkpoint = new PartitionCheckpoint(directory);
+		ExecutionContext context = new ExecutionContext();
+		commitChunk(checkpoint, context, new StatisticsReportAccumulator(), 0);
+		checkpoint.close();
+		assertFalse(PartitionCheckpoint.isLost(context));
+		context.putLong(PartitionCheckpoint.CHECKPOINT_LENGTH_KEY, context.getLong(PartitionCheckpoint.CHECKPOINT_LENGTH_KEY) + 1);
+		assertTrue(PartitionCheckpoint.isLost(context));
+	}
+}
@@ -0,0 +1,53 @@
+package io.elgayed.processing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.file.FlatFileParseException;
+
+import io.elgayed.model.Speech;
+
+public class SpeechRecordParserTest {
+	
+	private final SpeechRecordParser parser = new SpeechRecordParser();
+	
+	private Speech parse(String line) {
+		byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+		return parser.parse(ByteBuffer.wrap(bytes), 0, bytes.length, 1);
+	}
+	
+	@Test
+	public void parsesSpeechRecord() {
+		Speech speech = parse("Alexander Abel, Innere Sicherheit, 2012-12-11, 911");
+		
+		assertEquals("Alexander Abel", speech.getSpeaker());
+		assertEquals("Innere Sicherheit", speech.getTheme());
+		assertEquals(20121211, speech.getDate());
+		assertEquals(911, speech.getWords());
+	}
+	
+	@Test
+	public void parsesQuotedAndNonAsciiFields() {
+		Speech speech = parse("\"Müller, Jürgen\" ,\"Say \"\"hi\"\"\",2016-02-29,  42  ");
+		
+		assertEquals("Müller, Jürgen", speech.getSpeaker());
+		assertEquals("Say \"hi\"", speech.getTheme());
+		assertEquals(42, speech.getWords());
+	}
+	
+	@Test
+	public void rejectsInvalidRecords() {
+		assertThrows(FlatFileParseException.class, () -> parse("Alexander Abel, Innere Sicherheit, 2012-12-11"));
+		assertThrows(FlatFileParseException.class, () -> parse("Alexander Abel, Innere Sicherheit, 2012-12-11, 911, extra"));
+		assertThrows(FlatFileParseException.class, () -> parse("Alexander Abel, Innere Sicherheit, 2013-02-29, 911"));
+		assertThrows(FlatFileParseException.class, () -> parse("Alexander Abel, Innere Sicherheit, 12-12-2012, 911"));
+		assertThrows(FlatFileParseException.class, () -> parse("Alexander Abel, Innere Sicherheit, 2012-12-11, 9a1"));
+		assertThrows(FlatFileParseException.class, () -> parse("Alexander Abel, Innere Sicherheit, 2012-12-11, "));
+		assertThrows(FlatFileParseException.class, () -> parse("Alexander Abel, Innere Sicherheit, 2012-12-11, -911"));
+		assertThrows(FlatFileParseException.class, () -> parse("Alexander Abel, Innere Sicherheit, 2012-12-11, -0"));
+	}
+}
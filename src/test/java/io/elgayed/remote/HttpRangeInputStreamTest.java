@@ -0,0 +1,109 @@
+package io.elgayed.remote;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class HttpRangeInputStreamTest {
+
+	private static final String ENTITY_TAG = "\"v1\"";
+
+	private final RemoteResourceClient client = new RemoteResourceClient(task -> new Thread(task).start(), 5, 5, 64 * 1024);
+	private StaticResourceServer server;
+
+	@AfterEach
+	public void stopServer() {
+		if (server != null)
+			server.close();
+	}
+
+	private void serve(String content) throws IOException {
+		server = new StaticResourceServer(content.getBytes(StandardCharsets.UTF_8), ENTITY_TAG, null);
+	}
+
+	private String read(long start, long end) throws IOException {
+		try (InputStream in = new HttpRangeInputStream(client, server.getUri(), start, end, ENTITY_TAG, null)) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * @return lines of varying lengths, a few of them longer than the tail requests completing the last line of a range
+	 */
+	private static String lines(int count) {
+		StringBuilder lines = new StringBuilder();
+		for (int i = 0; i < count; i++)
+			lines.append("Speaker ").append(i).append(", ").append("x".repeat(i % 50 == 49 ? 70_000 : i % 13)).append(", 2013-01-01, ").append(i).append('\n');
+		return lines.toString();
+	}
+
+	@Test
+	public void skipsTheLineStartedBeforeTheRange() throws Exception {
+		serve("aaa\nbbb\nccc\n");
+
+		assertEquals("bbb\n", read(2, 6));
+		//a range starting right after a line feed does not skip its first line
+		assertEquals("bbb\n", read(4, 6));
+		//no line starts within the range
+		assertEquals("", read(5, 7));
+	}
+
+	@Test
+	public void completesTheLastLineWithTailRequests() throws Exception {
+		String longLine = "b".repeat(150_000) + "\n";
+		serve("a\n" + longLine + "c\n");
+
+		assertEquals("a\n" + longLine, read(0, 3));
+		//the range request, then 64 KB tail requests up to the line feed of the last line
+		assertEquals(List.of("bytes=0-2", "bytes=3-65538", "bytes=65539-131074", "bytes=131075-196610"), server.getRanges());
+	}
+
+	@Test
+	public void endsAtTheEndOfTheResource() throws Exception {
+		serve("a\nbbb");
+
+		//the last line has no line feed: the tail request past the end of the resource is not satisfiable
+		assertEquals("a\nbbb", read(0, 5));
+		assertEquals(416, (int) server.getStatuses().get(server.getStatuses().size() - 1));
+		//a range past the end of the resource holds no line
+		assertEquals("", read(10, 20));
+		assertEquals(416, (int) server.getStatuses().get(server.getStatuses().size() - 1));
+	}
+
+	@Test
+	public void failsOnceTheResourceChanged() throws Exception {
+		serve("aaa\nbbb\nccc\n");
+		server.update("aaa\nbbb\nccc\nddd\n".getBytes(StandardCharsets.UTF_8), "\"v2\"", null);
+
+		//the If-Range header no longer matches, the server answers with the whole new resource
+		IOException failure = assertThrows(IOException.class, () -> read(0, 6));
+		assertTrue(failure.getMessage().contains("status 200"));
+	}
+
+	@Test
+	public void readsEveryLineExactlyOnceWhereverRangesAreCut() throws Exception {
+		assertReadOnceByRanges(lines(40), 7, 100);
+		assertReadOnceByRanges(lines(200), 1000, 65_536);
+	}
+
+	private void assertReadOnceByRanges(String content, int... rangeSizes) throws IOException {
+		serve(content);
+		int length = content.getBytes(StandardCharsets.UTF_8).length;
+		for (int rangeSize : rangeSizes) {
+			ByteArrayOutputStream ranges = new ByteArrayOutputStream();
+			for (long start = 0; start < length; start += rangeSize)
+				ranges.writeBytes(read(start, Math.min(length, start + rangeSize)).getBytes(StandardCharsets.UTF_8));
+			assertEquals(content, ranges.toString(StandardCharsets.UTF_8), "Ranges of " + rangeSize + " bytes");
+		}
+		server.close();
+	}
+}
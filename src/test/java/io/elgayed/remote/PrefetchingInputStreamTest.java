@@ -0,0 +1,121 @@
+package io.elgayed.remote;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class PrefetchingInputStreamTest {
+
+	private static final int CHUNK_SIZE = 16;
+
+	/**
+	 * Ended once the prefetch task is done
+	 */
+	private final CountDownLatch prefetchDone = new CountDownLatch(1);
+	private final Executor executor = task -> new Thread(() -> {
+		try {
+			task.run();
+		} finally {
+			prefetchDone.countDown();
+		}
+	}).start();
+
+	private static byte[] bytes(int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+			bytes[i] = (byte) i;
+		return bytes;
+	}
+
+	/**
+	 * Source whose reads block until the reading thread is interrupted
+	 */
+	private static final class StalledInputStream extends InputStream {
+
+		@Override
+		public int read() throws IOException {
+			try {
+				new CountDownLatch(1).await();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			return -1;
+		}
+	}
+
+	@Test
+	public void readsEveryByteThenTheEndOfStream() throws Exception {
+		byte[] bytes = bytes(10 * CHUNK_SIZE + 3);
+		//a single queued chunk: the end of stream marker cannot be queued while the consumer has not taken the last chunk
+		try (PrefetchingInputStream in = new PrefetchingInputStream(new ByteArrayInputStream(bytes), source -> source, executor, CHUNK_SIZE, CHUNK_SIZE, 10_000)) {
+			assertArrayEquals(bytes, in.readAllBytes());
+			assertEquals(-1, in.read());
+			assertEquals(-1, in.read(new byte[1], 0, 1));
+		}
+		assertTrue(prefetchDone.await(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void rethrowsTheFailureOfTheSourceOnceItsBytesAreRead() throws Exception {
+		InputStream failing = new InputStream() {
+
+			private int read;
+
+			@Override
+			public int read() throws IOException {
+				if (read == CHUNK_SIZE)
+					throw new IOException("Connection reset");
+				return read++;
+			}
+		};
+		try (PrefetchingInputStream in = new PrefetchingInputStream(failing, source -> source, executor, 4 * CHUNK_SIZE, CHUNK_SIZE, 10_000)) {
+			assertArrayEquals(bytes(CHUNK_SIZE), in.readNBytes(CHUNK_SIZE));
+			assertEquals("Connection reset", assertThrows(IOException.class, in::read).getMessage());
+		}
+	}
+
+	@Test
+	public void closingStopsAPrefetchTaskWaitingForTheSource() throws Exception {
+		PrefetchingInputStream in = new PrefetchingInputStream(new StalledInputStream(), source -> source, executor, 4 * CHUNK_SIZE, CHUNK_SIZE, 10_000);
+		assertFalse(prefetchDone.await(100, TimeUnit.MILLISECONDS));
+
+		in.close();
+
+		assertTrue(prefetchDone.await(10, TimeUnit.SECONDS));
+		assertThrows(IOException.class, in::read);
+	}
+
+	@Test
+	public void closingStopsAPrefetchTaskWaitingForTheConsumer() throws Exception {
+		byte[] bytes = bytes(100 * CHUNK_SIZE);
+		PrefetchingInputStream in = new PrefetchingInputStream(new ByteArrayInputStream(bytes), source -> source, executor, CHUNK_SIZE, CHUNK_SIZE, 10_000);
+		assertEquals(0, in.read());
+
+		in.close();
+
+		assertTrue(prefetchDone.await(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void failsOnceNoByteIsReceivedForTheIdleTimeout() throws Exception {
+		PrefetchingInputStream in = new PrefetchingInputStream(new StalledInputStream(), source -> source, executor, 4 * CHUNK_SIZE, CHUNK_SIZE, 300);
+
+		assertThrows(SocketTimeoutException.class, in::read);
+
+		//the stream is closed, so the prefetch task is not held by the stalled source
+		assertTrue(prefetchDone.await(10, TimeUnit.SECONDS));
+	}
+}
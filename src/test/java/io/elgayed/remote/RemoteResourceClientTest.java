@@ -0,0 +1,124 @@
+package io.elgayed.remote;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class RemoteResourceClientTest {
+
+	private static final byte[] CONTENT = "Redner, Thema, Datum, Wörter\nAlexander Abel, Bildungspolitik, 2012-10-30, 5310\n"
+			.repeat(1000).getBytes(StandardCharsets.UTF_8);
+
+	private HttpServer server;
+	/**
+	 * Released once the test is done, a stalled response waits for it
+	 */
+	private final CountDownLatch testDone = new CountDownLatch(1);
+	/**
+	 * Ended once the prefetch task of a response body is done
+	 */
+	private final CountDownLatch prefetchDone = new CountDownLatch(1);
+	private RemoteResourceClient client;
+
+	@BeforeEach
+	public void startServer() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/gzip", exchange -> {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			try (OutputStream out = new GZIPOutputStream(body)) {
+				out.write(CONTENT);
+			}
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+			exchange.sendResponseHeaders(200, body.size());
+			try (OutputStream out = exchange.getResponseBody()) {
+				body.writeTo(out);
+			}
+		});
+		server.createContext("/deflate", exchange -> {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			try (OutputStream out = new DeflaterOutputStream(body)) {
+				out.write(CONTENT);
+			}
+			exchange.getResponseHeaders().set("Content-Encoding", "deflate");
+			exchange.sendResponseHeaders(200, body.size());
+			try (OutputStream out = exchange.getResponseBody()) {
+				body.writeTo(out);
+			}
+		});
+		server.createContext("/stalled", exchange -> {
+			exchange.sendResponseHeaders(200, CONTENT.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(CONTENT, 0, 100);
+			out.flush();
+			try {
+				testDone.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			exchange.close();
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		client = new RemoteResourceClient(task -> new Thread(() -> {
+			try {
+				task.run();
+			} finally {
+				prefetchDone.countDown();
+			}
+		}).start(), 5, 1, 1024 * 1024);
+	}
+
+	@AfterEach
+	public void stopServer() {
+		testDone.countDown();
+		server.stop(0);
+	}
+
+	private URI uri(String path) {
+		return URI.create("http://localhost:" + server.getAddress().getPort() + path);
+	}
+
+	@Test
+	public void decodesGzipBodies() throws Exception {
+		try (InputStream body = client.get(uri("/gzip"), Map.of()).getBody()) {
+			assertArrayEquals(CONTENT, body.readAllBytes());
+		}
+	}
+
+	@Test
+	public void decodesDeflateBodies() throws Exception {
+		try (InputStream body = client.get(uri("/deflate"), Map.of()).getBody()) {
+			assertArrayEquals(CONTENT, body.readAllBytes());
+		}
+	}
+
+	@Test
+	public void failsOnceABodyStalls() throws Exception {
+		InputStream body = client.get(uri("/stalled"), Map.of()).getBody();
+
+		assertThrows(SocketTimeoutException.class, body::read);
+
+		//the prefetch task is not held by the stalled server
+		assertTrue(prefetchDone.await(10, TimeUnit.SECONDS));
+	}
+}
@@ -0,0 +1,124 @@
+package io.elgayed.remote;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP server of a single resource for the tests, answering as a static file server does:
+ * {@code HEAD} requests, conditional {@code GET} requests ({@code If-None-Match} and {@code If-Modified-Since} headers)
+ * and range requests ({@code Range} and {@code If-Range} headers)
+ */
+public class StaticResourceServer implements AutoCloseable {
+
+	private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d+)");
+	private static final String PATH = "/speeches.csv";
+
+	private final HttpServer server;
+	private volatile byte[] content;
+	private volatile String entityTag;
+	private volatile String lastModified;
+	/**
+	 * {@code Range} headers of the range requests received, in order
+	 */
+	private final List<String> ranges = new CopyOnWriteArrayList<>();
+	/**
+	 * Statuses of the responses to the {@code GET} requests, in order
+	 */
+	private final List<Integer> statuses = new CopyOnWriteArrayList<>();
+
+	public StaticResourceServer(byte[] content, String entityTag, String lastModified) throws IOException {
+		update(content, entityTag, lastModified);
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext(PATH, this::handle);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+	}
+
+	/**
+	 * Replaces the resource, along with its validators
+	 */
+	public void update(byte[] content, String entityTag, String lastModified) {
+		this.content = content;
+		this.entityTag = entityTag;
+		this.lastModified = lastModified;
+	}
+
+	public URI getUri() {
+		return URI.create("http://localhost:" + server.getAddress().getPort() + PATH);
+	}
+
+	public List<String> getRanges() {
+		return ranges;
+	}
+
+	public List<Integer> getStatuses() {
+		return statuses;
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		byte[] content = this.content;
+		Headers requestHeaders = exchange.getRequestHeaders();
+		Headers responseHeaders = exchange.getResponseHeaders();
+		responseHeaders.set("Accept-Ranges", "bytes");
+		if (entityTag != null)
+			responseHeaders.set("ETag", entityTag);
+		if (lastModified != null)
+			responseHeaders.set("Last-Modified", lastModified);
+		if ("HEAD".equals(exchange.getRequestMethod())) {
+			responseHeaders.set("Content-Length", String.valueOf(content.length));
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+			return;
+		}
+		String ifNoneMatch = requestHeaders.getFirst("If-None-Match");
+		String ifModifiedSince = requestHeaders.getFirst("If-Modified-Since");
+		if (ifNoneMatch != null ? ifNoneMatch.equals(entityTag) : ifModifiedSince != null && ifModifiedSince.equals(lastModified)) {
+			respond(exchange, 304, null);
+			return;
+		}
+		String range = requestHeaders.getFirst("Range");
+		String ifRange = requestHeaders.getFirst("If-Range");
+		Matcher matcher = range != null ? RANGE_PATTERN.matcher(range) : null;
+		if (matcher == null || !matcher.matches() || ifRange != null && !ifRange.equals(entityTag) && !ifRange.equals(lastModified)) {
+			respond(exchange, 200, content);
+			return;
+		}
+		ranges.add(range);
+		int first = Integer.parseInt(matcher.group(1));
+		if (first >= content.length) {
+			responseHeaders.set("Content-Range", "bytes */" + content.length);
+			respond(exchange, 416, null);
+			return;
+		}
+		int last = (int) Math.min(Long.parseLong(matcher.group(2)), content.length - 1);
+		responseHeaders.set("Content-Range", "bytes " + first + "-" + last + "/" + content.length);
+		byte[] body = new byte[last - first + 1];
+		System.arraycopy(content, first, body, 0, body.length);
+		respond(exchange, 206, body);
+	}
+
+	private void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+		statuses.add(status);
+		exchange.sendResponseHeaders(status, body != null ? body.length : -1);
+		try (OutputStream out = exchange.getResponseBody()) {
+			if (body != null)
+				out.write(body);
+		}
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+	}
+}
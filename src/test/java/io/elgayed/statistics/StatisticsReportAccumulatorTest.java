@@ -0,0 +1,262 @@
+package io.elgayed.statistics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.elgayed.dictionary.SpeechDictionary;
+import io.elgayed.model.QueryReport;
+import io.elgayed.model.QueryResult;
+import io.elgayed.model.Speech;
+import io.elgayed.model.SpeechDate;
+import io.elgayed.model.StatisticsReport;
+
+public class StatisticsReportAccumulatorTest {
+	
+	private static Speech speech(String speaker, String theme, String date, long words) {
+		Speech speech = new Speech();
+		speech.setSpeaker(speaker);
+		speech.setTheme(theme);
+		speech.setDate(SpeechDate.of(LocalDate.parse(date)));
+		speech.setWords(words);
+		return speech;
+	}
+	
+	private static Map<String, Long> valuesOf(QueryResult result) {
+		Map<String, Long> values = new LinkedHashMap<>();
+		result.getRanking().forEach(group -> values.put(group.getName(), group.getValue()));
+		return values;
+	}
+	
+	@Test
+	public void leastWordyLeaderIsDerivedFromAllSpeakers() {
+		StatisticsReportAccumulator accumulator = new StatisticsReportAccumulator();
+		accumulator.accumulate(speech("Alexander Abel", "Bildungspolitik", "2012-10-30", 10));
+		accumulator.accumulate(speech("Bernhard Belling", "Kohlesubventionen", "2012-11-05", 20));
+		accumulator.accumulate(speech("Alexander Abel", "Bildungspolitik", "2012-10-30", 100));
+		
+		assertEquals("Bernhard Belling", accumulator.toStatisticsReport().getLeastWordy());
+	}
+	
+	@Test
+	public void mergesAccumulatorsWithDifferentDictionaries() {
+		StatisticsReportAccumulator left = new StatisticsReportAccumulator();
+		left.accumulate(speech("Alexander Abel", StatisticsReportConstants.INTERNAL_SECURITY_THEME, "2013-01-01", 100));
+		left.accumulate(speech("Caesare Collins", "Kohlesubventionen", "2013-01-02", 10));
+		StatisticsReportAccumulator right = new StatisticsReportAccumulator();
+		right.accumulate(speech("Caesare Collins", StatisticsReportConstants.INTERNAL_SECURITY_THEME, "2013-03-01", 500));
+		right.accumulate(speech("Caesare Collins", StatisticsReportConstants.INTERNAL_SECURITY_THEME, "2012-03-01", 500));
+		
+		StatisticsReport report = left.merge(right).toStatisticsReport();
+		
+		assertEquals("Caesare Collins", report.getMostSpeeches());
+		assertEquals("Caesare Collins", report.getMostSecurity());
+		assertEquals("Alexander Abel", report.getLeastWordy());
+	}
+	
+	@Test
+	public void parallelCollectionMatchesSequentialAccumulation() {
+		//skewed speakers, so that no question has a tie
+		String[] speakers = {"Alexander Abel", "Alexander Abel", "Alexander Abel", "Alexander Abel", "Bernhard Belling", 
+				"Bernhard Belling", "Bernhard Belling", "Caesare Collins", "Caesare Collins", "John Doe"};
+		String[] themes = {"Bildungspolitik", StatisticsReportConstants.INTERNAL_SECURITY_THEME, "Kohlesubventionen"};
+		List<Speech> speeches = new ArrayList<>();
+		for (int i = 0; i < 3 * StatisticsReportCollector.PARALLEL_COLLECTION_THRESHOLD; i++) {
+			speeches.add(speech(speakers[i % speakers.length], themes[(i / 3) % themes.length], 
+					i % 3 == 0 ? "2013-05-05" : "2012-05-05", 1 + (i * 31) % 997));
+		}
+		
+		StatisticsReportAccumulator sequential = new StatisticsReportAccumulator();
+		speeches.forEach(sequential::accumulate);
+		StatisticsReportAccumulator parallel = StatisticsReportCollector.accumulate(speeches, new SpeechDictionary());
+		
+		assertEquals(sequential.toStatisticsReport().toString(), parallel.toStatisticsReport().toString());
+	}
+	
+	@Test
+	public void snapshotRestoresCountersIntoAnotherDictionary() {
+		StatisticsReportAccumulator accumulator = new StatisticsReportAccumulator();
+		accumulator.accumulate(speech("Alexander Abel", StatisticsReportConstants.INTERNAL_SECURITY_THEME, "2012-01-01", 100));
+		accumulator.accumulate(speech("Bernhard Belling", "Kohlesubventionen", "2013-01-02", 10));
+		accumulator.accumulate(speech("Bernhard Belling", "Kohlesubventionen", "2013-02-02", 10));
+		
+		SpeechDictionary dictionary = new SpeechDictionary();
+		dictionary.speakers().idOf("John Doe");
+		StatisticsReportAccumulator restored = StatisticsReportAccumulator.fromSnapshot(accumulator.toSnapshot(), dictionary);
+		restored.accumulate(speech("Caesare Collins", "Bildungspolitik", "2013-01-02", 5));
+		
+		StatisticsReport report = restored.toStatisticsReport();
+		assertEquals(3, restored.getSpeakersCount());
+		assertEquals("Bernhard Belling", report.getMostSpeeches());
+		assertEquals("Alexander Abel", report.getMostSecurity());
+		assertEquals("Caesare Collins", report.getLeastWordy());
+	}
+	
+	@Test
+	public void queriesAreAnsweredInTheSameScan() {
+		List<SpeechQuery> queries = List.of(
+				SpeechQuery.parse("speechesPerTheme2013", "aggregate=count;group-by=theme;year=2013"),
+				SpeechQuery.parse("wordsFrom2012", "aggregate=sum;group-by=speaker;from=2012-06-01;to=2012-12-31"),
+				SpeechQuery.parse("longestSecuritySpeech", "aggregate=max;group-by=speaker;theme=" + StatisticsReportConstants.INTERNAL_SECURITY_THEME),
+				SpeechQuery.parse("shortestSpeech", "aggregate=min;group-by=speaker"));
+		StatisticsReportAccumulator accumulator = new StatisticsReportAccumulator(new SpeechDictionary(), queries);
+		accumulator.accumulate(speech("Alexander Abel", StatisticsReportConstants.INTERNAL_SECURITY_THEME, "2013-01-01", 100));
+		accumulator.accumulate(speech("Alexander Abel", "Bildungspolitik", "2012-07-01", 300));
+		accumulator.accumulate(speech("Bernhard Belling", StatisticsReportConstants.INTERNAL_SECURITY_THEME, "2012-05-01", 200));
+		accumulator.accumulate(speech("Bernhard Belling", "Bildungspolitik", "2013-02-02", 50));
+		accumulator.accumulate(speech("Bernhard Belling", "Bildungspolitik", "2013-03-02", 70));
+		
+		QueryReport report = (QueryReport) accumulator.toStatisticsReport();
+		
+		assertEquals("Bernhard Belling", report.getMostSpeeches());
+		assertEquals(Map.of("Bildungspolitik", 2L, StatisticsReportConstants.INTERNAL_SECURITY_THEME, 1L), valuesOf(report.getQueries().get("speechesPerTheme2013")));
+		assertEquals(Map.of("Alexander Abel", 300L), valuesOf(report.getQueries().get("wordsFrom2012")));
+		assertEquals(List.of("Bernhard Belling", "Alexander Abel"), List.copyOf(valuesOf(report.getQueries().get("longestSecuritySpeech")).keySet()));
+		assertEquals(Map.of("Alexander Abel", 100L, "Bernhard Belling", 50L), valuesOf(report.getQueries().get("shortestSpeech")));
+	}
+	
+	@Test
+	public void queriesAreMergedAndRestoredFromSnapshots() {
+		SpeechQuery query = SpeechQuery.parse("longestSpeech", "aggregate=max;group-by=speaker");
+		StatisticsReportAccumulator left = new StatisticsReportAccumulator(new SpeechDictionary(), List.of(query));
+		left.accumulate(speech("Alexander Abel", "Bildungspolitik", "2013-01-01", 100));
+		StatisticsReportAccumulator right = new StatisticsReportAccumulator(new SpeechDictionary(), List.of(query));
+		right.accumulate(speech("Alexander Abel", "Bildungspolitik", "2012-01-01", 400));
+		right.accumulate(speech("Caesare Collins", "Bildungspolitik", "2012-01-01", 200));
+		
+		StatisticsReportAccumulator job = new StatisticsReportAccumulator()
+				.merge(StatisticsReportAccumulator.fromSnapshot(left.toSnapshot(), new SpeechDictionary()))
+				.merge(right);
+		
+		assertEquals(List.of(query), job.getQueries());
+		QueryReport report = (QueryReport) job.toStatisticsReport();
+		assertEquals(Map.of("Alexander Abel", 400L, "Caesare Collins", 200L), valuesOf(report.getQueries().get("longestSpeech")));
+		assertEquals("Caesare Collins", report.getLeastWordy());
+		assertThrows(IllegalArgumentException.class, () -> job.merge(new StatisticsReportAccumulator(new SpeechDictionary(), 
+				List.of(SpeechQuery.parse("longestSpeech", "aggregate=min;group-by=speaker")))));
+	}
+	
+	@Test
+	public void tiesAreReportedExplicitly() {
+		List<SpeechQuery> queries = List.of(
+				SpeechQuery.parse("topSpeakers2013", "aggregate=count;group-by=speaker;year=2013;top=3"),
+				SpeechQuery.parse("leastWordy2013", "aggregate=sum;group-by=speaker;year=2013;order=asc;top=1"));
+		StatisticsReportAccumulator accumulator = new StatisticsReportAccumulator(new SpeechDictionary(), queries);
+		String[] speakers = {"Alexander Abel", "Bernhard Belling", "Alexander Abel", "Bernhard Belling", "Caesare Collins", "John Doe", 
+				"Alexander Abel", "Bernhard Belling", "Caesare Collins", "John Doe", "Amir Elgayed"};
+		for (String speaker : speakers)
+			accumulator.accumulate(speech(speaker, "Bildungspolitik", "2013-01-01", 100));
+		accumulator.accumulate(speech("Caesare Collins", StatisticsReportConstants.INTERNAL_SECURITY_THEME, "2012-01-01", 50));
+		accumulator.accumulate(speech("John Doe", StatisticsReportConstants.INTERNAL_SECURITY_THEME, "2012-01-01", 50));
+		
+		QueryReport report = (QueryReport) accumulator.toStatisticsReport();
+		
+		assertEquals(StatisticsReportConstants.NO_CLEAR_ANSWER, report.getMostSpeeches());
+		assertEquals(StatisticsReportConstants.NO_CLEAR_ANSWER, report.getMostSecurity());
+		assertEquals("Amir Elgayed", report.getLeastWordy());
+		QueryResult topSpeakers = report.getQueries().get("topSpeakers2013");
+		assertEquals(StatisticsReportConstants.NO_CLEAR_ANSWER, topSpeakers.getLeader());
+		assertEquals(Map.of("Alexander Abel", 3L, "Bernhard Belling", 3L, "Caesare Collins", 2L), valuesOf(topSpeakers));
+		assertEquals(List.of(1, 1, 3), List.of(topSpeakers.getRanking().get(0).getRank(), topSpeakers.getRanking().get(1).getRank(), 
+				topSpeakers.getRanking().get(2).getRank()));
+		assertTrue(topSpeakers.isTiedAtCutoff());
+		QueryResult leastWordy = report.getQueries().get("leastWordy2013");
+		assertEquals("Amir Elgayed", leastWordy.getLeader());
+		assertEquals(Map.of("Amir Elgayed", 100L), valuesOf(leastWordy));
+		assertFalse(leastWordy.isTiedAtCutoff());
+	}
+	
+	/**
+	 * Speeches of 5000 speakers speaking once in 2013, and of heavy hitters speaking more in 2013 and more about internal security
+	 */
+	private static List<Speech> heavyHittersSpeeches(int offset) {
+		List<Speech> speeches = new ArrayList<>();
+		for (int i = 0; i < 5000; i++)
+			speeches.add(speech("Speaker " + (offset + i), "Bildungspolitik", "2013-01-01", 10));
+		for (int i = 0; i < 300; i++) {
+			speeches.add(speech("Alexander Abel", "Bildungspolitik", "2013-02-01", 10));
+			speeches.add(speech("Bernhard Belling", StatisticsReportConstants.INTERNAL_SECURITY_THEME, "2012-02-01", 10));
+			if (i % 2 == 0)
+				speeches.add(speech("Caesare Collins", StatisticsReportConstants.INTERNAL_SECURITY_THEME, "2013-03-01", 10));
+		}
+		return speeches;
+	}
+	
+	@Test
+	public void approximateModeKeepsHeavyHittersInFixedMemory() {
+		List<SpeechQuery> queries = List.of(SpeechQuery.parse("speeches", "aggregate=count;group-by=speaker;top=3"));
+		StatisticsReportAccumulator accumulator = new StatisticsReportAccumulator(new SpeechDictionary(), queries, 0.01);
+		heavyHittersSpeeches(0).forEach(accumulator::accumulate);
+		
+		QueryReport report = (QueryReport) accumulator.toStatisticsReport();
+		
+		assertEquals("Alexander Abel", report.getMostSpeeches());
+		assertEquals("Bernhard Belling", report.getMostSecurity());
+		assertEquals(5003, accumulator.getSpeakersCount());
+		QueryResult speeches = report.getQueries().get("speeches");
+		assertEquals("aggregate=count;group-by=speaker;top=3;error=0.01", speeches.getDefinition());
+		assertEquals(List.of("Alexander Abel", "Bernhard Belling", "Caesare Collins"), List.copyOf(valuesOf(speeches).keySet()));
+		//estimates never underestimate and overestimate by at most 1% of the 5750 speeches
+		assertTrue(valuesOf(speeches).get("Alexander Abel") >= 300);
+		assertTrue(speeches.getMaxError() <= 57);
+		assertTrue(valuesOf(speeches).get("Caesare Collins") <= 150 + speeches.getMaxError());
+	}
+	
+	@Test
+	public void approximateAccumulatorsAreMergedAndRestoredFromSnapshots() {
+		StatisticsReportAccumulator left = new StatisticsReportAccumulator(new SpeechDictionary(), List.of(), 0.01);
+		heavyHittersSpeeches(0).forEach(left::accumulate);
+		StatisticsReportAccumulator right = new StatisticsReportAccumulator(new SpeechDictionary(), List.of(), 0.01);
+		heavyHittersSpeeches(5000).forEach(right::accumulate);
+		
+		StatisticsReportAccumulator job = new StatisticsReportAccumulator(new SpeechDictionary(), List.of(), 0.01)
+				.merge(StatisticsReportAccumulator.fromSnapshot(left.toSnapshot(), new SpeechDictionary()))
+				.merge(right);
+		
+		assertEquals(left.getAnsweredQueries(), job.getAnsweredQueries());
+		StatisticsReport report = job.toStatisticsReport();
+		assertEquals("Alexander Abel", report.getMostSpeeches());
+		assertEquals("Bernhard Belling", report.getMostSecurity());
+		assertEquals(10003, job.getSpeakersCount());
+		assertThrows(IllegalArgumentException.class, () -> new StatisticsReportAccumulator().merge(right));
+		assertThrows(IllegalArgumentException.class, () -> new StatisticsReportAccumulator(new SpeechDictionary(), List.of(), 2));
+	}
+	
+	@Test
+	public void spilledRunsAreMergedIntoTheSameReport(@TempDir Path directory) throws Exception {
+		List<SpeechQuery> queries = List.of(
+				SpeechQuery.parse("wordsPerSpeaker", "aggregate=sum;group-by=speaker;top=5"),
+				SpeechQuery.parse("shortestSpeech", "aggregate=min;group-by=speaker;order=asc;top=3"),
+				SpeechQuery.parse("speechesPerTheme", "aggregate=count;group-by=theme"));
+		StatisticsReportAccumulator job = new StatisticsReportAccumulator(new SpeechDictionary(), queries);
+		List<Path> runs = new ArrayList<>();
+		//enough speakers for the kept groups to be compacted, and few distinct word counts so that rankings have ties
+		for (int run = 0; run < 4; run++) {
+			StatisticsReportAccumulator partial = job.emptyCopy(new SpeechDictionary());
+			for (int i = 0; i < 2000; i++) {
+				int speaker = (i * 7 + run * 13) % 500;
+				partial.accumulate(speech(String.format("Speaker %03d", speaker), i % 3 == 0 ? StatisticsReportConstants.INTERNAL_SECURITY_THEME : "Bildungspolitik", 
+						i % 2 == 0 ? "2013-05-05" : "2012-05-05", 10 + (speaker % 4) * 10));
+			}
+			job.merge(partial);
+			runs.add(partial.spill(directory));
+		}
+		
+		SortedRunMerger merger = new SortedRunMerger(runs);
+		
+		assertEquals(job.toStatisticsReport().toString(), merger.merge().toString());
+		assertEquals(job.getSpeakersCount(), merger.getSpeakersCount());
+		assertThrows(IllegalArgumentException.class, () -> new SortedRunMerger(List.of()));
+	}
+}